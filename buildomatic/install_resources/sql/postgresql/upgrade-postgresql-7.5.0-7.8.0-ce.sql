@@ -4,3 +4,21 @@
 --
 -- This is a placeholder file for the js-upgrade-samedb.sh/bat script
 --
+
+-- pre-aggregated access counters used by the popularity sort, fill with the popularity rebuild job
+
+    create table JIResourcePopularity (
+       resource_id int8 not null,
+        access_count int8 not null,
+        score float8 not null,
+        score_epoch int8 not null,
+        primary key (resource_id)
+    );
+
+create index popularity_score_index on JIResourcePopularity (score);
+
+    alter table JIResourcePopularity 
+       add constraint FK_resource_popularity_res 
+       foreign key (resource_id) 
+       references JIResource 
+       on delete cascade;
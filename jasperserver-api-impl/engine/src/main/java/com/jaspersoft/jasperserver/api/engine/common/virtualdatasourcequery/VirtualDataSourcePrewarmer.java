@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2005 - 2020 TIBCO Software Inc. All rights reserved.
+ * http://www.jaspersoft.com.
+ *
+ * Unless you have purchased a commercial license agreement from Jaspersoft,
+ * the following license terms apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.jaspersoft.jasperserver.api.engine.common.virtualdatasourcequery;
+
+import com.jaspersoft.jasperserver.api.common.domain.ExecutionContext;
+import com.jaspersoft.jasperserver.api.common.domain.impl.ExecutionContextImpl;
+import com.jaspersoft.jasperserver.api.metadata.common.domain.Resource;
+import com.jaspersoft.jasperserver.api.metadata.common.domain.ResourceReference;
+import com.jaspersoft.jasperserver.api.metadata.common.service.RepositoryService;
+import com.jaspersoft.jasperserver.api.metadata.jasperreports.domain.VirtualReportDataSource;
+import com.jaspersoft.jasperserver.api.metadata.user.service.ProfileAttributesResolver;
+import com.jaspersoft.jasperserver.api.metadata.view.domain.FilterCriteria;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
+
+import java.sql.Connection;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Builds and deploys the Teiid VDBs of the repository virtual data sources in the background once the
+ * application context is started, so the first report run against a virtual data source doesn't pay for
+ * the schema import and VDB deployment.
+ * <p/>
+ * Virtual data sources whose sub data sources are parametrized with profile attributes are skipped,
+ * they resolve to different VDBs for different users.
+ *
+ * @version $Id$
+ */
+public class VirtualDataSourcePrewarmer implements ApplicationListener<ContextRefreshedEvent> {
+
+    protected static final Log log = LogFactory.getLog(VirtualDataSourcePrewarmer.class);
+
+    private RepositoryService repositoryService;
+    private VirtualDataSourceHandler virtualDataSourceHandler;
+    private ProfileAttributesResolver profileAttributesResolver;
+    private boolean enabled = false;
+    private int threads = 2;
+    private int maxDataSources = 50;
+    private final AtomicBoolean started = new AtomicBoolean(false);
+
+    @Override
+    public void onApplicationEvent(ContextRefreshedEvent contextRefreshedEvent) {
+        if (!enabled || !started.compareAndSet(false, true)) {
+            return;
+        }
+        final ExecutorService threadPool = Executors.newFixedThreadPool(threads, new PrewarmThreadFactory());
+        threadPool.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    prewarm(threadPool);
+                } catch (Exception e) {
+                    log.warn("Failed to pre-warm virtual data sources", e);
+                } finally {
+                    threadPool.shutdown();
+                }
+            }
+        });
+    }
+
+    protected void prewarm(ExecutorService threadPool) {
+        final ExecutionContext context = ExecutionContextImpl.getRuntimeExecutionContext();
+        List<?> dataSources = repositoryService.loadClientResources(FilterCriteria.createFilter(VirtualReportDataSource.class));
+        if (dataSources == null) {
+            return;
+        }
+        int count = 0;
+        for (Object dataSource : dataSources) {
+            if (count >= maxDataSources) {
+                log.debug("Reached the maximum of " + maxDataSources + " virtual data sources to pre-warm");
+                break;
+            }
+            final VirtualReportDataSource virtualDataSource = (VirtualReportDataSource) dataSource;
+            if (isParametrized(context, virtualDataSource)) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Skip pre-warming of parametrized virtual data source " + virtualDataSource.getURIString());
+                }
+                continue;
+            }
+            count++;
+            threadPool.execute(new Runnable() {
+                @Override
+                public void run() {
+                    prewarm(context, virtualDataSource);
+                }
+            });
+        }
+    }
+
+    protected void prewarm(ExecutionContext context, VirtualReportDataSource virtualDataSource) {
+        long time = System.currentTimeMillis();
+        Connection connection = null;
+        try {
+            connection = virtualDataSourceHandler.getSqlDataSource(context, virtualDataSource).getConnection();
+            if (log.isDebugEnabled()) {
+                log.debug("Pre-warmed virtual data source " + virtualDataSource.getURIString() + " in " +
+                        (System.currentTimeMillis() - time) + "ms");
+            }
+        } catch (Exception e) {
+            log.warn("Failed to pre-warm virtual data source " + virtualDataSource.getURIString() + ": " + e.getMessage());
+            log.debug(e, e);
+        } finally {
+            if (connection != null) {
+                try {
+                    connection.close();
+                } catch (Exception e) {
+                    log.debug(e, e);
+                }
+            }
+        }
+    }
+
+    protected boolean isParametrized(ExecutionContext context, VirtualReportDataSource virtualDataSource) {
+        if (virtualDataSource.getDataSourceUriMap() == null) {
+            return false;
+        }
+        for (ResourceReference reference : virtualDataSource.getDataSourceUriMap().values()) {
+            Resource subDataSource = reference.isLocal() ? reference.getLocalResource()
+                    : repositoryService.getResource(context, reference.getReferenceURI());
+            if (subDataSource != null && profileAttributesResolver.isParametrizedResource(subDataSource)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public void setRepositoryService(RepositoryService repositoryService) {
+        this.repositoryService = repositoryService;
+    }
+
+    public void setVirtualDataSourceHandler(VirtualDataSourceHandler virtualDataSourceHandler) {
+        this.virtualDataSourceHandler = virtualDataSourceHandler;
+    }
+
+    public void setProfileAttributesResolver(ProfileAttributesResolver profileAttributesResolver) {
+        this.profileAttributesResolver = profileAttributesResolver;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    public void setMaxDataSources(int maxDataSources) {
+        this.maxDataSources = maxDataSources;
+    }
+
+    private static class PrewarmThreadFactory implements ThreadFactory {
+        private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "vds-prewarm-" + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -131,29 +131,31 @@ public abstract class AbstractVirtualDataSourceQueryServiceImpl implements Virtu
 
     // get sub data source id
     protected String getDataSourceID(com.jaspersoft.jasperserver.api.common.virtualdatasourcequery.DataSource dataSource) {
-        if (dataSource instanceof JdbcDataSource) return getJdbcDataSourceID((JdbcDataSource) dataSource);
-        else if (dataSource instanceof JndiDataSource) return getJndiDataSourceID((JndiDataSource) dataSource);
-        else if (dataSource instanceof CustomDataSource) return getCustomDataSourceID((CustomDataSource) dataSource);
-        return dataSource.hashCode() + "";
+        return getConnectionIdentity(dataSource).hashCode() + "";
     }
 
-    // get id for JDBC data source
-    private String getJdbcDataSourceID(JdbcDataSource jdbcDataSource) {
-        String key = jdbcDataSource.getConnectionUrl() + "|" + jdbcDataSource.getDriverClass() + "|" +
+    // get the properties identifying the connection to sub data source
+    protected String getConnectionIdentity(com.jaspersoft.jasperserver.api.common.virtualdatasourcequery.DataSource dataSource) {
+        if (dataSource instanceof JdbcDataSource) return getJdbcConnectionIdentity((JdbcDataSource) dataSource);
+        else if (dataSource instanceof JndiDataSource) return getJndiConnectionIdentity((JndiDataSource) dataSource);
+        else if (dataSource instanceof CustomDataSource) return getCustomConnectionIdentity((CustomDataSource) dataSource);
+        return Integer.toString(dataSource.hashCode());
+    }
+
+    // get connection identity for JDBC data source
+    private String getJdbcConnectionIdentity(JdbcDataSource jdbcDataSource) {
+        return jdbcDataSource.getConnectionUrl() + "|" + jdbcDataSource.getDriverClass() + "|" +
                 jdbcDataSource.getUsername() + "|" + jdbcDataSource.getPassword();
-        return key.hashCode() + "";
     }
 
-    // get id for JNDI data source
-    private String getJndiDataSourceID(JndiDataSource jndiDataSource) {
-        String key = jndiDataSource.getJndiName();
-        return key.hashCode() + "";
+    // get connection identity for JNDI data source
+    private String getJndiConnectionIdentity(JndiDataSource jndiDataSource) {
+        return jndiDataSource.getJndiName();
     }
 
-    // get id for Custom data source
-    private String getCustomDataSourceID(CustomDataSource customDataSource) {
-        String key = customDataSource.getPropertyMap().toString();
-        return key.hashCode() + "";
+    // get connection identity for Custom data source
+    private String getCustomConnectionIdentity(CustomDataSource customDataSource) {
+        return customDataSource.getPropertyMap().toString();
     }
 
     // add sub data source if it doesn't exist
@@ -74,10 +74,9 @@ public class TeiidConnectionFactoryImpl implements VirtualSQLDataSourceMetaData
     public Connection createConnection() throws SQLException {
         VirtualDataSourceException vex = null;
         try {
-            // if virtual data source doesn't exist in Teiid embedded server, deploy it in runtime
-            if ((!teiidVirtualDataSourceQueryService.isVirtualDataSourceExisted(virtualDSID)) && (modelMetaDataList != null)) {
-                teiidVirtualDataSourceQueryService.deployVirtualDataSource(virtualDSID, modelMetaDataList);
-            }
+            // if virtual data source doesn't exist in Teiid embedded server, deploy it in runtime.
+            // Waits for the deployment if another request is deploying the same virtual data source
+            teiidVirtualDataSourceQueryService.deployVirtualDataSource(virtualDSID, modelMetaDataList);
             // mark virtual data source is in used
             teiidVirtualDataSourceQueryService.markDataSourceUsed(virtualDSID, AbstractVirtualDataSourceQueryServiceImpl.DataSourceType.MASTER_DATASOURCE, System.currentTimeMillis());
         } catch (Exception ex) {
@@ -69,6 +69,11 @@ import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
 
 /**
  * @author Ivan Chan (ichan@jaspersoft.com)
@@ -77,7 +82,7 @@ import java.util.Set;
 public class TeiidVirtualDataSourceQueryServiceImpl extends AbstractVirtualDataSourceQueryServiceImpl implements CacheManager, InitializingBean {
 
     private static TeiidEmbeddedServer INSTANCE;
-    private static Map<String, String> connectionFactoryProviderTranslatorMap = new HashMap();
+    private static Map<String, String> connectionFactoryProviderTranslatorMap = new ConcurrentHashMap<String, String>();
     static TranslatorConfig defaultTranslatorConfig = null;
     static List<TranslatorConfig> translatorConfigList = new ArrayList<TranslatorConfig>();
     static List<LogConfig> logConfigList = new ArrayList<LogConfig>();
@@ -98,6 +103,21 @@ public class TeiidVirtualDataSourceQueryServiceImpl extends AbstractVirtualDataS
     private boolean printDDL = true;
     private Map<String, TeiidDataSource> dataSourceServiceToTeiidConnectorMap;
     private static String DEFAULT = "default";
+    private static final String SCHEMA_SOURCE_TYPE_NATIVE = "native";
+    private static final String SCHEMA_SOURCE_TYPE_DDL = "ddl";
+    // model property holding the metadata cache key and model key of the model, separated by a slash
+    static final String METADATA_CACHE_KEY_PROPERTY = "jasperserver.metadataCacheKey";
+    private VirtualSchemaMetadataCache metadataCache;
+    // VDB preparations in progress, by virtual data source name. A preparation builds the model metadata
+    // and deploys the VDB, it completes with the deployed model metadata
+    private final ConcurrentMap<String, CompletableFuture<List<ModelMetaData>>> preparations =
+            new ConcurrentHashMap<String, CompletableFuture<List<ModelMetaData>>>();
+    // names of the VDBs deployed by this service which accepted a connection
+    private final Set<String> activeVirtualDataSources = ConcurrentHashMap.newKeySet();
+    // Teiid error code of a connection to a VDB which is still loading
+    private static final String VDB_LOADING_ERROR_CODE = "TEIID31099";
+    private static final long VDB_LOADING_POLL_MILLIS = 100;
+    private int vdbLoadingTimeoutInSeconds = 120;
 
 
     /**
@@ -271,6 +291,17 @@ public class TeiidVirtualDataSourceQueryServiceImpl extends AbstractVirtualDataS
         this.printDDL = printDDL;
     }
 
+    public int getVdbLoadingTimeoutInSeconds() {
+        return vdbLoadingTimeoutInSeconds;
+    }
+
+    /**
+     * Sets how long a deployment waits for the VDB to finish loading before it fails.
+     */
+    public void setVdbLoadingTimeoutInSeconds(int vdbLoadingTimeoutInSeconds) {
+        this.vdbLoadingTimeoutInSeconds = vdbLoadingTimeoutInSeconds;
+    }
+
     /**
     * return to retrieve sub data source list by going through each sub datasource (instead of getting it from VDS)
     * Teiid creates "temp" tables in VDS.  Better to retrieve sub data source list from each sub DS.
@@ -331,8 +362,34 @@ public class TeiidVirtualDataSourceQueryServiceImpl extends AbstractVirtualDataS
         return logConfigList;
     }
 
+    /**
+     * Deploys the virtual data source into the Teiid embedded server unless it is already deployed.
+     * Waits for the preparation of the virtual data source if another request is building or deploying it,
+     * and shares its outcome.
+     */
+    public void deployVirtualDataSource(final String virtualDSName, final List<ModelMetaData> modelMetaDataList) throws SQLException {
+        try {
+            runOnce(preparations, virtualDSName, new Callable<List<ModelMetaData>>() {
+                @Override
+                public List<ModelMetaData> call() throws Exception {
+                    if (!isVirtualDataSourceExisted(virtualDSName) && modelMetaDataList != null) {
+                        doDeployVirtualDataSource(virtualDSName, modelMetaDataList);
+                        awaitVirtualDataSourceActive(virtualDSName, modelMetaDataList);
+                    }
+                    return modelMetaDataList;
+                }
+            });
+        } catch (SQLException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            VirtualDataSourceException virtualDataSourceException = new VirtualDataSourceException(ex.getMessage(), ex);
+            virtualDataSourceException.setVirtualDataSourceID(virtualDSName);
+            throw virtualDataSourceException;
+        }
+    }
+
     // deploy virtual data source into teiid embedded server
-    public void deployVirtualDataSource(String virtualDSName, List<ModelMetaData> modelMetaDataList) throws SQLException {
+    protected void doDeployVirtualDataSource(String virtualDSName, List<ModelMetaData> modelMetaDataList) throws SQLException {
         try {
         long time = 0;
         if (isDebugEnabled()) {
@@ -341,6 +398,7 @@ public class TeiidVirtualDataSourceQueryServiceImpl extends AbstractVirtualDataS
             if (modelMetaDataList != null) for (ModelMetaData modelMetaData : modelMetaDataList) debug("\t\tDeploy Model - " + modelMetaData.getName());
         }
         INSTANCE.deployVDB(virtualDSName, modelMetaDataList.toArray(new ModelMetaData[modelMetaDataList.size()]));
+        cacheModelMetadata(virtualDSName, modelMetaDataList);
         if (isDebugEnabled()) {
             debug("Deployment time for virtual data source, " + virtualDSName + ": " + (System.currentTimeMillis() - time) + "ms");
             if (isPrintVDB()) {
@@ -357,6 +415,7 @@ public class TeiidVirtualDataSourceQueryServiceImpl extends AbstractVirtualDataS
             debug("Teiid:  failed to deploy VDB.", ex);
             try { removeSubDataSource(virtualDSName);
             } catch (Exception ex2) {};
+            discardCachedModelMetadata(modelMetaDataList);
             VirtualDataSourceException virtualDataSourceException = new VirtualDataSourceException(ex.getMessage(), ex);
             virtualDataSourceException.setVirtualDataSourceID(virtualDSName);
             if (modelMetaDataList != null) {
@@ -369,66 +428,192 @@ public class TeiidVirtualDataSourceQueryServiceImpl extends AbstractVirtualDataS
     }
 
     // create connection factory from sub data sources
-    public synchronized ConnectionFactory createConnectionFactory(String virtualDSName, List<String> dataSourceNames, List<String> subDataSourceIDs,
-                                                     List<com.jaspersoft.jasperserver.api.common.virtualdatasourcequery.DataSource> subDataSources, String virtualDataSourceUri) throws Exception {
-        ConnectionFactory teiidConnectionFactory = null;
+    public ConnectionFactory createConnectionFactory(String virtualDSName, final List<String> dataSourceNames, final List<String> subDataSourceIDs,
+                                                     final List<com.jaspersoft.jasperserver.api.common.virtualdatasourcequery.DataSource> subDataSources, final String virtualDataSourceUri) throws Exception {
         Map<String, com.jaspersoft.jasperserver.api.common.virtualdatasourcequery.DataSource> dataSourceMap = new HashMap();
         for (int i = 0; i < dataSourceNames.size(); i++) {
             dataSourceMap.put(dataSourceNames.get(i), subDataSources.get(i));
         }
-        try {
-            if  (isVirtualDataSourceExisted(virtualDSName) && !isVirtualDataSourceExistedInPool(virtualDSName)) {
-                // if VDB exists in TEIID server, but it is not active, but LOADING. [TeiidProcessingException: TEIID31099]  We will need to create TMP ID and deploy new VDB
-                debug("VDB[" + virtualDSName +"] is in server, but not ready to use.  Create TMP VDB[" + "] for this case.");
-                virtualDSName = virtualDSName + System.currentTimeMillis();
-                debug("Create TMP VDB[" + virtualDSName + "] from original cycle.");
+        if (isVirtualDataSourceExisted(virtualDSName)) {
+            if (preparations.containsKey(virtualDSName) || activeVirtualDataSources.contains(virtualDSName)) {
+                // the VDB may still be deploying, the connection factory waits for its preparation when a connection is created
+                return new TeiidConnectionFactoryImpl(this, virtualDSName, null, dataSourceMap);
             }
-        if (!isVirtualDataSourceExisted(virtualDSName)) {
-            // if virtual data source doesn't exist in teiid server, build a new one
-            debug("Build virtual data source METADATA - " + virtualDSName);
-            ArrayList<ModelMetaData> modelMetaDataList = new ArrayList<ModelMetaData>();
-            // loop through each sub data source
-            VirtualDataSourceConfig virtualDataSourceConfig = null;
-            if (virtualDataSourceUri != null) virtualDataSourceConfig = getVirtualDataSourceConfig(virtualDataSourceUri);
-            else virtualDataSourceConfig = getVirtualDataSourceConfig(getParentDataSourceURI(subDataSources.get(0)));
-            for (int i = 0; i < subDataSourceIDs.size(); i++) {
-                // retrieve translator name from connector manager
-
-                String translatorName = connectionFactoryProviderTranslatorMap.get(subDataSourceIDs.get(i));
-                // set connection name
-                String connectionName =  subDataSourceIDs.get(i);
-
-                Set<String> selectedSchemasSet = getSubDataSourceSchemas(subDataSources.get(i), connectionName);
-                if (selectedSchemasSet != null && !selectedSchemasSet.isEmpty()) {
-                    for (String schemaName : selectedSchemasSet) {
-                        String virtualSchemaName = dataSourceNames.get(i) +  VirtualDataSourceHandler.getDataSourceSchemaSeparator() + schemaName;
-                        if ((virtualDataSourceConfig != null) && virtualDataSourceConfig.isSchemaExcluded(virtualSchemaName)) continue;
-                        modelMetaDataList.add(addModel((String) schemaName, dataSourceNames.get(i), subDataSourceIDs.get(i), translatorName, connectionName, subDataSources.get(i)));
-                    }
-                } else {
-                        modelMetaDataList.add(addModel(null, dataSourceNames.get(i), subDataSourceIDs.get(i), translatorName, connectionName, subDataSources.get(i)));
+            // if VDB exists in TEIID server, but it is not known to be active, it may be LOADING. [TeiidProcessingException: TEIID31099]  We will need to create TMP ID and deploy new VDB
+            debug("VDB[" + virtualDSName +"] is in server, but not ready to use.  Create TMP VDB for this case.");
+            virtualDSName = virtualDSName + System.currentTimeMillis();
+            debug("Create TMP VDB[" + virtualDSName + "] from original cycle.");
+        }
+        final String preparedVirtualDSName = virtualDSName;
+        // if virtual data source doesn't exist in teiid server, build and deploy a new one.
+        // Concurrent requests for the same virtual data source wait for a single preparation
+        List<ModelMetaData> modelMetaDataList = runOnce(preparations, preparedVirtualDSName, new Callable<List<ModelMetaData>>() {
+            @Override
+            public List<ModelMetaData> call() throws Exception {
+                if (isVirtualDataSourceExisted(preparedVirtualDSName)) {
+                    // deployed by a preparation which completed after the check above
+                    return null;
                 }
+                List<ModelMetaData> modelMetaDataList = buildModelMetaData(preparedVirtualDSName, dataSourceNames, subDataSourceIDs, subDataSources, virtualDataSourceUri);
+                doDeployVirtualDataSource(preparedVirtualDSName, modelMetaDataList);
+                awaitVirtualDataSourceActive(preparedVirtualDSName, modelMetaDataList);
+                return modelMetaDataList;
             }
-            // add additional data source which comes from spring injection
-            if ((virtualDataSourceConfig != null) && (virtualDataSourceConfig.getAdditionalDataSourceList() != null)) {
-                for (TeiidDataSource additionalDataSource : virtualDataSourceConfig.getAdditionalDataSourceList()) {
+        });
+        // return teiid connection factory
+        return new TeiidConnectionFactoryImpl(this, preparedVirtualDSName, modelMetaDataList, dataSourceMap);
+    }
+
+    // build model metadata of the virtual data source from sub data sources
+    protected List<ModelMetaData> buildModelMetaData(String virtualDSName, List<String> dataSourceNames, List<String> subDataSourceIDs,
+                                                     List<com.jaspersoft.jasperserver.api.common.virtualdatasourcequery.DataSource> subDataSources, String virtualDataSourceUri) throws Exception {
+        debug("Build virtual data source METADATA - " + virtualDSName);
+        ArrayList<ModelMetaData> modelMetaDataList = new ArrayList<ModelMetaData>();
+        // loop through each sub data source
+        VirtualDataSourceConfig virtualDataSourceConfig = null;
+        if (virtualDataSourceUri != null) virtualDataSourceConfig = getVirtualDataSourceConfig(virtualDataSourceUri);
+        else virtualDataSourceConfig = getVirtualDataSourceConfig(getParentDataSourceURI(subDataSources.get(0)));
+        for (int i = 0; i < subDataSourceIDs.size(); i++) {
+            // retrieve translator name from connector manager
+
+            String translatorName = connectionFactoryProviderTranslatorMap.get(subDataSourceIDs.get(i));
+            // set connection name
+            String connectionName =  subDataSourceIDs.get(i);
+
+            Set<String> selectedSchemasSet = getSubDataSourceSchemas(subDataSources.get(i), connectionName);
+            if (selectedSchemasSet != null && !selectedSchemasSet.isEmpty()) {
+                for (String schemaName : selectedSchemasSet) {
+                    String virtualSchemaName = dataSourceNames.get(i) +  VirtualDataSourceHandler.getDataSourceSchemaSeparator() + schemaName;
+                    if ((virtualDataSourceConfig != null) && virtualDataSourceConfig.isSchemaExcluded(virtualSchemaName)) continue;
+                    modelMetaDataList.add(addModel((String) schemaName, dataSourceNames.get(i), subDataSourceIDs.get(i), translatorName, connectionName, subDataSources.get(i)));
+                }
+            } else {
+                    modelMetaDataList.add(addModel(null, dataSourceNames.get(i), subDataSourceIDs.get(i), translatorName, connectionName, subDataSources.get(i)));
+            }
+        }
+        // add additional data source which comes from spring injection
+        if ((virtualDataSourceConfig != null) && (virtualDataSourceConfig.getAdditionalDataSourceList() != null)) {
+            for (TeiidDataSource additionalDataSource : virtualDataSourceConfig.getAdditionalDataSourceList()) {
+                synchronized (this) {
                     if (!isSubDataSourceExisted(additionalDataSource.getConnectorName())) {
                         INSTANCE.addConnectionFactory(additionalDataSource.getConnectorName(),  additionalDataSource.getConnectionFactory());
                         INSTANCE.addTranslator(additionalDataSource.getTranslatorName(), additionalDataSource.getTranslatorFactory());
                         connectionFactoryProviderTranslatorMap.put(additionalDataSource.getConnectorName(), additionalDataSource.getTranslatorName());
                     }
-                    modelMetaDataList.addAll(additionalDataSource.getModelMetaDataList());
                 }
+                modelMetaDataList.addAll(additionalDataSource.getModelMetaDataList());
             }
-            // return teiid connection factory
-            teiidConnectionFactory = new TeiidConnectionFactoryImpl(this, virtualDSName, modelMetaDataList, dataSourceMap);
-        } else {
-            // return teiid connection factory
-            teiidConnectionFactory = new TeiidConnectionFactoryImpl(this, virtualDSName, null, dataSourceMap);
         }
-        return teiidConnectionFactory;
+        return modelMetaDataList;
+    }
+
+    /**
+     * Waits until the deployed VDB accepts connections, Teiid rejects connections to a VDB which is still loading.
+     * The VDB is undeployed if it doesn't become active.
+     */
+    protected void awaitVirtualDataSourceActive(String virtualDSName, List<ModelMetaData> modelMetaDataList) throws SQLException {
+        long deadline = System.currentTimeMillis() + vdbLoadingTimeoutInSeconds * 1000L;
+        try {
+            while (true) {
+                try {
+                    createConnection(virtualDSName).close();
+                    activeVirtualDataSources.add(virtualDSName);
+                    return;
+                } catch (SQLException ex) {
+                    if (!isVirtualDataSourceLoading(ex) || System.currentTimeMillis() >= deadline) throw ex;
+                    debug("VDB[" + virtualDSName + "] is still loading.");
+                }
+                Thread.sleep(VDB_LOADING_POLL_MILLIS);
+            }
         } catch (Exception ex) {
+            debug("Teiid:  VDB did not become active.", ex);
+            try { undeployVirtualDataSource(virtualDSName);
+            } catch (Exception ex2) {};
+            discardCachedModelMetadata(modelMetaDataList);
+            if (ex instanceof InterruptedException) Thread.currentThread().interrupt();
+            VirtualDataSourceException virtualDataSourceException = new VirtualDataSourceException(ex.getMessage(), ex);
+            virtualDataSourceException.setVirtualDataSourceID(virtualDSName);
+            throw virtualDataSourceException;
+        }
+    }
+
+    private boolean isVirtualDataSourceLoading(SQLException ex) {
+        for (Throwable cause = ex; cause != null; cause = cause.getCause()) {
+            if (cause.getMessage() != null && cause.getMessage().contains(VDB_LOADING_ERROR_CODE)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Runs the task unless a task with the same key is already in progress, in which case waits for that task
+     * and returns its result or throws its exception.
+     */
+    private <T> T runOnce(ConcurrentMap<String, CompletableFuture<T>> tasksInProgress, String key, Callable<T> task) throws Exception {
+        CompletableFuture<T> future = new CompletableFuture<T>();
+        CompletableFuture<T> inProgress = tasksInProgress.putIfAbsent(key, future);
+        if (inProgress != null) {
+            debug("Wait for virtual data source [" + key + "] prepared by another request.");
+            try {
+                return inProgress.get();
+            } catch (ExecutionException ex) {
+                Throwable cause = ex.getCause();
+                if (cause instanceof Exception) throw (Exception) cause;
+                if (cause instanceof Error) throw (Error) cause;
+                throw ex;
+            }
+        }
+        try {
+            T result = task.call();
+            future.complete(result);
+            return result;
+        } catch (Throwable ex) {
+            future.completeExceptionally(ex);
             throw ex;
+        } finally {
+            tasksInProgress.remove(key, future);
+        }
+    }
+
+    // returns metadata cache key of sub data source, or null if its metadata is not to be cached
+    private String getMetadataCacheKey(com.jaspersoft.jasperserver.api.common.virtualdatasourcequery.DataSource subDataSource) {
+        if (metadataCache == null || !metadataCache.isEnabled() || !(subDataSource instanceof DataSourceImpl)) return null;
+        ReportDataSource reportDataSource = ((DataSourceImpl) subDataSource).getReportDataSource();
+        // resources which are not saved in the repository can change without a new version
+        if (reportDataSource == null || reportDataSource.getURIString() == null || reportDataSource.getVersion() == Resource.VERSION_NEW) return null;
+        try {
+            return metadataCache.getKey(getConnectionIdentity(subDataSource), reportDataSource.getURIString(),
+                    reportDataSource.getVersion(), reportDataSource.getUpdateDate());
+        } catch (Exception ex) {
+            debug("Unable to build metadata cache key for " + subDataSource.getDataSourceName(), ex);
+            return null;
+        }
+    }
+
+    // save DDL of models imported from sub data sources to metadata cache
+    private void cacheModelMetadata(String virtualDSName, List<ModelMetaData> modelMetaDataList) {
+        if (metadataCache == null) return;
+        for (ModelMetaData modelMetaData : modelMetaDataList) {
+            String keys = modelMetaData.getPropertyValue(METADATA_CACHE_KEY_PROPERTY);
+            if (keys == null || !SCHEMA_SOURCE_TYPE_NATIVE.equals(modelMetaData.getSchemaSourceType())) continue;
+            try {
+                int separator = keys.indexOf('/');
+                metadataCache.putModelDdl(keys.substring(0, separator), keys.substring(separator + 1),
+                        INSTANCE.getSchemaDdl(virtualDSName, modelMetaData.getName()));
+            } catch (Exception ex) {
+                debug("Unable to cache metadata of model " + modelMetaData.getName(), ex);
+            }
+        }
+    }
+
+    // drop cached metadata of sub data sources whose cached DDL has been used for a failed deployment
+    private void discardCachedModelMetadata(List<ModelMetaData> modelMetaDataList) {
+        if (metadataCache == null || modelMetaDataList == null) return;
+        for (ModelMetaData modelMetaData : modelMetaDataList) {
+            String keys = modelMetaData.getPropertyValue(METADATA_CACHE_KEY_PROPERTY);
+            if (keys != null && SCHEMA_SOURCE_TYPE_DDL.equals(modelMetaData.getSchemaSourceType())) {
+                debug("Discard cached metadata of model " + modelMetaData.getName());
+                metadataCache.remove(keys.substring(0, keys.indexOf('/')));
+            }
         }
     }
 
@@ -466,14 +651,26 @@ public class TeiidVirtualDataSourceQueryServiceImpl extends AbstractVirtualDataS
             // try to get the complete schemas list from each sub data source
             Set<String> availableSchemaList = null;
             try {
-                PooledVirtualSchemaEntry availableSchemaListEntry = (PooledVirtualSchemaEntry) getDataSourceCache().get(subDataSourceId + "_SCHEMA", System.currentTimeMillis());
+                PooledVirtualSchemaEntry availableSchemaListEntry;
+                synchronized (getDataSourceCache()) {
+                    availableSchemaListEntry = (PooledVirtualSchemaEntry) getDataSourceCache().get(subDataSourceId + "_SCHEMA", System.currentTimeMillis());
+                }
+                String metadataCacheKey = getMetadataCacheKey(subDataSource);
                 if (availableSchemaListEntry != null) {
                     availableSchemaList = availableSchemaListEntry.getAvailSchemas();
+                } else if (metadataCacheKey != null && (availableSchemaList = metadataCache.getSchemas(metadataCacheKey)) != null) {
+                    debug("Read the schema list of " + dataSourceName + " from metadata cache.");
+                    synchronized (getDataSourceCache()) {
+                        getDataSourceCache().put(subDataSourceId + "_SCHEMA", new PooledVirtualSchemaEntry(subDataSourceId + "_SCHEMA", availableSchemaList), System.currentTimeMillis());
+                    }
                 } else {
                     Connection subDataSourceConnection = getDataSource(subDataSource).getConnection();
 
                     availableSchemaList = VirtualSQLDataSource.discoverNonEmptySchemas(subDataSourceConnection, databaseObjectTypesFilter, customSelectedSchemas, dataSourceName);
-                    getDataSourceCache().put(subDataSourceId + "_SCHEMA", new PooledVirtualSchemaEntry(subDataSourceId + "_SCHEMA", availableSchemaList), System.currentTimeMillis());
+                    if (metadataCacheKey != null) metadataCache.putSchemas(metadataCacheKey, availableSchemaList);
+                    synchronized (getDataSourceCache()) {
+                        getDataSourceCache().put(subDataSourceId + "_SCHEMA", new PooledVirtualSchemaEntry(subDataSourceId + "_SCHEMA", availableSchemaList), System.currentTimeMillis());
+                    }
                     subDataSourceConnection.close();
                 }
             } catch (SQLException ex) {
@@ -515,6 +712,7 @@ public class TeiidVirtualDataSourceQueryServiceImpl extends AbstractVirtualDataS
     // remove virtual data source
     public void undeployVirtualDataSource(String virtualDSName) throws Exception {
         debug("Remove virtual data source - " + virtualDSName);
+        activeVirtualDataSources.remove(virtualDSName);
         INSTANCE.undeployVDB(virtualDSName);
 	}
 
@@ -522,6 +720,7 @@ public class TeiidVirtualDataSourceQueryServiceImpl extends AbstractVirtualDataS
     // remove all virtual data source cache
     public void clearVDSCache() {
         debug("Clear virtual data source cache.");
+        activeVirtualDataSources.clear();
         INSTANCE.clearAllVDBs();
 	}
 
@@ -674,7 +873,7 @@ public class TeiidVirtualDataSourceQueryServiceImpl extends AbstractVirtualDataS
     private ModelMetaData addModel(String schema, String modelName, String connectorName, String translatorName, String connectionName,
             com.jaspersoft.jasperserver.api.common.virtualdatasourcequery.DataSource dataSource) {
         String schemaText = null;
-        String schemaType = "native";
+        String schemaType = SCHEMA_SOURCE_TYPE_NATIVE;
         ModelMetaData model = new ModelMetaData();
 		model.setModelType(Model.Type.PHYSICAL);
 
@@ -705,6 +904,18 @@ public class TeiidVirtualDataSourceQueryServiceImpl extends AbstractVirtualDataS
             debug("Fail to retrieve schema content: set schema source type to NATIVE");
         }
 
+        if (SCHEMA_SOURCE_TYPE_NATIVE.equals(schemaType) && schemaText == null) {
+            String metadataCacheKey = getMetadataCacheKey(dataSource);
+            if (metadataCacheKey != null && metadataCache.isModelDdlEnabled()) {
+                String modelKey = metadataCache.getModelKey(model.getName(), importProperties);
+                schemaText = metadataCache.getModelDdl(metadataCacheKey, modelKey);
+                if (schemaText != null) {
+                    debug("Read the metadata of model " + model.getName() + " from metadata cache.");
+                    schemaType = SCHEMA_SOURCE_TYPE_DDL;
+                }
+                model.addProperty(METADATA_CACHE_KEY_PROPERTY, metadataCacheKey + "/" + modelKey);
+            }
+        }
         model.setSchemaSourceType(schemaType);
         if (schemaText != null) {
             log.debug("SCHEMA CONTENT = " + schemaText);
@@ -742,6 +953,8 @@ public class TeiidVirtualDataSourceQueryServiceImpl extends AbstractVirtualDataS
 
             if(propertyMap != null) {
                 if(propertyMapForDataSourceModel != null) {
+                    // don't modify the default properties, models may be built concurrently
+                    propertyMap = new HashMap<String, String>(propertyMap);
                     propertyMap.putAll(propertyMapForDataSourceModel);
                 }
             } else {
@@ -844,6 +1057,7 @@ public class TeiidVirtualDataSourceQueryServiceImpl extends AbstractVirtualDataS
     @Override
     public void clear() {
         clearVDSCache();
+        if (metadataCache != null) metadataCache.clear();
     }
 
     @Override
@@ -876,6 +1090,18 @@ public class TeiidVirtualDataSourceQueryServiceImpl extends AbstractVirtualDataS
         this.databaseObjectTypesFilter = databaseObjectTypesFilter;
     }
 
+    public VirtualSchemaMetadataCache getMetadataCache() {
+        return metadataCache;
+    }
+
+    /**
+     * Sets the on-disk cache of the schemas and model metadata imported from sub data sources.
+     * Can be <code>null</code>, in which case the metadata is imported from sub data sources on every VDB build.
+     */
+    public void setMetadataCache(VirtualSchemaMetadataCache metadataCache) {
+        this.metadataCache = metadataCache;
+    }
+
     class PooledVirtualSchemaEntry extends PooledObjectEntry {
 
         Set<String> availSchemas = null;
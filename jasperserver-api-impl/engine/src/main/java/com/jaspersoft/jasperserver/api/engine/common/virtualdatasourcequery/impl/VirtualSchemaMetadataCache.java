@@ -0,0 +1,349 @@
+/*
+ * Copyright (C) 2005 - 2020 TIBCO Software Inc. All rights reserved.
+ * http://www.jaspersoft.com.
+ *
+ * Unless you have purchased a commercial license agreement from Jaspersoft,
+ * the following license terms apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.jaspersoft.jasperserver.api.engine.common.virtualdatasourcequery.impl;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * On-disk cache of the metadata imported from the sub data sources of virtual data sources: the list of
+ * non empty schemas and the DDL of each imported model.  Lets a restarted node, or a node joining a cluster
+ * that shares the cache directory, deploy virtual data sources without reading the catalogs of the sub data
+ * sources again.
+ * <p/>
+ * Entries are keyed by a digest of the sub data source connection identity and of the repository URI,
+ * version and update date of the data source resource, so saving the data source makes its entries
+ * unreachable.  Metadata written more than {@link #setRefreshIntervalInHours(int) refreshIntervalInHours}
+ * ago is not used, the next deployment imports it from the sub data source again, so tables and columns added
+ * to the sub data source are picked up without saving the data source.  Independently, entries which haven't
+ * been used for {@link #setMaxAgeInDays(int) maxAgeInDays} are removed.
+ * <p/>
+ * Caching the DDL of models has to be {@link #setModelDdlEnabled(boolean) enabled} separately, a model deployed
+ * from the DDL captured from Teiid replaces the native import of the sub data source metadata.
+ * Changing the storage format requires increasing {@link #FORMAT_VERSION}.
+ *
+ * @version $Id$
+ */
+public class VirtualSchemaMetadataCache {
+
+    private static final Log log = LogFactory.getLog(VirtualSchemaMetadataCache.class);
+
+    static final String FORMAT_VERSION = "v1";
+    static final String SCHEMAS_FILE = "schemas.properties";
+    static final String DDL_SUFFIX = ".ddl";
+    private static final String SCHEMA_PROPERTY_PREFIX = "schema.";
+    private static final long HOUR_IN_MILLIS = 60L * 60 * 1000;
+    private static final long DAY_IN_MILLIS = 24 * HOUR_IN_MILLIS;
+
+    private boolean enabled = true;
+    private boolean modelDdlEnabled = false;
+    private File directory;
+    private int maxAgeInDays = 30;
+    private int refreshIntervalInHours = 24;
+
+    public boolean isEnabled() {
+        return enabled && directory != null;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public boolean isModelDdlEnabled() {
+        return modelDdlEnabled && isEnabled();
+    }
+
+    /**
+     * Sets whether the DDL of imported models is cached, the list of schemas is cached regardless.
+     */
+    public void setModelDdlEnabled(boolean modelDdlEnabled) {
+        this.modelDdlEnabled = modelDdlEnabled;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public void setDirectory(File directory) {
+        this.directory = directory;
+    }
+
+    public int getMaxAgeInDays() {
+        return maxAgeInDays;
+    }
+
+    public void setMaxAgeInDays(int maxAgeInDays) {
+        this.maxAgeInDays = maxAgeInDays;
+    }
+
+    public int getRefreshIntervalInHours() {
+        return refreshIntervalInHours;
+    }
+
+    /**
+     * Sets the time after which cached metadata is imported from the sub data source again.
+     * A value of 0 or less keeps cached metadata until the data source is saved or the entry is unused
+     * for {@link #getMaxAgeInDays() maxAgeInDays}.
+     */
+    public void setRefreshIntervalInHours(int refreshIntervalInHours) {
+        this.refreshIntervalInHours = refreshIntervalInHours;
+    }
+
+    /**
+     * Removes the entries which haven't been used for {@link #getMaxAgeInDays() maxAgeInDays}.
+     */
+    public void init() {
+        if (!isEnabled() || maxAgeInDays <= 0) {
+            return;
+        }
+        long expiry = System.currentTimeMillis() - maxAgeInDays * DAY_IN_MILLIS;
+        for (File entry : listEntries()) {
+            if (entry.lastModified() < expiry) {
+                delete(entry);
+            }
+        }
+    }
+
+    /**
+     * Returns the key of the metadata of a sub data source.
+     *
+     * @param connectionIdentity the properties identifying the connection to the sub data source
+     * @param uri the repository URI of the data source resource
+     * @param version the version of the data source resource
+     * @param updateDate the update date of the data source resource
+     */
+    public String getKey(String connectionIdentity, String uri, int version, Date updateDate) {
+        return digest(connectionIdentity + "|" + uri + "|" + version + "|" + (updateDate == null ? "" : updateDate.getTime()));
+    }
+
+    /**
+     * @return the cached non empty schemas of the sub data source, or <code>null</code> if not cached or due for refresh
+     */
+    public Set<String> getSchemas(String key) {
+        if (!isEnabled()) {
+            return null;
+        }
+        File file = new File(getEntryDirectory(key), SCHEMAS_FILE);
+        if (!file.isFile() || isStale(file)) {
+            return null;
+        }
+        try {
+            Properties properties = new Properties();
+            properties.load(new StringReader(read(file)));
+            Map<Integer, String> schemas = new TreeMap<Integer, String>();
+            for (String name : properties.stringPropertyNames()) {
+                if (name.startsWith(SCHEMA_PROPERTY_PREFIX)) {
+                    schemas.put(Integer.valueOf(name.substring(SCHEMA_PROPERTY_PREFIX.length())), properties.getProperty(name));
+                }
+            }
+            touch(key);
+            return new LinkedHashSet<String>(schemas.values());
+        } catch (Exception e) {
+            log.warn("Failed to read cached schemas from " + file + ", the entry is discarded", e);
+            delete(file);
+            return null;
+        }
+    }
+
+    public void putSchemas(String key, Set<String> schemas) {
+        if (!isEnabled() || schemas == null) {
+            return;
+        }
+        Properties properties = new Properties();
+        int index = 0;
+        for (String schema : schemas) {
+            properties.setProperty(SCHEMA_PROPERTY_PREFIX + index++, schema);
+        }
+        try {
+            StringWriter writer = new StringWriter();
+            properties.store(writer, null);
+            write(new File(getEntryDirectory(key), SCHEMAS_FILE), writer.toString());
+        } catch (IOException e) {
+            log.warn("Failed to cache schemas of " + key, e);
+        }
+    }
+
+    /**
+     * Returns the key of the metadata of a model imported from a sub data source.
+     *
+     * @param modelName the name of the model
+     * @param importProperties the properties the model is imported with
+     */
+    public String getModelKey(String modelName, Properties importProperties) {
+        Map<String, String> sortedProperties = new TreeMap<String, String>();
+        if (importProperties != null) {
+            for (String name : importProperties.stringPropertyNames()) {
+                sortedProperties.put(name, importProperties.getProperty(name));
+            }
+        }
+        return digest(modelName + "|" + sortedProperties);
+    }
+
+    /**
+     * @return the cached DDL of the model, or <code>null</code> if not cached or due for refresh
+     */
+    public String getModelDdl(String key, String modelKey) {
+        if (!isModelDdlEnabled()) {
+            return null;
+        }
+        File file = new File(getEntryDirectory(key), modelKey + DDL_SUFFIX);
+        if (!file.isFile() || isStale(file)) {
+            return null;
+        }
+        try {
+            String ddl = read(file);
+            touch(key);
+            return ddl;
+        } catch (IOException e) {
+            log.warn("Failed to read cached DDL from " + file + ", the entry is discarded", e);
+            delete(file);
+            return null;
+        }
+    }
+
+    public void putModelDdl(String key, String modelKey, String ddl) {
+        if (!isModelDdlEnabled() || ddl == null || ddl.trim().isEmpty()) {
+            return;
+        }
+        try {
+            write(new File(getEntryDirectory(key), modelKey + DDL_SUFFIX), ddl);
+        } catch (IOException e) {
+            log.warn("Failed to cache DDL of model " + modelKey + " of " + key, e);
+        }
+    }
+
+    /**
+     * Removes the cached metadata of a sub data source.
+     */
+    public void remove(String key) {
+        if (isEnabled()) {
+            delete(getEntryDirectory(key));
+        }
+    }
+
+    /**
+     * Removes all cached metadata.
+     */
+    public void clear() {
+        if (isEnabled()) {
+            for (File entry : listEntries()) {
+                delete(entry);
+            }
+        }
+    }
+
+    protected File getEntryDirectory(String key) {
+        return new File(new File(directory, FORMAT_VERSION), key);
+    }
+
+    private List<File> listEntries() {
+        File[] entries = new File(directory, FORMAT_VERSION).listFiles();
+        if (entries == null) {
+            return Collections.emptyList();
+        }
+        List<File> list = new ArrayList<File>(entries.length);
+        Collections.addAll(list, entries);
+        return list;
+    }
+
+    // reads touch the entry directory only, the files keep the time they were written at
+    private boolean isStale(File file) {
+        return refreshIntervalInHours > 0
+                && file.lastModified() < System.currentTimeMillis() - refreshIntervalInHours * HOUR_IN_MILLIS;
+    }
+
+    private void touch(String key) {
+        File entry = getEntryDirectory(key);
+        if (!entry.setLastModified(System.currentTimeMillis()) && log.isDebugEnabled()) {
+            log.debug("Failed to update the last use time of " + entry);
+        }
+    }
+
+    private String read(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+
+    // writes to a temporary file first so that concurrent readers, possibly on other nodes, never see partial content
+    private void write(File file, String content) throws IOException {
+        File parent = file.getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs() && !parent.isDirectory()) {
+            throw new IOException("Cannot create directory " + parent);
+        }
+        File temp = File.createTempFile(file.getName(), ".tmp", parent);
+        try {
+            Files.write(temp.toPath(), content.getBytes(StandardCharsets.UTF_8));
+            try {
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            if (temp.exists() && !temp.delete()) {
+                temp.deleteOnExit();
+            }
+        }
+    }
+
+    private void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        if (file.exists() && !file.delete()) {
+            log.debug("Failed to delete " + file);
+        }
+    }
+
+    private static String digest(String value) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -27,7 +27,13 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 
+import com.jaspersoft.jasperserver.api.JSExceptionWrapper;
 import com.jaspersoft.jasperserver.api.engine.jasperreports.util.RepositoryCacheMap;
 import net.sf.ehcache.Ehcache;
 import net.sf.ehcache.Element;
@@ -35,6 +41,8 @@ import net.sf.ehcache.Element;
 import net.sf.ehcache.Status;
 import net.sf.ehcache.event.CacheEventListener;
 import org.apache.commons.collections.OrderedMap;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 
 import com.jaspersoft.jasperserver.api.common.domain.ExecutionContext;
 import com.jaspersoft.jasperserver.api.engine.common.service.EngineService;
@@ -43,6 +51,8 @@ import org.apache.commons.lang3.StringUtils;
 
 public class EhcacheEngineService extends EngineBaseDecorator {
 
+	private static final Log log = LogFactory.getLog(EhcacheEngineService.class);
+
 	final public static String IC_REFRESH_KEY = "com.jaspersoft.cascade.refreshIC";
 	final public static String IC_CACHE_KEY = "com.jaspersoft.cascade.ICcacheKey";
 
@@ -112,6 +122,12 @@ public class EhcacheEngineService extends EngineBaseDecorator {
 
 	private Ehcache diagnosticCache;
 
+	// seconds, 0 means that the cache configuration applies
+	private int queryResultTimeToLive;
+
+	private final ConcurrentMap<String, FutureTask<OrderedMap>> runningQueries =
+			new ConcurrentHashMap<String, FutureTask<OrderedMap>>();
+
 	public Ehcache getCache() {
 		return cache;
 	}
@@ -128,6 +144,14 @@ public class EhcacheEngineService extends EngineBaseDecorator {
 		this.diagnosticCache = diagnosticCache;
 	}
 
+	public int getQueryResultTimeToLive() {
+		return queryResultTimeToLive;
+	}
+
+	public void setQueryResultTimeToLive(int queryResultTimeToLive) {
+		this.queryResultTimeToLive = queryResultTimeToLive;
+	}
+
 	public void setEngineService(EngineService engine) {
 		setDecoratedEngine(engine);
 	}
@@ -181,17 +205,103 @@ public class EhcacheEngineService extends EngineBaseDecorator {
 				}
 			}
 		}
-		value=getDecoratedEngine().executeQuery(context, queryReference, keyColumn, resultColumns, defaultDataSourceReference, parameterValues, parameterTypes, formatValueColumns);
-		if (key!=null&&value!=null) {
-			e = new Element(key,value);
-			cache.put(e);
-			if (diagnostic) {
-				putToDiagnocsticCache(diagnosticKey, value);
-				saveKeyToDiagnosticCache(diagnosticReportURI, diagnosticKey, DiagnosticItemType.INPUT_CONTROL_CACHE);
-			}
+		if (key == null) {
+			return getDecoratedEngine().executeQuery(context, queryReference, keyColumn, resultColumns, defaultDataSourceReference, parameterValues, parameterTypes, formatValueColumns);
 		}
-		return value;
+
+		final QueryExecution execution = new QueryExecution(context, queryReference, keyColumn, resultColumns,
+				defaultDataSourceReference, parameterValues, parameterTypes, formatValueColumns,
+				key, diagnostic ? diagnosticKey : null, diagnosticReportURI);
+		return executeQueryOnce(key, execution);
     }
+
+	/**
+	 * Runs a query for a cache key, concurrent calls for the same key wait for the running query
+	 * instead of executing it again.
+	 */
+	protected OrderedMap executeQueryOnce(String key, Callable<OrderedMap> execution) {
+		FutureTask<OrderedMap> task = new FutureTask<OrderedMap>(execution);
+		FutureTask<OrderedMap> runningTask = runningQueries.putIfAbsent(key, task);
+		if (runningTask == null) {
+			try {
+				task.run();
+			} finally {
+				runningQueries.remove(key, task);
+			}
+			runningTask = task;
+		} else if (log.isDebugEnabled()) {
+			log.debug("Waiting for running input control query " + key);
+		}
+
+		try {
+			return runningTask.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new JSExceptionWrapper(e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new JSExceptionWrapper((Exception) cause);
+		}
+	}
+
+	protected void cacheQueryResult(String key, OrderedMap value, Serializable diagnosticKey, String diagnosticReportURI) {
+		Element e = new Element(key,value);
+		if (queryResultTimeToLive > 0) {
+			e.setTimeToLive(queryResultTimeToLive);
+		}
+		cache.put(e);
+		if (diagnosticKey != null) {
+			putToDiagnocsticCache(diagnosticKey, value);
+			saveKeyToDiagnosticCache(diagnosticReportURI, diagnosticKey, DiagnosticItemType.INPUT_CONTROL_CACHE);
+		}
+	}
+
+	protected class QueryExecution implements Callable<OrderedMap> {
+		private final ExecutionContext context;
+		private final ResourceReference queryReference;
+		private final String keyColumn;
+		private final String[] resultColumns;
+		private final ResourceReference defaultDataSourceReference;
+		private final Map parameterValues;
+		private final Map<String, Class<?>> parameterTypes;
+		private final boolean formatValueColumns;
+		private final String key;
+		private final Serializable diagnosticKey;
+		private final String diagnosticReportURI;
+
+		protected QueryExecution(ExecutionContext context, ResourceReference queryReference, String keyColumn,
+				String[] resultColumns, ResourceReference defaultDataSourceReference, Map parameterValues,
+				Map<String, Class<?>> parameterTypes, boolean formatValueColumns,
+				String key, Serializable diagnosticKey, String diagnosticReportURI) {
+			this.context = context;
+			this.queryReference = queryReference;
+			this.keyColumn = keyColumn;
+			this.resultColumns = resultColumns;
+			this.defaultDataSourceReference = defaultDataSourceReference;
+			this.parameterValues = parameterValues;
+			this.parameterTypes = parameterTypes;
+			this.formatValueColumns = formatValueColumns;
+			this.key = key;
+			this.diagnosticKey = diagnosticKey;
+			this.diagnosticReportURI = diagnosticReportURI;
+		}
+
+		public OrderedMap call() {
+			OrderedMap value = getDecoratedEngine().executeQuery(context, queryReference, keyColumn, resultColumns,
+					defaultDataSourceReference, parameterValues, parameterTypes, formatValueColumns);
+			// cache the result before other callers stop waiting for this execution
+			if (value != null) {
+				cacheQueryResult(key, value, diagnosticKey, diagnosticReportURI);
+			}
+			return value;
+		}
+	}
    
     public void clear() {
     	cache.removeAll();
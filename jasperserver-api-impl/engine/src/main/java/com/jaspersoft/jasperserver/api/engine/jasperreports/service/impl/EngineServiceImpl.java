@@ -56,6 +56,8 @@ import com.jaspersoft.jasperserver.api.engine.jasperreports.domain.impl.ReportUn
 import com.jaspersoft.jasperserver.api.engine.jasperreports.domain.impl.TrialReportUnitRequest;
 import com.jaspersoft.jasperserver.api.engine.jasperreports.service.DataCacheProvider;
 import com.jaspersoft.jasperserver.api.engine.jasperreports.service.InputControlsInfoExtractor;
+import com.jaspersoft.jasperserver.api.engine.jasperreports.util.ClassLoaderCache;
+import com.jaspersoft.jasperserver.api.engine.jasperreports.util.CompiledReportObjectCache;
 import com.jaspersoft.jasperserver.api.engine.jasperreports.util.CustomDataSourceDefinition;
 import com.jaspersoft.jasperserver.api.engine.jasperreports.util.DataAdapterDefinition;
 import com.jaspersoft.jasperserver.api.engine.jasperreports.util.DataSourceServiceFactory;
@@ -156,7 +158,6 @@ import net.sf.jasperreports.web.servlets.AsyncJasperPrintAccessor;
 import net.sf.jasperreports.web.servlets.JasperPrintAccessor;
 import net.sf.jasperreports.web.servlets.SimpleJasperPrintAccessor;
 import org.apache.commons.collections.OrderedMap;
-import org.apache.commons.collections.map.ReferenceMap;
 import org.apache.commons.lang.exception.ExceptionUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -195,6 +196,7 @@ import java.util.Map;
 import java.util.ResourceBundle;
 import java.util.Set;
 import java.util.TimeZone;
+import java.util.concurrent.Callable;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -231,8 +233,9 @@ public class EngineServiceImpl implements EngineService, ReportExecuter,
 	
 	private RepositoryCacheMap tempJarFiles;
 	private RepositoryCache compiledReportsCache;
-	private final ReferenceMap jarsClassLoaderCache;
-	private final ReferenceMap resourcesClassLoaderCache;
+	private CompiledReportObjectCache compiledReportObjectCache;
+	private final ClassLoaderCache jarsClassLoaderCache;
+	private final ClassLoaderCache resourcesClassLoaderCache;
 	private RepositoryCacheableItem cacheableCompiledReports;
 	private RepositoryContextManager repositoryContextManager;
     private List builtInParameterProviders = new ArrayList();
@@ -280,8 +283,8 @@ public class EngineServiceImpl implements EngineService, ReportExecuter,
 
 	public EngineServiceImpl()
 	{
-		jarsClassLoaderCache = new ReferenceMap(ReferenceMap.WEAK, ReferenceMap.SOFT);
-		resourcesClassLoaderCache = new ReferenceMap(ReferenceMap.WEAK, ReferenceMap.SOFT);
+		jarsClassLoaderCache = new ClassLoaderCache();
+		resourcesClassLoaderCache = new ClassLoaderCache();
 		cacheableCompiledReports = new CacheableCompiledReports(this);
 	}
 	
@@ -328,6 +331,14 @@ public class EngineServiceImpl implements EngineService, ReportExecuter,
 		this.compiledReportsCache = compiledReportsCache;
 	}
 
+	public CompiledReportObjectCache getCompiledReportObjectCache() {
+		return compiledReportObjectCache;
+	}
+
+	public void setCompiledReportObjectCache(CompiledReportObjectCache compiledReportObjectCache) {
+		this.compiledReportObjectCache = compiledReportObjectCache;
+	}
+
 	public RepositoryCacheableItem getCacheableCompiledReports() {
 		return cacheableCompiledReports;
 	}
@@ -444,6 +455,30 @@ public class EngineServiceImpl implements EngineService, ReportExecuter,
 
                         return startAsyncReportExecutionCount.get()+startSyncReportExecutionCount.get();
                     }
+                })
+                .addDiagnosticAttribute(DiagnosticAttributeBuilder.COMPILED_REPORTS_CACHE_SIZE, new DiagnosticCallback<Long>() {
+                    @Override
+                    public Long getDiagnosticAttributeValue() {
+                        return compiledReportObjectCache == null ? 0L : compiledReportObjectCache.getSize();
+                    }
+                })
+                .addDiagnosticAttribute(DiagnosticAttributeBuilder.COMPILED_REPORTS_CACHE_HITS, new DiagnosticCallback<Long>() {
+                    @Override
+                    public Long getDiagnosticAttributeValue() {
+                        return compiledReportObjectCache == null ? 0L : compiledReportObjectCache.getHitCount();
+                    }
+                })
+                .addDiagnosticAttribute(DiagnosticAttributeBuilder.COMPILED_REPORTS_CACHE_MISSES, new DiagnosticCallback<Long>() {
+                    @Override
+                    public Long getDiagnosticAttributeValue() {
+                        return compiledReportObjectCache == null ? 0L : compiledReportObjectCache.getMissCount();
+                    }
+                })
+                .addDiagnosticAttribute(DiagnosticAttributeBuilder.COMPILED_REPORTS_CACHE_AVERAGE_LOAD_TIME, new DiagnosticCallback<Double>() {
+                    @Override
+                    public Double getDiagnosticAttributeValue() {
+                        return compiledReportObjectCache == null ? 0d : compiledReportObjectCache.getAverageLoadTime();
+                    }
                 }).build();
     }
 
@@ -1565,7 +1600,7 @@ public class EngineServiceImpl implements EngineService, ReportExecuter,
 		return origContext;
 	}
 
-	protected ClassLoader getJarsClassLoader(ClassLoader origClassLoader, List jarFiles) {
+	protected ClassLoader getJarsClassLoader(final ClassLoader origClassLoader, final List jarFiles) {
 		boolean caching = true;
 		for (Iterator it = jarFiles.iterator(); caching && it.hasNext();) {
 			CacheObject cacheJarFile = (CacheObject) it.next();
@@ -1574,25 +1609,13 @@ public class EngineServiceImpl implements EngineService, ReportExecuter,
 
 		ClassLoader classLoader;
 		if (caching) {
-			Map childrenClassLoaders;
-			synchronized (jarsClassLoaderCache) {
-				childrenClassLoaders = (Map) jarsClassLoaderCache.get(origClassLoader);
-				if (childrenClassLoaders == null) {
-					childrenClassLoaders = new ReferenceMap(ReferenceMap.HARD, ReferenceMap.SOFT);
-					jarsClassLoaderCache.put(origClassLoader, childrenClassLoaders);
-				}
-			}
 			Object classLoaderKey = getJarFileNames(jarFiles);
-			synchronized (childrenClassLoaders) {
-				classLoader = (ClassLoader) childrenClassLoaders.get(classLoaderKey);
-				if (classLoader == null) {
-					if (log.isDebugEnabled()) {
-						log.debug("Creating class loader for parent " + origClassLoader + " and jars " + classLoaderKey);
-					}
-					classLoader = createJarsClassLoader(origClassLoader, jarFiles);
-					childrenClassLoaders.put(classLoaderKey, classLoader);
-				}
-			}
+			classLoader = jarsClassLoaderCache.get(origClassLoader, classLoaderKey, 
+					new Callable<ClassLoader>() {
+						public ClassLoader call() {
+							return createJarsClassLoader(origClassLoader, jarFiles);
+						}
+					});
 		} else {
 			classLoader = createJarsClassLoader(origClassLoader, jarFiles);
 		}
@@ -1620,34 +1643,21 @@ public class EngineServiceImpl implements EngineService, ReportExecuter,
 	}
 
 	protected ClassLoader getResourcesClassLoader(
-			ClassLoader parent, Map resourceBundleKeys, boolean inMemoryUnit,
-			RepositoryContext repositoryContext) {
+			final ClassLoader parent, final Map resourceBundleKeys, boolean inMemoryUnit,
+			final RepositoryContext repositoryContext) {
 		ClassLoader repositoryResourceClassLoader;
 		if (inMemoryUnit) {
 			repositoryResourceClassLoader = new RepositoryResourceClassLoader(
 					parent, resourceBundleKeys, true, repositoryContext);
 		} else {
-			Map childrenClassLoaders;
-			synchronized (resourcesClassLoaderCache) {
-				childrenClassLoaders = (Map) resourcesClassLoaderCache.get(parent);
-				if (childrenClassLoaders == null) {
-					childrenClassLoaders = new ReferenceMap(ReferenceMap.HARD, ReferenceMap.SOFT);
-					resourcesClassLoaderCache.put(parent, childrenClassLoaders);
-				}
-			}
-			synchronized (childrenClassLoaders) {
-				//put something from the repository context in the key?
-				repositoryResourceClassLoader = (ClassLoader) childrenClassLoaders.get(resourceBundleKeys);
-				if (repositoryResourceClassLoader == null) {
-					if (log.isDebugEnabled()) {
-						log.debug("Creating class loader for parent " + parent 
-								+ " and resources " + resourceBundleKeys);
-					}
-					repositoryResourceClassLoader = new RepositoryResourceClassLoader(
-							parent, resourceBundleKeys, false, repositoryContext);
-					childrenClassLoaders.put(resourceBundleKeys, repositoryResourceClassLoader);
-				}
-			}
+			//put something from the repository context in the key?
+			repositoryResourceClassLoader = resourcesClassLoaderCache.get(parent, resourceBundleKeys, 
+					new Callable<ClassLoader>() {
+						public ClassLoader call() {
+							return new RepositoryResourceClassLoader(
+									parent, resourceBundleKeys, false, repositoryContext);
+						}
+					});
 		}
 		return repositoryResourceClassLoader;
 	}
@@ -1715,8 +1725,6 @@ public class EngineServiceImpl implements EngineService, ReportExecuter,
 				InputStream fileResourceData = getFileResourceDataStream(context, reportRes);
 				report = compileReport(fileResourceData);
 			} else {
-				//TODO use an in-memory cache of compiled reports
-				
 				if (cache != null) {
 					report = cache.getJasperReport(location);
 
@@ -1727,33 +1735,13 @@ public class EngineServiceImpl implements EngineService, ReportExecuter,
 				}
 				
 				if (report == null) {
-					InputStream compiledReport = getCompiledReport(context, reportRes);
-					try {
-						report = (JasperReport) JRLoader.loadObject(compiledReport);
-						
-						if (cache != null)
-						{
-							cache.set(location, report);
-						}
-						
-					} catch (JRException e) {
-						Throwable cause = e.getCause();
-						if (cause == null || !(cause instanceof InvalidClassException)) {
-							throw e;
-						}
-						
-						if (log.isInfoEnabled()) {
-							log.info("InvalidClassException caught while loading compiled report, clearing the compiled report cache");
-						}
-						clearCompiledReportCache();
-						
-						//recompiling the report
-						compiledReport = getCompiledReport(context, reportRes);
-						report = (JasperReport) JRLoader.loadObject(compiledReport);
+					report = getCachedCompiledReport(context, reportRes);
+					
+					if (cache != null)
+					{
+						cache.set(location, report);
 					}
 				}
-				
-				
 			}
 			return report;
 		} catch (JRException e) {
@@ -1770,25 +1758,7 @@ public class EngineServiceImpl implements EngineService, ReportExecuter,
 				InputStream fileResourceData = getFileResourceDataStream(context, reportRes);
 				report = compileReport(fileResourceData);
 			} else {
-				//TODO use an in-memory cache of compiled reports
-				InputStream compiledReport = getCompiledReport(context, reportRes);
-				try {
-					report = (JasperReport) JRLoader.loadObject(compiledReport);
-				} catch (JRException e) {
-					Throwable cause = e.getCause();
-					if (cause == null || !(cause instanceof InvalidClassException)) {
-						throw e;
-					}
-					
-					if (log.isInfoEnabled()) {
-						log.info("InvalidClassException caught while loading compiled report, clearing the compiled report cache");
-					}
-					clearCompiledReportCache();
-
-					//recompiling the report
-					compiledReport = getCompiledReport(context, reportRes);
-					report = (JasperReport) JRLoader.loadObject(compiledReport);
-				}
+				report = getCachedCompiledReport(context, reportRes);
 			}
 			return report;
 		} catch (JRException e) {
@@ -1797,8 +1767,45 @@ public class EngineServiceImpl implements EngineService, ReportExecuter,
 		}
 	}
 
+	protected JasperReport getCachedCompiledReport(final ExecutionContext context, final FileResource reportRes) throws JRException {
+		if (compiledReportObjectCache == null || !CompiledReportObjectCache.isCacheable(reportRes)) {
+			return loadCompiledReport(context, reportRes);
+		}
+		
+		return compiledReportObjectCache.get(reportRes, new Callable<JasperReport>() {
+			public JasperReport call() throws Exception {
+				return loadCompiledReport(context, reportRes);
+			}
+		});
+	}
+
+	protected JasperReport loadCompiledReport(ExecutionContext context, FileResource reportRes) throws JRException {
+		InputStream compiledReport = getCompiledReport(context, reportRes);
+		try {
+			return (JasperReport) JRLoader.loadObject(compiledReport);
+		} catch (JRException e) {
+			Throwable cause = e.getCause();
+			if (cause == null || !(cause instanceof InvalidClassException)) {
+				throw e;
+			}
+			
+			if (log.isInfoEnabled()) {
+				log.info("InvalidClassException caught while loading compiled report, clearing the compiled report cache");
+			}
+			clearCompiledReportCache();
+
+			//recompiling the report
+			compiledReport = getCompiledReport(context, reportRes);
+			return (JasperReport) JRLoader.loadObject(compiledReport);
+		}
+	}
+
 	protected void clearCompiledReportCache() {
 		compiledReportsCache.clearCache(cacheableCompiledReports);
+		
+		if (compiledReportObjectCache != null) {
+			compiledReportObjectCache.invalidateAll();
+		}
 	}
 
     protected void addReportUnitToAuditEvent(final ReportUnit reportUnit) {
@@ -2280,6 +2287,9 @@ public class EngineServiceImpl implements EngineService, ReportExecuter,
 		if (FileResource.class.isAssignableFrom(resourceItf)) {
 			//TODO check JRXML type
 			compiledReportsCache.clearCache(resourceURI, cacheableCompiledReports);
+			if (compiledReportObjectCache != null) {
+				compiledReportObjectCache.invalidate(resourceURI);
+			}
 
 			tempJarFiles.remove(resourceURI);
 		}
@@ -21,8 +21,13 @@
 package com.jaspersoft.jasperserver.api.engine.jasperreports.service.impl;
 
 import com.jaspersoft.jasperserver.api.JSException;
+import com.jaspersoft.jasperserver.api.engine.jasperreports.util.ConcurrentPooledObjectCache;
 import com.jaspersoft.jasperserver.api.engine.jasperreports.util.PooledObjectCache;
 import com.jaspersoft.jasperserver.api.engine.jasperreports.util.PooledObjectEntry;
+import com.jaspersoft.jasperserver.api.logging.diagnostic.domain.DiagnosticAttribute;
+import com.jaspersoft.jasperserver.api.logging.diagnostic.helper.DiagnosticAttributeBuilder;
+import com.jaspersoft.jasperserver.api.logging.diagnostic.service.Diagnostic;
+import com.jaspersoft.jasperserver.api.logging.diagnostic.service.DiagnosticCallback;
 import com.jaspersoft.jasperserver.api.metadata.common.domain.ContentResource;
 import com.jaspersoft.jasperserver.api.metadata.common.domain.FileResourceData;
 import com.jaspersoft.jasperserver.api.metadata.common.service.RepositoryService;
@@ -54,6 +59,11 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TimeZone;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import org.springframework.context.MessageSource;
 import org.springframework.context.i18n.LocaleContextHolder;
 import org.springframework.dao.DataAccessResourceFailureException;
@@ -62,7 +72,7 @@ import org.springframework.dao.DataAccessResourceFailureException;
  * @author Lucian Chirita (lucianc@users.sourceforge.net)
  * @version $Id$
  */
-public class JdbcReportDataSourceServiceFactory implements ReportDataSourceServiceFactory {
+public class JdbcReportDataSourceServiceFactory implements ReportDataSourceServiceFactory, Diagnostic {
 
     private static final Log log = LogFactory.getLog(JdbcReportDataSourceServiceFactory.class);
     private static final String GOOGLE_BIG_QUERY_SIMBA_DRIVER_NAME = "com.simba.googlebigquery.jdbc41.Driver";
@@ -103,10 +113,10 @@ public class JdbcReportDataSourceServiceFactory implements ReportDataSourceServi
             }
         }
 
-        protected PooledObjectCache  pooledObjectCache;
+        protected ConcurrentPooledObjectCache  pooledObjectCache;
 
 		public PooledDataSourcesCache() {
-		    pooledObjectCache = new PooledObjectCache();
+		    pooledObjectCache = new ConcurrentPooledObjectCache();
             pooledObjectCache.setLog(new PooledDataSourcesCacheLog());
 		}
 
@@ -116,6 +126,15 @@ public class JdbcReportDataSourceServiceFactory implements ReportDataSourceServi
 		    return null;
 		}
 
+		public PooledDataSource get(Object key, long now, final PooledDataSourceCreator creator) {
+			PooledObjectEntry entry = pooledObjectCache.get(key, now, new ConcurrentPooledObjectCache.PooledObjectFactory() {
+				public PooledObjectEntry create(Object key) {
+					return new DataSourceEntry(key, creator.create());
+				}
+			});
+			return ((DataSourceEntry) entry).ds;
+		}
+
 		public void put(Object key, PooledDataSource ds, long now) {
 			DataSourceEntry entry = new DataSourceEntry(key, ds);
 			pooledObjectCache.put(key, entry, now);
@@ -128,12 +147,27 @@ public class JdbcReportDataSourceServiceFactory implements ReportDataSourceServi
 			return expired;
 		}
 
+		protected interface PooledDataSourceCreator {
+			PooledDataSource create();
+		}
+
 	}
 
+	private static final ScheduledExecutorService poolSweeperExecutor = Executors.newSingleThreadScheduledExecutor(
+			new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "jdbc-pool-sweeper");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+
 	private PooledJdbcDataSourceFactory pooledJdbcDataSourceFactory;
 	private PooledDataSourcesCache poolDataSources;
 	private ProfileAttributesResolver profileAttributesResolver;
 	private int poolTimeout;
+	private int poolSweepInterval = 60;
+	private volatile ScheduledFuture<?> poolSweeper;
     private Set<String> autoCommitUnsupportedDrivers = new HashSet<String>(); // protect from NPE
     private Map<String, String> driverAuthMethMap = new HashMap<String, String>(); // protect from NPE
     private Map<String, String> driverNoAuthMethMap = new HashMap<String, String>(); // protect from NPE
@@ -265,7 +299,9 @@ public class JdbcReportDataSourceServiceFactory implements ReportDataSourceServi
 		} catch(Exception ex){
     	log.error(ex.getMessage());
 		} finally {
-      releaseExpiredPools(now);
+      if (!startPoolSweeper()) {
+        releaseExpiredPools(now);
+      }
     }
 		return absoluteFileLocation;
   }
@@ -274,39 +310,72 @@ public class JdbcReportDataSourceServiceFactory implements ReportDataSourceServi
         return new JdbcDataSourceService(dataSource, timezone);
     }
 
-	protected DataSource getPoolDataSource(String driverClass, String url, String username, String password) {
+	protected DataSource getPoolDataSource(final String driverClass, final String url, final String username, final String password) {
 		long now = System.currentTimeMillis();
-		releaseExpiredPools(now);
+		if (!startPoolSweeper()) {
+			releaseExpiredPools(now);
+		}
 			
-		Object poolKey = createJdbcPoolKey(driverClass, url, username, password);
-		PooledDataSource dataSource;
-		synchronized (poolDataSources.pooledObjectCache) {
-			dataSource = poolDataSources.get(poolKey, now);
-			if (dataSource == null) {
+		final Object poolKey = createJdbcPoolKey(driverClass, url, username, password);
+		PooledDataSource dataSource = poolDataSources.get(poolKey, now, new PooledDataSourcesCache.PooledDataSourceCreator() {
+			public PooledDataSource create() {
 				if (log.isDebugEnabled()) {
 					log.debug("Creating connection pool for " + poolKey + ".");
 				}
                 boolean isAutoCommit = (getAutoCommitUnsupportedDrivers().contains(driverClass) ? true : defaultAutoCommit);
-				dataSource = pooledJdbcDataSourceFactory.createPooledDataSource(
+				return pooledJdbcDataSourceFactory.createPooledDataSource(
 						driverClass, url, username, password,
 						defaultReadOnly, isAutoCommit);
-				poolDataSources.put(poolKey, dataSource, now);
-			} else {
-				if (log.isDebugEnabled()) {
-					log.debug("Using cached connection pool for " + poolKey + ".");
+			}
+		});
+
+		return dataSource.getDataSource();
+	}
+
+	/**
+	 * Starts the background expiry of connection pools if not already started.
+	 * 
+	 * @return whether expired pools are released in the background, 
+	 * <code>false</code> if the caller needs to release them
+	 */
+	protected boolean startPoolSweeper() {
+		if (getPoolTimeout() <= 0 || poolSweepInterval <= 0) {
+			return false;
+		}
+		
+		if (poolSweeper == null) {
+			synchronized (this) {
+				if (poolSweeper == null) {
+					if (log.isDebugEnabled()) {
+						log.debug("Starting connection pool sweeper every " + poolSweepInterval + " seconds");
+					}
+					poolSweeper = poolSweeperExecutor.scheduleWithFixedDelay(new Runnable() {
+						public void run() {
+							try {
+								releaseExpiredPools(System.currentTimeMillis());
+							} catch (Exception e) {
+								log.error("Error while releasing expired connection pools.", e);
+							}
+						}
+					}, poolSweepInterval, poolSweepInterval, TimeUnit.SECONDS);
 				}
 			}
 		}
+		return true;
+	}
 
-		return dataSource.getDataSource();
+	public void destroy() {
+		ScheduledFuture<?> sweeper = poolSweeper;
+		if (sweeper != null) {
+			sweeper.cancel(false);
+			poolSweeper = null;
+		}
 	}
 
 	protected void releaseExpiredPools(long now) {
 		List expired = null;
-		synchronized (poolDataSources.pooledObjectCache) {
-			if (getPoolTimeout() > 0) {
-				expired = poolDataSources.removeExpired(now, getPoolTimeout());
-			}
+		if (getPoolTimeout() > 0) {
+			expired = poolDataSources.removeExpired(now, getPoolTimeout());
 		}
 
 		if (expired != null && !expired.isEmpty()) {
@@ -322,6 +391,44 @@ public class JdbcReportDataSourceServiceFactory implements ReportDataSourceServi
 		}
 	}
 
+    /**
+     * <code>Diagnostic</code> implementation - connection pool counts and cache statistics.
+     */
+    public Map<DiagnosticAttribute, DiagnosticCallback> getDiagnosticData() {
+        final ConcurrentPooledObjectCache cache = poolDataSources.pooledObjectCache;
+        return new DiagnosticAttributeBuilder()
+                .addDiagnosticAttribute(DiagnosticAttributeBuilder.JDBC_POOL_COUNT, new DiagnosticCallback<Integer>() {
+                    @Override
+                    public Integer getDiagnosticAttributeValue() {
+                        return cache.size();
+                    }
+                })
+                .addDiagnosticAttribute(DiagnosticAttributeBuilder.JDBC_POOL_CACHE_HITS, new DiagnosticCallback<Long>() {
+                    @Override
+                    public Long getDiagnosticAttributeValue() {
+                        return cache.getHitCount();
+                    }
+                })
+                .addDiagnosticAttribute(DiagnosticAttributeBuilder.JDBC_POOL_CACHE_MISSES, new DiagnosticCallback<Long>() {
+                    @Override
+                    public Long getDiagnosticAttributeValue() {
+                        return cache.getMissCount();
+                    }
+                })
+                .addDiagnosticAttribute(DiagnosticAttributeBuilder.JDBC_POOL_CACHE_HIT_RATIO, new DiagnosticCallback<Double>() {
+                    @Override
+                    public Double getDiagnosticAttributeValue() {
+                        return cache.getHitRatio();
+                    }
+                })
+                .addDiagnosticAttribute(DiagnosticAttributeBuilder.JDBC_POOL_EVICTIONS, new DiagnosticCallback<Long>() {
+                    @Override
+                    public Long getDiagnosticAttributeValue() {
+                        return cache.getEvictionCount();
+                    }
+                }).build();
+    }
+
 	public PooledJdbcDataSourceFactory getPooledJdbcDataSourceFactory() {
 		return pooledJdbcDataSourceFactory;
 	}
@@ -403,6 +510,19 @@ public class JdbcReportDataSourceServiceFactory implements ReportDataSourceServi
 	public void setPoolTimeout(int poolTimeout) {
 		this.poolTimeout = poolTimeout;
 	}
+
+	public int getPoolSweepInterval() {
+		return poolSweepInterval;
+	}
+
+	/**
+	 * Sets the interval in seconds at which expired connection pools are released
+	 * by a background thread.
+	 * If not positive, expired pools are released on the request threads.
+	 */
+	public void setPoolSweepInterval(int poolSweepInterval) {
+		this.poolSweepInterval = poolSweepInterval;
+	}
 	
 	public boolean getDefaultReadOnly() {
 		return defaultReadOnly;
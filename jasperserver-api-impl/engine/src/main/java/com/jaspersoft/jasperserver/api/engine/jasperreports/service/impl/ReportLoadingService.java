@@ -25,6 +25,7 @@ import com.jaspersoft.jasperserver.api.JSExceptionWrapper;
 import com.jaspersoft.jasperserver.api.common.domain.ExecutionContext;
 import com.jaspersoft.jasperserver.api.common.domain.impl.ExecutionContextImpl;
 import com.jaspersoft.jasperserver.api.engine.common.service.BuiltInParameterProvider;
+import com.jaspersoft.jasperserver.api.engine.jasperreports.util.CompiledReportObjectCache;
 import com.jaspersoft.jasperserver.api.metadata.common.domain.*;
 import com.jaspersoft.jasperserver.api.metadata.common.domain.util.MarkAllInputControlsResolved;
 import com.jaspersoft.jasperserver.api.metadata.common.domain.util.SrcSets;
@@ -48,6 +49,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 
 public class ReportLoadingService {
     private static final Log log = LogFactory.getLog(ReportLoadingService.class);
@@ -55,6 +57,7 @@ public class ReportLoadingService {
     protected RepositoryService repository;
     protected RepositoryCache compiledReportsCache;
     protected RepositoryCacheableItem cacheableCompiledReports;
+    protected CompiledReportObjectCache compiledReportObjectCache;
     protected RepositoryContextManager repositoryContextManager;
     protected List builtInParameterProviders = new ArrayList();
     protected String reportParameterLabelKeyPrefix;
@@ -71,6 +74,10 @@ public class ReportLoadingService {
         this.cacheableCompiledReports = cacheableCompiledReports;
     }
 
+    public void setCompiledReportObjectCache(CompiledReportObjectCache compiledReportObjectCache) {
+        this.compiledReportObjectCache = compiledReportObjectCache;
+    }
+
     public void setRepositoryContextManager(
             RepositoryContextManager repositoryContextManager) {
         this.repositoryContextManager = repositoryContextManager;
@@ -105,25 +112,7 @@ public class ReportLoadingService {
                 InputStream fileResourceData = getFileResourceDataStream(context, reportRes);
                 report = compileReport(fileResourceData);
             } else {
-                //TODO use an in-memory cache of compiled reports
-                InputStream compiledReport = getCompiledReport(context, reportRes);
-                try {
-                    report = (JasperReport) JRLoader.loadObject(compiledReport);
-                } catch (JRException e) {
-                    Throwable cause = e.getCause();
-                    if (cause == null || !(cause instanceof InvalidClassException)) {
-                        throw e;
-                    }
-
-                    if (log.isInfoEnabled()) {
-                        log.info("InvalidClassException caught while loading compiled report, clearing the compiled report cache");
-                    }
-                    clearCompiledReportCache();
-
-                    //recompiling the report
-                    compiledReport = getCompiledReport(context, reportRes);
-                    report = (JasperReport) JRLoader.loadObject(compiledReport);
-                }
+                report = getCachedCompiledReport(context, reportRes);
             }
             return report;
         } catch (JRException e) {
@@ -132,6 +121,39 @@ public class ReportLoadingService {
         }
     }
 
+    private JasperReport getCachedCompiledReport(final ExecutionContext context, final FileResource reportRes) throws JRException {
+        if (compiledReportObjectCache == null || !CompiledReportObjectCache.isCacheable(reportRes)) {
+            return loadCompiledReport(context, reportRes);
+        }
+
+        return compiledReportObjectCache.get(reportRes, new Callable<JasperReport>() {
+            public JasperReport call() throws Exception {
+                return loadCompiledReport(context, reportRes);
+            }
+        });
+    }
+
+    private JasperReport loadCompiledReport(ExecutionContext context, FileResource reportRes) throws JRException {
+        InputStream compiledReport = getCompiledReport(context, reportRes);
+        try {
+            return (JasperReport) JRLoader.loadObject(compiledReport);
+        } catch (JRException e) {
+            Throwable cause = e.getCause();
+            if (cause == null || !(cause instanceof InvalidClassException)) {
+                throw e;
+            }
+
+            if (log.isInfoEnabled()) {
+                log.info("InvalidClassException caught while loading compiled report, clearing the compiled report cache");
+            }
+            clearCompiledReportCache();
+
+            //recompiling the report
+            compiledReport = getCompiledReport(context, reportRes);
+            return (JasperReport) JRLoader.loadObject(compiledReport);
+        }
+    }
+
     public InputStream getFileResourceDataStream(ExecutionContext context, FileResource fileResource) {
         InputStream data;
         if (fileResource.hasData()) {
@@ -149,6 +171,9 @@ public class ReportLoadingService {
 
     private void clearCompiledReportCache() {
         compiledReportsCache.clearCache(cacheableCompiledReports);
+        if (compiledReportObjectCache != null) {
+            compiledReportObjectCache.invalidateAll();
+        }
     }
 
     public JasperReport compileReport(InputStream jrxmlData) {
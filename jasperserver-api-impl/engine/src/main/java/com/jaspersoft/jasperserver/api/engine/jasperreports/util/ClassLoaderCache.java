@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2005 - 2020 TIBCO Software Inc. All rights reserved.
+ * http://www.jaspersoft.com.
+ *
+ * Unless you have purchased a commercial license agreement from Jaspersoft,
+ * the following license terms apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.jaspersoft.jasperserver.api.engine.jasperreports.util;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.ExecutionError;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.jaspersoft.jasperserver.api.JSExceptionWrapper;
+
+/**
+ * Two-level cache of class loaders created on top of a parent class loader.
+ * 
+ * <p>
+ * Parent class loaders are weakly referenced and child class loaders are softly
+ * referenced so that both can be garbage collected.
+ * Lookups of existing class loaders do not take any lock, and concurrent
+ * requests for a missing class loader result in a single creation.
+ * </p>
+ * 
+ * @version $Id$
+ */
+public class ClassLoaderCache {
+
+	private static final Log log = LogFactory.getLog(ClassLoaderCache.class);
+	
+	private final LoadingCache<ClassLoader, Cache<Object, ClassLoader>> parentCache;
+	
+	public ClassLoaderCache() {
+		parentCache = CacheBuilder.newBuilder()
+				.weakKeys()
+				.build(new CacheLoader<ClassLoader, Cache<Object, ClassLoader>>() {
+					@Override
+					public Cache<Object, ClassLoader> load(ClassLoader parent) {
+						return CacheBuilder.newBuilder().softValues().build();
+					}
+				});
+	}
+	
+	/**
+	 * Returns the cached class loader for a parent and a key,
+	 * creating it if not already present.
+	 * 
+	 * @param parent the parent class loader
+	 * @param key the key that identifies the child class loader, needs to implement
+	 * <code>equals</code> and <code>hashCode</code>
+	 * @param factory creates the child class loader on a cache miss
+	 * @return the cached or newly created class loader
+	 */
+	public ClassLoader get(final ClassLoader parent, final Object key, final Callable<ClassLoader> factory) {
+		try {
+			Cache<Object, ClassLoader> childrenClassLoaders = parentCache.getUnchecked(parent);
+			return childrenClassLoaders.get(key, new Callable<ClassLoader>() {
+				public ClassLoader call() throws Exception {
+					if (log.isDebugEnabled()) {
+						log.debug("Creating class loader for parent " + parent + " and key " + key);
+					}
+					return factory.call();
+				}
+			});
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			throw new JSExceptionWrapper(cause instanceof Exception ? (Exception) cause : e);
+		} catch (UncheckedExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw e;
+		} catch (ExecutionError e) {
+			throw (Error) e.getCause();
+		}
+	}
+	
+	public long size() {
+		long size = 0;
+		for (Cache<Object, ClassLoader> childrenClassLoaders : parentCache.asMap().values()) {
+			size += childrenClassLoaders.size();
+		}
+		return size;
+	}
+
+	public void clear() {
+		parentCache.invalidateAll();
+	}
+
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2005 - 2020 TIBCO Software Inc. All rights reserved.
+ * http://www.jaspersoft.com.
+ *
+ * Unless you have purchased a commercial license agreement from Jaspersoft,
+ * the following license terms apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.jaspersoft.jasperserver.api.engine.jasperreports.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import net.sf.jasperreports.engine.JRException;
+import net.sf.jasperreports.engine.JasperReport;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.ExecutionError;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.jaspersoft.jasperserver.api.JSExceptionWrapper;
+import com.jaspersoft.jasperserver.api.metadata.common.domain.Resource;
+
+/**
+ * Shared in-heap cache of deserialized compiled reports.
+ * 
+ * <p>
+ * Entries are keyed by the repository URI, version and creation date of the
+ * JRXML resource, so that an updated or recreated resource never hits a stale
+ * entry.  Entries are evicted in LRU order once the maximum size is reached,
+ * and after not being accessed for the configured period.
+ * Concurrent requests for the same missing entry result in a single load.
+ * </p>
+ * 
+ * @version $Id$
+ */
+public class CompiledReportObjectCache {
+
+	private static final Log log = LogFactory.getLog(CompiledReportObjectCache.class);
+	
+	public static final int DEFAULT_MAXIMUM_SIZE = 500;
+	public static final int DEFAULT_EXPIRE_AFTER_ACCESS_MINUTES = 60;
+	
+	private final Cache<RepositoryResourceKey, JasperReport> cache;
+	
+	public CompiledReportObjectCache() {
+		this(DEFAULT_MAXIMUM_SIZE, DEFAULT_EXPIRE_AFTER_ACCESS_MINUTES);
+	}
+	
+	public CompiledReportObjectCache(int maximumSize, int expireAfterAccessMinutes) {
+		CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder()
+				.maximumSize(maximumSize)
+				.recordStats();
+		if (expireAfterAccessMinutes > 0) {
+			builder.expireAfterAccess(expireAfterAccessMinutes, TimeUnit.MINUTES);
+		}
+		cache = builder.build();
+	}
+	
+	/**
+	 * Determines whether a resource can be cached.
+	 * 
+	 * New (unsaved) resources and resources without a creation date are not
+	 * cached as they cannot be reliably versioned.
+	 */
+	public static boolean isCacheable(Resource resource) {
+		return resource != null && resource.getURIString() != null
+				&& resource.getVersion() != Resource.VERSION_NEW
+				&& resource.getCreationDate() != null;
+	}
+	
+	public JasperReport get(Resource resource, Callable<JasperReport> loader) throws JRException {
+		RepositoryResourceKey key = new RepositoryResourceKey(resource);
+		try {
+			return cache.get(key, loader);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof JRException) {
+				throw (JRException) cause;
+			}
+			throw new JSExceptionWrapper(cause instanceof Exception ? (Exception) cause : e);
+		} catch (UncheckedExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw e;
+		} catch (ExecutionError e) {
+			throw (Error) e.getCause();
+		}
+	}
+	
+	public void invalidate(String uri) {
+		List<RepositoryResourceKey> keys = new ArrayList<RepositoryResourceKey>();
+		for (RepositoryResourceKey key : cache.asMap().keySet()) {
+			if (uri.equals(key.getUri())) {
+				keys.add(key);
+			}
+		}
+		
+		if (!keys.isEmpty()) {
+			if (log.isDebugEnabled()) {
+				log.debug("Removing " + keys.size() + " compiled report entries for " + uri);
+			}
+			cache.invalidateAll(keys);
+		}
+	}
+	
+	public void invalidateAll() {
+		cache.invalidateAll();
+	}
+	
+	public long getSize() {
+		return cache.size();
+	}
+	
+	public long getHitCount() {
+		return cache.stats().hitCount();
+	}
+	
+	public long getMissCount() {
+		return cache.stats().missCount();
+	}
+	
+	public long getEvictionCount() {
+		return cache.stats().evictionCount();
+	}
+	
+	/**
+	 * @return the average time spent loading a compiled report, in milliseconds
+	 */
+	public double getAverageLoadTime() {
+		CacheStats stats = cache.stats();
+		return stats.averageLoadPenalty() / 1000000d;
+	}
+
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright (C) 2005 - 2020 TIBCO Software Inc. All rights reserved.
+ * http://www.jaspersoft.com.
+ *
+ * Unless you have purchased a commercial license agreement from Jaspersoft,
+ * the following license terms apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.jaspersoft.jasperserver.api.engine.jasperreports.util;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import com.jaspersoft.jasperserver.api.engine.jasperreports.util.PooledObjectCache.PooledObjectCacheLog;
+
+/**
+ * Thread safe variant of {@link PooledObjectCache}.
+ * 
+ * <p>
+ * Cache hits do not take any lock, and a missing entry is created once
+ * under a lock that only covers the hash bin of its key.
+ * Expiry keeps the semantics of {@link PooledObjectCache#removeExpired(long, int)}:
+ * entries that have not been accessed for the timeout period and are not
+ * active are removed.  An entry that is accessed while being expired is never
+ * returned to the caller once removed, a new entry gets created instead.
+ * </p>
+ * 
+ * @version $Id$
+ */
+public class ConcurrentPooledObjectCache {
+
+	public interface PooledObjectFactory {
+		PooledObjectEntry create(Object key);
+	}
+	
+	private static final long RETIRED = Long.MIN_VALUE;
+	
+	protected static final class PooledObjectSlot {
+		final PooledObjectEntry entry;
+		final AtomicLong lastAccess;
+		
+		PooledObjectSlot(PooledObjectEntry entry, long now) {
+			this.entry = entry;
+			this.lastAccess = new AtomicLong(now);
+			entry.access(now);
+		}
+		
+		boolean access(long now) {
+			while (true) {
+				long current = lastAccess.get();
+				if (current == RETIRED) {
+					return false;
+				}
+				if (current >= now || lastAccess.compareAndSet(current, now)) {
+					entry.access(now);
+					return true;
+				}
+			}
+		}
+		
+		boolean retireIfExpired(long expTime) {
+			long current = lastAccess.get();
+			return current != RETIRED && current < expTime && !entry.isActive()
+					&& lastAccess.compareAndSet(current, RETIRED);
+		}
+	}
+	
+	private final ConcurrentMap<Object, PooledObjectSlot> cache = new ConcurrentHashMap<Object, PooledObjectSlot>();
+	private final AtomicLong hitCount = new AtomicLong();
+	private final AtomicLong missCount = new AtomicLong();
+	private final AtomicLong evictionCount = new AtomicLong();
+	private volatile PooledObjectCacheLog log;
+	
+	public PooledObjectCacheLog getLog() {
+		return log;
+	}
+
+	public void setLog(PooledObjectCacheLog log) {
+		this.log = log;
+	}
+	
+	public PooledObjectEntry get(Object key, long now) {
+		PooledObjectSlot slot = cache.get(key);
+		if (slot != null && slot.access(now)) {
+			hitCount.incrementAndGet();
+			return slot.entry;
+		}
+		return null;
+	}
+	
+	/**
+	 * Returns the entry for a key, creating it if not present.
+	 */
+	public PooledObjectEntry get(Object key, final long now, final PooledObjectFactory factory) {
+		while (true) {
+			PooledObjectSlot slot = cache.get(key);
+			if (slot != null) {
+				if (slot.access(now)) {
+					hitCount.incrementAndGet();
+					return slot.entry;
+				}
+				
+				// expired concurrently, make way for a new entry
+				cache.remove(key, slot);
+			}
+			
+			slot = cache.computeIfAbsent(key, new Function<Object, PooledObjectSlot>() {
+				public PooledObjectSlot apply(Object k) {
+					missCount.incrementAndGet();
+					return new PooledObjectSlot(factory.create(k), now);
+				}
+			});
+			if (slot.access(now)) {
+				return slot.entry;
+			}
+		}
+	}
+	
+	public void put(Object key, PooledObjectEntry entry, long now) {
+		cache.put(key, new PooledObjectSlot(entry, now));
+	}
+
+	public List<PooledObjectEntry> removeExpired(long now, int timeout) {
+		List<PooledObjectEntry> expired = new ArrayList<PooledObjectEntry>();
+		long expTime = now - timeout * 1000L;
+		
+		for (Iterator<Map.Entry<Object, PooledObjectSlot>> it = cache.entrySet().iterator(); it.hasNext();) {
+			Map.Entry<Object, PooledObjectSlot> mapEntry = it.next();
+			PooledObjectSlot slot = mapEntry.getValue();
+			if (slot.lastAccess.get() >= expTime) {
+				continue;
+			}
+			
+			if (slot.retireIfExpired(expTime)) {
+				if (log != null) log.debug(mapEntry.getKey(), PooledObjectCacheLog.DebugCode.EXPIRING);
+				cache.remove(mapEntry.getKey(), slot);
+				evictionCount.incrementAndGet();
+				expired.add(slot.entry);
+			} else if (slot.entry.isActive()) {
+				if (log != null) log.debug(mapEntry.getKey(), PooledObjectCacheLog.DebugCode.STILL_ACTIVE);
+			}
+		}
+		
+		return expired;
+	}
+	
+	public int size() {
+		return cache.size();
+	}
+
+	public long getHitCount() {
+		return hitCount.get();
+	}
+
+	public long getMissCount() {
+		return missCount.get();
+	}
+
+	public long getEvictionCount() {
+		return evictionCount.get();
+	}
+
+	/**
+	 * @return the ratio of lookups served by existing entries, between 0 and 1
+	 */
+	public double getHitRatio() {
+		long hits = hitCount.get();
+		long total = hits + missCount.get();
+		return total == 0 ? 0d : (double) hits / total;
+	}
+
+}
@@ -60,6 +60,7 @@ import com.jaspersoft.jasperserver.api.metadata.data.cache.DataCacheSnapshot;
 import com.jaspersoft.jasperserver.api.metadata.jasperreports.domain.ReportUnit;
 import com.jaspersoft.jasperserver.api.metadata.user.domain.User;
 import com.jaspersoft.jasperserver.dto.common.ErrorDescriptor;
+import net.sf.jasperreports.data.cache.DataCacheHandler;
 import net.sf.jasperreports.engine.JRParameter;
 import net.sf.jasperreports.engine.JRPrintPage;
 import net.sf.jasperreports.engine.JRPropertiesUtil;
@@ -98,6 +99,12 @@ import java.util.Map.Entry;
 import java.util.Set;
 import java.util.TimeZone;
 import java.util.WeakHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * @author Lucian Chirita (lucianc@users.sourceforge.net)
@@ -144,6 +151,15 @@ public class ReportExecutionJob implements Job {
     public static final String SCHEDULER_CONTEXT_KEY_JASPERREPORTS_CONTEXT_BEAN = "jasperReportsContextName";
     public static final String SCHEDULER_CONTEXT_KEY_DISABLE_SENDING_ALERT_TO_ADMIN = "disableSendingAlertToAdmin";
     public static final String SCHEDULER_CONTEXT_KEY_DISABLE_SENDING_ALERT_TO_OWNER = "disableSendingAlertToOwner";
+    public static final String SCHEDULER_CONTEXT_KEY_EXPORT_EXECUTOR = "exportExecutor";
+    public static final String SCHEDULER_CONTEXT_KEY_MAX_EXPORT_PARALLELISM = "maxExportParallelism";
+    public static final String SCHEDULER_CONTEXT_KEY_SINGLE_FILL_FOR_PAGINATIONS = "singleFillForPaginations";
+
+    /**
+     * Job parameter that overrides the maximum number of output formats exported concurrently for a job.
+     * The parameter is not passed to the report.
+     */
+    public static final String JOB_PARAMETER_MAX_EXPORT_PARALLELISM = "_MaxExportParallelism";
 
     public static final String JOB_DATA_KEY_DETAILS_ID = "jobDetailsID";
     public static final String JOB_DATA_KEY_USERNAME = "jobUser";
@@ -161,12 +177,13 @@ public class ReportExecutionJob implements Job {
 
     protected static AuditContext auditContext = new DummyAuditContext();
     protected static LoggingContextProvider loggingContextProvider;
-    protected boolean cancelRequested = false;
+    protected volatile boolean cancelRequested = false;
 
     private ReportContext reportContext;
     private boolean hasDataSnapshotOutput;
     private boolean recordDataSnapshot;
     private boolean recordedDataSnapshot;
+    private int dataSnapshotReplays;
     private String dataSnapshotOutputName;
 
     private Map<PaginationParameters, ReportUnitResult> reportResults = 
@@ -202,6 +219,14 @@ public class ReportExecutionJob implements Job {
         });
     }
 
+    protected void addDataSnapshotReplaysToAuditEvent(final int replays) {
+        auditContext.doInAuditContext(AuditEventType.RUN_REPORT.toString(), new AuditContext.AuditContextCallbackWithEvent() {
+            public void execute(AuditEvent auditEvent) {
+                auditContext.addPropertyToAuditEvent("dataSnapshotReplays", replays, auditEvent);
+            }
+        });
+    }
+
     protected void addExceptionToAuditEvent(final Throwable ex) {
         auditContext.doInAuditContext(AuditEventType.RUN_REPORT.toString(), new AuditContext.AuditContextCallbackWithEvent() {
             public void execute(AuditEvent auditEvent) {
@@ -284,6 +309,7 @@ public class ReportExecutionJob implements Job {
         hasDataSnapshotOutput = false;
         recordDataSnapshot = false;
         recordedDataSnapshot = false;
+        dataSnapshotReplays = 0;
         dataSnapshotOutputName = null;
 
         if (reportResults != null) {
@@ -358,7 +384,10 @@ public class ReportExecutionJob implements Job {
     protected void handleException(String message, Throwable exc) {
         ErrorDescriptor descriptor = secureExceptionHandler.handleException(exc,
                 new ErrorDescriptor().setMessage(message), getLocale());
-        exceptions.add(descriptor);
+        // outputs can be exported concurrently
+        synchronized (exceptions) {
+            exceptions.add(descriptor);
+        }
 
         if (descriptor.getErrorUid() != null && !descriptor.getErrorUid().isEmpty()) {
             message = (message != null ? message : " ").concat(String.format(" (Error UID: %s)", descriptor.getErrorUid()));
@@ -520,56 +549,34 @@ public class ReportExecutionJob implements Job {
 
                         ReportJobContext reportJobContext = getReportJobContext(baseFileName, useFolderHierarchy);
                         
+                        List<OutputExport> exports = new ArrayList<OutputExport>(outputs.size());
                         for (Output output : outputs) {
-                            ReportOutput reportOutput = null;
                             ReportUnitResult resultToExport = getReportResultForOutput(output, jasperReport);
+                            // enforce to use grid-base HTML exporter for embedded report in email
+                            // DIV doesn't work well in email
+                            if ((resultToExport != null) && (mailNotification != null) && (mailNotification.getResultSendType() == ReportJobMailNotification.RESULT_SEND_EMBED) &&
+                                    (output instanceof HtmlReportOutput)) {
+                                ((HtmlReportOutput) output).setForceToUseHTMLExporter(true);
+                            }
+                            exports.add(new OutputExport(output, resultToExport));
+                        }
 
-                            if (resultToExport != null) {
-                                // enforce to use grid-base HTML exporter for embedded report in email
-                                // DIV doesn't work well in email
-                                if ((mailNotification != null) && (mailNotification.getResultSendType() == ReportJobMailNotification.RESULT_SEND_EMBED) &&
-                                        (output instanceof HtmlReportOutput)) {
-                                    ((HtmlReportOutput) output).setForceToUseHTMLExporter(true);
-                                }
-                                isCancelRequested();
-                                try {
-                                    reportOutput = output.getOutput(
-                                    		reportJobContext,
-                                            resultToExport.getJasperPrint()
-                                    );
-                                } catch (Exception e) {
-                                    String fileExtension = null;
-                                    final Map outputFormatMap = getOutputFormatMap();
-                                    for (Object currentExtension : outputFormatMap.keySet()) {
-                                        if (outputFormatMap.get(currentExtension) == output) {
-                                            fileExtension = currentExtension.toString();
-                                            break;
-                                        }
-                                    }
-                                    // log the error and continue with outputs generation
-                                    handleException(getMessage("report.scheduling.error.exporting.report", new Object[]{fileExtension}), e);
-                                    continue;
-                                }
-                                isCancelRequested();
-                                if (reportOutput != null) reportOutputs.add(reportOutput);
+                        // the formats are exported concurrently, saving is done in the original order
+                        exportOutputs(exports, reportJobContext, baseFileName, useFolderHierarchy);
 
+                        for (OutputExport export : exports) {
+                            if (export.failed) {
+                                continue;
                             }
+                            if (export.reportOutput != null) reportOutputs.add(export.reportOutput);
 
                             isCancelRequested();
 
-
-                            if ((!useFolderHierarchy) && (jobDetails.getContentRepositoryDestination() != null) &&
-                                    (jobDetails.getContentRepositoryDestination().isSaveToRepository()) && (!reportOutput.getChildren().isEmpty())) {
-                                // if not using hierarchy, but contains children and requires to save to repository.  regenerate the output with folder hierarchy
-                                ReportJobContext reportRepositoryJobContext = getReportJobContext(baseFileName, true);
-                                ReportOutput reportOutputForRepository = output.getOutput(
-                                		reportRepositoryJobContext,
-                                        resultToExport.getJasperPrint());
-                                isCancelRequested();
-                                if (reportOutputForRepository != null)
-                                    getReportExecutionJobFileSaving().save(this, reportOutputForRepository, true, jobDetails);
+                            if (export.regenerateForRepository) {
+                                if (export.repositoryOutput != null)
+                                    getReportExecutionJobFileSaving().save(this, export.repositoryOutput, true, jobDetails);
                             } else
-                                getReportExecutionJobFileSaving().save(this, reportOutput, useFolderHierarchy, jobDetails);
+                                getReportExecutionJobFileSaving().save(this, export.reportOutput, useFolderHierarchy, jobDetails);
                         }
                     }
 
@@ -616,6 +623,148 @@ public class ReportExecutionJob implements Job {
         }
     }
     
+    /**
+     * Exports the report outputs, using up to {@link #getMaxExportParallelism()} threads.
+     * Export errors are recorded for each output as they were for sequential exports,
+     * other errors (including cancellation requests) stop the remaining exports and are rethrown.
+     */
+    protected void exportOutputs(final List<OutputExport> exports, final ReportJobContext reportJobContext,
+            final String baseFileName, final boolean useFolderHierarchy) throws Exception {
+        final AtomicInteger nextExport = new AtomicInteger();
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        Runnable worker = new Runnable() {
+            @Override
+            public void run() {
+                int index;
+                while (failure.get() == null && (index = nextExport.getAndIncrement()) < exports.size()) {
+                    try {
+                        exportOutput(exports.get(index), reportJobContext, baseFileName, useFolderHierarchy);
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+            }
+        };
+
+        List<FutureTask<Object>> workerTasks = new ArrayList<FutureTask<Object>>();
+        Executor exportExecutor = getExportExecutor();
+        int parallelism = Math.min(getMaxExportParallelism(), exports.size());
+        if (exportExecutor != null) {
+            for (int i = 1; i < parallelism; ++i) {
+                FutureTask<Object> workerTask = new FutureTask<Object>(createExportWorker(worker), null);
+                try {
+                    exportExecutor.execute(workerTask);
+                } catch (RejectedExecutionException e) {
+                    // the shared pool is saturated, the remaining outputs are exported by the started workers
+                    if (log.isDebugEnabled()) {
+                        log.debug("export executor rejected worker for job " + jobDetails.getId());
+                    }
+                    break;
+                }
+                workerTasks.add(workerTask);
+            }
+        }
+
+        // the job thread exports too
+        worker.run();
+
+        boolean interrupted = false;
+        for (FutureTask<Object> workerTask : workerTasks) {
+            while (true) {
+                try {
+                    workerTask.get();
+                    break;
+                } catch (InterruptedException e) {
+                    // stop the workers at the next cancellation check and wait for them to finish
+                    interrupted = true;
+                    cancelRequested = true;
+                } catch (ExecutionException e) {
+                    failure.compareAndSet(null, e.getCause());
+                    break;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+
+        Throwable exportFailure = failure.get();
+        if (exportFailure instanceof Exception) {
+            throw (Exception) exportFailure;
+        }
+        if (exportFailure instanceof Error) {
+            throw (Error) exportFailure;
+        }
+    }
+
+    protected void exportOutput(OutputExport export, ReportJobContext reportJobContext,
+            String baseFileName, boolean useFolderHierarchy) throws Exception {
+        Output output = export.output;
+        if (export.result != null) {
+            isCancelRequested();
+            try {
+                export.reportOutput = output.getOutput(
+                        reportJobContext,
+                        export.result.getJasperPrint()
+                );
+            } catch (Exception e) {
+                String fileExtension = null;
+                final Map outputFormatMap = getOutputFormatMap();
+                for (Object currentExtension : outputFormatMap.keySet()) {
+                    if (outputFormatMap.get(currentExtension) == output) {
+                        fileExtension = currentExtension.toString();
+                        break;
+                    }
+                }
+                // log the error and continue with outputs generation
+                handleException(getMessage("report.scheduling.error.exporting.report", new Object[]{fileExtension}), e);
+                export.failed = true;
+                return;
+            }
+            isCancelRequested();
+        }
+
+        isCancelRequested();
+
+        if ((!useFolderHierarchy) && (jobDetails.getContentRepositoryDestination() != null) &&
+                (jobDetails.getContentRepositoryDestination().isSaveToRepository()) && (!export.reportOutput.getChildren().isEmpty())) {
+            // if not using hierarchy, but contains children and requires to save to repository.  regenerate the output with folder hierarchy
+            ReportJobContext reportRepositoryJobContext = getReportJobContext(baseFileName, true);
+            export.regenerateForRepository = true;
+            export.repositoryOutput = output.getOutput(
+                    reportRepositoryJobContext,
+                    export.result.getJasperPrint());
+            isCancelRequested();
+        }
+    }
+
+    /**
+     * Wraps an export worker so that it runs on a pool thread with the job user, locale and time zone.
+     */
+    protected Runnable createExportWorker(final Runnable worker) {
+        final SecurityContextProvider securityContextProvider = getSecurityContextProvider();
+        final String jobUsername = username;
+        final Locale locale = LocaleContextHolder.getLocale();
+        final TimeZone timeZone = TimeZoneContextHolder.getTimeZone();
+        return new Runnable() {
+            @Override
+            public void run() {
+                securityContextProvider.setAuthenticatedUser(jobUsername);
+                LocaleContextHolder.setLocale(locale);
+                if (timeZone != null) {
+                    TimeZoneContextHolder.setTimeZone(timeZone);
+                }
+                try {
+                    worker.run();
+                } finally {
+                    TimeZoneContextHolder.resetTimeZone();
+                    LocaleContextHolder.resetLocaleContext();
+                    securityContextProvider.revertAuthenticatedUser();
+                }
+            }
+        };
+    }
+
     protected ReportJobContext getReportJobContext(final String baseFilename, final boolean useRepository) {
     	return new ReportJobContext() {
 			@Override
@@ -694,10 +843,10 @@ public class ReportExecutionJob implements Job {
         //sort in an order that allows results to be reused for several pagination params
         Collections.sort(paginations, PaginationParamsExecutionComparator.instance());
 
-        // recording a data snapshot if saving is enabled or if we need to fill the report multiple times
+        // recording a data snapshot if saving is enabled or if we need to fill the report multiple times,
+        // in which case the fills after the first one replay the recorded data instead of querying again
         recordDataSnapshot = getDataSnapshotService().isSnapshotPersistenceEnabled() 
-                //FIXME detect common cases when multiple pagination params can use a single execution
-        		|| paginations.size() > 1;
+        		|| (paginations.size() > 1 && isSingleFillForPaginations());
         		
         for (PaginationParameters paginationParams : paginations) {
 			ReportUnitResult result = findMatchingResult(paginationParams);
@@ -706,6 +855,14 @@ public class ReportExecutionJob implements Job {
 				reportResults.put(paginationParams, result);
 			}
 		}
+
+        if (dataSnapshotReplays > 0) {
+            if (log.isDebugEnabled()) {
+                log.debug("job " + jobDetails.getId() + " replayed the data snapshot for "
+                        + dataSnapshotReplays + " report fills");
+            }
+            addDataSnapshotReplaysToAuditEvent(dataSnapshotReplays);
+        }
     }
 
 	protected ReportUnitResult findMatchingResult(PaginationParameters paginationParams) {
@@ -837,13 +994,31 @@ public class ReportExecutionJob implements Job {
         ReportUnitResult result = (ReportUnitResult) engineService.execute(executionContext, request);
         setReadOnly(result);
 
-        if (firstRun && getDataSnapshotService().isSnapshotPersistenceEnabled()) {
-            dataSnapshotRecorded();
+        if (firstRun) {
+            if (getDataSnapshotService().isSnapshotPersistenceEnabled()) {
+                dataSnapshotRecorded();
+            } else if (recordingSnapshot) {
+                // the snapshot is only kept in the report context for the next fills
+                DataCacheSnapshot dataSnapshot = getDataCacheProvider().getDataSnapshot(executionContext, reportContext);
+                recordedDataSnapshot = dataSnapshot != null;
+            }
+        } else if (useSnapshot && isDataSnapshotReplayed()) {
+            ++dataSnapshotReplays;
         }
 
         return result;
     }
 
+    /**
+     * Determines whether the last report fill used the populated data snapshot from the report context.
+     * If the snapshot was not usable, the fill ran the queries and the data cache handler was replaced.
+     */
+    protected boolean isDataSnapshotReplayed() {
+        DataCacheHandler cacheHandler = (DataCacheHandler) reportContext.getParameterValue(
+                DataCacheHandler.PARAMETER_DATA_CACHE_HANDLER);
+        return cacheHandler != null && cacheHandler.isSnapshotPopulated();
+    }
+
     protected void dataSnapshotRecorded() {
         DataCacheProvider dataCacheProvider = getDataCacheProvider();
         DataCacheSnapshot dataSnapshot = dataCacheProvider.getDataSnapshot(executionContext, reportContext);
@@ -979,6 +1154,7 @@ public class ReportExecutionJob implements Job {
         if (jobParams != null) {
             params.putAll(jobParams);
         }
+        params.remove(JOB_PARAMETER_MAX_EXPORT_PARALLELISM);
         putAdditionalParameters(params);
         return params;
     }
@@ -1235,6 +1411,12 @@ public class ReportExecutionJob implements Job {
         return value.equalsIgnoreCase("true");
     }
 
+    protected boolean isSingleFillForPaginations() {
+        String value = (String) schedulerContext.get(SCHEDULER_CONTEXT_KEY_SINGLE_FILL_FOR_PAGINATIONS);
+        if (value == null) return false;
+        return value.equalsIgnoreCase("true");
+    }
+
     protected boolean isDisableSendingAlertToAdmin() {
         String value = (String) schedulerContext.get(SCHEDULER_CONTEXT_KEY_DISABLE_SENDING_ALERT_TO_ADMIN);
         if (value == null) return false;
@@ -1247,6 +1429,34 @@ public class ReportExecutionJob implements Job {
         return value.equalsIgnoreCase("true");
     }
 
+    protected Executor getExportExecutor() {
+        return (Executor) schedulerContext.get(SCHEDULER_CONTEXT_KEY_EXPORT_EXECUTOR);
+    }
+
+    /**
+     * Returns the maximum number of output formats exported concurrently,
+     * from the job parameters if set, otherwise from the scheduler configuration.
+     */
+    protected int getMaxExportParallelism() {
+        Object value = null;
+        Map jobParams = jobDetails.getSource().getParametersMap();
+        if (jobParams != null) {
+            value = jobParams.get(JOB_PARAMETER_MAX_EXPORT_PARALLELISM);
+        }
+        if (value == null) {
+            value = schedulerContext.get(SCHEDULER_CONTEXT_KEY_MAX_EXPORT_PARALLELISM);
+        }
+        if (value == null) return 1;
+        try {
+            int parallelism = value instanceof Number ? ((Number) value).intValue()
+                    : Integer.parseInt(value.toString().trim());
+            return Math.max(parallelism, 1);
+        } catch (NumberFormatException e) {
+            log.warn("Invalid export parallelism " + value + " for job " + jobDetails.getId());
+            return 1;
+        }
+    }
+
     protected Map getOutputFormatMap() {
         return (Map) schedulerContext.get(SCHEDULER_CONTEXT_KEY_OUTPUT_FORMAT_MAP);
     }
@@ -1268,10 +1478,26 @@ public class ReportExecutionJob implements Job {
                 (DataContainerFactory) schedulerContext.get(SCHEDULER_CONTEXT_KEY_DATA_CONTAINER_FACTORY);
         DataContainer dataContainer = factory.createDataContainer();
         // keep for clear()
-        dataContainers.put(dataContainer, Boolean.TRUE);
+        synchronized (dataContainers) {
+            dataContainers.put(dataContainer, Boolean.TRUE);
+        }
         return dataContainer;
     }
 
+    protected static class OutputExport {
+        protected final Output output;
+        protected final ReportUnitResult result;
+        protected ReportOutput reportOutput;
+        protected boolean regenerateForRepository;
+        protected ReportOutput repositoryOutput;
+        protected boolean failed;
+
+        protected OutputExport(Output output, ReportUnitResult result) {
+            this.output = output;
+            this.result = result;
+        }
+    }
+
     protected class CancelRequestException extends JSException {
 
         public CancelRequestException() {
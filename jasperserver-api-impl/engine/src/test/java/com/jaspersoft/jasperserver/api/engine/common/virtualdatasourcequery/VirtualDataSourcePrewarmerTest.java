@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2005 - 2020 TIBCO Software Inc. All rights reserved.
+ * http://www.jaspersoft.com.
+ *
+ * Unless you have purchased a commercial license agreement from Jaspersoft,
+ * the following license terms apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jaspersoft.jasperserver.api.engine.common.virtualdatasourcequery;
+
+import com.jaspersoft.jasperserver.api.common.domain.ExecutionContext;
+import com.jaspersoft.jasperserver.api.metadata.common.domain.Resource;
+import com.jaspersoft.jasperserver.api.metadata.common.domain.ResourceReference;
+import com.jaspersoft.jasperserver.api.metadata.common.service.RepositoryService;
+import com.jaspersoft.jasperserver.api.metadata.jasperreports.domain.VirtualReportDataSource;
+import com.jaspersoft.jasperserver.api.metadata.user.service.ProfileAttributesResolver;
+import com.jaspersoft.jasperserver.api.metadata.view.domain.FilterCriteria;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.context.event.ContextRefreshedEvent;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+/**
+ * @version $Id$
+ */
+public class VirtualDataSourcePrewarmerTest {
+    private RepositoryService repositoryService;
+    private VirtualDataSourceHandler virtualDataSourceHandler;
+    private ProfileAttributesResolver profileAttributesResolver;
+    private VirtualDataSourcePrewarmer prewarmer;
+
+    @Before
+    public void setup() {
+        repositoryService = mock(RepositoryService.class);
+        virtualDataSourceHandler = mock(VirtualDataSourceHandler.class);
+        profileAttributesResolver = mock(ProfileAttributesResolver.class);
+        prewarmer = new VirtualDataSourcePrewarmer();
+        prewarmer.setRepositoryService(repositoryService);
+        prewarmer.setVirtualDataSourceHandler(virtualDataSourceHandler);
+        prewarmer.setProfileAttributesResolver(profileAttributesResolver);
+    }
+
+    @Test
+    public void onApplicationEvent_disabled_nothingPrewarmed() {
+        prewarmer.onApplicationEvent(mock(ContextRefreshedEvent.class));
+
+        verifyZeroInteractions(repositoryService, virtualDataSourceHandler);
+    }
+
+    @Test
+    public void prewarm_opensAndClosesConnection() throws Exception {
+        VirtualReportDataSource virtualDataSource = virtualDataSource("/vds", "/ds");
+        Connection connection = mockConnection(virtualDataSource);
+        when(repositoryService.loadClientResources(any(FilterCriteria.class))).thenReturn(Collections.singletonList(virtualDataSource));
+
+        prewarm();
+
+        verify(connection).close();
+    }
+
+    @Test
+    public void prewarm_parametrizedVirtualDataSource_skipped() throws Exception {
+        VirtualReportDataSource virtualDataSource = virtualDataSource("/vds", "/parametrized");
+        Resource parametrized = mock(Resource.class);
+        when(repositoryService.getResource(any(ExecutionContext.class), eq("/parametrized"))).thenReturn(parametrized);
+        when(profileAttributesResolver.isParametrizedResource(parametrized)).thenReturn(true);
+        when(repositoryService.loadClientResources(any(FilterCriteria.class))).thenReturn(Collections.singletonList(virtualDataSource));
+
+        prewarm();
+
+        verify(virtualDataSourceHandler, never()).getSqlDataSource(any(ExecutionContext.class), eq(virtualDataSource));
+    }
+
+    @Test
+    public void prewarm_maxDataSources_limitsPrewarmedDataSources() throws Exception {
+        VirtualReportDataSource first = virtualDataSource("/vds1", "/ds");
+        VirtualReportDataSource second = virtualDataSource("/vds2", "/ds");
+        mockConnection(first);
+        when(repositoryService.loadClientResources(any(FilterCriteria.class))).thenReturn(Arrays.asList(first, second));
+        prewarmer.setMaxDataSources(1);
+
+        prewarm();
+
+        verify(virtualDataSourceHandler).getSqlDataSource(any(ExecutionContext.class), eq(first));
+        verify(virtualDataSourceHandler, never()).getSqlDataSource(any(ExecutionContext.class), eq(second));
+    }
+
+    @Test
+    public void prewarm_failure_otherVirtualDataSourcesPrewarmed() throws Exception {
+        VirtualReportDataSource failing = virtualDataSource("/failing", "/ds");
+        DataSource failingDataSource = mock(DataSource.class);
+        when(failingDataSource.getConnection()).thenThrow(new SQLException("Unable to deploy VDB"));
+        when(virtualDataSourceHandler.getSqlDataSource(any(ExecutionContext.class), eq(failing))).thenReturn(failingDataSource);
+        VirtualReportDataSource virtualDataSource = virtualDataSource("/vds", "/ds");
+        Connection connection = mockConnection(virtualDataSource);
+        when(repositoryService.loadClientResources(any(FilterCriteria.class))).thenReturn(Arrays.asList(failing, virtualDataSource));
+
+        prewarm();
+
+        verify(connection).close();
+    }
+
+    private void prewarm() throws InterruptedException {
+        ExecutorService threadPool = Executors.newSingleThreadExecutor();
+        prewarmer.prewarm(threadPool);
+        threadPool.shutdown();
+        assertTrue(threadPool.awaitTermination(10, TimeUnit.SECONDS));
+    }
+
+    private VirtualReportDataSource virtualDataSource(String uri, String subDataSourceUri) {
+        VirtualReportDataSource virtualDataSource = mock(VirtualReportDataSource.class);
+        when(virtualDataSource.getURIString()).thenReturn(uri);
+        when(virtualDataSource.getDataSourceUriMap()).thenReturn(
+                Collections.singletonMap("ds", new ResourceReference(subDataSourceUri)));
+        return virtualDataSource;
+    }
+
+    private Connection mockConnection(VirtualReportDataSource virtualDataSource) throws Exception {
+        Connection connection = mock(Connection.class);
+        DataSource dataSource = mock(DataSource.class);
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(virtualDataSourceHandler.getSqlDataSource(any(ExecutionContext.class), eq(virtualDataSource))).thenReturn(dataSource);
+        return connection;
+    }
+}
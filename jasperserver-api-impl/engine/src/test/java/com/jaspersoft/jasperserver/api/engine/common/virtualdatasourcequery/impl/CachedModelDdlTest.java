@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2005 - 2020 TIBCO Software Inc. All rights reserved.
+ * http://www.jaspersoft.com.
+ *
+ * Unless you have purchased a commercial license agreement from Jaspersoft,
+ * the following license terms apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jaspersoft.jasperserver.api.engine.common.virtualdatasourcequery.impl;
+
+import org.teiid.adminapi.Model;
+import org.teiid.adminapi.impl.ModelMetaData;
+import org.teiid.runtime.EmbeddedConfiguration;
+import org.teiid.runtime.EmbeddedServer;
+import org.teiid.translator.jdbc.JDBCExecutionFactory;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * Checks that a model deployed from the DDL cached by {@link VirtualSchemaMetadataCache} has the same metadata
+ * as the model imported natively by the JDBC translator.  The sub data source is a VDB of the same Teiid
+ * embedded server, read through the Teiid JDBC driver.
+ *
+ * @version $Id$
+ */
+public class CachedModelDdlTest {
+
+    private static final String MODEL_NAME = "foodmart_public";
+    private static final String SOURCE_DDL =
+            "CREATE VIEW customer (id integer NOT NULL, name string(100) NOT NULL, balance bigdecimal(10,2), " +
+            "created timestamp, active boolean, PRIMARY KEY (id)) AS " +
+            "SELECT 1, 'Alice', CAST(12.5 AS bigdecimal), CAST('2020-01-01 00:00:00' AS timestamp), TRUE;\n" +
+            "CREATE VIEW sales_order (id long NOT NULL, customer_id integer, amount double, note string(4000), " +
+            "PRIMARY KEY (id), FOREIGN KEY (customer_id) REFERENCES customer (id)) AS " +
+            "SELECT CAST(1 AS long), 1, CAST(9.99 AS double), 'first order';";
+
+    private EmbeddedServer server;
+    private final AtomicInteger sourceConnections = new AtomicInteger();
+
+    @BeforeClass
+    public void startServer() throws Exception {
+        server = new EmbeddedServer();
+        server.start(new EmbeddedConfiguration());
+
+        ModelMetaData source = new ModelMetaData();
+        source.setName("source");
+        source.setModelType(Model.Type.VIRTUAL);
+        source.setSchemaSourceType("ddl");
+        source.setSchemaText(SOURCE_DDL);
+        server.deployVDB("source", source);
+
+        JDBCExecutionFactory executionFactory = new JDBCExecutionFactory();
+        executionFactory.start();
+        server.addTranslator("jdbc", executionFactory);
+        server.addConnectionFactory("java:/foodmart", new SourceDataSource());
+    }
+
+    @AfterClass
+    public void stopServer() {
+        if (server != null) server.stop();
+    }
+
+    @Test
+    public void modelDeployedFromCachedDdl_matchesNativeImport() throws Exception {
+        server.deployVDB("native_vds", createModel("native", null));
+        Assert.assertTrue(sourceConnections.get() > 0, "Native import did not read the sub data source");
+        String ddl = server.getSchemaDdl("native_vds", MODEL_NAME);
+        Assert.assertTrue(ddl.contains("FOREIGN KEY"), ddl);
+
+        sourceConnections.set(0);
+        server.deployVDB("cached_vds", createModel("ddl", ddl));
+
+        Assert.assertEquals(sourceConnections.get(), 0, "Deployment from cached DDL read the sub data source");
+        Assert.assertEquals(server.getSchemaDdl("cached_vds", MODEL_NAME), ddl);
+        for (String systemTable : new String[] {"SYS.Tables", "SYS.Columns", "SYS.Keys", "SYS.KeyColumns"}) {
+            Assert.assertEquals(getSystemRows("cached_vds", systemTable), getSystemRows("native_vds", systemTable), systemTable);
+        }
+    }
+
+    // builds the model the way TeiidVirtualDataSourceQueryServiceImpl builds models of JDBC sub data sources
+    private ModelMetaData createModel(String schemaSourceType, String schemaText) {
+        Properties importProperties = new Properties();
+        new TeiidVirtualDataSourceQueryServiceImpl().setDefaultImportProperties("source", MODEL_NAME, "java:/foodmart", null, importProperties);
+        importProperties.setProperty("importer.schemaPattern", "source");
+        importProperties.setProperty("importer.tableTypes", "TABLE,VIEW");
+        importProperties.setProperty("importer.importKeys", Boolean.TRUE.toString());
+        importProperties.setProperty("importer.importForeignKeys", Boolean.TRUE.toString());
+
+        ModelMetaData model = new ModelMetaData();
+        model.setName(MODEL_NAME);
+        model.setModelType(Model.Type.PHYSICAL);
+        model.setProperties(importProperties);
+        model.setSchemaSourceType(schemaSourceType);
+        if (schemaText != null) model.setSchemaText(schemaText);
+        model.addSourceMapping("foodmart", "jdbc", "java:/foodmart");
+        return model;
+    }
+
+    // returns the rows of the system table describing the model, without the VDB name and generated identifiers
+    private List<String> getSystemRows(String vdbName, String systemTable) throws SQLException {
+        List<String> rows = new ArrayList<String>();
+        Connection connection = server.getDriver().connect("jdbc:teiid:" + vdbName, new Properties());
+        try {
+            Statement statement = connection.createStatement();
+            ResultSet resultSet = statement.executeQuery("SELECT * FROM " + systemTable + " WHERE SchemaName = '" + MODEL_NAME + "'");
+            ResultSetMetaData metaData = resultSet.getMetaData();
+            while (resultSet.next()) {
+                StringBuilder row = new StringBuilder();
+                for (int i = 1; i <= metaData.getColumnCount(); i++) {
+                    String column = metaData.getColumnLabel(i);
+                    if (column.equalsIgnoreCase("VDBName") || column.toUpperCase().endsWith("UID") || column.toUpperCase().endsWith("OID")) continue;
+                    row.append(column).append('=').append(resultSet.getObject(i)).append(' ');
+                }
+                rows.add(row.toString());
+            }
+        } finally {
+            connection.close();
+        }
+        Assert.assertFalse(rows.isEmpty(), systemTable + " has no rows for " + MODEL_NAME + " in " + vdbName);
+        Collections.sort(rows);
+        return rows;
+    }
+
+    // connects to the source VDB through the Teiid JDBC driver, counting the connections
+    private class SourceDataSource implements DataSource {
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            sourceConnections.incrementAndGet();
+            return server.getDriver().connect("jdbc:teiid:source", new Properties());
+        }
+
+        @Override
+        public Connection getConnection(String username, String password) throws SQLException {
+            return getConnection();
+        }
+
+        @Override
+        public PrintWriter getLogWriter() {
+            return null;
+        }
+
+        @Override
+        public void setLogWriter(PrintWriter out) {
+        }
+
+        @Override
+        public void setLoginTimeout(int seconds) {
+        }
+
+        @Override
+        public int getLoginTimeout() {
+            return 0;
+        }
+
+        @Override
+        public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+            throw new SQLFeatureNotSupportedException();
+        }
+
+        @Override
+        public <T> T unwrap(Class<T> iface) throws SQLException {
+            throw new SQLException("Not a wrapper");
+        }
+
+        @Override
+        public boolean isWrapperFor(Class<?> iface) {
+            return false;
+        }
+    }
+}
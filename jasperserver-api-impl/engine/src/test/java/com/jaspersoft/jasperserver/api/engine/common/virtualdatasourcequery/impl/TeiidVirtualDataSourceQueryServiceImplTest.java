@@ -21,11 +21,23 @@
 
 package com.jaspersoft.jasperserver.api.engine.common.virtualdatasourcequery.impl;
 
+import com.jaspersoft.jasperserver.api.common.virtualdatasourcequery.DataSource;
+import com.jaspersoft.jasperserver.api.common.virtualdatasourcequery.VirtualDataSourceException;
 import com.jaspersoft.jasperserver.api.metadata.jasperreports.domain.JdbcReportDataSource;
+import org.teiid.adminapi.impl.ModelMetaData;
 import org.testng.annotations.Test;
 import org.testng.Assert;
 
+import java.sql.Connection;
+import java.sql.SQLException;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.Assert.assertEquals;
 import static org.mockito.Mockito.mock;
@@ -105,4 +117,225 @@ public class TeiidVirtualDataSourceQueryServiceImplTest {
         return importPropertyMap;
     }
 
+    @Test
+    public void createConnectionFactory_concurrentRequestsWaitForSinglePreparation() throws Exception {
+        PreparationTrackingService service = new PreparationTrackingService();
+        service.buildReleased = new CountDownLatch(1);
+
+        Request<TeiidConnectionFactoryImpl> first = new Request<TeiidConnectionFactoryImpl>(createConnectionFactory(service));
+        Assert.assertTrue(service.buildStarted.await(10, TimeUnit.SECONDS));
+        Request<TeiidConnectionFactoryImpl> second = new Request<TeiidConnectionFactoryImpl>(createConnectionFactory(service));
+        second.awaitWaiting();
+        service.buildReleased.countDown();
+
+        Assert.assertEquals(first.get(10, TimeUnit.SECONDS).getSchemas(), Collections.singleton("vds_schema"));
+        Assert.assertEquals(second.get(10, TimeUnit.SECONDS).getSchemas(), Collections.singleton("vds_schema"));
+        Assert.assertEquals(service.builds.get(), 1);
+        Assert.assertEquals(service.deployments.get(), 1);
+    }
+
+    @Test
+    public void createConnectionFactory_deploysBeforeReturning() throws Exception {
+        PreparationTrackingService service = new PreparationTrackingService();
+
+        createConnectionFactory(service).call();
+        Assert.assertTrue(service.deployed.contains("vds"));
+        createConnectionFactory(service).call();
+
+        Assert.assertEquals(service.builds.get(), 1);
+        Assert.assertEquals(service.deployments.get(), 1);
+    }
+
+    @Test
+    public void createConnectionFactory_failurePropagatedToWaitingRequests() throws Exception {
+        PreparationTrackingService service = new PreparationTrackingService();
+        service.buildReleased = new CountDownLatch(1);
+        service.deployFailure = new VirtualDataSourceException("deployment failed");
+
+        Request<TeiidConnectionFactoryImpl> first = new Request<TeiidConnectionFactoryImpl>(createConnectionFactory(service));
+        Assert.assertTrue(service.buildStarted.await(10, TimeUnit.SECONDS));
+        Request<TeiidConnectionFactoryImpl> second = new Request<TeiidConnectionFactoryImpl>(createConnectionFactory(service));
+        second.awaitWaiting();
+        service.buildReleased.countDown();
+
+        Assert.assertSame(getFailure(first), service.deployFailure);
+        Assert.assertSame(getFailure(second), service.deployFailure);
+        Assert.assertEquals(service.builds.get(), 1);
+
+        // a failed preparation is not remembered, the next request prepares the virtual data source again
+        service.deployFailure = null;
+        createConnectionFactory(service).call();
+        Assert.assertEquals(service.builds.get(), 2);
+        Assert.assertTrue(service.deployed.contains("vds"));
+    }
+
+    @Test
+    public void deployVirtualDataSource_waitsForPreparationInProgress() throws Exception {
+        final PreparationTrackingService service = new PreparationTrackingService();
+        service.buildReleased = new CountDownLatch(1);
+
+        Request<TeiidConnectionFactoryImpl> preparation = new Request<TeiidConnectionFactoryImpl>(createConnectionFactory(service));
+        Assert.assertTrue(service.buildStarted.await(10, TimeUnit.SECONDS));
+        Request<Boolean> deployment = new Request<Boolean>(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                service.deployVirtualDataSource("vds", null);
+                return service.deployed.contains("vds");
+            }
+        });
+        deployment.awaitWaiting();
+        service.buildReleased.countDown();
+
+        preparation.get(10, TimeUnit.SECONDS);
+        Assert.assertTrue(deployment.get(10, TimeUnit.SECONDS));
+        Assert.assertEquals(service.deployments.get(), 1);
+    }
+
+    @Test
+    public void createConnection_whileVirtualDataSourceIsLoading_waitsUntilItIsActive() throws Exception {
+        PreparationTrackingService service = new PreparationTrackingService();
+        service.loading = true;
+
+        Request<TeiidConnectionFactoryImpl> first = new Request<TeiidConnectionFactoryImpl>(createConnectionFactory(service));
+        Assert.assertTrue(service.connectionAttempted.await(10, TimeUnit.SECONDS));
+        Assert.assertFalse(first.isDone());
+        // the VDB is deployed but still loading, the factory of the second request waits for it when a connection is created
+        final TeiidConnectionFactoryImpl factory = createConnectionFactory(service).call();
+        Assert.assertEquals(factory.getCatalogs(), Collections.singleton("vds"));
+        Request<Connection> connection = new Request<Connection>(new Callable<Connection>() {
+            @Override
+            public Connection call() throws Exception {
+                return factory.createConnection();
+            }
+        });
+        connection.awaitWaiting();
+        service.loading = false;
+
+        Assert.assertEquals(first.get(10, TimeUnit.SECONDS).getSchemas(), Collections.singleton("vds_schema"));
+        Assert.assertNotNull(connection.get(10, TimeUnit.SECONDS));
+        Assert.assertEquals(service.builds.get(), 1);
+        Assert.assertEquals(service.deployments.get(), 1);
+    }
+
+    @Test
+    public void createConnectionFactory_virtualDataSourceNotActiveInTime_undeploysIt() throws Exception {
+        PreparationTrackingService service = new PreparationTrackingService();
+        service.loading = true;
+        service.setVdbLoadingTimeoutInSeconds(0);
+
+        try {
+            createConnectionFactory(service).call();
+            Assert.fail("Preparation of a virtual data source which is still loading did not fail");
+        } catch (VirtualDataSourceException ex) {
+            Assert.assertEquals(ex.getVirtualDataSourceID(), "vds");
+        }
+        Assert.assertFalse(service.deployed.contains("vds"));
+    }
+
+    @Test
+    public void createConnectionFactory_virtualDataSourceNotDeployedByThisService_deploysTemporaryOne() throws Exception {
+        PreparationTrackingService service = new PreparationTrackingService();
+        // the VDB is in the server, but it is unknown whether it finished loading
+        service.deployed.add("vds");
+
+        TeiidConnectionFactoryImpl factory = createConnectionFactory(service).call();
+
+        String temporaryName = factory.getCatalogs().iterator().next();
+        Assert.assertNotEquals(temporaryName, "vds");
+        Assert.assertTrue(temporaryName.startsWith("vds"));
+        Assert.assertTrue(service.deployed.contains(temporaryName));
+        Assert.assertEquals(service.builds.get(), 1);
+    }
+
+    private Callable<TeiidConnectionFactoryImpl> createConnectionFactory(final TeiidVirtualDataSourceQueryServiceImpl service) {
+        return new Callable<TeiidConnectionFactoryImpl>() {
+            @Override
+            public TeiidConnectionFactoryImpl call() throws Exception {
+                return (TeiidConnectionFactoryImpl) service.createConnectionFactory("vds", new ArrayList<String>(), new ArrayList<String>(),
+                        new ArrayList<DataSource>(), "/vds");
+            }
+        };
+    }
+
+    private Throwable getFailure(Request<?> request) throws Exception {
+        try {
+            request.get(10, TimeUnit.SECONDS);
+        } catch (ExecutionException ex) {
+            return ex.getCause();
+        }
+        Assert.fail("Preparation failure was not propagated");
+        return null;
+    }
+
+    // runs the callable on its own thread
+    private static class Request<T> extends FutureTask<T> {
+        private final Thread thread;
+
+        Request(Callable<T> callable) {
+            super(callable);
+            thread = new Thread(this);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        // waits until the request blocks, the only untimed wait is for a preparation started by another request
+        void awaitWaiting() throws InterruptedException {
+            long deadline = System.currentTimeMillis() + 10000;
+            while (thread.getState() != Thread.State.WAITING) {
+                Assert.assertTrue(System.currentTimeMillis() < deadline, "Request did not wait for the preparation in progress");
+                Thread.sleep(10);
+            }
+        }
+    }
+
+    // prepares a virtual data source without the Teiid embedded server, counting builds and deployments
+    private static class PreparationTrackingService extends TeiidVirtualDataSourceQueryServiceImpl {
+        final AtomicInteger builds = new AtomicInteger();
+        final AtomicInteger deployments = new AtomicInteger();
+        final CountDownLatch buildStarted = new CountDownLatch(1);
+        volatile CountDownLatch buildReleased = new CountDownLatch(0);
+        final CountDownLatch connectionAttempted = new CountDownLatch(1);
+        volatile VirtualDataSourceException deployFailure;
+        // Teiid rejects connections to the deployed VDBs while loading
+        volatile boolean loading;
+        final Set<String> deployed = ConcurrentHashMap.newKeySet();
+
+        @Override
+        public boolean isVirtualDataSourceExisted(String virtualDSName) {
+            return deployed.contains(virtualDSName);
+        }
+
+        @Override
+        protected List<ModelMetaData> buildModelMetaData(String virtualDSName, List<String> dataSourceNames, List<String> subDataSourceIDs,
+                                                         List<DataSource> subDataSources, String virtualDataSourceUri) throws Exception {
+            builds.incrementAndGet();
+            buildStarted.countDown();
+            Assert.assertTrue(buildReleased.await(10, TimeUnit.SECONDS));
+            ModelMetaData modelMetaData = new ModelMetaData();
+            modelMetaData.setName("vds_schema");
+            return Collections.singletonList(modelMetaData);
+        }
+
+        @Override
+        protected void doDeployVirtualDataSource(String virtualDSName, List<ModelMetaData> modelMetaDataList) throws SQLException {
+            deployments.incrementAndGet();
+            if (deployFailure != null) throw deployFailure;
+            deployed.add(virtualDSName);
+        }
+
+        @Override
+        protected Connection createConnection(String virtualDataSourceName) throws SQLException {
+            connectionAttempted.countDown();
+            if (loading) {
+                throw new SQLException("TEIID31099 VDB " + virtualDataSourceName + ".1 is not in the ACTIVE state, but rather LOADING.");
+            }
+            return mock(Connection.class);
+        }
+
+        @Override
+        public void undeployVirtualDataSource(String virtualDSName) {
+            deployed.remove(virtualDSName);
+        }
+    }
+
 }
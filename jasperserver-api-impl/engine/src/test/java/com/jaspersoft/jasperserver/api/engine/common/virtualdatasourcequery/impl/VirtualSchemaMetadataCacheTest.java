@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2005 - 2020 TIBCO Software Inc. All rights reserved.
+ * http://www.jaspersoft.com.
+ *
+ * Unless you have purchased a commercial license agreement from Jaspersoft,
+ * the following license terms apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jaspersoft.jasperserver.api.engine.common.virtualdatasourcequery.impl;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * @version $Id$
+ */
+public class VirtualSchemaMetadataCacheTest {
+
+    private File directory;
+    private VirtualSchemaMetadataCache cache;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("vdsMetadataCache").toFile();
+        cache = new VirtualSchemaMetadataCache();
+        cache.setDirectory(directory);
+        cache.setModelDdlEnabled(true);
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        cache.clear();
+        new File(directory, VirtualSchemaMetadataCache.FORMAT_VERSION).delete();
+        directory.delete();
+    }
+
+    @Test
+    public void getSchemas_returnsSchemasInOrder() {
+        String key = cache.getKey("jdbc:postgresql://localhost/foodmart|org.postgresql.Driver|user|password", "/datasources/foodmart", 1, new Date(1000L));
+        Set<String> schemas = new LinkedHashSet<String>(Arrays.asList("public", "sales", "Schema with = and :"));
+
+        Assert.assertNull(cache.getSchemas(key));
+        cache.putSchemas(key, schemas);
+
+        VirtualSchemaMetadataCache restartedCache = new VirtualSchemaMetadataCache();
+        restartedCache.setDirectory(directory);
+        Assert.assertEquals(restartedCache.getSchemas(key).toArray(), schemas.toArray());
+    }
+
+    @Test
+    public void getKey_changesWithResourceVersionAndConnection() {
+        Date updateDate = new Date(1000L);
+        String key = cache.getKey("connection", "/datasources/foodmart", 1, updateDate);
+
+        Assert.assertEquals(cache.getKey("connection", "/datasources/foodmart", 1, new Date(1000L)), key);
+        Assert.assertNotEquals(cache.getKey("connection", "/datasources/foodmart", 2, updateDate), key);
+        Assert.assertNotEquals(cache.getKey("connection", "/datasources/foodmart", 1, new Date(2000L)), key);
+        Assert.assertNotEquals(cache.getKey("other connection", "/datasources/foodmart", 1, updateDate), key);
+        Assert.assertFalse(key.contains("connection"));
+    }
+
+    @Test
+    public void getModelDdl_isKeyedByModelNameAndImportProperties() {
+        String key = cache.getKey("connection", "/datasources/foodmart", 1, null);
+        Properties importProperties = new Properties();
+        importProperties.setProperty("importer.schemaPattern", "public");
+        String modelKey = cache.getModelKey("foodmart_public", importProperties);
+        cache.putModelDdl(key, modelKey, "CREATE FOREIGN TABLE sales (id integer);");
+
+        Assert.assertEquals(cache.getModelDdl(key, modelKey), "CREATE FOREIGN TABLE sales (id integer);");
+        Assert.assertNull(cache.getModelDdl(key, cache.getModelKey("foodmart_sales", importProperties)));
+
+        importProperties.setProperty("importer.importKeys", "false");
+        Assert.assertNull(cache.getModelDdl(key, cache.getModelKey("foodmart_public", importProperties)));
+    }
+
+    @Test
+    public void remove_dropsAllEntriesOfSubDataSource() {
+        String key = cache.getKey("connection", "/datasources/foodmart", 1, null);
+        String modelKey = cache.getModelKey("foodmart", null);
+        cache.putSchemas(key, new LinkedHashSet<String>(Arrays.asList("public")));
+        cache.putModelDdl(key, modelKey, "CREATE FOREIGN TABLE sales (id integer);");
+
+        cache.remove(key);
+
+        Assert.assertNull(cache.getSchemas(key));
+        Assert.assertNull(cache.getModelDdl(key, modelKey));
+    }
+
+    @Test
+    public void init_removesUnusedEntries() {
+        String usedKey = cache.getKey("connection", "/datasources/foodmart", 1, null);
+        String unusedKey = cache.getKey("connection", "/datasources/sugarcrm", 1, null);
+        cache.putSchemas(usedKey, new LinkedHashSet<String>(Arrays.asList("public")));
+        cache.putSchemas(unusedKey, new LinkedHashSet<String>(Arrays.asList("public")));
+        cache.getEntryDirectory(unusedKey).setLastModified(System.currentTimeMillis() - 31L * 24 * 60 * 60 * 1000);
+
+        cache.init();
+
+        Assert.assertNotNull(cache.getSchemas(usedKey));
+        Assert.assertNull(cache.getSchemas(unusedKey));
+    }
+
+    @Test
+    public void getSchemas_entryWrittenBeforeRefreshInterval_notUsedEvenIfRead() {
+        String key = cache.getKey("connection", "/datasources/foodmart", 1, null);
+        cache.putSchemas(key, new LinkedHashSet<String>(Arrays.asList("public")));
+        File schemasFile = new File(cache.getEntryDirectory(key), VirtualSchemaMetadataCache.SCHEMAS_FILE);
+        schemasFile.setLastModified(System.currentTimeMillis() - 23L * 60 * 60 * 1000);
+        Assert.assertNotNull(cache.getSchemas(key));
+
+        schemasFile.setLastModified(System.currentTimeMillis() - 25L * 60 * 60 * 1000);
+        Assert.assertNull(cache.getSchemas(key));
+
+        cache.putSchemas(key, new LinkedHashSet<String>(Arrays.asList("public", "sales")));
+        Assert.assertEquals(cache.getSchemas(key).toArray(), new Object[] {"public", "sales"});
+    }
+
+    @Test
+    public void getModelDdl_entryWrittenBeforeRefreshInterval_notUsed() {
+        cache.setRefreshIntervalInHours(1);
+        String key = cache.getKey("connection", "/datasources/foodmart", 1, null);
+        String modelKey = cache.getModelKey("foodmart", null);
+        cache.putModelDdl(key, modelKey, "CREATE FOREIGN TABLE sales (id integer);");
+        new File(cache.getEntryDirectory(key), modelKey + VirtualSchemaMetadataCache.DDL_SUFFIX)
+                .setLastModified(System.currentTimeMillis() - 2L * 60 * 60 * 1000);
+
+        Assert.assertNull(cache.getModelDdl(key, modelKey));
+
+        cache.setRefreshIntervalInHours(0);
+        Assert.assertEquals(cache.getModelDdl(key, modelKey), "CREATE FOREIGN TABLE sales (id integer);");
+    }
+
+    @Test
+    public void disabledCache_doesNotStoreEntries() {
+        cache.setEnabled(false);
+        String key = cache.getKey("connection", "/datasources/foodmart", 1, null);
+        cache.putSchemas(key, new LinkedHashSet<String>(Arrays.asList("public")));
+
+        cache.setEnabled(true);
+        Assert.assertNull(cache.getSchemas(key));
+    }
+
+    @Test
+    public void modelDdlDisabled_cachesOnlySchemas() {
+        cache.setModelDdlEnabled(false);
+        String key = cache.getKey("connection", "/datasources/foodmart", 1, null);
+        String modelKey = cache.getModelKey("foodmart", null);
+        cache.putSchemas(key, new LinkedHashSet<String>(Arrays.asList("public")));
+        cache.putModelDdl(key, modelKey, "CREATE FOREIGN TABLE sales (id integer);");
+
+        Assert.assertNotNull(cache.getSchemas(key));
+        cache.setModelDdlEnabled(true);
+        Assert.assertNull(cache.getModelDdl(key, modelKey));
+    }
+}
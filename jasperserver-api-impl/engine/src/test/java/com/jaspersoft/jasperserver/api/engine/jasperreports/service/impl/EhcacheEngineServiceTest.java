@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2005 - 2020 TIBCO Software Inc. All rights reserved.
+ * http://www.jaspersoft.com.
+ *
+ * Unless you have purchased a commercial license agreement from Jaspersoft,
+ * the following license terms apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jaspersoft.jasperserver.api.engine.jasperreports.service.impl;
+
+import com.jaspersoft.jasperserver.api.engine.common.service.EngineService;
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+import org.apache.commons.collections.OrderedMap;
+import org.apache.commons.collections.map.ListOrderedMap;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * @version $Id$
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class EhcacheEngineServiceTest {
+
+    @Mock
+    private EngineService engineService;
+
+    @Mock
+    private Ehcache cache;
+
+    private EhcacheEngineService ehcacheEngineService;
+
+    @Before
+    public void setUp() {
+        ehcacheEngineService = new EhcacheEngineService();
+        ehcacheEngineService.setEngineService(engineService);
+        ehcacheEngineService.setCache(cache);
+    }
+
+    @Test
+    public void executeQuery_cachedResult_noQueryExecution() {
+        OrderedMap cached = new ListOrderedMap();
+        when(cache.get("key")).thenReturn(new Element("key", cached));
+
+        OrderedMap result = ehcacheEngineService.executeQuery(null, null, "id", new String[]{"name"}, null,
+                parametersWithKey("key"), null, false);
+
+        assertSame(cached, result);
+        verify(engineService, never()).executeQuery(any(), any(), any(), any(), any(), any(), any(), anyBoolean());
+    }
+
+    @Test
+    public void executeQuery_timeToLive_setOnCachedElement() {
+        ehcacheEngineService.setQueryResultTimeToLive(30);
+
+        ehcacheEngineService.cacheQueryResult("key", new ListOrderedMap(), null, null);
+
+        ArgumentCaptor<Element> element = ArgumentCaptor.forClass(Element.class);
+        verify(cache).put(element.capture());
+        assertEquals("key", element.getValue().getObjectKey());
+        assertEquals(30, element.getValue().getTimeToLive());
+    }
+
+    @Test
+    public void executeQueryOnce_concurrentCallsForSameKey_executedOnce() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger executions = new AtomicInteger();
+        final OrderedMap value = new ListOrderedMap();
+        final Callable<OrderedMap> query = new Callable<OrderedMap>() {
+            public OrderedMap call() throws Exception {
+                executions.incrementAndGet();
+                started.countDown();
+                release.await(10, TimeUnit.SECONDS);
+                return value;
+            }
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<OrderedMap> first = executor.submit(new Callable<OrderedMap>() {
+                public OrderedMap call() {
+                    return ehcacheEngineService.executeQueryOnce("key", query);
+                }
+            });
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+            Future<OrderedMap> second = executor.submit(new Callable<OrderedMap>() {
+                public OrderedMap call() {
+                    return ehcacheEngineService.executeQueryOnce("key", query);
+                }
+            });
+            // give the second caller the chance to join the running query
+            Thread.sleep(100);
+            release.countDown();
+
+            assertSame(value, first.get(10, TimeUnit.SECONDS));
+            assertSame(value, second.get(10, TimeUnit.SECONDS));
+            assertEquals(1, executions.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private Map<String, Object> parametersWithKey(String key) {
+        Map<String, Object> parameters = new HashMap<String, Object>();
+        parameters.put(EhcacheEngineService.IC_CACHE_KEY, key);
+        return parameters;
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2005 - 2020 TIBCO Software Inc. All rights reserved.
+ * http://www.jaspersoft.com.
+ *
+ * Unless you have purchased a commercial license agreement from Jaspersoft,
+ * the following license terms apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.jaspersoft.jasperserver.api.engine.jasperreports.service.impl;
+
+import com.jaspersoft.jasperserver.api.engine.jasperreports.util.RepositoryCacheMap.CacheObject;
+import com.jaspersoft.jasperserver.api.engine.jasperreports.util.RepositoryResourceKey;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
+
+/**
+ * Measures the latency of the class loader setup done by {@link EngineServiceImpl}
+ * before each report fill, for report units with JARs and resource bundles
+ * whose class loaders are already cached.
+ *
+ * <p>
+ * Run with <code>mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.jaspersoft.jasperserver.api.engine.jasperreports.service.impl.ReportClassLoaderBenchmark</code>
+ * </p>
+ *
+ * @version $Id$
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReportClassLoaderBenchmark {
+
+    private static final int REPORT_UNIT_COUNT = 16;
+
+    private EngineServiceImpl engineService;
+    private ClassLoader parent;
+    private List<List> jarFiles;
+    private List<Map> resourceBundleKeys;
+    private List<File> tempFiles;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        engineService = new EngineServiceImpl();
+        parent = getClass().getClassLoader();
+        jarFiles = new ArrayList<List>();
+        resourceBundleKeys = new ArrayList<Map>();
+        tempFiles = new ArrayList<File>();
+
+        for (int i = 0; i < REPORT_UNIT_COUNT; i++) {
+            List jars = new ArrayList();
+            jars.add(new CacheObject(new JarFile(createJar(i)), true));
+            jarFiles.add(jars);
+
+            Map bundles = new HashMap();
+            String uri = "/reports/unit" + i + "_files/bundle.properties";
+            bundles.put("bundle.properties", new RepositoryResourceKey(uri, 1, new Date(0)));
+            resourceBundleKeys.add(bundles);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        for (List jars : jarFiles) {
+            ((JarFile) ((CacheObject) jars.get(0)).getObject()).close();
+        }
+        for (File file : tempFiles) {
+            file.delete();
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public ClassLoader fillSetup_1thread() {
+        return fillSetup();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public ClassLoader fillSetup_8threads() {
+        return fillSetup();
+    }
+
+    @Benchmark
+    @Threads(64)
+    public ClassLoader fillSetup_64threads() {
+        return fillSetup();
+    }
+
+    protected ClassLoader fillSetup() {
+        int unit = (int) (Thread.currentThread().getId() % REPORT_UNIT_COUNT);
+        ClassLoader jarsClassLoader = engineService.getJarsClassLoader(parent, jarFiles.get(unit));
+        return engineService.getResourcesClassLoader(jarsClassLoader, resourceBundleKeys.get(unit), false, null);
+    }
+
+    private File createJar(int index) throws IOException {
+        File file = File.createTempFile("report-benchmark-" + index, ".jar");
+        tempFiles.add(file);
+        JarOutputStream out = new JarOutputStream(new FileOutputStream(file));
+        try {
+            out.putNextEntry(new ZipEntry("resource" + index + ".txt"));
+            out.write(("resource " + index).getBytes("UTF-8"));
+            out.closeEntry();
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(ReportClassLoaderBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
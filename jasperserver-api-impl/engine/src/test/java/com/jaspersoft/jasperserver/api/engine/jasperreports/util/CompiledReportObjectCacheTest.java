@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2005 - 2020 TIBCO Software Inc. All rights reserved.
+ * http://www.jaspersoft.com.
+ *
+ * Unless you have purchased a commercial license agreement from Jaspersoft,
+ * the following license terms apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.jaspersoft.jasperserver.api.engine.jasperreports.util;
+
+import com.jaspersoft.jasperserver.api.metadata.common.domain.FileResource;
+import com.jaspersoft.jasperserver.api.metadata.common.domain.Resource;
+import net.sf.jasperreports.engine.JRException;
+import net.sf.jasperreports.engine.JasperReport;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Date;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link CompiledReportObjectCache}
+ *
+ * @version $Id$
+ */
+public class CompiledReportObjectCacheTest {
+
+    private static final String URI = "/reports/samples/main_jrxml";
+    private static final Date CREATION_DATE = new Date(1000L);
+
+    private CompiledReportObjectCache cache;
+
+    @Before
+    public void before() {
+        cache = new CompiledReportObjectCache(10, 0);
+    }
+
+    @Test
+    public void get_sameVersion_loadsOnce() throws Exception {
+        CountingLoader loader = new CountingLoader();
+
+        JasperReport first = cache.get(resource(URI, 1, CREATION_DATE), loader);
+        JasperReport second = cache.get(resource(URI, 1, CREATION_DATE), loader);
+
+        assertSame(first, second);
+        assertEquals(1, loader.count.get());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void get_newVersion_reloads() throws Exception {
+        CountingLoader loader = new CountingLoader();
+
+        JasperReport first = cache.get(resource(URI, 1, CREATION_DATE), loader);
+        JasperReport second = cache.get(resource(URI, 2, CREATION_DATE), loader);
+
+        assertNotSame(first, second);
+        assertEquals(2, loader.count.get());
+    }
+
+    @Test
+    public void get_recreatedResource_reloads() throws Exception {
+        CountingLoader loader = new CountingLoader();
+
+        cache.get(resource(URI, 1, CREATION_DATE), loader);
+        cache.get(resource(URI, 1, new Date(2000L)), loader);
+
+        assertEquals(2, loader.count.get());
+    }
+
+    @Test
+    public void invalidate_removesAllVersionsOfUri() throws Exception {
+        CountingLoader loader = new CountingLoader();
+        cache.get(resource(URI, 1, CREATION_DATE), loader);
+        cache.get(resource(URI, 2, CREATION_DATE), loader);
+        cache.get(resource("/reports/other_jrxml", 1, CREATION_DATE), loader);
+
+        cache.invalidate(URI);
+
+        assertEquals(1, cache.getSize());
+    }
+
+    @Test(expected = JRException.class)
+    public void get_loaderFails_rethrowsJRException() throws Exception {
+        cache.get(resource(URI, 1, CREATION_DATE), new Callable<JasperReport>() {
+            public JasperReport call() throws Exception {
+                throw new JRException("failed");
+            }
+        });
+    }
+
+    @Test
+    public void isCacheable_newResource_false() {
+        assertFalse(CompiledReportObjectCache.isCacheable(resource(URI, Resource.VERSION_NEW, CREATION_DATE)));
+        assertFalse(CompiledReportObjectCache.isCacheable(resource(URI, 1, null)));
+        assertTrue(CompiledReportObjectCache.isCacheable(resource(URI, 1, CREATION_DATE)));
+    }
+
+    private FileResource resource(String uri, int version, Date creationDate) {
+        FileResource resource = mock(FileResource.class);
+        when(resource.getURIString()).thenReturn(uri);
+        when(resource.getVersion()).thenReturn(version);
+        when(resource.getCreationDate()).thenReturn(creationDate);
+        return resource;
+    }
+
+    private static class CountingLoader implements Callable<JasperReport> {
+        final AtomicInteger count = new AtomicInteger();
+
+        public JasperReport call() {
+            count.incrementAndGet();
+            return mock(JasperReport.class);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2005 - 2020 TIBCO Software Inc. All rights reserved.
+ * http://www.jaspersoft.com.
+ *
+ * Unless you have purchased a commercial license agreement from Jaspersoft,
+ * the following license terms apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.jaspersoft.jasperserver.api.engine.jasperreports.util;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.ArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests for {@link ConcurrentPooledObjectCache}
+ *
+ * @version $Id$
+ */
+public class ConcurrentPooledObjectCacheTest {
+
+    private final ConcurrentPooledObjectCache cache = new ConcurrentPooledObjectCache();
+    private final AtomicInteger created = new AtomicInteger();
+    private final ConcurrentPooledObjectCache.PooledObjectFactory factory = new ConcurrentPooledObjectCache.PooledObjectFactory() {
+        public PooledObjectEntry create(Object key) {
+            created.incrementAndGet();
+            return new TestEntry(key, false);
+        }
+    };
+
+    @Test
+    public void get_existingKey_returnsSameEntry() {
+        PooledObjectEntry first = cache.get("key", 1000L, factory);
+        PooledObjectEntry second = cache.get("key", 2000L, factory);
+
+        assertSame(first, second);
+        assertEquals(1, created.get());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void removeExpired_idleEntry_removed() {
+        cache.get("idle", 1000L, factory);
+        cache.get("recent", 9000L, factory);
+
+        List<PooledObjectEntry> expired = cache.removeExpired(10000L, 5);
+
+        assertEquals(1, expired.size());
+        assertEquals("idle", expired.get(0).getKey());
+        assertEquals(1, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+        assertNull(cache.get("idle", 10000L));
+    }
+
+    @Test
+    public void removeExpired_activeEntry_kept() {
+        cache.put("active", new TestEntry("active", true), 1000L);
+
+        List<PooledObjectEntry> expired = cache.removeExpired(10000L, 5);
+
+        assertEquals(0, expired.size());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void get_afterExpiry_createsNewEntry() {
+        PooledObjectEntry first = cache.get("key", 1000L, factory);
+        cache.removeExpired(10000L, 5);
+
+        PooledObjectEntry second = cache.get("key", 10000L, factory);
+
+        assertNotSame(first, second);
+        assertEquals(2, created.get());
+    }
+
+    @Test
+    public void get_concurrentMisses_createOnce() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<PooledObjectEntry>> results = new ArrayList<Future<PooledObjectEntry>>();
+            for (int i = 0; i < 64; i++) {
+                results.add(executor.submit(new Callable<PooledObjectEntry>() {
+                    public PooledObjectEntry call() {
+                        return cache.get("key", System.currentTimeMillis(), factory);
+                    }
+                }));
+            }
+
+            PooledObjectEntry entry = results.get(0).get();
+            for (Future<PooledObjectEntry> result : results) {
+                assertSame(entry, result.get());
+            }
+            assertEquals(1, created.get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static class TestEntry extends PooledObjectEntry {
+        private final boolean active;
+
+        TestEntry(Object key, boolean active) {
+            super(key);
+            this.active = active;
+        }
+
+        @Override
+        public boolean isActive() {
+            return active;
+        }
+    }
+}
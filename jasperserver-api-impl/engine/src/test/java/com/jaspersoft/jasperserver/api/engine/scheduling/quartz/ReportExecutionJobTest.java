@@ -22,6 +22,10 @@ package com.jaspersoft.jasperserver.api.engine.scheduling.quartz;
 
 import com.jaspersoft.jasperserver.api.engine.common.service.EngineService;
 import com.jaspersoft.jasperserver.api.engine.common.service.SecurityContextProvider;
+import com.jaspersoft.jasperserver.api.engine.jasperreports.domain.impl.PaginationParameters;
+import com.jaspersoft.jasperserver.api.engine.jasperreports.domain.impl.ReportUnitRequest;
+import com.jaspersoft.jasperserver.api.engine.jasperreports.domain.impl.ReportUnitResult;
+import com.jaspersoft.jasperserver.api.engine.jasperreports.service.DataCacheProvider;
 import com.jaspersoft.jasperserver.api.engine.jasperreports.service.DataSnapshotService;
 import com.jaspersoft.jasperserver.api.engine.scheduling.domain.ReportJob;
 import com.jaspersoft.jasperserver.api.engine.scheduling.domain.ReportJobRepositoryDestination;
@@ -29,10 +33,14 @@ import com.jaspersoft.jasperserver.api.engine.scheduling.domain.ReportJobSource;
 import com.jaspersoft.jasperserver.api.engine.scheduling.service.ReportJobsPersistenceService;
 import com.jaspersoft.jasperserver.api.logging.context.LoggingContextProvider;
 import com.jaspersoft.jasperserver.api.metadata.common.service.RepositoryService;
+import com.jaspersoft.jasperserver.api.metadata.data.cache.DataCacheSnapshot;
 import com.jaspersoft.jasperserver.api.metadata.jasperreports.domain.ReportUnit;
+import net.sf.jasperreports.data.cache.DataCacheHandler;
+import net.sf.jasperreports.engine.JasperReport;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
@@ -44,11 +52,23 @@ import org.quartz.Trigger;
 import org.springframework.context.ApplicationContext;
 
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -99,6 +119,14 @@ public class ReportExecutionJobTest {
     private ReportJobRepositoryDestination reportJobRepositoryDestinationMock;
     @Mock
     private DataSnapshotService dataSnapshotServiceMock;
+    @Mock
+    private ReportUnitResult reportUnitResultMock;
+    @Mock
+    private DataCacheProvider dataCacheProviderMock;
+    @Mock
+    private DataCacheSnapshot dataCacheSnapshotMock;
+    @Mock
+    private JasperReport jasperReportMock;
 
     @Before
     public void setUp() throws Exception {
@@ -144,4 +172,91 @@ public class ReportExecutionJobTest {
         when(reportJobRepositoryDestinationMock.getTimestampPattern()).thenReturn(pattern);
         assertEquals("TestFileName-"+stringDate,reportExecutionJob.getBaseFileName());
     }
+
+    @Test
+    public void jobParameterOverridesMaxExportParallelism() {
+        reportExecutionJob.jobDetails = reportJobMock;
+        reportExecutionJob.schedulerContext = schedulerContextMock;
+        when(reportJobSourceMock.getParametersMap()).thenReturn(
+                Collections.singletonMap(ReportExecutionJob.JOB_PARAMETER_MAX_EXPORT_PARALLELISM, "3"));
+
+        assertEquals(3, reportExecutionJob.getMaxExportParallelism());
+    }
+
+    @Test
+    public void exportOutputsShouldExportFormatsConcurrently() throws Exception {
+        final int outputCount = 3;
+        ExecutorService executor = Executors.newFixedThreadPool(outputCount - 1);
+        try {
+            when(schedulerContextMock.get(ReportExecutionJob.SCHEDULER_CONTEXT_KEY_EXPORT_EXECUTOR)).thenReturn(executor);
+            when(schedulerContextMock.get(ReportExecutionJob.SCHEDULER_CONTEXT_KEY_MAX_EXPORT_PARALLELISM)).thenReturn("4");
+            reportExecutionJob.jobDetails = reportJobMock;
+            reportExecutionJob.schedulerContext = schedulerContextMock;
+            reportExecutionJob.username = "joeuser";
+
+            // every export waits for the others, so the exports only complete if they run concurrently
+            final CyclicBarrier barrier = new CyclicBarrier(outputCount);
+            List<ReportExecutionJob.OutputExport> exports = new ArrayList<ReportExecutionJob.OutputExport>();
+            List<ReportOutput> reportOutputs = new ArrayList<ReportOutput>();
+            for (int i = 0; i < outputCount; i++) {
+                final ReportOutput reportOutput = new ReportOutput(null, "pdf", "report" + i + ".pdf");
+                Output output = mock(Output.class);
+                when(output.getOutput(any(), any())).thenAnswer(invocation -> {
+                    barrier.await(10, TimeUnit.SECONDS);
+                    return reportOutput;
+                });
+                exports.add(new ReportExecutionJob.OutputExport(output, reportUnitResultMock));
+                reportOutputs.add(reportOutput);
+            }
+
+            reportExecutionJob.exportOutputs(exports, null, "report", true);
+
+            for (int i = 0; i < outputCount; i++) {
+                assertFalse(exports.get(i).failed);
+                assertSame(reportOutputs.get(i), exports.get(i).reportOutput);
+            }
+            verify(securityContextProviderMock, times(outputCount - 1)).setAuthenticatedUser("joeuser");
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void executeReportShouldReplayDataSnapshotForOtherPaginations() throws Exception {
+        when(schedulerContextMock.get(ReportExecutionJob.SCHEDULER_CONTEXT_KEY_SINGLE_FILL_FOR_PAGINATIONS)).thenReturn("true");
+        when(schedulerContextMock.getString(ReportExecutionJob.SCHEDULER_CONTEXT_KEY_DATA_CACHE_PROVIDER_BEAN)).thenReturn("dataCacheProvider");
+        when(applicationContextMock.getBean("dataCacheProvider", DataCacheProvider.class)).thenReturn(dataCacheProviderMock);
+        when(dataCacheProviderMock.getDataSnapshot(any(), any())).thenReturn(dataCacheSnapshotMock);
+        reportExecutionJob.jobDetails = reportJobMock;
+        reportExecutionJob.schedulerContext = schedulerContextMock;
+        reportExecutionJob.jobContext = jobExecutionContextMock;
+
+        final DataCacheHandler populatedHandler = mock(DataCacheHandler.class);
+        when(populatedHandler.isSnapshotPopulated()).thenReturn(true);
+        ArgumentCaptor<ReportUnitRequest> requests = ArgumentCaptor.forClass(ReportUnitRequest.class);
+        when(engineServiceMock.execute(any(), requests.capture())).thenAnswer(invocation -> {
+            ReportUnitRequest request = invocation.getArgument(1);
+            if (request.isUseDataSnapshot()) {
+                request.getReportContext().setParameterValue(DataCacheHandler.PARAMETER_DATA_CACHE_HANDLER, populatedHandler);
+            }
+            return reportUnitResultMock;
+        });
+
+        PaginationParameters paginated = new PaginationParameters();
+        paginated.setPaginated(true);
+        PaginationParameters notPaginated = new PaginationParameters();
+        notPaginated.setPaginated(false);
+        Output paginatedOutput = mock(Output.class);
+        when(paginatedOutput.getPaginationParameters(jasperReportMock)).thenReturn(paginated);
+        Output notPaginatedOutput = mock(Output.class);
+        when(notPaginatedOutput.getPaginationParameters(jasperReportMock)).thenReturn(notPaginated);
+
+        reportExecutionJob.executeReport(Arrays.asList(paginatedOutput, notPaginatedOutput), jasperReportMock);
+
+        List<ReportUnitRequest> executedRequests = requests.getAllValues();
+        assertEquals(2, executedRequests.size());
+        assertTrue(executedRequests.get(0).isRecordDataSnapshot());
+        assertFalse(executedRequests.get(0).isUseDataSnapshot());
+        assertTrue(executedRequests.get(1).isUseDataSnapshot());
+    }
 }
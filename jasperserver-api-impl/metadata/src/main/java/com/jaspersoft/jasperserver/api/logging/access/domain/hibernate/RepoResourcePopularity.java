@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2005 - 2020 TIBCO Software Inc. All rights reserved.
+ * http://www.jaspersoft.com.
+ *
+ * Unless you have purchased a commercial license agreement from Jaspersoft,
+ * the following license terms apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.jaspersoft.jasperserver.api.logging.access.domain.hibernate;
+
+/**
+ * Access counters of a repository resource, maintained from access events so that resources can be sorted by
+ * popularity without counting events.
+ * <p/>
+ * <code>score</code> is a forward decayed count: every access adds <code>2^((eventTime - scoreEpoch) / halfLife)</code>,
+ * so ordering by it equals ordering by access counts decayed with the given half life at any point in time.
+ * All counters share the same <code>scoreEpoch</code>, the popularity rebuild moves it forward.
+ *
+ * @version $Id$
+ */
+public class RepoResourcePopularity {
+    private long resourceId;
+    private long accessCount;
+    private double score;
+    private long scoreEpoch;
+
+    public RepoResourcePopularity() {
+    }
+
+    public RepoResourcePopularity(long resourceId, long accessCount, double score, long scoreEpoch) {
+        this.resourceId = resourceId;
+        this.accessCount = accessCount;
+        this.score = score;
+        this.scoreEpoch = scoreEpoch;
+    }
+
+    public long getResourceId() {
+        return resourceId;
+    }
+
+    public void setResourceId(long resourceId) {
+        this.resourceId = resourceId;
+    }
+
+    public long getAccessCount() {
+        return accessCount;
+    }
+
+    public void setAccessCount(long accessCount) {
+        this.accessCount = accessCount;
+    }
+
+    public double getScore() {
+        return score;
+    }
+
+    public void setScore(double score) {
+        this.score = score;
+    }
+
+    public long getScoreEpoch() {
+        return scoreEpoch;
+    }
+
+    public void setScoreEpoch(long scoreEpoch) {
+        this.scoreEpoch = scoreEpoch;
+    }
+}
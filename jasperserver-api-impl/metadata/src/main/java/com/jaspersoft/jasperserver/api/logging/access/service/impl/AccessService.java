@@ -22,6 +22,7 @@ package com.jaspersoft.jasperserver.api.logging.access.service.impl;
 
 import com.jaspersoft.jasperserver.api.logging.service.LoggingService;
 import com.jaspersoft.jasperserver.api.logging.access.domain.AccessEvent;
+import com.jaspersoft.jasperserver.api.logging.context.LoggableEvent;
 
 import java.util.List;
 
@@ -31,6 +32,11 @@ import java.util.List;
  */
 public interface AccessService extends LoggingService {
     public void purgeAccessEvents();
+    public void rebuildPopularity();
+    /**
+     * Saves events as they are, without collapsing repeated events of the same user and resource.
+     */
+    public void writeEvents(List<LoggableEvent> loggableEvents);
     public List<AccessEvent> getAllEvents(int firstResult, int maxResults);
     public int getAccessEventsCount();
 }
@@ -23,29 +23,46 @@ package com.jaspersoft.jasperserver.api.logging.access.service.impl;
 import com.jaspersoft.jasperserver.api.logging.access.domain.AccessEvent;
 import com.jaspersoft.jasperserver.api.logging.access.domain.AccessEventImpl;
 import com.jaspersoft.jasperserver.api.logging.access.domain.hibernate.RepoAccessEvent;
+import com.jaspersoft.jasperserver.api.logging.access.domain.hibernate.RepoResourcePopularity;
 import com.jaspersoft.jasperserver.api.logging.context.LoggableEvent;
+import com.jaspersoft.jasperserver.api.metadata.common.domain.Folder;
 import com.jaspersoft.jasperserver.api.metadata.common.domain.Resource;
 import com.jaspersoft.jasperserver.api.metadata.common.domain.impl.IdedObject;
 import com.jaspersoft.jasperserver.api.metadata.common.service.ResourceFactory;
 import com.jaspersoft.jasperserver.api.metadata.common.service.impl.HibernateDaoImpl;
 import com.jaspersoft.jasperserver.api.metadata.common.service.impl.hibernate.HibernateRepositoryService;
 import com.jaspersoft.jasperserver.api.metadata.common.service.impl.hibernate.PersistentObjectResolver;
+import com.jaspersoft.jasperserver.api.metadata.common.service.impl.hibernate.persistent.RepoResource;
 import com.jaspersoft.jasperserver.api.metadata.user.domain.User;
+import com.jaspersoft.jasperserver.api.metadata.user.domain.impl.hibernate.RepoUser;
+import com.jaspersoft.jasperserver.core.util.DBUtil;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.hibernate.HibernateException;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+import org.hibernate.StatelessSession;
+import org.hibernate.Transaction;
 import org.hibernate.criterion.DetachedCriteria;
 import org.hibernate.criterion.Order;
 import org.hibernate.criterion.Projections;
+import org.springframework.orm.hibernate5.HibernateCallback;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 
 /**
  * @author Sergey Prilukin
@@ -59,12 +76,48 @@ public class AccessServiceImpl extends HibernateDaoImpl implements AccessService
     private int maxAccessEventAge;
     private ResourceFactory persistentClassFactory;
     private ResourceFactory clientClassFactory;
+    private int popularityHalfLifeDays = 30;
+    private int popularityRebuildFetchSize = 1000;
+    private int insertBatchSize = 100;
+    // origin of the forward decayed popularity scores, stored with the scores, null until read from the counters
+    private volatile Long popularityEpoch;
     public static final String COMMAND_OUT_LOGGER = "com.jaspersoft.jasperserver.export.command";
 
+    private static final Log log = LogFactory.getLog(AccessServiceImpl.class);
+
+    private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+    // 2^1000 leaves room for summing weights without reaching infinity, later events stop gaining weight.
+    // rebuildPopularity moves the epoch forward, the exponent only gets near the cap when the rebuild doesn't run
+    private static final double MAX_POPULARITY_EXPONENT = 1000;
+
     public void setMaxAccessEventAge(int maxAccessEventAge) {
         this.maxAccessEventAge = maxAccessEventAge;
     }
 
+    /**
+     * Half life of access events in the popularity score. Scores aren't comparable across different half lives,
+     * the popularity has to be rebuilt after changing it. Event weights double every half life after the epoch
+     * of the scores, so the rebuild has to run at least every few hundred half lives to keep recent events
+     * ahead of old ones.
+     */
+    public void setPopularityHalfLifeDays(int popularityHalfLifeDays) {
+        if (popularityHalfLifeDays < 1) {
+            throw new IllegalArgumentException("Popularity half life has to be at least one day: " + popularityHalfLifeDays);
+        }
+        this.popularityHalfLifeDays = popularityHalfLifeDays;
+    }
+
+    public void setPopularityRebuildFetchSize(int popularityRebuildFetchSize) {
+        this.popularityRebuildFetchSize = popularityRebuildFetchSize;
+    }
+
+    /**
+     * JDBC batch size of access event inserts.
+     */
+    public void setInsertBatchSize(int insertBatchSize) {
+        this.insertBatchSize = insertBatchSize;
+    }
+
     public void setHibernateRepositoryService(HibernateRepositoryService hibernateRepositoryService) {
         this.hibernateRepositoryService = hibernateRepositoryService;
     }
@@ -95,12 +148,7 @@ public class AccessServiceImpl extends HibernateDaoImpl implements AccessService
 
     @Transactional(propagation = Propagation.REQUIRED, readOnly = false)
     public void saveEvent(LoggableEvent loggableEvent) {
-        AccessEvent accessEvent = (AccessEvent) loggableEvent;
-        if (hibernateRepositoryService.resourceExists(null, accessEvent.getResource().getURI(), accessEvent.getResource().getClass())) {
-            RepoAccessEvent repoAccessEvent = new RepoAccessEvent();
-            repoAccessEvent.copyFromClient(loggableEvent, this);
-            getHibernateTemplate().save(repoAccessEvent);
-        }
+        writeEvents(Collections.singletonList(loggableEvent));
     }
 
     @Transactional(propagation = Propagation.REQUIRED, readOnly = false)
@@ -108,17 +156,23 @@ public class AccessServiceImpl extends HibernateDaoImpl implements AccessService
         if (loggableEvents == null || loggableEvents.isEmpty()) {
             return;
         }
-        
-        //This code will collapse all events for a specific user and uri into one event
-        //to reduce the number of database calls that are caused by multiple events for
-        //same resource in the same http request
-        //see Bug 35570 - [case 42185] Hibernate generating thousands of queries from dashboard 
-        Map<List<String>,AccessEventImpl> map = new HashMap<List<String>,AccessEventImpl>();
+        writeEvents(collapseEvents(loggableEvents));
+    }
+
+    /**
+     * Collapses all events for a specific user and uri into one event
+     * to reduce the number of database calls that are caused by multiple events for
+     * same resource in the same http request
+     * see Bug 35570 - [case 42185] Hibernate generating thousands of queries from dashboard
+     */
+    static List<LoggableEvent> collapseEvents(List<LoggableEvent> loggableEvents) {
+        List<LoggableEvent> result = new ArrayList<LoggableEvent>(loggableEvents.size());
+        Map<List<String>,AccessEventImpl> map = new LinkedHashMap<List<String>,AccessEventImpl>();
         for (LoggableEvent loggableEvent: loggableEvents) {
         	if (loggableEvent instanceof AccessEventImpl) {
         		AccessEventImpl e = (AccessEventImpl)loggableEvent;
         		List<String> key = new ArrayList<String>(2);
-        		key.add(e.getUser().getUsername()+"|"+e.getUser().getTenantId());
+        		key.add(getUserKey(e.getUser()));
         		key.add(e.getResource().getURI());
         		AccessEventImpl v = map.get(key);
         		if (v==null) {
@@ -128,13 +182,220 @@ public class AccessServiceImpl extends HibernateDaoImpl implements AccessService
         				v.setUpdating(true);
         		}
         	} else {
-        		saveEvent(loggableEvent);
+        		result.add(loggableEvent);
         	}
         }
-        
-        for (AccessEventImpl e : map.values()) {
-        	saveEvent(e);
+        result.addAll(map.values());
+        return result;
+    }
+
+    private static String getUserKey(User user) {
+        return user.getUsername() + "|" + user.getTenantId();
+    }
+
+    /**
+     * Saves access events as one batch: resources of all events are looked up with a single query,
+     * users are resolved once per user and the events are inserted with JDBC batches.
+     * Events of resources which don't exist anymore are skipped.
+     */
+    @Transactional(propagation = Propagation.REQUIRED, readOnly = false)
+    public void writeEvents(List<LoggableEvent> loggableEvents) {
+        if (loggableEvents == null || loggableEvents.isEmpty()) {
+            return;
+        }
+
+        Set<String> uris = new HashSet<String>();
+        for (LoggableEvent loggableEvent : loggableEvents) {
+            uris.add(((AccessEvent) loggableEvent).getResource().getURI());
         }
+        Map<String, RepoResource> resources = findRepoResources(uris);
+
+        Map<String, RepoUser> users = new HashMap<String, RepoUser>();
+        final List<RepoAccessEvent> repoAccessEvents = new ArrayList<RepoAccessEvent>(loggableEvents.size());
+        for (LoggableEvent loggableEvent : loggableEvents) {
+            AccessEvent accessEvent = (AccessEvent) loggableEvent;
+            RepoResource repoResource = resources.get(accessEvent.getResource().getURI());
+            if (repoResource == null) {
+                continue;
+            }
+            String userKey = getUserKey(accessEvent.getUser());
+            RepoUser repoUser = users.get(userKey);
+            if (repoUser == null && !users.containsKey(userKey)) {
+                repoUser = (RepoUser) persistentUserResolver.getPersistentObject(accessEvent.getUser());
+                users.put(userKey, repoUser);
+            }
+            if (repoUser == null) {
+                continue;
+            }
+
+            RepoAccessEvent repoAccessEvent = new RepoAccessEvent();
+            repoAccessEvent.setUser(repoUser);
+            repoAccessEvent.setResource(repoResource);
+            repoAccessEvent.setEventDate(accessEvent.getEventDate());
+            repoAccessEvent.setUpdating(accessEvent.isUpdating());
+            repoAccessEvents.add(repoAccessEvent);
+        }
+        if (repoAccessEvents.isEmpty()) {
+            return;
+        }
+
+        getHibernateTemplate().execute(new HibernateCallback<Object>() {
+            public Object doInHibernate(Session session) throws HibernateException {
+                Integer jdbcBatchSize = session.getJdbcBatchSize();
+                session.setJdbcBatchSize(insertBatchSize);
+                try {
+                    for (RepoAccessEvent repoAccessEvent : repoAccessEvents) {
+                        session.save(repoAccessEvent);
+                    }
+                    session.flush();
+                } finally {
+                    session.setJdbcBatchSize(jdbcBatchSize);
+                }
+                return null;
+            }
+        });
+
+        // sorted by resource so that concurrent writers lock popularity rows in the same order
+        Map<Long, List<Date>> accessDates = new TreeMap<Long, List<Date>>();
+        for (RepoAccessEvent repoAccessEvent : repoAccessEvents) {
+            addAccessDate(accessDates, repoAccessEvent);
+        }
+        updatePopularity(accessDates);
+    }
+
+    /**
+     * @return existing resources by URI, found with a single query
+     */
+    protected Map<String, RepoResource> findRepoResources(Collection<String> uris) {
+        Set<String> folderUris = new HashSet<String>();
+        Set<String> names = new HashSet<String>();
+        for (String uri : uris) {
+            int separator = uri.lastIndexOf(Folder.SEPARATOR);
+            folderUris.add(separator > 0 ? uri.substring(0, separator) : Folder.SEPARATOR);
+            names.add(uri.substring(separator + 1));
+        }
+
+        DetachedCriteria criteria = DetachedCriteria.forClass(RepoResource.class);
+        criteria.createAlias("parent", "p");
+        criteria.add(DBUtil.getBoundedInCriterion("p.URI", folderUris));
+        criteria.add(DBUtil.getBoundedInCriterion("name", names));
+
+        Map<String, RepoResource> resources = new HashMap<String, RepoResource>();
+        for (Object result : getHibernateTemplate().findByCriteria(criteria)) {
+            RepoResource repoResource = (RepoResource) result;
+            String uri = repoResource.getResourceURI();
+            // the query matches any combination of folders and names
+            if (uris.contains(uri)) {
+                resources.put(uri, repoResource);
+            }
+        }
+        return resources;
+    }
+
+    private void addAccessDate(Map<Long, List<Date>> accessDates, RepoAccessEvent repoAccessEvent) {
+        if (repoAccessEvent == null || repoAccessEvent.getResource() == null) {
+            return;
+        }
+        Long resourceId = repoAccessEvent.getResource().getId();
+        List<Date> dates = accessDates.get(resourceId);
+        if (dates == null) {
+            dates = new ArrayList<Date>(1);
+            accessDates.put(resourceId, dates);
+        }
+        dates.add(repoAccessEvent.getEventDate());
+    }
+
+    /**
+     * Adds saved access events to the popularity counters of their resources, creating missing counters.
+     */
+    protected void updatePopularity(Map<Long, List<Date>> accessDates) {
+        for (Map.Entry<Long, List<Date>> entry : accessDates.entrySet()) {
+            long epoch = getPopularityEpoch();
+            if (addPopularity(entry.getKey(), entry.getValue(), epoch) > 0) {
+                continue;
+            }
+            // either the counter is missing, or its score is relative to another epoch
+            Long counterEpoch = findPopularityEpoch(entry.getKey());
+            if (counterEpoch == null) {
+                createPopularityCounter(entry.getKey(), epoch);
+                counterEpoch = findPopularityEpoch(entry.getKey());
+            }
+            if (counterEpoch != null && counterEpoch > epoch) {
+                // the popularity was rebuilt by another node
+                popularityEpoch = counterEpoch;
+            }
+            if (counterEpoch == null || addPopularity(entry.getKey(), entry.getValue(), counterEpoch) == 0) {
+                log.warn("Could not create the popularity counter of resource " + entry.getKey());
+            }
+        }
+    }
+
+    private int addPopularity(long resourceId, List<Date> dates, long epoch) {
+        double weight = 0;
+        for (Date date : dates) {
+            weight += getPopularityWeight(date, epoch);
+        }
+        return getHibernateTemplate().bulkUpdate(
+                "update RepoResourcePopularity p " +
+                "  set p.accessCount = p.accessCount + ?, p.score = p.score + ? " +
+                "  where p.resourceId = ? and p.scoreEpoch = ?", (long) dates.size(), weight, resourceId, epoch);
+    }
+
+    /**
+     * @return the epoch of the popularity score of the resource, or <code>null</code> if it has no counter
+     */
+    protected Long findPopularityEpoch(long resourceId) {
+        List<?> result = getHibernateTemplate().find(
+                "select p.scoreEpoch from RepoResourcePopularity p where p.resourceId = ?", resourceId);
+        return result.isEmpty() ? null : (Long) result.get(0);
+    }
+
+    /**
+     * @return the epoch the popularity scores are relative to, the latest epoch stored with the scores
+     */
+    protected long getPopularityEpoch() {
+        Long epoch = popularityEpoch;
+        if (epoch == null) {
+            List<?> result = getHibernateTemplate().find("select max(p.scoreEpoch) from RepoResourcePopularity p");
+            epoch = result.isEmpty() || result.get(0) == null ? System.currentTimeMillis() : (Long) result.get(0);
+            popularityEpoch = epoch;
+        }
+        return epoch;
+    }
+
+    /**
+     * Inserts an empty counter in a separate transaction. A concurrent writer inserting the same counter
+     * only fails that insert, not the transaction saving the access events, which then updates the counter.
+     */
+    protected void createPopularityCounter(long resourceId, long epoch) {
+        StatelessSession session = getSessionFactory().openStatelessSession();
+        try {
+            Transaction transaction = session.beginTransaction();
+            try {
+                session.insert(new RepoResourcePopularity(resourceId, 0, 0, epoch));
+                transaction.commit();
+            } catch (RuntimeException e) {
+                // most likely created concurrently, the update following the insert tells
+                if (log.isDebugEnabled()) {
+                    log.debug("Popularity counter of resource " + resourceId + " not inserted", e);
+                }
+                if (transaction.isActive()) {
+                    transaction.rollback();
+                }
+            }
+        } finally {
+            session.close();
+        }
+    }
+
+    protected double getPopularityWeight(Date eventDate) {
+        return getPopularityWeight(eventDate, getPopularityEpoch());
+    }
+
+    protected double getPopularityWeight(Date eventDate, long epoch) {
+        long time = eventDate != null ? eventDate.getTime() : System.currentTimeMillis();
+        double halfLife = (double) popularityHalfLifeDays * MILLIS_PER_DAY;
+        return Math.pow(2, Math.min((time - epoch) / halfLife, MAX_POPULARITY_EXPONENT));
     }
 
     public List<AccessEvent> getAllEvents(int firstResult, int maxResults) {
@@ -192,5 +453,58 @@ public class AccessServiceImpl extends HibernateDaoImpl implements AccessService
                 "    where r is null " +
                 "    or u is null" +
                 "  )");
+        getHibernateTemplate().bulkUpdate(
+                "delete from RepoResourcePopularity " +
+                "  where resourceId not in (select r.id from RepoResource r)");
+    }
+
+    /**
+     * Recreates the popularity counters from the access event history, in a single pass over the events.
+     * The scores are computed relative to a new epoch, the time of the rebuild, so the weights of later
+     * events stay far from the exponent cap.
+     * Meant to run off peak, after an upgrade or a change of the half life.
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW, readOnly = false)
+    public void rebuildPopularity() {
+        long start = System.currentTimeMillis();
+        long epoch = start;
+        Map<Long, RepoResourcePopularity> popularity = new HashMap<Long, RepoResourcePopularity>();
+        StatelessSession session = getSessionFactory().openStatelessSession();
+        try {
+            ScrollableResults events = session.createQuery(
+                    "select e.resource.id, e.eventDate from RepoAccessEvent e")
+                    .setFetchSize(popularityRebuildFetchSize).scroll(ScrollMode.FORWARD_ONLY);
+            try {
+                while (events.next()) {
+                    Long resourceId = (Long) events.get(0);
+                    RepoResourcePopularity counters = popularity.get(resourceId);
+                    if (counters == null) {
+                        counters = new RepoResourcePopularity(resourceId, 0, 0, epoch);
+                        popularity.put(resourceId, counters);
+                    }
+                    counters.setAccessCount(counters.getAccessCount() + 1);
+                    counters.setScore(counters.getScore() + getPopularityWeight((Date) events.get(1), epoch));
+                }
+            } finally {
+                events.close();
+            }
+        } finally {
+            session.close();
+        }
+
+        getHibernateTemplate().bulkUpdate("delete from RepoResourcePopularity");
+        int count = 0;
+        for (RepoResourcePopularity counters : popularity.values()) {
+            getHibernateTemplate().save(counters);
+            if (++count % popularityRebuildFetchSize == 0) {
+                getHibernateTemplate().flush();
+                getHibernateTemplate().clear();
+            }
+        }
+        popularityEpoch = epoch;
+        if (log.isInfoEnabled()) {
+            log.info("Rebuilt popularity of " + popularity.size() + " resources in "
+                    + (System.currentTimeMillis() - start) + " ms");
+        }
     }
 }
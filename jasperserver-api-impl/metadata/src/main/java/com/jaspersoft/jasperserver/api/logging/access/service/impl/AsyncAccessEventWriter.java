@@ -0,0 +1,294 @@
+/*
+ * Copyright (C) 2005 - 2020 TIBCO Software Inc. All rights reserved.
+ * http://www.jaspersoft.com.
+ *
+ * Unless you have purchased a commercial license agreement from Jaspersoft,
+ * the following license terms apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.jaspersoft.jasperserver.api.logging.access.service.impl;
+
+import com.jaspersoft.jasperserver.api.logging.context.LoggableEvent;
+import com.jaspersoft.jasperserver.api.logging.diagnostic.domain.DiagnosticAttribute;
+import com.jaspersoft.jasperserver.api.logging.diagnostic.helper.DiagnosticAttributeBuilder;
+import com.jaspersoft.jasperserver.api.logging.diagnostic.service.Diagnostic;
+import com.jaspersoft.jasperserver.api.logging.diagnostic.service.DiagnosticCallback;
+import com.jaspersoft.jasperserver.api.logging.service.LoggingService;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Logging service which takes access events off the request thread: events are collapsed per request,
+ * put to a bounded queue and written by a background thread in batches of up to {@link #setFlushSize(int)} events,
+ * at least every {@link #setFlushIntervalMillis(long)} ms.
+ * When the queue is full the events are dropped, or the request waits for free space first,
+ * see {@link #setOverflowPolicy(OverflowPolicy)}.
+ *
+ * @version $Id$
+ */
+public class AsyncAccessEventWriter implements LoggingService, InitializingBean, DisposableBean, Diagnostic {
+
+    private static final Log log = LogFactory.getLog(AsyncAccessEventWriter.class);
+
+    public enum OverflowPolicy {
+        /** events which don't fit into the queue are dropped */
+        DROP,
+        /** the request waits up to offerTimeoutMillis for free space, then the event is dropped */
+        WAIT
+    }
+
+    private AccessService accessService;
+    private int queueCapacity = 10000;
+    private int flushSize = 500;
+    private long flushIntervalMillis = 2000;
+    private OverflowPolicy overflowPolicy = OverflowPolicy.DROP;
+    private long offerTimeoutMillis = 100;
+    private long shutdownTimeoutMillis = 10000;
+
+    private BlockingQueue<LoggableEvent> queue;
+    private Thread writerThread;
+    private volatile boolean running;
+
+    private final AtomicLong queuedCount = new AtomicLong();
+    private final AtomicLong writtenCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+
+    public void setAccessService(AccessService accessService) {
+        this.accessService = accessService;
+    }
+
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+
+    public void setFlushSize(int flushSize) {
+        this.flushSize = flushSize;
+    }
+
+    public void setFlushIntervalMillis(long flushIntervalMillis) {
+        this.flushIntervalMillis = flushIntervalMillis;
+    }
+
+    public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    public void setOfferTimeoutMillis(long offerTimeoutMillis) {
+        this.offerTimeoutMillis = offerTimeoutMillis;
+    }
+
+    /**
+     * Time to write the queued events when the application stops.
+     */
+    public void setShutdownTimeoutMillis(long shutdownTimeoutMillis) {
+        this.shutdownTimeoutMillis = shutdownTimeoutMillis;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        if (accessService == null) {
+            throw new IllegalStateException("accessService is not set");
+        }
+        if (queueCapacity <= 0 || flushSize <= 0 || flushIntervalMillis <= 0) {
+            throw new IllegalStateException("queueCapacity, flushSize and flushIntervalMillis must be positive");
+        }
+        queue = new ArrayBlockingQueue<LoggableEvent>(queueCapacity);
+        running = true;
+        writerThread = new Thread(new Runnable() {
+            public void run() {
+                writeLoop();
+            }
+        }, "AccessEventWriter");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        // not interrupted, that could break a write in progress; the writer notices the flag within flush interval
+        running = false;
+        if (writerThread != null) {
+            writerThread.join(shutdownTimeoutMillis);
+            if (writerThread.isAlive()) {
+                log.warn("Access event writer did not stop in " + shutdownTimeoutMillis + " ms, "
+                        + queue.size() + " events are lost");
+            }
+        }
+    }
+
+    public void saveEvent(LoggableEvent loggableEvent) {
+        offer(loggableEvent);
+    }
+
+    public void saveEvents(List<LoggableEvent> loggableEvents) {
+        if (loggableEvents == null || loggableEvents.isEmpty()) {
+            return;
+        }
+        for (LoggableEvent loggableEvent : AccessServiceImpl.collapseEvents(loggableEvents)) {
+            offer(loggableEvent);
+        }
+    }
+
+    protected void offer(LoggableEvent loggableEvent) {
+        boolean queued;
+        if (overflowPolicy == OverflowPolicy.WAIT) {
+            try {
+                queued = queue.offer(loggableEvent, offerTimeoutMillis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                queued = false;
+            }
+        } else {
+            queued = queue.offer(loggableEvent);
+        }
+
+        if (queued) {
+            queuedCount.incrementAndGet();
+        } else if (droppedCount.incrementAndGet() % 1000 == 1) {
+            log.warn("Access event queue is full, dropped " + droppedCount.get() + " events so far");
+        }
+    }
+
+    private void writeLoop() {
+        while (running) {
+            try {
+                write(nextBatch());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+
+        // stopping, write what is left
+        while (!queue.isEmpty()) {
+            List<LoggableEvent> batch = new ArrayList<LoggableEvent>(flushSize);
+            queue.drainTo(batch, flushSize);
+            write(batch);
+        }
+    }
+
+    /**
+     * Waits for the first event, then collects events until the batch is full or the flush interval passes.
+     */
+    private List<LoggableEvent> nextBatch() throws InterruptedException {
+        LoggableEvent first = queue.poll(flushIntervalMillis, TimeUnit.MILLISECONDS);
+        if (first == null) {
+            return Collections.emptyList();
+        }
+        List<LoggableEvent> batch = new ArrayList<LoggableEvent>(flushSize);
+        batch.add(first);
+
+        long deadline = System.currentTimeMillis() + flushIntervalMillis;
+        while (batch.size() < flushSize) {
+            queue.drainTo(batch, flushSize - batch.size());
+            long wait = deadline - System.currentTimeMillis();
+            if (batch.size() >= flushSize || wait <= 0) {
+                break;
+            }
+            LoggableEvent next = queue.poll(wait, TimeUnit.MILLISECONDS);
+            if (next == null) {
+                break;
+            }
+            batch.add(next);
+        }
+        return batch;
+    }
+
+    private void write(List<LoggableEvent> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            accessService.writeEvents(batch);
+            writtenCount.addAndGet(batch.size());
+        } catch (RuntimeException e) {
+            failedCount.addAndGet(batch.size());
+            log.error("Failed to write " + batch.size() + " access events", e);
+        }
+    }
+
+    public int getQueueSize() {
+        return queue != null ? queue.size() : 0;
+    }
+
+    public long getQueuedCount() {
+        return queuedCount.get();
+    }
+
+    public long getWrittenCount() {
+        return writtenCount.get();
+    }
+
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    @Override
+    public Map<DiagnosticAttribute, DiagnosticCallback> getDiagnosticData() {
+        return new DiagnosticAttributeBuilder()
+            .addDiagnosticAttribute(DiagnosticAttributeBuilder.ACCESS_EVENTS_QUEUE_SIZE, new DiagnosticCallback<Integer>() {
+                @Override
+                public Integer getDiagnosticAttributeValue() {
+                    return getQueueSize();
+                }
+            })
+            .addDiagnosticAttribute(DiagnosticAttributeBuilder.ACCESS_EVENTS_QUEUE_CAPACITY, new DiagnosticCallback<Integer>() {
+                @Override
+                public Integer getDiagnosticAttributeValue() {
+                    return queueCapacity;
+                }
+            })
+            .addDiagnosticAttribute(DiagnosticAttributeBuilder.ACCESS_EVENTS_QUEUED, new DiagnosticCallback<Long>() {
+                @Override
+                public Long getDiagnosticAttributeValue() {
+                    return getQueuedCount();
+                }
+            })
+            .addDiagnosticAttribute(DiagnosticAttributeBuilder.ACCESS_EVENTS_WRITTEN, new DiagnosticCallback<Long>() {
+                @Override
+                public Long getDiagnosticAttributeValue() {
+                    return getWrittenCount();
+                }
+            })
+            .addDiagnosticAttribute(DiagnosticAttributeBuilder.ACCESS_EVENTS_DROPPED, new DiagnosticCallback<Long>() {
+                @Override
+                public Long getDiagnosticAttributeValue() {
+                    return getDroppedCount();
+                }
+            })
+            .addDiagnosticAttribute(DiagnosticAttributeBuilder.ACCESS_EVENTS_FAILED, new DiagnosticCallback<Long>() {
+                @Override
+                public Long getDiagnosticAttributeValue() {
+                    return getFailedCount();
+                }
+            }).build();
+    }
+}
@@ -56,6 +56,54 @@ public class DiagnosticAttributeBuilder {
     public final static String RUNNING_REPORT_SYNCTASKCOUNT ="RunningSyncReportsCountCuml";
     public final static String RUNNING_REPORT_ERRORCOUNT ="RunningReportsErrorsCuml";
     public final static String RUNNING_REPORT_COUNT_CUML ="RunningReportsCountCuml";
+    public final static String COMPILED_REPORTS_CACHE_SIZE ="CompiledReportsCacheSize";
+    public final static String COMPILED_REPORTS_CACHE_HITS ="CompiledReportsCacheHits";
+    public final static String COMPILED_REPORTS_CACHE_MISSES ="CompiledReportsCacheMisses";
+    public final static String COMPILED_REPORTS_CACHE_AVERAGE_LOAD_TIME ="CompiledReportsCacheAverageLoadTime";
+
+    //Diagnostic JDBC connection pools section
+    public final static String JDBC_POOL_COUNT = "JdbcPoolCount";
+    public final static String JDBC_POOL_CACHE_HITS = "JdbcPoolCacheHits";
+    public final static String JDBC_POOL_CACHE_MISSES = "JdbcPoolCacheMisses";
+    public final static String JDBC_POOL_CACHE_HIT_RATIO = "JdbcPoolCacheHitRatio";
+    public final static String JDBC_POOL_EVICTIONS = "JdbcPoolEvictions";
+
+    //Diagnostic report execution queue section
+    public final static String REPORT_EXECUTIONS_RUNNING = "ReportExecutionsRunning";
+    public final static String REPORT_EXPORTS_RUNNING = "ReportExportsRunning";
+    public final static String REPORT_EXECUTIONS_QUEUED_INTERACTIVE = "ReportExecutionsQueuedInteractive";
+    public final static String REPORT_EXECUTIONS_QUEUED_ASYNC = "ReportExecutionsQueuedAsync";
+    public final static String REPORT_EXPORTS_QUEUED = "ReportExportsQueued";
+    public final static String REPORT_EXECUTIONS_REJECTED = "ReportExecutionsRejected";
+
+    //Diagnostic input controls cache section
+    public final static String INPUT_CONTROLS_CACHE_SESSIONS = "InputControlsCacheSessions";
+    public final static String INPUT_CONTROLS_CACHE_ENTRIES = "InputControlsCacheEntries";
+    public final static String INPUT_CONTROLS_CACHE_BYTES = "InputControlsCacheEstimatedBytes";
+    public final static String INPUT_CONTROLS_CACHE_ENTRIES_BY_TYPE = "InputControlsCacheEntriesByType";
+    public final static String INPUT_CONTROLS_CACHE_BYTES_BY_TYPE = "InputControlsCacheEstimatedBytesByType";
+    public final static String INPUT_CONTROLS_CACHE_EVICTIONS = "InputControlsCacheEvictions";
+    public final static String INPUT_CONTROLS_CACHE_EXPIRATIONS = "InputControlsCacheExpirations";
+
+    //Diagnostic access event queue section
+    public final static String ACCESS_EVENTS_QUEUE_SIZE = "AccessEventsQueueSize";
+    public final static String ACCESS_EVENTS_QUEUE_CAPACITY = "AccessEventsQueueCapacity";
+    public final static String ACCESS_EVENTS_QUEUED = "AccessEventsQueued";
+    public final static String ACCESS_EVENTS_WRITTEN = "AccessEventsWritten";
+    public final static String ACCESS_EVENTS_DROPPED = "AccessEventsDropped";
+    public final static String ACCESS_EVENTS_FAILED = "AccessEventsFailed";
+
+    //Diagnostic task executor section
+    public final static String TASK_EXECUTOR_ACTIVE_THREADS = "TaskExecutorActiveThreads";
+    public final static String TASK_EXECUTOR_POOL_SIZE = "TaskExecutorPoolSize";
+    public final static String TASK_EXECUTOR_MAX_POOL_SIZE = "TaskExecutorMaxPoolSize";
+    public final static String TASK_EXECUTOR_QUEUE_SIZE = "TaskExecutorQueueSize";
+    public final static String TASK_EXECUTOR_QUEUE_CAPACITY = "TaskExecutorQueueCapacity";
+    public final static String TASK_EXECUTOR_COMPLETED = "TaskExecutorCompletedTasks";
+    public final static String TASK_EXECUTOR_REJECTED = "TaskExecutorRejectedTasks";
+    public final static String TASK_EXECUTOR_QUEUE_WAIT_HISTOGRAM = "TaskExecutorQueueWaitHistogram";
+    public final static String TASK_EXECUTOR_RUN_TIME_HISTOGRAM = "TaskExecutorRunTimeHistogram";
+    public final static String TASK_EXECUTOR_AVERAGE_RUN_TIME = "TaskExecutorAverageRunTime";
 
     //Diagnostic scheduler attributes section
     /* Total scheduled jobs */
@@ -0,0 +1,294 @@
+/*
+ * Copyright (C) 2005 - 2020 TIBCO Software Inc. All rights reserved.
+ * http://www.jaspersoft.com.
+ *
+ * Unless you have purchased a commercial license agreement from Jaspersoft,
+ * the following license terms apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.jaspersoft.jasperserver.api.logging.util;
+
+import com.jaspersoft.jasperserver.api.logging.diagnostic.domain.DiagnosticAttribute;
+import com.jaspersoft.jasperserver.api.logging.diagnostic.helper.DiagnosticAttributeBuilder;
+import com.jaspersoft.jasperserver.api.logging.diagnostic.service.Diagnostic;
+import com.jaspersoft.jasperserver.api.logging.diagnostic.service.DiagnosticCallback;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
+import java.beans.ConstructorProperties;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Thread pool with a bounded number of threads and a bounded task queue which keeps execution statistics:
+ * rejected task count and histograms of the time tasks wait in the queue and of the time they run.
+ * When both the threads and the queue are exhausted the task is handled according to the
+ * {@link #setRejectionPolicy(RejectionPolicy) rejection policy}.
+ * <p/>
+ * On a Java runtime with virtual threads the pool workers can be virtual threads,
+ * see {@link #setUseVirtualThreads(boolean)}; the pool size still limits the number of concurrently running tasks.
+ *
+ * @version $Id$
+ */
+public class InstrumentedThreadPoolExecutor extends ThreadPoolExecutor
+        implements Diagnostic, InitializingBean, DisposableBean {
+
+    private static final Log log = LogFactory.getLog(InstrumentedThreadPoolExecutor.class);
+
+    public enum RejectionPolicy {
+        /** the task is rejected with {@link java.util.concurrent.RejectedExecutionException} */
+        ABORT,
+        /** the task is executed by the submitting thread, which slows down the submitter */
+        CALLER_RUNS
+    }
+
+    private final int queueCapacity;
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private final LatencyHistogram queueWaitHistogram = new LatencyHistogram();
+    private final LatencyHistogram runTimeHistogram = new LatencyHistogram();
+
+    private String threadNamePrefix = "pool-task-";
+    private boolean useVirtualThreads;
+    private long shutdownTimeoutMillis = 10000;
+
+    @ConstructorProperties({"corePoolSize", "maxPoolSize", "queueCapacity"})
+    public InstrumentedThreadPoolExecutor(int corePoolSize, int maxPoolSize, int queueCapacity) {
+        super(corePoolSize, maxPoolSize, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(queueCapacity));
+        this.queueCapacity = queueCapacity;
+        setRejectionPolicy(RejectionPolicy.ABORT);
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        ThreadFactory threadFactory = useVirtualThreads ? createVirtualThreadFactory(threadNamePrefix) : null;
+        if (threadFactory == null) {
+            threadFactory = new NamedThreadFactory(threadNamePrefix);
+        }
+        setThreadFactory(threadFactory);
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        shutdown();
+        if (!awaitTermination(shutdownTimeoutMillis, TimeUnit.MILLISECONDS)) {
+            log.warn("Tasks still running after " + shutdownTimeoutMillis + " ms, interrupting them");
+            shutdownNow();
+        }
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        super.execute(new TimedRunnable(command));
+    }
+
+    @Override
+    public void setRejectedExecutionHandler(RejectedExecutionHandler handler) {
+        super.setRejectedExecutionHandler(new CountingRejectedExecutionHandler(handler));
+    }
+
+    public void setRejectionPolicy(RejectionPolicy rejectionPolicy) {
+        setRejectedExecutionHandler(rejectionPolicy == RejectionPolicy.CALLER_RUNS
+                ? new ThreadPoolExecutor.CallerRunsPolicy() : new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    public void setKeepAliveSeconds(long keepAliveSeconds) {
+        setKeepAliveTime(keepAliveSeconds, TimeUnit.SECONDS);
+    }
+
+    public void setAllowCoreThreadTimeOut(boolean allowCoreThreadTimeOut) {
+        allowCoreThreadTimeOut(allowCoreThreadTimeOut);
+    }
+
+    public void setThreadNamePrefix(String threadNamePrefix) {
+        this.threadNamePrefix = threadNamePrefix;
+    }
+
+    /**
+     * Runs the tasks on virtual threads when the Java runtime supports them, ignored with a warning otherwise.
+     */
+    public void setUseVirtualThreads(boolean useVirtualThreads) {
+        this.useVirtualThreads = useVirtualThreads;
+    }
+
+    /**
+     * Time to finish the running and queued tasks when the application stops.
+     */
+    public void setShutdownTimeoutMillis(long shutdownTimeoutMillis) {
+        this.shutdownTimeoutMillis = shutdownTimeoutMillis;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public int getQueueSize() {
+        return getQueue().size();
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    public LatencyHistogram getQueueWaitHistogram() {
+        return queueWaitHistogram;
+    }
+
+    public LatencyHistogram getRunTimeHistogram() {
+        return runTimeHistogram;
+    }
+
+    static ThreadFactory createVirtualThreadFactory(String namePrefix) {
+        try {
+            // Thread.ofVirtual().name(namePrefix, 0).factory(), looked up reflectively to keep Java 8 compatibility
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, namePrefix, 0L);
+            Method factory = builderClass.getMethod("factory");
+            return (ThreadFactory) factory.invoke(builder);
+        } catch (NoSuchMethodException e) {
+            log.warn("Virtual threads are not supported by this Java runtime, using platform threads");
+        } catch (Exception e) {
+            log.warn("Unable to create virtual thread factory, using platform threads", e);
+        }
+        return null;
+    }
+
+    @Override
+    public Map<DiagnosticAttribute, DiagnosticCallback> getDiagnosticData() {
+        return new DiagnosticAttributeBuilder()
+            .addDiagnosticAttribute(DiagnosticAttributeBuilder.TASK_EXECUTOR_ACTIVE_THREADS, new DiagnosticCallback<Integer>() {
+                @Override
+                public Integer getDiagnosticAttributeValue() {
+                    return getActiveCount();
+                }
+            })
+            .addDiagnosticAttribute(DiagnosticAttributeBuilder.TASK_EXECUTOR_POOL_SIZE, new DiagnosticCallback<Integer>() {
+                @Override
+                public Integer getDiagnosticAttributeValue() {
+                    return getPoolSize();
+                }
+            })
+            .addDiagnosticAttribute(DiagnosticAttributeBuilder.TASK_EXECUTOR_MAX_POOL_SIZE, new DiagnosticCallback<Integer>() {
+                @Override
+                public Integer getDiagnosticAttributeValue() {
+                    return getMaximumPoolSize();
+                }
+            })
+            .addDiagnosticAttribute(DiagnosticAttributeBuilder.TASK_EXECUTOR_QUEUE_SIZE, new DiagnosticCallback<Integer>() {
+                @Override
+                public Integer getDiagnosticAttributeValue() {
+                    return getQueueSize();
+                }
+            })
+            .addDiagnosticAttribute(DiagnosticAttributeBuilder.TASK_EXECUTOR_QUEUE_CAPACITY, new DiagnosticCallback<Integer>() {
+                @Override
+                public Integer getDiagnosticAttributeValue() {
+                    return queueCapacity;
+                }
+            })
+            .addDiagnosticAttribute(DiagnosticAttributeBuilder.TASK_EXECUTOR_COMPLETED, new DiagnosticCallback<Long>() {
+                @Override
+                public Long getDiagnosticAttributeValue() {
+                    return getCompletedTaskCount();
+                }
+            })
+            .addDiagnosticAttribute(DiagnosticAttributeBuilder.TASK_EXECUTOR_REJECTED, new DiagnosticCallback<Long>() {
+                @Override
+                public Long getDiagnosticAttributeValue() {
+                    return getRejectedCount();
+                }
+            })
+            .addDiagnosticAttribute(DiagnosticAttributeBuilder.TASK_EXECUTOR_QUEUE_WAIT_HISTOGRAM, new DiagnosticCallback<Map<String, Long>>() {
+                @Override
+                public Map<String, Long> getDiagnosticAttributeValue() {
+                    return queueWaitHistogram.getBuckets();
+                }
+            })
+            .addDiagnosticAttribute(DiagnosticAttributeBuilder.TASK_EXECUTOR_RUN_TIME_HISTOGRAM, new DiagnosticCallback<Map<String, Long>>() {
+                @Override
+                public Map<String, Long> getDiagnosticAttributeValue() {
+                    return runTimeHistogram.getBuckets();
+                }
+            })
+            .addDiagnosticAttribute(DiagnosticAttributeBuilder.TASK_EXECUTOR_AVERAGE_RUN_TIME, new DiagnosticCallback<Double>() {
+                @Override
+                public Double getDiagnosticAttributeValue() {
+                    return runTimeHistogram.getAverageMillis();
+                }
+            }).build();
+    }
+
+    private class TimedRunnable implements Runnable {
+        private final Runnable task;
+        private final long submitted = System.nanoTime();
+
+        private TimedRunnable(Runnable task) {
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            long started = System.nanoTime();
+            queueWaitHistogram.record(TimeUnit.NANOSECONDS.toMillis(started - submitted));
+            try {
+                task.run();
+            } finally {
+                runTimeHistogram.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+            }
+        }
+    }
+
+    private class CountingRejectedExecutionHandler implements RejectedExecutionHandler {
+        private final RejectedExecutionHandler delegate;
+
+        private CountingRejectedExecutionHandler(RejectedExecutionHandler delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+            if (rejectedCount.incrementAndGet() % 100 == 1) {
+                log.warn("Task rejected, " + getActiveCount() + " tasks running and " + getQueueSize()
+                        + " queued; rejected so far: " + rejectedCount.get());
+            }
+            delegate.rejectedExecution(r, executor);
+        }
+    }
+
+    private static class NamedThreadFactory implements ThreadFactory {
+        private final String namePrefix;
+        private final AtomicInteger threadNumber = new AtomicInteger();
+
+        private NamedThreadFactory(String namePrefix) {
+            this.namePrefix = namePrefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, namePrefix + threadNumber.incrementAndGet());
+            thread.setDaemon(false);
+            return thread;
+        }
+    }
+}
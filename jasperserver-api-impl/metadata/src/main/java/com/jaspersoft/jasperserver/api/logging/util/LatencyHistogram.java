@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2005 - 2020 TIBCO Software Inc. All rights reserved.
+ * http://www.jaspersoft.com.
+ *
+ * Unless you have purchased a commercial license agreement from Jaspersoft,
+ * the following license terms apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.jaspersoft.jasperserver.api.logging.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock free histogram of durations with fixed millisecond buckets.
+ * A duration is counted in the first bucket whose upper bound is not less than the duration.
+ *
+ * @version $Id$
+ */
+public class LatencyHistogram {
+
+    public static final long[] DEFAULT_BOUNDS_MILLIS = {10, 50, 100, 500, 1000, 5000, 10000, 60000, 300000};
+
+    private final long[] boundsMillis;
+    private final AtomicLongArray buckets;
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong totalMillis = new AtomicLong();
+    private final AtomicLong maxMillis = new AtomicLong();
+
+    public LatencyHistogram() {
+        this(DEFAULT_BOUNDS_MILLIS);
+    }
+
+    public LatencyHistogram(long[] boundsMillis) {
+        for (int i = 1; i < boundsMillis.length; i++) {
+            if (boundsMillis[i] <= boundsMillis[i - 1]) {
+                throw new IllegalArgumentException("Histogram bounds must be ascending");
+            }
+        }
+        this.boundsMillis = boundsMillis.clone();
+        this.buckets = new AtomicLongArray(boundsMillis.length + 1);
+    }
+
+    public void record(long millis) {
+        int bucket = 0;
+        while (bucket < boundsMillis.length && millis > boundsMillis[bucket]) {
+            bucket++;
+        }
+        buckets.incrementAndGet(bucket);
+        count.incrementAndGet();
+        totalMillis.addAndGet(millis);
+        long max;
+        while (millis > (max = maxMillis.get()) && !maxMillis.compareAndSet(max, millis)) {
+            // retry
+        }
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getMaxMillis() {
+        return maxMillis.get();
+    }
+
+    public double getAverageMillis() {
+        long n = count.get();
+        return n == 0 ? 0 : (double) totalMillis.get() / n;
+    }
+
+    /**
+     * @return counts per bucket keyed by the bucket upper bound ("10ms", "50ms", .., "inf"), in ascending order
+     */
+    public Map<String, Long> getBuckets() {
+        Map<String, Long> result = new LinkedHashMap<String, Long>();
+        for (int i = 0; i < boundsMillis.length; i++) {
+            result.put(boundsMillis[i] + "ms", buckets.get(i));
+        }
+        result.put("inf", buckets.get(boundsMillis.length));
+        return result;
+    }
+}
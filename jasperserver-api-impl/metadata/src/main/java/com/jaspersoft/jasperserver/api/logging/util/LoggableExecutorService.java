@@ -27,11 +27,14 @@ import com.jaspersoft.jasperserver.api.metadata.common.service.impl.ExecutorServ
 
 import java.util.concurrent.Callable;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 
 /**
  * A special {@link Executor} service that asynchronously execute the tasks in which logging events are setup.
+ * When the wrapped executor is bounded, tasks which do not fit into it are rejected with
+ * {@link java.util.concurrent.RejectedExecutionException}.
  *
  * @author vsabadosh
  * @version $Id$
@@ -44,6 +47,13 @@ public class LoggableExecutorService extends ExecutorServiceWrapper {
         super(Executors.newCachedThreadPool());
     }
 
+    /**
+     * @param executorService executor which runs the tasks, usually a bounded {@link InstrumentedThreadPoolExecutor}
+     */
+    public LoggableExecutorService(ExecutorService executorService) {
+        super(executorService);
+    }
+
     @Override
     public void execute(final Runnable command) {
         //As requestType is thread local then we have to move it from main thread to the new thread.
@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2005 - 2020 TIBCO Software Inc. All rights reserved.
+ * http://www.jaspersoft.com.
+ *
+ * Unless you have purchased a commercial license agreement from Jaspersoft,
+ * the following license terms apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.jaspersoft.jasperserver.api.metadata.common.service.impl;
+
+/**
+ * Notifies that a resource or a folder has been created or updated.
+ * 
+ * @version $Id$
+ */
+public class ResourceSavedEvent {
+
+	private final String resourceURI;
+	private final String label;
+	private final String description;
+	private final boolean folder;
+	private final boolean hidden;
+
+	public ResourceSavedEvent(String resourceURI, String label, String description,
+			boolean folder, boolean hidden) {
+		this.resourceURI = resourceURI;
+		this.label = label;
+		this.description = description;
+		this.folder = folder;
+		this.hidden = hidden;
+	}
+
+	public String getResourceURI() {
+		return resourceURI;
+	}
+
+	public String getLabel() {
+		return label;
+	}
+
+	public String getDescription() {
+		return description;
+	}
+
+	/**
+	 * @return whether the saved item is a folder
+	 */
+	public boolean isFolder() {
+		return folder;
+	}
+
+	/**
+	 * @return whether the saved item is located in a hidden folder (e.g. a local resource) or is a hidden folder
+	 */
+	public boolean isHidden() {
+		return hidden;
+	}
+
+}
@@ -45,8 +45,12 @@ import com.jaspersoft.jasperserver.api.metadata.common.service.impl.hibernate.pe
 import com.jaspersoft.jasperserver.api.metadata.common.util.LocalLockManager;
 import com.jaspersoft.jasperserver.api.metadata.common.util.LockHandle;
 import com.jaspersoft.jasperserver.api.metadata.common.util.LockManager;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
 
 /**
  * @author Lucian Chirita (lucianc@users.sourceforge.net)
@@ -61,24 +65,31 @@ public class HibernateRepositoryCache extends HibernateDaoImpl implements Reposi
 	private boolean setFindByCriteriaToReadOnly = false;
 	private boolean isEnabledRepositoryCaching = false;
 	private Ehcache hibernateRepositoryEhcache;
+	private PlatformTransactionManager transactionManager;
 
 	public HibernateRepositoryCache() {
 	}
 
-	@Transactional(propagation = Propagation.REQUIRED, readOnly = false)
+	/*
+	 * Not transactional, a fresh cached item is returned without starting a transaction or locking.
+	 * Loading the item on a miss starts a transaction.
+	 */
 	public InputStream cache(ExecutionContext context, FileResource resource, RepositoryCacheableItem cacheableItem) {
 		if (isCachingOn()) {
-			CachedItem cachedItem = getCachedItem(context, resource, cacheableItem);
+			CachedItem cachedItem = getFreshCachedItem(resource, cacheableItem);
+			if (cachedItem == null) {
+				cachedItem = loadCachedItem(context, resource, cacheableItem);
+			}
 			while(cachedItem.isItemReference()) {
 				cachedItem = cachedItem.getReference();
 			}
+			// the stream reads the cached bytes directly, they are not copied
 			return new ByteArrayInputStream(cachedItem.getDataBytes());
 		} else {
 			return new ByteArrayInputStream(cacheableItem.getData(context, resource));
 		}
 	}
 
-	@Transactional(propagation = Propagation.REQUIRED, readOnly = false)
 	public InputStream cache(ExecutionContext context, String uri, RepositoryCacheableItem cacheableItem) {
 		FileResource resource = (FileResource) repository.getResource(context, uri);
 		return cache(context, resource, cacheableItem);
@@ -92,29 +103,79 @@ public class HibernateRepositoryCache extends HibernateDaoImpl implements Reposi
 		lockManager.unlock(lock);
 	}
 
+	/**
+	 * Returns the item from the memory cache if it is up to date with the resource, without locking.
+	 * References are not resolved here because they need to be checked against the referenced resource.
+	 */
+	protected CachedItem getFreshCachedItem(FileResource resource, RepositoryCacheableItem cacheableItem) {
+		if (isEnabledRepositoryCaching || resource.isReference()) {
+			// persistent items are updated in place and need to be read in a transaction
+			return null;
+		}
+
+		Element element = hibernateRepositoryEhcache.get(resource.getURIString());
+		if (element == null) {
+			return null;
+		}
+
+		CachedItem cachedItem = (CachedItem) element.getObjectValue();
+		if (cachedItem.isItemReference()
+				|| !cacheableItem.getCacheName().equals(cachedItem.getCacheName())
+				|| isStale(cachedItem, resource)) {
+			return null;
+		}
+
+		if (log.isDebugEnabled()) {
+			log.debug("Found fresh item in repository cache \"" + cacheableItem.getCacheName() + "\" for resource \"" 
+					+ resource.getURIString() + "\", version " + cachedItem.getVersion());
+		}
+		return cachedItem;
+	}
+
+	protected boolean isStale(CachedItem cachedItem, FileResource resource) {
+		return cachedItem.getVersion() < resource.getVersion()
+				|| cachedItem.getVersionDate() == null
+				|| cachedItem.getVersionDate().before(resource.getCreationDate());
+	}
+
+	protected CachedItem loadCachedItem(final ExecutionContext context, final FileResource resource, 
+			final RepositoryCacheableItem cacheableItem) {
+		if (transactionManager == null) {
+			return getCachedItem(context, resource, cacheableItem);
+		}
+
+		TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+		return transactionTemplate.execute(new TransactionCallback<CachedItem>() {
+			public CachedItem doInTransaction(TransactionStatus status) {
+				return getCachedItem(context, resource, cacheableItem);
+			}
+		});
+	}
+
 	protected CachedItem getCachedItem(ExecutionContext context, FileResource resource, RepositoryCacheableItem cacheableItem) {
 		if (log.isDebugEnabled()) {
 			log.debug("Looking in repository cache \"" + cacheableItem.getCacheName() + "\" for resource \"" + resource.getURIString() +
 					"\", version " + resource.getVersion() + "\", version date " + resource.getCreationDate());
 		}
 
+		CachedItem refItem = null;
+		if (resource.isReference()) {
+			// resolved before locking the reference, so that no thread holds two locks at once
+			FileResource ref = (FileResource) repository.getResource(context, resource.getReferenceURI());
+			refItem = getCachedItem(context, ref, cacheableItem);
+		}
+
 		LockHandle lock = lock(resource, cacheableItem);
 
 		try {
 			CachedItem cachedItem = getCachedItem(resource.getURIString(), cacheableItem, true);
-			if (cachedItem == null
-					|| cachedItem.getVersion() < resource.getVersion()
-					|| cachedItem.getVersionDate() == null
-					|| cachedItem.getVersionDate().before(resource.getCreationDate())) {
+			if (cachedItem == null || isStale(cachedItem, resource)) {
 				if (resource.isReference()) {
-					cachedItem = saveRefence(context, resource, cachedItem, cacheableItem);
+					cachedItem = saveRefence(context, resource, cachedItem, cacheableItem, refItem);
 				} else {
 					cachedItem = saveData(context, resource, cachedItem, cacheableItem);
 				}
 			} else if (resource.isReference()) {
-				//load the reference to force updates
-				FileResource ref = (FileResource) repository.getResource(context, resource.getReferenceURI());
-				CachedItem refItem = getCachedItem(context, ref, cacheableItem);
 				if (!refItem.equals(cachedItem.getReference())) {
 					updateReference(cachedItem, refItem);
 				}
@@ -225,12 +286,11 @@ public class HibernateRepositoryCache extends HibernateDaoImpl implements Reposi
 		}
 	}
 
-	protected CachedItem saveRefence(ExecutionContext context, FileResource resource, CachedItem item, RepositoryCacheableItem cacheableItem) {
-		FileResource ref = (FileResource) repository.getResource(context, resource.getReferenceURI());
-		CachedItem refItem = getCachedItem(context, ref, cacheableItem);
-
+	protected CachedItem saveRefence(ExecutionContext context, FileResource resource, CachedItem item, RepositoryCacheableItem cacheableItem,
+			CachedItem refItem) {
 		CachedItem saveItem;
-		if (item == null) {
+		if (item == null || !isEnabledRepositoryCaching) {
+			// items only kept in memory are replaced, as they can be read without locking
 			saveItem = new CachedItem();
 		} else {
 			saveItem = item;
@@ -257,7 +317,8 @@ public class HibernateRepositoryCache extends HibernateDaoImpl implements Reposi
 		byte[] data = cacheableItem.getData(context, resource);
 
 		CachedItem saveItem;
-		if (item == null) {
+		if (item == null || !isEnabledRepositoryCaching) {
+			// items only kept in memory are replaced, as they can be read without locking
 			saveItem = new CachedItem();
 		} else {
 			saveItem = item;
@@ -360,6 +421,14 @@ public class HibernateRepositoryCache extends HibernateDaoImpl implements Reposi
 		}
 	}
 
+	public PlatformTransactionManager getTransactionManager() {
+		return transactionManager;
+	}
+
+	public void setTransactionManager(PlatformTransactionManager transactionManager) {
+		this.transactionManager = transactionManager;
+	}
+
 	public LockManager getLockManager() {
 		return lockManager;
 	}
@@ -41,6 +41,7 @@ import com.jaspersoft.jasperserver.api.metadata.common.domain.Folder;
 import com.jaspersoft.jasperserver.api.metadata.common.domain.Resource;
 import com.jaspersoft.jasperserver.api.metadata.common.domain.ResourceReference;
 import com.jaspersoft.jasperserver.api.metadata.common.domain.ResourceLookup;
+import com.jaspersoft.jasperserver.api.metadata.common.domain.client.ResourceLookupImpl;
 import com.jaspersoft.jasperserver.api.metadata.common.domain.FileResource;
 import com.jaspersoft.jasperserver.api.metadata.common.domain.DataContainer;
 import com.jaspersoft.jasperserver.api.metadata.common.domain.impl.IdedRepoObject;
@@ -54,6 +55,8 @@ import com.jaspersoft.jasperserver.api.metadata.common.service.impl.ResourceCopi
 import com.jaspersoft.jasperserver.api.metadata.common.service.impl.FolderMoveEvent;
 import com.jaspersoft.jasperserver.api.metadata.common.service.impl.HibernateDaoImpl;
 import com.jaspersoft.jasperserver.api.metadata.common.service.impl.RepositoryListener;
+import com.jaspersoft.jasperserver.api.metadata.common.service.impl.RepositorySaveListener;
+import com.jaspersoft.jasperserver.api.metadata.common.service.impl.ResourceSavedEvent;
 import com.jaspersoft.jasperserver.api.metadata.common.service.impl.RepositorySecurityChecker;
 import com.jaspersoft.jasperserver.api.metadata.common.service.impl.HibernateDaoTemplate;
 
@@ -76,6 +79,8 @@ import com.jaspersoft.jasperserver.api.search.SortByAccessTimeTransformer;
 import com.jaspersoft.jasperserver.api.search.LastAccessTimeAttribute;
 import com.jaspersoft.jasperserver.api.search.TransformerFactory;
 import com.jaspersoft.jasperserver.api.search.SearchFilter;
+import com.jaspersoft.jasperserver.api.search.SearchKey;
+import com.jaspersoft.jasperserver.api.search.SeekableSearchSorter;
 import com.jaspersoft.jasperserver.api.search.SearchSorter;
 import com.jaspersoft.jasperserver.api.search.IdAttribute;
 import com.jaspersoft.jasperserver.api.search.BasicTransformer;
@@ -98,6 +103,8 @@ import org.hibernate.boot.jaxb.spi.Binding;
 import org.hibernate.criterion.Conjunction;
 import org.hibernate.criterion.Criterion;
 import org.hibernate.criterion.DetachedCriteria;
+import org.hibernate.criterion.Disjunction;
+import org.hibernate.criterion.Junction;
 import org.hibernate.criterion.Order;
 import org.hibernate.criterion.ProjectionList;
 import org.hibernate.criterion.Projections;
@@ -189,6 +196,8 @@ public class HibernateRepositoryServiceImpl extends HibernateDaoImpl implements
 
     private HibernateSaveUpdateDeleteListener hibernateSaveUpdateDeleteListener;
 
+    private RepositoryResourceCache resourceCache;
+
     private ApplicationContext applicationContext; //needed for validation settings
 
 
@@ -434,6 +443,15 @@ public class HibernateRepositoryServiceImpl extends HibernateDaoImpl implements
             }
         });
     }
+
+    private void logAccessResource(final Resource resource, final boolean updating) {
+        accessContext.doInAccessContext(new AccessContext.AccessContextCallback() {
+            public void fillAccessEvent(AccessEvent accessEvent) {
+                accessEvent.setResource(resource);
+                accessEvent.setUpdating(updating);
+            }
+        });
+    }
     
     protected Resource loadResource(final String uri, Class resourceType) {
         return loadResource(uri, resourceType, null, null);
@@ -441,6 +459,26 @@ public class HibernateRepositoryServiceImpl extends HibernateDaoImpl implements
 
     protected Resource loadResource(final String uri, Class resourceType, Map<String, Object> clientOptions,
             Integer expectedVersion) {
+        boolean cacheable = resourceCache != null && resourceCache.isEnabled()
+                && clientOptions == null && expectedVersion == null;
+        long cacheGeneration = 0;
+        if (cacheable) {
+            Resource cached = resourceCache.get(uri, resourceType);
+            if (cached != null) {
+                auditResourceActivity("accessResource", uri, cached.getResourceType());
+                // the access event gets its own object, the caller may change the returned resource
+                ResourceLookupImpl accessed = new ResourceLookupImpl();
+                accessed.setURIString(cached.getURIString());
+                accessed.setLabel(cached.getLabel());
+                accessed.setResourceType(cached.getResourceType());
+                accessed.setVersion(cached.getVersion());
+                logAccessResource(accessed, false);
+                closeAuditEvent("accessResource");
+                return cached;
+            }
+            cacheGeneration = resourceCache.startLoad();
+        }
+
         Class persistentClass = resourcePersistentClass(resourceType);
 
         RepoResource repoResource = findByURI(persistentClass, uri, false);
@@ -457,6 +495,9 @@ public class HibernateRepositoryServiceImpl extends HibernateDaoImpl implements
             logAccessResource(repoResource, false);
             resource = (Resource) repoResource.toClient(resourceFactory, clientOptions);
             closeAuditEvent("accessResource");
+            if (cacheable) {
+                resourceCache.put(uri, resource, cacheGeneration);
+            }
         }
         return resource;
     }
@@ -547,6 +588,7 @@ public class HibernateRepositoryServiceImpl extends HibernateDaoImpl implements
                 }
 
                 getHibernateTemplate().saveOrUpdate(repoFolder);
+                resourceSaved(repoFolder);
                 closeAuditEvent(eventType);
                 return null;
             }
@@ -689,6 +731,7 @@ public class HibernateRepositoryServiceImpl extends HibernateDaoImpl implements
                 //template.refresh(repo);
             }
             template = null;
+                    resourceSaved(repo);
                     logAccessResource(repo, true);
                     closeAuditEvent(eventType);
                     return repo;
@@ -710,6 +753,7 @@ public class HibernateRepositoryServiceImpl extends HibernateDaoImpl implements
                             }
                             //template.lock(res, LockMode.FORCE);
                             template.save(res);
+                            resourceSaved(res);
                         }
                         return null;
                     }
@@ -1894,6 +1938,21 @@ public class HibernateRepositoryServiceImpl extends HibernateDaoImpl implements
         }
     }
 
+    protected void resourceSaved(RepoResourceBase resource) {
+        boolean folder = resource instanceof RepoFolder;
+        RepoFolder parent = resource.getParent();
+        boolean hidden = (parent != null && parent.isHidden()) || (folder && ((RepoFolder) resource).isHidden());
+
+        ResourceSavedEvent event = new ResourceSavedEvent(resource.getResourceURI(),
+                resource.getLabel(), resource.getDescription(), folder, hidden);
+        for (Iterator it = getRepositoryListeners().iterator(); it.hasNext();) {
+            RepositoryListener listener = (RepositoryListener) it.next();
+            if (listener instanceof RepositorySaveListener) {
+                ((RepositorySaveListener) listener).resourceSaved(event);
+            }
+        }
+    }
+
     protected String getMovedOldURI(String newURI, String oldBaseURI,
             String newBaseURI) {
         if (!RepositoryUtils.isAncestorOrEqual(newBaseURI, newURI)) {
@@ -2299,6 +2358,7 @@ public class HibernateRepositoryServiceImpl extends HibernateDaoImpl implements
                 RepoFolder folder = (RepoFolder) it.next();
                 validateResourceUriLength(folder.getResourceURI().length());
                 template.save(folder);
+                resourceSaved(folder);
             }
             template.flush();
 //          There are some corner cases when RecursiveCopier is called with Source which was created from previous call to RecursiveCopier
@@ -2662,6 +2722,78 @@ public class HibernateRepositoryServiceImpl extends HibernateDaoImpl implements
     }
     
     
+    @Transactional(propagation = Propagation.REQUIRED)
+    public List<SearchKey> getResourceKeys(ExecutionContext context, SearchCriteriaFactory searchCriteriaFactory,
+            List<SearchFilter> filters, SearchSorter sorter, SearchKey after, int max) {
+        if (!(sorter instanceof SeekableSearchSorter)) {
+            throw new IllegalArgumentException("Sorter does not define a unique key: " + sorter);
+        }
+        SeekableSearchSorter seekableSorter = (SeekableSearchSorter) sorter;
+
+        if (queryModificationEvaluator.useFullResource(context)) {
+            searchCriteriaFactory = searchCriteriaFactory.newFactory(Resource.class.getName());
+        }
+        SearchCriteria criteria = searchCriteriaFactory.create(context, filters);
+        List<String> keyProperties = seekableSorter.getKeyProperties(criteria);
+
+        ProjectionList projection = Projections.projectionList().add(Projections.id());
+        for (String property : keyProperties) {
+            projection.add(Projections.property(property));
+            criteria.addOrder(seekableSorter.isDescending() ? Order.desc(property) : Order.asc(property));
+        }
+        criteria.setProjection(Projections.distinct(projection));
+        criteria.addOrder(Order.asc("id"));
+        if (after != null) {
+            criteria.add(getSeekCriterion(keyProperties, seekableSorter.isDescending(), after));
+        }
+
+        List<Object[]> rows = (List<Object[]>) getHibernateTemplate().findByCriteria(criteria, 0, max);
+
+        List<SearchKey> keys = new ArrayList<SearchKey>(rows.size());
+        for (Object[] row : rows) {
+            Object[] values = new Object[row.length - 1];
+            System.arraycopy(row, 1, values, 0, values.length);
+            keys.add(new SearchKey(values, ((Number) row[0]).longValue()));
+        }
+        return keys;
+    }
+
+    /**
+     * Matches rows located after the key: (k1 > v1) or (k1 = v1 and k2 > v2) ... or (all keys equal and id > id).
+     */
+    protected Criterion getSeekCriterion(List<String> keyProperties, boolean descending, SearchKey after) {
+        Object[] values = after.getValues();
+        if (values.length != keyProperties.size()) {
+            throw new IllegalArgumentException("Search key " + after + " does not match properties " + keyProperties);
+        }
+
+        Disjunction seek = Restrictions.disjunction();
+        Junction equalKeys = Restrictions.conjunction();
+        for (int i = 0; i < values.length; i++) {
+            String property = keyProperties.get(i);
+            seek.add(Restrictions.conjunction()
+                    .add(equalKeys)
+                    .add(descending ? Restrictions.lt(property, values[i]) : Restrictions.gt(property, values[i])));
+            equalKeys = Restrictions.conjunction().add(equalKeys).add(Restrictions.eq(property, values[i]));
+        }
+        seek.add(equalKeys.add(Restrictions.gt("id", after.getId())));
+        return seek;
+    }
+
+    @Transactional(propagation = Propagation.REQUIRED)
+    public List<ResourceLookup> getResourcesByKeys(ExecutionContext context, SearchCriteriaFactory searchCriteriaFactory,
+            List<SearchKey> keys) {
+        if (queryModificationEvaluator.useFullResource(context)) {
+            searchCriteriaFactory = searchCriteriaFactory.newFactory(Resource.class.getName());
+        }
+
+        List<Long> ids = new ArrayList<Long>(keys.size());
+        for (SearchKey key : keys) {
+            ids.add(key.getId());
+        }
+        return getResourcesByIdList(ids, searchCriteriaFactory);
+    }
+
     @Transactional(propagation = Propagation.REQUIRED)
     public int getResourcesCount(ExecutionContext context, SearchCriteriaFactory searchCriteriaFactory,
             List<SearchFilter> filters, SearchSorter sorter, TransformerFactory transformerFactory) {
@@ -2858,14 +2990,18 @@ public class HibernateRepositoryServiceImpl extends HibernateDaoImpl implements
         // save folders first
         if (folders != null && !folders.isEmpty()) {
             for(Iterator iterator = folders.iterator(); iterator.hasNext();) {
-                getHibernateTemplate().saveOrUpdate(iterator.next());
+                RepoFolder folder = (RepoFolder) iterator.next();
+                getHibernateTemplate().saveOrUpdate(folder);
+                resourceSaved(folder);
             }
         }
         getHibernateTemplate().flush();
         // save resource then
         if (resources != null && !resources.isEmpty()) {
             for(Iterator iterator = resources.iterator(); iterator.hasNext();) {
-                getHibernateTemplate().saveOrUpdate(iterator.next());
+                RepoResource resource = (RepoResource) iterator.next();
+                getHibernateTemplate().saveOrUpdate(resource);
+                resourceSaved(resource);
             }
         }
         getHibernateTemplate().flush();
@@ -2896,6 +3032,17 @@ public class HibernateRepositoryServiceImpl extends HibernateDaoImpl implements
         this.hibernateSaveUpdateDeleteListener = hibernateSaveUpdateDeleteListener;
     }
 
+    public RepositoryResourceCache getResourceCache() {
+        return resourceCache;
+    }
+
+    /**
+     * Optional cache of loaded client resources, it should also be registered as a repository listener.
+     */
+    public void setResourceCache(RepositoryResourceCache resourceCache) {
+        this.resourceCache = resourceCache;
+    }
+
     public int getMaxStaticUriLength() {
         return maxStaticUriLength;
     }
@@ -0,0 +1,287 @@
+/*
+ * Copyright (C) 2005 - 2020 TIBCO Software Inc. All rights reserved.
+ * http://www.jaspersoft.com.
+ *
+ * Unless you have purchased a commercial license agreement from Jaspersoft,
+ * the following license terms apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.jaspersoft.jasperserver.api.metadata.common.service.impl.hibernate;
+
+import com.jaspersoft.jasperserver.api.metadata.common.domain.Folder;
+import com.jaspersoft.jasperserver.api.metadata.common.domain.Resource;
+import com.jaspersoft.jasperserver.api.metadata.common.service.RepositoryEventListenerSupport;
+import com.jaspersoft.jasperserver.api.metadata.common.service.impl.FolderMoveEvent;
+import com.jaspersoft.jasperserver.api.metadata.common.service.impl.RepositorySaveListener;
+import com.jaspersoft.jasperserver.api.metadata.common.service.impl.ResourceCopiedEvent;
+import com.jaspersoft.jasperserver.api.metadata.common.service.impl.ResourceMoveEvent;
+import com.jaspersoft.jasperserver.api.metadata.common.service.impl.ResourceSavedEvent;
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.event.CacheEventListenerAdapter;
+import org.apache.commons.lang3.SerializationException;
+import org.apache.commons.lang3.SerializationUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.Serializable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Read-through cache of client resources loaded by {@link HibernateRepositoryServiceImpl}.
+ * <p/>
+ * Resources are kept serialized, every hit returns a fresh copy that the caller is free to modify.
+ * A resource and its local resources (<code>/uri_files/...</code>) are grouped under the URI of the resource,
+ * so that saving or deleting the resource drops the cached local resources as well.
+ * Folder and resource moves clear the whole cache since they change the URIs of contained resources and
+ * of references to the moved resource.
+ * <p/>
+ * The cache is registered as a repository listener (saves and moves) and as a repository event listener
+ * (deletes, including cascaded ones). Changed entries are dropped right away and once more after the transaction
+ * completes, and a transaction which changed the repository doesn't populate the cache.
+ * Entries loaded while an invalidation happened are not cached, so that a concurrent reader can't put back
+ * a version read before the change was committed.
+ * <p/>
+ * In a cluster the Ehcache should be configured to replicate removals, see <code>ehcache.xml</code>.
+ *
+ * @version $Id$
+ */
+public class RepositoryResourceCache extends RepositoryEventListenerSupport
+        implements RepositorySaveListener, InitializingBean {
+
+    private static final Log log = LogFactory.getLog(RepositoryResourceCache.class);
+
+    private static final String LOCAL_RESOURCES_FOLDER = HibernateRepositoryServiceImpl.CHILDREN_FOLDER_SUFFIX
+            + Folder.SEPARATOR;
+
+    private Ehcache cache;
+    private boolean enabled = true;
+
+    private final Object transactionMarker = new Object();
+    private final AtomicLong generation = new AtomicLong();
+
+    @Override
+    public void afterPropertiesSet() {
+        if (cache != null) {
+            // removals replicated from other nodes also invalidate the loads in progress
+            cache.getCacheEventNotificationService().registerListener(new CacheEventListenerAdapter() {
+                @Override
+                public void notifyElementRemoved(Ehcache ehcache, Element element) {
+                    generation.incrementAndGet();
+                }
+
+                @Override
+                public void notifyRemoveAll(Ehcache ehcache) {
+                    generation.incrementAndGet();
+                }
+            });
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled && cache != null;
+    }
+
+    /**
+     * To be called before loading a resource which is to be put to the cache.
+     *
+     * @return value to pass to {@link #put(String, Resource, long)}
+     */
+    public long startLoad() {
+        return generation.get();
+    }
+
+    /**
+     * @return a copy of the cached resource, or <code>null</code> if the resource is not cached
+     * or is not of the requested type
+     */
+    public Resource get(String uri, Class resourceType) {
+        if (!isEnabled()) {
+            return null;
+        }
+        Element element = cache.get(groupKey(uri));
+        CachedResource cached = element == null ? null : getGroup(element).get(uri);
+        if (cached == null) {
+            return null;
+        }
+        Resource resource = (Resource) SerializationUtils.deserialize(cached.data);
+        return resourceType == null || resourceType.isInstance(resource) ? resource : null;
+    }
+
+    /**
+     * Caches a copy of a loaded resource, unless the repository has been changed since the load started.
+     */
+    public void put(String uri, Resource resource, long loadGeneration) {
+        if (!isEnabled() || !(resource instanceof Serializable)
+                || TransactionSynchronizationManager.hasResource(transactionMarker)
+                || generation.get() != loadGeneration) {
+            return;
+        }
+
+        byte[] data;
+        try {
+            data = SerializationUtils.serialize((Serializable) resource);
+        } catch (SerializationException e) {
+            if (log.isDebugEnabled()) {
+                log.debug("Resource " + uri + " can not be cached", e);
+            }
+            return;
+        }
+
+        String key = groupKey(uri);
+        Element element = cache.get(key);
+        if (element == null) {
+            Element newElement = new Element(key, new ConcurrentHashMap<String, CachedResource>());
+            element = cache.putIfAbsent(newElement);
+            if (element == null) {
+                element = newElement;
+            }
+        }
+
+        ConcurrentMap<String, CachedResource> group = getGroup(element);
+        CachedResource cached = new CachedResource(resource.getVersion(), data);
+        CachedResource existing = group.putIfAbsent(uri, cached);
+        if (existing != null && existing.version < cached.version) {
+            group.replace(uri, existing, cached);
+        }
+    }
+
+    public void clear() {
+        if (isEnabled()) {
+            cache.removeAll();
+        }
+    }
+
+    public void resourceSaved(ResourceSavedEvent event) {
+        if (event.isFolder()) {
+            // folder saves don't change the cached resources
+            return;
+        }
+        invalidate(event.getResourceURI());
+    }
+
+    public void resourceCopied(ResourceCopiedEvent event) {
+        // nothing is cached for a new resource
+    }
+
+    public void resourceMoved(ResourceMoveEvent resourceMove) {
+        invalidateAll();
+    }
+
+    public void folderMoved(FolderMoveEvent folderMove) {
+        invalidateAll();
+    }
+
+    @Override
+    public void onResourceDelete(Class resourceItf, String resourceURI) {
+        invalidate(resourceURI);
+    }
+
+    @Override
+    public void onFolderDelete(String folderURI) {
+        invalidateAll();
+    }
+
+    protected void invalidate(final String uri) {
+        if (!isEnabled()) {
+            return;
+        }
+        final String key = groupKey(uri);
+        generation.incrementAndGet();
+        cache.remove(key);
+        afterCompletion(new Runnable() {
+            public void run() {
+                cache.remove(key);
+            }
+        });
+    }
+
+    protected void invalidateAll() {
+        if (!isEnabled()) {
+            return;
+        }
+        generation.incrementAndGet();
+        cache.removeAll();
+        afterCompletion(new Runnable() {
+            public void run() {
+                cache.removeAll();
+            }
+        });
+    }
+
+    protected void afterCompletion(final Runnable invalidation) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            if (!TransactionSynchronizationManager.hasResource(transactionMarker)) {
+                // keeps the transaction from caching its own uncommitted changes
+                TransactionSynchronizationManager.bindResource(transactionMarker, Boolean.TRUE);
+                TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                    @Override
+                    public void afterCompletion(int status) {
+                        TransactionSynchronizationManager.unbindResourceIfPossible(transactionMarker);
+                    }
+                });
+            }
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCompletion(int status) {
+                    generation.incrementAndGet();
+                    invalidation.run();
+                }
+            });
+        }
+    }
+
+    /**
+     * Local resources are grouped under the URI of the resource that contains them.
+     */
+    protected static String groupKey(String uri) {
+        int localIdx = uri.indexOf(LOCAL_RESOURCES_FOLDER);
+        return localIdx > 0 ? uri.substring(0, localIdx) : uri;
+    }
+
+    @SuppressWarnings("unchecked")
+    private ConcurrentMap<String, CachedResource> getGroup(Element element) {
+        return (ConcurrentMap<String, CachedResource>) element.getObjectValue();
+    }
+
+    public Ehcache getCache() {
+        return cache;
+    }
+
+    public void setCache(Ehcache cache) {
+        this.cache = cache;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    protected static class CachedResource implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final int version;
+        private final byte[] data;
+
+        protected CachedResource(int version, byte[] data) {
+            this.version = version;
+            this.data = data;
+        }
+    }
+}
@@ -22,6 +22,7 @@ package com.jaspersoft.jasperserver.api.metadata.common.service.impl.hibernate.p
 
 import com.jaspersoft.jasperserver.api.JSException;
 import com.jaspersoft.jasperserver.api.logging.access.domain.AccessEvent;
+import com.jaspersoft.jasperserver.api.logging.access.domain.hibernate.RepoResourcePopularity;
 import com.jaspersoft.jasperserver.api.metadata.common.domain.Folder;
 import com.jaspersoft.jasperserver.api.metadata.common.domain.Resource;
 import com.jaspersoft.jasperserver.api.metadata.common.domain.ResourceLookup;
@@ -64,6 +65,7 @@ public abstract class RepoResourceBase implements IdedRepoObject, RepoReportData
 
     protected Set<AccessEvent> accessEvents = null;
     protected Set<RepoReportThumbnail> thumbnails = null;
+    protected Set<RepoResourcePopularity> popularity = null;
 
 	protected RepoFolder parent;
 
@@ -280,6 +282,14 @@ public abstract class RepoResourceBase implements IdedRepoObject, RepoReportData
         this.thumbnails = thumbnails;
     }
 
+    public Set<RepoResourcePopularity> getPopularity() {
+        return popularity;
+    }
+
+    public void setPopularity(Set<RepoResourcePopularity> popularity) {
+        this.popularity = popularity;
+    }
+
     public String getResourceType() {
         return resourceType != null ? resourceType : (resourceType = getClientType().getName());
     }
@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2005 - 2020 TIBCO Software Inc. All rights reserved.
+ * http://www.jaspersoft.com.
+ *
+ * Unless you have purchased a commercial license agreement from Jaspersoft,
+ * the following license terms apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jaspersoft.jasperserver.api.metadata.common.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import net.sf.jasperreports.engine.util.Pair;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.jaspersoft.jasperserver.api.JSException;
+import com.jaspersoft.jasperserver.api.JSExceptionWrapper;
+
+/**
+ * Lock manager that maps keys to a fixed set of reentrant locks.
+ * 
+ * <p>
+ * Unlike {@link LocalLockManager}, threads locking keys that fall on different stripes
+ * do not contend on a shared monitor.
+ * Unrelated keys can share a stripe, so a thread must not hold a lock while acquiring another one.
+ * A thread that waits more than the lock timeout fails with a {@link JSException}
+ * instead of proceeding without the lock.
+ * Locks need to be released by the thread that acquired them.
+ * </p>
+ * 
+ * @version $Id$
+ */
+public class StripedLockManager implements LockManager {
+	
+	private final static Log log = LogFactory.getLog(StripedLockManager.class);
+	
+	private final ReentrantLock[] stripes;
+	private final int stripeMask;
+	// 0 means timeout disabled
+	private int lockTimeoutMs = 10000;
+
+	public StripedLockManager() {
+		this(64);
+	}
+
+	public StripedLockManager(int stripeCount) {
+		int count = 1;
+		while (count < stripeCount) {
+			count <<= 1;
+		}
+		stripes = new ReentrantLock[count];
+		for (int i = 0; i < count; i++) {
+			stripes[i] = new ReentrantLock();
+		}
+		stripeMask = count - 1;
+	}
+
+	public LockHandle lock(String lockName, String key) {
+		Pair<String, String> pair = new Pair<String, String>(lockName, key);
+		ReentrantLock stripe = stripeFor(pair);
+		
+		if (log.isDebugEnabled()) {
+			log.debug("Acquiring lock for " + pair);
+		}
+		
+		boolean locked;
+		try {
+			if (lockTimeoutMs <= 0) {
+				stripe.lockInterruptibly();
+				locked = true;
+			} else {
+				locked = stripe.tryLock(lockTimeoutMs, TimeUnit.MILLISECONDS);
+			}
+		} catch (InterruptedException e) {
+			throw new JSExceptionWrapper(e);
+		}
+		
+		if (!locked) {
+			throw new JSException("Timed out after " + lockTimeoutMs + " ms waiting for lock " + pair);
+		}
+		return new StripeLockKey(pair, stripe);
+	}
+
+	public void unlock(LockHandle lock) {
+		if (log.isDebugEnabled()) {
+			log.debug("Releasing lock for " + lock.getLockKey());
+		}
+		
+		((StripeLockKey) lock).stripe.unlock();
+	}
+
+	protected ReentrantLock stripeFor(Object key) {
+		int hash = key.hashCode();
+		// spread the high bits, as done by HashMap
+		hash ^= (hash >>> 16);
+		return stripes[hash & stripeMask];
+	}
+
+	public int getStripeCount() {
+		return stripes.length;
+	}
+
+	public int getLockTimeoutMs() {
+		return lockTimeoutMs;
+	}
+
+	public void setLockTimeoutMs(int lockTimeoutMs) {
+		this.lockTimeoutMs = lockTimeoutMs;
+	}
+
+	protected static class StripeLockKey extends LockKey {
+		
+		private final ReentrantLock stripe;
+
+		public StripeLockKey(Object key, ReentrantLock stripe) {
+			super(key);
+			this.stripe = stripe;
+		}
+	}
+}
@@ -20,6 +20,8 @@
  */
 package com.jaspersoft.jasperserver.api.metadata.data.snapshot.hibernate;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -57,7 +59,11 @@ public class HibernateDataSnapshotContentsService extends HibernateDaoImpl imple
 
 	private static final Log log = LogFactory.getLog(HibernateDataSnapshotContentsService.class);
 	
+	private static final int STREAM_BUFFER_SIZE = 1 << 16;
+	
 	private DataSnapshotSerializer snapshotSerializer;
+	private boolean streamingData = true;
+	private int dataMemoryThreshold = FileBufferedDataContainer.DEFAULT_MEMORY_THRESHOLD;
 	
     @Transactional(propagation = Propagation.MANDATORY, readOnly = true)
 	public DataSnapshot loadDataSnapshot(ExecutionContext context, final long id) {
@@ -75,7 +81,8 @@ public class HibernateDataSnapshotContentsService extends HibernateDaoImpl imple
 				DataSnapshot snapshot;
 				InputStream dataStream=null;
 				try {
-					dataStream = dataBlob.getBinaryStream();
+					// reading directly from the blob stream, the data is not materialized in memory
+					dataStream = new BufferedInputStream(dataBlob.getBinaryStream(), STREAM_BUFFER_SIZE);
 					snapshot = getSnapshotSerializer().readSnapshot(dataStream);
 				} catch (Exception e) {
 					throw new JSExceptionWrapper("Failed to read data snapshot", e);
@@ -110,7 +117,9 @@ public class HibernateDataSnapshotContentsService extends HibernateDaoImpl imple
 				InputStream dataStream=null;
 				try {
 					dataStream = dataBlob.getBinaryStream();
-					dataContainer = new FileBufferedDataContainer();
+					// the container spills to a temporary file once the memory threshold is exceeded
+					dataContainer = new FileBufferedDataContainer(dataMemoryThreshold, 
+							Math.min(dataMemoryThreshold, FileBufferedDataContainer.DEFAULT_INITIAL_MEMORY_BUFFER));
 					OutputStream dataOut = dataContainer.getOutputStream();
 					try {
 						DataContainerStreamUtil.pipeData(dataStream, dataOut);
@@ -139,10 +148,11 @@ public class HibernateDataSnapshotContentsService extends HibernateDaoImpl imple
 			log.debug("saving snapshot");
 		}
 		
-		DataContainer dataContainer = new FileBufferedDataContainer();
+		DataContainer dataContainer = new FileBufferedDataContainer(dataMemoryThreshold, 
+				Math.min(dataMemoryThreshold, FileBufferedDataContainer.DEFAULT_INITIAL_MEMORY_BUFFER));
 		try {
 			boolean closeOut = true;
-			OutputStream out = dataContainer.getOutputStream();
+			OutputStream out = new BufferedOutputStream(dataContainer.getOutputStream(), STREAM_BUFFER_SIZE);
 			try {
 				// write the snapshot to a temporary location
 				getSnapshotSerializer().writeSnapshot(snapshot, out);
@@ -207,6 +217,34 @@ public class HibernateDataSnapshotContentsService extends HibernateDaoImpl imple
 		this.snapshotSerializer = snapshotSerializer;
 	}
 
+	public boolean isStreamingData() {
+		return streamingData;
+	}
+
+	/**
+	 * Determines whether snapshot data is streamed into the database blob.
+	 * 
+	 * <p>
+	 * If set to <code>false</code>, the data is copied to an in-memory blob before
+	 * being saved, which requires heap space for the entire snapshot.
+	 * </p>
+	 */
+	public void setStreamingData(boolean streamingData) {
+		this.streamingData = streamingData;
+	}
+
+	public int getDataMemoryThreshold() {
+		return dataMemoryThreshold;
+	}
+
+	/**
+	 * Sets the size in bytes up to which snapshot data is kept in memory while being 
+	 * serialized or loaded, larger data is buffered in a temporary file.
+	 */
+	public void setDataMemoryThreshold(int dataMemoryThreshold) {
+		this.dataMemoryThreshold = dataMemoryThreshold;
+	}
+
 	protected Blob loadSnapshotDataBlob(final long id, Session session) {
 		PersistentDataSnapshotContents persistentSnapshot = (PersistentDataSnapshotContents) session.get(
 				PersistentDataSnapshotContents.class, id);
@@ -231,21 +269,36 @@ public class HibernateDataSnapshotContentsService extends HibernateDaoImpl imple
 				
 				// create the blob
 				Blob dataBlob;
-//				TODO: next blob was creating from Stream, replaced with byte[] - this could create performance issue
-				try {
-					dataBlob = new SerialBlob(snapshotData.getData());
-					persistentSnapshot.setData(dataBlob);
-				} catch (SQLException e) {
-					e.printStackTrace();
+				InputStream dataStream = null;
+				if (streamingData) {
+					// the JDBC driver reads the data from the stream on flush
+					dataStream = snapshotData.getInputStream();
+					dataBlob = session.getLobHelper().createBlob(dataStream, snapshotData.dataSize());
+				} else {
+					try {
+						dataBlob = new SerialBlob(snapshotData.getData());
+					} catch (SQLException e) {
+						throw new JSExceptionWrapper("Failed to create data snapshot blob", e);
+					}
 				}
-
+				persistentSnapshot.setData(dataBlob);
 
 				if (log.isDebugEnabled()) {
 					log.debug("saving data snapshot to the DB");
 				}
 				
-				session.save(persistentSnapshot);
-				session.flush();
+				try {
+					session.save(persistentSnapshot);
+					session.flush();
+				} finally {
+					if (dataStream != null) {
+						try {
+							dataStream.close();
+						} catch (IOException e) {
+							log.warn("Failed to close data container stream for data snapshot", e);
+						}
+					}
+				}
 				
 				long savedId = persistentSnapshot.getId();
 				
@@ -274,7 +327,11 @@ public class HibernateDataSnapshotContentsService extends HibernateDaoImpl imple
 		}
 		
 		// save as new
-		return saveSnapshotData(snapshotData);
+		try {
+			return saveSnapshotData(snapshotData);
+		} finally {
+			snapshotData.dispose();
+		}
 	}
 	
 }
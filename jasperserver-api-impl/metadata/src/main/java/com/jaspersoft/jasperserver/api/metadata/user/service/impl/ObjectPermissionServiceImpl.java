@@ -75,6 +75,9 @@ import org.springframework.security.acls.model.SidRetrievalStrategy;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.io.Serializable;
 import java.util.ArrayList;
@@ -82,7 +85,9 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import static com.jaspersoft.jasperserver.api.logging.audit.domain.AuditEventType.CREATE_PERMISSION;
@@ -119,6 +124,8 @@ public class ObjectPermissionServiceImpl extends HibernateDaoImpl implements
 	private ResourceFactory persistentClassFactory;
     private NonMutableAclCache nonMutableAclCache;
     private AclService aclService;
+    private RepositoryPermissionIndex permissionIndex;
+    private final Object permissionIndexMarker = new Object();
 
 	private AttributePathTransformer attributePathTransformer;
 
@@ -285,6 +292,14 @@ public class ObjectPermissionServiceImpl extends HibernateDaoImpl implements
 				}
 				clearAclEntriesCache(permission.getURI());
 			}
+			if (permissionIndex != null) {
+				// the recipient might have been renamed, indexed entries are keyed by name
+				updatePermissionIndex(new Runnable() {
+					public void run() {
+						permissionIndex.invalidate();
+					}
+				});
+			}
 		}
 	}
 
@@ -466,6 +481,14 @@ public class ObjectPermissionServiceImpl extends HibernateDaoImpl implements
 		getHibernateTemplate().saveOrUpdate(existingPerm);
 
 		clearAclEntriesCache(objPermission.getURI());
+		if (permissionIndex != null) {
+			final ObjectPermission indexedPerm = (ObjectPermission) existingPerm.toClient(getObjectMappingFactory());
+			updatePermissionIndex(new Runnable() {
+				public void run() {
+					permissionIndex.put(indexedPerm);
+				}
+			});
+		}
 	}
 
 
@@ -489,8 +512,17 @@ public class ObjectPermissionServiceImpl extends HibernateDaoImpl implements
         if (!isPrivilegedOperation(context) && checkAdministerAccess && !isObjectAdministrable(null, permission.getURI())) {
             throw new AccessDeniedException("Access is denied");
         }
+		final ObjectPermission indexedPerm = permissionIndex == null ? null
+				: (ObjectPermission) permission.toClient(getObjectMappingFactory());
 		getHibernateTemplate().delete(permission);
 		clearAclEntriesCache(permission.getURI());
+		if (indexedPerm != null) {
+			updatePermissionIndex(new Runnable() {
+				public void run() {
+					permissionIndex.remove(indexedPerm);
+				}
+			});
+		}
 	}
 
     protected boolean isPrivilegedOperation(ExecutionContext context){
@@ -568,28 +600,7 @@ public class ObjectPermissionServiceImpl extends HibernateDaoImpl implements
 		Object savedAcl0=existingAcl!=null?existingAcl[0]:null;
 		Object savedAcl1=existingAcl!=null?existingAcl[1]:null;
 
-		// split uri into uncached acls and existing acl.
-		// we'll search only for uncached acl and return both parts to combine later
-		// in the final acl
-		final List<String> path = new ArrayList<String>();
-		if(uri!=null){
-			path.add(uri); // this is obviously not in a cache as we wouldn't be in this method
-			if(useBulk) {
-				for(String parentURI=getParentURI(uri); parentURI!=null; parentURI=getParentURI(parentURI)){
-					Acl acl = getCached(parentURI);
-					if(acl==null){
-						path.add(parentURI);
-					} else {
-						// ok we've found existing path, all parents should be already in the cache too
-						// or there is a problem with cache integrity (not our problem)
-						existingAcl[0]=parentURI;
-						existingAcl[1]=acl;
-						break;
-					}
-				}
-			}
-		}
-		//*****************//
+		final List<String> path = uri == null ? Collections.<String>emptyList() : getUncachedPath(uri, useBulk ? existingAcl : null);
 
 		if (uri != null && recipientObject != null) {
 			// split uri and get all permissions in 1 scoop
@@ -637,6 +648,31 @@ public class ObjectPermissionServiceImpl extends HibernateDaoImpl implements
 		return objList;
 	}
 
+	/**
+	 * Splits uri into uncached acls and existing acl.
+	 * We'll search only for uncached acl and return both parts to combine later in the final acl.
+	 * Parents are only collected when existingAcl is passed.
+	 */
+	private List<String> getUncachedPath(String uri, Object[] existingAcl) {
+		List<String> path = new ArrayList<String>();
+		path.add(uri); // this is obviously not in a cache as we wouldn't be in this method
+		if(existingAcl!=null) {
+			for(String parentURI=getParentURI(uri); parentURI!=null; parentURI=getParentURI(parentURI)){
+				Acl acl = getCached(parentURI);
+				if(acl==null){
+					path.add(parentURI);
+				} else {
+					// ok we've found existing path, all parents should be already in the cache too
+					// or there is a problem with cache integrity (not our problem)
+					existingAcl[0]=parentURI;
+					existingAcl[1]=acl;
+					break;
+				}
+			}
+		}
+		return path;
+	}
+
 	@SuppressWarnings({ "rawtypes", "unchecked" })
 	protected List getRepoObjectPermissions(final ObjectRecipientIdentity recipientIdentity) {
 		final String objPermissionClassName = getPersistentClassFactory().getImplementationClassName(ObjectPermission.class);
@@ -691,6 +727,13 @@ public class ObjectPermissionServiceImpl extends HibernateDaoImpl implements
 		}
 		InternalURI res = (InternalURI) targetObject;
 		String uriWithProtocol = res.getProtocol()+ ":" + res.getPath();
+		RepositoryPermissionIndex index = getLoadedPermissionIndex();
+		if (index != null && uriWithProtocol.startsWith(RESOURCE_URI_PREFIX) && index.supports(uriWithProtocol)) {
+			List<ObjectPermission> indexed = index.getPermissions(getUncachedPath(uriWithProtocol, existingAcl));
+			if (indexed != null) {
+				return indexed;
+			}
+		}
 		List objList = getRepoObjectPermissions(context, uriWithProtocol, null, existingAcl);
 		return makeObjectPermissionClientList(objList);
 	}
@@ -897,12 +940,21 @@ public class ObjectPermissionServiceImpl extends HibernateDaoImpl implements
 	}
 
 	protected void clearAclEntriesCache(String uri) {
-		InternalURIDefinition objId = new InternalURIDefinition(uri);
+		final InternalURIDefinition objId = new InternalURIDefinition(uri);
 		if (log.isDebugEnabled()) {
 			log.debug("Removing " + objId + " from permissions");
 		}
 		if (nonMutableAclCache!=null) {
-			nonMutableAclCache.evictFromCache(objId);
+			if (permissionIndex != null) {
+				// the change is applied to the index after commit, the eviction must not drop the index
+				permissionIndex.evictLocally(new Runnable() {
+					public void run() {
+						nonMutableAclCache.evictFromCache(objId);
+					}
+				});
+			} else {
+				nonMutableAclCache.evictFromCache(objId);
+			}
 		}
 	}
 
@@ -936,6 +988,104 @@ public class ObjectPermissionServiceImpl extends HibernateDaoImpl implements
 
 		clearAclEntriesCache(oldURI);
 		clearAclEntriesCache(newURI);
+		if (permissionIndex != null) {
+			final String movedFromURI = oldURI;
+			final String movedToURI = newURI;
+			updatePermissionIndex(new Runnable() {
+				public void run() {
+					permissionIndex.move(movedFromURI, movedToURI);
+				}
+			});
+		}
+	}
+
+	/**
+	 * @return the permission index if it is enabled and loaded, loading it if needed,
+	 * or <code>null</code> if the permissions need to be queried from the database
+	 */
+	protected RepositoryPermissionIndex getLoadedPermissionIndex() {
+		if (permissionIndex == null || !permissionIndex.isEnabled()
+				// the index doesn't see permission changes that have not been committed yet
+				|| TransactionSynchronizationManager.hasResource(permissionIndexMarker)) {
+			return null;
+		}
+		if (!permissionIndex.isLoaded()) {
+			loadPermissionIndex();
+		}
+		return permissionIndex.isLoaded() ? permissionIndex : null;
+	}
+
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	protected void loadPermissionIndex() {
+		final long modificationCount = permissionIndex.getModificationCount();
+		final String queryString = "from " + getPersistentClassFactory().getImplementationClassName(ObjectPermission.class)
+				+ " as objPermission where objPermission.URI like :prefix";
+
+		List<ObjectPermission> permissions = (List<ObjectPermission>) getHibernateTemplate().execute(new HibernateCallback() {
+			public Object doInHibernate(Session session) throws HibernateException {
+				List<RepoObjectPermission> repoPerms = session.createQuery(queryString)
+						.setParameter("prefix", RESOURCE_URI_PREFIX + Folder.SEPARATOR + "%", StringType.INSTANCE)
+						.list();
+				// recipients are shared by many permissions, convert each of them only once
+				Map<Object, Object> clientRecipients = new IdentityHashMap<Object, Object>();
+				List<ObjectPermission> result = new ArrayList<ObjectPermission>(repoPerms.size());
+				for (RepoObjectPermission repoPerm : repoPerms) {
+					IdedObject recipient = (IdedObject) repoPerm.getPermissionRecipient();
+					if (recipient == null) {
+						continue;
+					}
+					Object clientRecipient = clientRecipients.get(recipient);
+					if (clientRecipient == null) {
+						clientRecipient = recipient.toClient(getObjectMappingFactory());
+						clientRecipients.put(recipient, clientRecipient);
+					}
+					ObjectPermission permission = new ObjectPermissionImpl();
+					permission.setURI(repoPerm.getURI());
+					permission.setPermissionRecipient(clientRecipient);
+					permission.setPermissionMask(repoPerm.getPermissionMask());
+					result.add(permission);
+				}
+				return result;
+			}
+		});
+
+		if (permissionIndex.load(permissions, modificationCount)) {
+			if (log.isDebugEnabled()) {
+				log.debug("Loaded " + permissions.size() + " permissions to the permission index");
+			}
+		} else if (log.isDebugEnabled()) {
+			log.debug("Permissions changed while loading the permission index, will retry later");
+		}
+	}
+
+	/**
+	 * Applies a change to the permission index once the transaction commits.
+	 * The transaction doesn't use the index after changing permissions.
+	 */
+	protected void updatePermissionIndex(final Runnable update) {
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			update.run();
+			return;
+		}
+		if (!TransactionSynchronizationManager.hasResource(permissionIndexMarker)) {
+			TransactionSynchronizationManager.bindResource(permissionIndexMarker, Boolean.TRUE);
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				@Override
+				public void afterCompletion(int status) {
+					TransactionSynchronizationManager.unbindResourceIfPossible(permissionIndexMarker);
+				}
+			});
+		}
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+			@Override
+			public void afterCompletion(int status) {
+				if (status == TransactionSynchronization.STATUS_COMMITTED) {
+					update.run();
+				} else if (status == TransactionSynchronization.STATUS_UNKNOWN) {
+					permissionIndex.invalidate();
+				}
+			}
+		});
 	}
 
 	@SuppressWarnings("rawtypes")
@@ -953,6 +1103,20 @@ public class ObjectPermissionServiceImpl extends HibernateDaoImpl implements
 		InternalURI resource = (InternalURI) targetObject;
 		int permissionMask = 0;
 
+		RepositoryPermissionIndex index = getLoadedPermissionIndex();
+		if (index != null && index.supports(resource.getPath())
+				&& RepositoryPermissionIndex.recipientKey(recipient) != null) {
+			ObjectPermission inherited = index.getInheritedPermission(resource.getPath(), recipient);
+			if (inherited != null) {
+				permissionMask = inherited.getPermissionMask();
+			}
+			if (log.isDebugEnabled()) {
+				log.debug("Inherited permission " + permissionMask + " found in permission index for object "
+						+ resource.getPath() + " and recipient " + recipient);
+			}
+			return permissionMask;
+		}
+
 		String folderURI = getParentURI(resource.getPath());
 		while (folderURI != null) {
 			List permissions = getRepoObjectPermissions(context,
@@ -989,6 +1153,14 @@ public class ObjectPermissionServiceImpl extends HibernateDaoImpl implements
         this.aclService = aclService;
     }
 
+    public RepositoryPermissionIndex getPermissionIndex() {
+        return permissionIndex;
+    }
+
+    public void setPermissionIndex(RepositoryPermissionIndex permissionIndex) {
+        this.permissionIndex = permissionIndex;
+    }
+
 	@SuppressWarnings({ "unchecked" })
 	@Override
 	public List<ObjectPermission> getObjectPermissionsForSubtree(final String uri) {
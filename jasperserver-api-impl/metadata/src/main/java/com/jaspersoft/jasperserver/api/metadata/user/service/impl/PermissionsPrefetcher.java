@@ -24,7 +24,9 @@ package com.jaspersoft.jasperserver.api.metadata.user.service.impl;
 
 import com.jaspersoft.jasperserver.api.common.util.ImportRunMonitor;
 import com.jaspersoft.jasperserver.api.metadata.common.domain.Folder;
+import com.jaspersoft.jasperserver.api.metadata.common.domain.InternalURI;
 import com.jaspersoft.jasperserver.api.metadata.common.domain.PermissionUriProtocol;
+import com.jaspersoft.jasperserver.api.metadata.common.domain.Resource;
 import com.jaspersoft.jasperserver.api.metadata.common.domain.impl.IdedObject;
 import com.jaspersoft.jasperserver.api.metadata.common.service.ResourceFactory;
 import com.jaspersoft.jasperserver.api.metadata.common.service.impl.HibernateDaoImpl;
@@ -46,8 +48,12 @@ import org.springframework.security.acls.domain.AccessControlEntryImpl;
 import org.springframework.security.acls.model.AccessControlEntry;
 import org.springframework.security.acls.model.Acl;
 import org.springframework.security.acls.model.AclService;
+import org.springframework.security.acls.model.Sid;
+import org.springframework.security.util.FieldUtils;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
@@ -65,6 +71,9 @@ import java.util.Set;
  * - security interceptor gets called
  * - obj permission service gets called to get acl's 
  * - lo and behold, iterms are found in cache
+ *
+ * resource listings (search, REST) are handled by prefetchAcls(), which loads the ACLs of
+ * all listed resources and of their uncached ancestors with one query per maxUrisPerQuery URIs
  * @author bob
  *
  */
@@ -72,6 +81,7 @@ import java.util.Set;
 public class PermissionsPrefetcher extends HibernateDaoImpl implements MethodInterceptor {
 	private static final Log log = LogFactory.getLog(PermissionsPrefetcher.class);
 	private int minimumPrefetch = 10;
+	private int maxUrisPerQuery = 500;
 	private AclService repositoryAclService;
     private EhCacheBasedJasperServerAclCache aclCache;
     private JasperServerSidRetrievalStrategyImpl sidRetrievalStrategy;
@@ -82,6 +92,23 @@ public class PermissionsPrefetcher extends HibernateDaoImpl implements MethodInt
 		Object process(final MethodInvocation call) throws Throwable;
 	}
 
+	private final Interceptor resourceListInterceptor = new Interceptor() {
+		@Override
+		public Object process(MethodInvocation call) throws Throwable {
+			Object result = call.proceed();
+			List<String> uris = getResourceURIs(result);
+			if (!uris.isEmpty()) {
+				try {
+					prefetchAcls(uris);
+				} catch (RuntimeException e) {
+					// the security interceptor will read the ACLs one by one
+					log.warn("Failed to prefetch permissions for " + call.getMethod().getName(), e);
+				}
+			}
+			return result;
+		}
+	};
+
 	final Map<String, Interceptor> wiredCalls = new HashMap<String, Interceptor>(){
 		private static final long serialVersionUID = 1L;
 		{
@@ -111,6 +138,13 @@ public class PermissionsPrefetcher extends HibernateDaoImpl implements MethodInt
 					return result;
 				}
 			});
+
+			put("getResources", resourceListInterceptor);
+			put("getResourcesByKeys", resourceListInterceptor);
+			put("getResourcesByIdList", resourceListInterceptor);
+			put("loadResourcesList", resourceListInterceptor);
+			put("loadClientResources", resourceListInterceptor);
+			put("findResources", resourceListInterceptor);
 		}
 	};
 
@@ -273,6 +307,161 @@ public class PermissionsPrefetcher extends HibernateDaoImpl implements MethodInt
 		}
 	}
 
+	private List<String> getResourceURIs(Object result) {
+		Collection<?> items;
+		if (result instanceof Collection) {
+			items = (Collection<?>) result;
+		} else if (result instanceof Object[]) {
+			items = Arrays.asList((Object[]) result);
+		} else {
+			return Collections.emptyList();
+		}
+		List<String> uris = new ArrayList<String>(items.size());
+		for (Object item : items) {
+			if (item instanceof Resource && ((Resource) item).getURIString() != null) {
+				uris.add(((Resource) item).getURIString());
+			}
+		}
+		return uris;
+	}
+
+	/**
+	 * Puts to the ACL cache the ACLs of the given repository URIs and of their ancestors which are not cached yet,
+	 * so that the security voters processing a list of resources find all of them in the cache.
+	 * Permissions are loaded with a single query per maxUrisPerQuery missing ACLs.
+	 * <p/>
+	 * The cached ACLs are shared by all users, therefore they are built with the permissions of all recipients
+	 * rather than of the SIDs of the current user.
+	 *
+	 * @param uris repository URIs, with or without the repo: prefix
+	 */
+	public void prefetchAcls(Collection<String> uris) {
+		if (ImportRunMonitor.isImportRun()) {
+			// if import is running and permission prefetcher was called - this can un-sync permission cache
+			return;
+		}
+
+		// ACLs to build, collected up the tree until an ancestor which is already cached
+		Map<String, InternalURI> missing = new HashMap<String, InternalURI>();
+		Set<String> cached = new HashSet<String>();
+		for (String uri : uris) {
+			if (PermissionUriProtocol.getProtocol(uri) != PermissionUriProtocol.RESOURCE) {
+				continue;
+			}
+			InternalURI internalURI = new InternalURIDefinition(uri);
+			while (internalURI != null && !missing.containsKey(internalURI.getURI())
+					&& !cached.contains(internalURI.getURI())) {
+				if (aclCache.getFromCache(internalURI) != null) {
+					cached.add(internalURI.getURI());
+					break;
+				}
+				missing.put(internalURI.getURI(), internalURI);
+				String parentPath = internalURI.getParentPath();
+				internalURI = parentPath == null ? null : new InternalURIDefinition(parentPath, PermissionUriProtocol.RESOURCE);
+			}
+		}
+		if (missing.isEmpty() || missing.size() < minimumPrefetch) {
+			return;
+		}
+		if (log.isDebugEnabled()) {
+			log.debug("Prefetching permissions for " + missing.size() + " URIs");
+		}
+
+		Map<String, List<AccessControlEntry>> aces = loadAccessControlEntries(new ArrayList<String>(missing.keySet()));
+
+		// parents first, so that every ACL is built on top of its parent's ACL
+		List<InternalURI> ordered = new ArrayList<InternalURI>(missing.values());
+		Collections.sort(ordered, new Comparator<InternalURI>() {
+			@Override
+			public int compare(InternalURI o1, InternalURI o2) {
+				return depth(o1.getPath()) - depth(o2.getPath());
+			}
+		});
+		Map<String, Acl> built = new HashMap<String, Acl>();
+		for (InternalURI uri : ordered) {
+			Acl parentAcl = null;
+			String parentPath = uri.getParentPath();
+			if (parentPath != null) {
+				InternalURI parentURI = new InternalURIDefinition(parentPath, PermissionUriProtocol.RESOURCE);
+				parentAcl = built.get(parentURI.getURI());
+				if (parentAcl == null) {
+					parentAcl = aclCache.getFromCache(parentURI);
+				}
+				if (parentAcl == null) {
+					// the parent has been evicted meanwhile, leave it to the ACL service
+					continue;
+				}
+			}
+			List<AccessControlEntry> uriAces = aces.get(uri.getURI());
+			Acl acl = new JasperServerAclImpl(uri,
+					uriAces == null ? new ArrayList<AccessControlEntry>() : uriAces, parentAcl);
+			aclCache.putInCache(acl);
+			// children of this ACL don't need to put it to the cache again
+			FieldUtils.setProtectedFieldValue("cacheMarker", acl, true);
+			built.put(uri.getURI(), acl);
+		}
+	}
+
+	@SuppressWarnings("rawtypes")
+	private Map<String, List<AccessControlEntry>> loadAccessControlEntries(List<String> uris) {
+		final String objPermissionClassName = getPersistentClassFactory().getImplementationClassName(ObjectPermission.class);
+		final String queryString = "from " + objPermissionClassName + " where URI in (:uris)";
+
+		final Map<String, List<AccessControlEntry>> aces = new HashMap<String, List<AccessControlEntry>>();
+		final Acl tempAcl = new JasperServerAclImpl(new InternalURIDefinition(""), null);
+		for (int start = 0; start < uris.size(); start += maxUrisPerQuery) {
+			final List<String> batch = uris.subList(start, Math.min(uris.size(), start + maxUrisPerQuery));
+			getHibernateTemplate().execute(new HibernateCallback<Object>() {
+				public Object doInHibernate(Session session) throws HibernateException {
+					List perms = session.createQuery(queryString)
+							.setParameterList("uris", batch)
+							.list();
+					// recipients are shared by many permissions, create each sid only once
+					Map<Object, Sid> sids = new HashMap<Object, Sid>();
+					for (Object permObj : perms) {
+						RepoObjectPermission perm = (RepoObjectPermission) permObj;
+						IdedObject recipient = (IdedObject) perm.getPermissionRecipient();
+						if (recipient == null) {
+							continue;
+						}
+						Sid sid = sids.get(recipient);
+						if (sid == null) {
+							sid = sidRetrievalStrategy.getSid(recipient.toClient(objectMappingFactory));
+							sids.put(recipient, sid);
+						}
+						List<AccessControlEntry> uriAces = aces.get(perm.getURI());
+						if (uriAces == null) {
+							uriAces = new ArrayList<AccessControlEntry>();
+							aces.put(perm.getURI(), uriAces);
+						}
+						uriAces.add(new AccessControlEntryImpl(null, tempAcl, sid,
+								new JasperServerPermission(perm.getPermissionMask()), true, false, false));
+					}
+					return null;
+				}
+			});
+		}
+		return aces;
+	}
+
+	private static int depth(String path) {
+		int depth = 0;
+		for (int i = 1; i < path.length(); i++) {
+			if (path.charAt(i) == '/') {
+				depth++;
+			}
+		}
+		return path.length() > 1 ? depth + 1 : 0;
+	}
+
+	public void setMaxUrisPerQuery(int maxUrisPerQuery) {
+		this.maxUrisPerQuery = maxUrisPerQuery;
+	}
+
+	public int getMaxUrisPerQuery() {
+		return maxUrisPerQuery;
+	}
+
 	public void setMinimumPrefetch(int minimumPrefetch) {
 		this.minimumPrefetch = minimumPrefetch;
 	}
@@ -0,0 +1,461 @@
+/*
+ * Copyright (C) 2005 - 2020 TIBCO Software Inc. All rights reserved.
+ * http://www.jaspersoft.com.
+ *
+ * Unless you have purchased a commercial license agreement from Jaspersoft,
+ * the following license terms apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.jaspersoft.jasperserver.api.metadata.user.service.impl;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.BiFunction;
+import java.util.function.Predicate;
+
+/**
+ * Substitutes profile attribute placeholders directly in the String fields of an object graph,
+ * which spares {@link ProfileAttributesResolverImpl} the JSON round trip of the whole object.
+ * <p/>
+ * The instance fields of each class are discovered reflectively once. Substitution doesn't modify
+ * the given object: only the objects on the path to a String with placeholders are copied, everything
+ * else is shared with the original. If nothing has to be substituted, the original object is returned.
+ * <p/>
+ * For each class the plan also remembers, per scan key (URI and version of a resource), which
+ * String fields contain placeholders, so that scanning a resource which has already been seen
+ * only compares field values with the remembered ones.
+ * <p/>
+ * Objects which can't be handled this way (no default constructor, unknown JDK types, too deep
+ * or cyclic graphs) are reported by {@link UnsupportedTypeException}, the caller is expected to
+ * fall back to the JSON based substitution.
+ *
+ * @version $Id$
+ */
+public class ProfileAttributeSubstitutionPlan {
+    private static final Log log = LogFactory.getLog(ProfileAttributeSubstitutionPlan.class);
+
+    static final int MAX_DEPTH = 32;
+    static final int MAX_SCANNED_VERSIONS = 1000;
+
+    private static final ClassPlan UNSUPPORTED = new ClassPlan();
+
+    private final ConcurrentMap<Class<?>, ClassPlan> classPlans = new ConcurrentHashMap<Class<?>, ClassPlan>();
+
+    /**
+     * @param object          the object to substitute placeholders in
+     * @param scanKey         key under which the fields with placeholders are remembered, or <code>null</code>
+     * @param hasPlaceholders tells whether a String contains placeholders
+     * @param substitution    substitutes the placeholders of a String, given the String and the name of its field
+     * @return a copy of the object with substituted placeholders, or the object itself if it has none
+     * @throws UnsupportedTypeException if the object graph can't be handled
+     */
+    public <T> T substitute(T object, String scanKey, Predicate<String> hasPlaceholders,
+                            BiFunction<String, String, String> substitution) {
+        if (scanKey != null && !isContainer(object)) {
+            ClassPlan plan = getClassPlan(object.getClass());
+            return plan == null ? object : plan.substitute(this, object, scanKey, hasPlaceholders, substitution, 0);
+        }
+        return substituteValue(object, null, hasPlaceholders, substitution, 0);
+    }
+
+    /**
+     * Passes each String of the object graph to the visitor until it returns <code>false</code>.
+     *
+     * @return <code>false</code> if the visitor stopped the traversal
+     * @throws UnsupportedTypeException if the object graph can't be handled
+     */
+    public boolean visitStrings(Object object, Predicate<String> visitor) {
+        return visitValue(object, visitor, 0);
+    }
+
+    /**
+     * @return the number of classes the plan has been compiled for
+     */
+    public int size() {
+        return classPlans.size();
+    }
+
+    @SuppressWarnings("unchecked")
+    <T> T substituteValue(T value, String fieldName, Predicate<String> hasPlaceholders,
+                          BiFunction<String, String, String> substitution, int depth) {
+        if (value == null) {
+            return null;
+        }
+        if (depth > MAX_DEPTH) {
+            throw new UnsupportedTypeException("object graph is too deep at " + fieldName);
+        }
+        if (value instanceof String) {
+            String string = (String) value;
+            return hasPlaceholders.test(string) ? (T) substitution.apply(string, fieldName) : value;
+        }
+        if (value instanceof Map) {
+            return (T) substituteMap((Map<Object, Object>) value, fieldName, hasPlaceholders, substitution, depth);
+        }
+        if (value instanceof Collection) {
+            return (T) substituteCollection((Collection<Object>) value, fieldName, hasPlaceholders, substitution, depth);
+        }
+        if (value instanceof Object[]) {
+            return (T) substituteArray((Object[]) value, fieldName, hasPlaceholders, substitution, depth);
+        }
+        ClassPlan plan = getClassPlan(value.getClass());
+        return plan == null ? value : plan.substitute(this, value, null, hasPlaceholders, substitution, depth);
+    }
+
+    private Map<Object, Object> substituteMap(Map<Object, Object> map, String fieldName, Predicate<String> hasPlaceholders,
+                                              BiFunction<String, String, String> substitution, int depth) {
+        Map<Object, Object> result = null;
+        for (Map.Entry<Object, Object> entry : map.entrySet()) {
+            Object key = entry.getKey();
+            Object value = entry.getValue();
+            Object newKey = substituteValue(key, fieldName, hasPlaceholders, substitution, depth + 1);
+            Object newValue = substituteValue(value, key instanceof String ? (String) key : fieldName,
+                    hasPlaceholders, substitution, depth + 1);
+            if (result == null && (newKey != key || newValue != value)) {
+                result = newInstance(map, LinkedHashMap.class);
+                for (Map.Entry<Object, Object> previous : map.entrySet()) {
+                    if (previous == entry) {
+                        break;
+                    }
+                    result.put(previous.getKey(), previous.getValue());
+                }
+            }
+            if (result != null) {
+                result.put(newKey, newValue);
+            }
+        }
+        return result == null ? map : result;
+    }
+
+    private Collection<Object> substituteCollection(Collection<Object> collection, String fieldName,
+                                                    Predicate<String> hasPlaceholders,
+                                                    BiFunction<String, String, String> substitution, int depth) {
+        List<Object> substituted = new ArrayList<Object>(collection.size());
+        boolean changed = false;
+        for (Object element : collection) {
+            Object newElement = substituteValue(element, fieldName, hasPlaceholders, substitution, depth + 1);
+            changed |= newElement != element;
+            substituted.add(newElement);
+        }
+        if (!changed) {
+            return collection;
+        }
+        Collection<Object> result = newInstance(collection, collection instanceof Set ? LinkedHashSet.class : ArrayList.class);
+        result.addAll(substituted);
+        return result;
+    }
+
+    private Object[] substituteArray(Object[] array, String fieldName, Predicate<String> hasPlaceholders,
+                                     BiFunction<String, String, String> substitution, int depth) {
+        Object[] result = null;
+        for (int i = 0; i < array.length; i++) {
+            Object newElement = substituteValue(array[i], fieldName, hasPlaceholders, substitution, depth + 1);
+            if (newElement != array[i]) {
+                if (result == null) {
+                    result = array.clone();
+                }
+                result[i] = newElement;
+            }
+        }
+        return result == null ? array : result;
+    }
+
+    @SuppressWarnings("unchecked")
+    boolean visitValue(Object value, Predicate<String> visitor, int depth) {
+        if (value == null) {
+            return true;
+        }
+        if (depth > MAX_DEPTH) {
+            throw new UnsupportedTypeException("object graph is too deep");
+        }
+        if (value instanceof String) {
+            return visitor.test((String) value);
+        }
+        if (value instanceof Map) {
+            for (Map.Entry<Object, Object> entry : ((Map<Object, Object>) value).entrySet()) {
+                if (!visitValue(entry.getKey(), visitor, depth + 1) || !visitValue(entry.getValue(), visitor, depth + 1)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        if (value instanceof Collection || value instanceof Object[]) {
+            Iterable<Object> elements = value instanceof Collection
+                    ? (Collection<Object>) value : Arrays.asList((Object[]) value);
+            for (Object element : elements) {
+                if (!visitValue(element, visitor, depth + 1)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        ClassPlan plan = getClassPlan(value.getClass());
+        return plan == null || plan.visit(this, value, visitor, depth);
+    }
+
+    /**
+     * @return the plan of a bean class, or <code>null</code> if values of the class are not scanned
+     */
+    ClassPlan getClassPlan(Class<?> type) {
+        if (isLeafType(type)) {
+            return null;
+        }
+        ClassPlan plan = classPlans.get(type);
+        if (plan == null) {
+            plan = ClassPlan.compile(type);
+            ClassPlan existing = classPlans.putIfAbsent(type, plan);
+            if (existing != null) {
+                plan = existing;
+            }
+        }
+        if (plan == UNSUPPORTED) {
+            throw new UnsupportedTypeException(type.getName() + " is not supported");
+        }
+        return plan;
+    }
+
+    private static boolean isContainer(Object value) {
+        return value == null || value instanceof String || value instanceof Map
+                || value instanceof Collection || value instanceof Object[];
+    }
+
+    private static boolean isLeafType(Class<?> type) {
+        return type.isPrimitive()
+                || (type.isArray() && type.getComponentType().isPrimitive())
+                || Number.class.isAssignableFrom(type) || Boolean.class == type || Character.class == type
+                || Date.class.isAssignableFrom(type) || Calendar.class.isAssignableFrom(type)
+                || TimeZone.class.isAssignableFrom(type) || Locale.class == type || Class.class == type
+                || Enum.class.isAssignableFrom(type);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <C> C newInstance(C original, Class<?> defaultType) {
+        try {
+            Constructor<?> constructor = original.getClass().getConstructor();
+            return (C) constructor.newInstance();
+        } catch (Exception e) {
+            // immutable or otherwise special container, a plain one has to do
+            try {
+                return (C) defaultType.newInstance();
+            } catch (Exception ex) {
+                throw new UnsupportedTypeException(ex.toString());
+            }
+        }
+    }
+
+    /**
+     * Reflective description of a bean class.
+     */
+    static final class ClassPlan {
+        private final Constructor<?> constructor;
+        // all instance fields, copied to the copy of an object
+        private final Field[] fields;
+        // non transient fields, the ones the JSON based substitution used to process
+        private final Field[] scannedFields;
+        private final boolean[] stringFields;
+        private final ConcurrentMap<String, ScannedVersion> scannedVersions;
+
+        private ClassPlan() {
+            constructor = null;
+            fields = null;
+            scannedFields = null;
+            stringFields = null;
+            scannedVersions = null;
+        }
+
+        private ClassPlan(Constructor<?> constructor, List<Field> fields, List<Field> scannedFields) {
+            this.constructor = constructor;
+            this.fields = fields.toArray(new Field[fields.size()]);
+            this.scannedFields = scannedFields.toArray(new Field[scannedFields.size()]);
+            this.stringFields = new boolean[this.scannedFields.length];
+            for (int i = 0; i < this.scannedFields.length; i++) {
+                stringFields[i] = this.scannedFields[i].getType() == String.class;
+            }
+            this.scannedVersions = new ConcurrentHashMap<String, ScannedVersion>();
+        }
+
+        static ClassPlan compile(Class<?> type) {
+            String packageName = type.getName();
+            if (packageName.startsWith("java.") || packageName.startsWith("javax.")
+                    || type.isInterface() || type.isAnonymousClass()) {
+                // JDK types other than the well known leaf and container types are serialized in their own way
+                return UNSUPPORTED;
+            }
+            try {
+                List<Field> fields = new ArrayList<Field>();
+                List<Field> scannedFields = new ArrayList<Field>();
+                for (Class<?> current = type; current != null && current != Object.class; current = current.getSuperclass()) {
+                    for (Field field : current.getDeclaredFields()) {
+                        int modifiers = field.getModifiers();
+                        if (Modifier.isStatic(modifiers) || field.isSynthetic()) {
+                            continue;
+                        }
+                        field.setAccessible(true);
+                        fields.add(field);
+                        if (!Modifier.isTransient(modifiers) && !field.getType().isPrimitive()) {
+                            scannedFields.add(field);
+                        }
+                    }
+                }
+                Constructor<?> constructor = null;
+                if (!Modifier.isAbstract(type.getModifiers())) {
+                    try {
+                        constructor = type.getDeclaredConstructor();
+                        constructor.setAccessible(true);
+                    } catch (NoSuchMethodException e) {
+                        // the plan can still be used to scan objects of the type
+                    }
+                }
+                return new ClassPlan(constructor, fields, scannedFields);
+            } catch (RuntimeException e) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Profile attribute substitution plan can't be compiled for " + type.getName(), e);
+                }
+                return UNSUPPORTED;
+            }
+        }
+
+        <T> T substitute(ProfileAttributeSubstitutionPlan plan, T object, String scanKey,
+                         Predicate<String> hasPlaceholders, BiFunction<String, String, String> substitution, int depth) {
+            Object[] values = new Object[scannedFields.length];
+            boolean[] placeholders = scanStrings(object, values, scanKey, hasPlaceholders);
+
+            Object[] newValues = null;
+            for (int i = 0; i < scannedFields.length; i++) {
+                Object value = values[i];
+                Object newValue;
+                if (stringFields[i]) {
+                    newValue = placeholders[i] ? substitution.apply((String) value, scannedFields[i].getName()) : value;
+                } else {
+                    newValue = plan.substituteValue(value, scannedFields[i].getName(), hasPlaceholders, substitution, depth + 1);
+                }
+                if (newValue != value) {
+                    if (newValues == null) {
+                        newValues = values.clone();
+                    }
+                    newValues[i] = newValue;
+                }
+            }
+            return newValues == null ? object : copy(object, newValues);
+        }
+
+        /**
+         * Reads the scanned fields into <code>values</code> and tells which String fields have placeholders,
+         * reusing what is known for the scan key.
+         */
+        private boolean[] scanStrings(Object object, Object[] values, String scanKey, Predicate<String> hasPlaceholders) {
+            ScannedVersion known = scanKey == null ? null : scannedVersions.get(scanKey);
+            boolean[] placeholders = new boolean[scannedFields.length];
+            boolean changed = known == null;
+            for (int i = 0; i < scannedFields.length; i++) {
+                values[i] = get(scannedFields[i], object);
+                if (stringFields[i] && values[i] != null) {
+                    if (known != null && values[i].equals(known.values[i])) {
+                        placeholders[i] = known.placeholders[i];
+                    } else {
+                        placeholders[i] = hasPlaceholders.test((String) values[i]);
+                        changed = true;
+                    }
+                }
+            }
+            if (scanKey != null && changed) {
+                if (scannedVersions.size() >= MAX_SCANNED_VERSIONS) {
+                    scannedVersions.clear();
+                }
+                Object[] strings = new Object[values.length];
+                for (int i = 0; i < values.length; i++) {
+                    strings[i] = stringFields[i] ? values[i] : null;
+                }
+                scannedVersions.put(scanKey, new ScannedVersion(strings, placeholders));
+            }
+            return placeholders;
+        }
+
+        boolean visit(ProfileAttributeSubstitutionPlan plan, Object object, Predicate<String> visitor, int depth) {
+            for (Field field : scannedFields) {
+                if (!plan.visitValue(get(field, object), visitor, depth + 1)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @SuppressWarnings("unchecked")
+        private <T> T copy(T object, Object[] newValues) {
+            if (constructor == null) {
+                throw new UnsupportedTypeException(object.getClass().getName() + " can't be instantiated");
+            }
+            try {
+                T copy = (T) constructor.newInstance();
+                for (Field field : fields) {
+                    field.set(copy, field.get(object));
+                }
+                for (int i = 0; i < scannedFields.length; i++) {
+                    scannedFields[i].set(copy, newValues[i]);
+                }
+                return copy;
+            } catch (Exception e) {
+                throw new UnsupportedTypeException(e.toString());
+            }
+        }
+
+        private static Object get(Field field, Object object) {
+            try {
+                return field.get(object);
+            } catch (IllegalAccessException e) {
+                throw new UnsupportedTypeException(e.toString());
+            }
+        }
+    }
+
+    /**
+     * String field values of an object scanned under some key, and which of them have placeholders.
+     */
+    private static final class ScannedVersion {
+        final Object[] values;
+        final boolean[] placeholders;
+
+        ScannedVersion(Object[] values, boolean[] placeholders) {
+            this.values = values;
+            this.placeholders = placeholders;
+        }
+    }
+
+    /**
+     * Thrown when an object graph can't be handled by the plan.
+     */
+    public static class UnsupportedTypeException extends RuntimeException {
+        public UnsupportedTypeException(String message) {
+            super(message, null, false, false);
+        }
+    }
+}
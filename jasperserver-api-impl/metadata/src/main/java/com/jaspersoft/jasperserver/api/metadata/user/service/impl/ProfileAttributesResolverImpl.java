@@ -37,6 +37,7 @@ import com.jaspersoft.jasperserver.api.metadata.user.service.ProfileAttributeCat
 import com.jaspersoft.jasperserver.api.metadata.user.service.ProfileAttributeEscapeStrategy;
 import com.jaspersoft.jasperserver.api.metadata.user.service.ProfileAttributeService;
 import com.jaspersoft.jasperserver.api.metadata.user.service.ProfileAttributesResolver;
+import com.jaspersoft.jasperserver.api.metadata.user.service.impl.ProfileAttributeSubstitutionPlan.UnsupportedTypeException;
 import com.jaspersoft.jasperserver.dto.common.AttributeErrorCode;
 import com.jaspersoft.jasperserver.dto.common.ErrorDescriptor;
 import org.apache.commons.lang.ArrayUtils;
@@ -101,6 +102,8 @@ public class ProfileAttributesResolverImpl implements ProfileAttributesResolver
     private MessageSource messageSource;
     private Set<String> excludedResourcesFromAttrResolving;
     private boolean enabledResolving = true;
+    private boolean compiledSubstitution = true;
+    private final ProfileAttributeSubstitutionPlan substitutionPlan = new ProfileAttributeSubstitutionPlan();
 
     public ProfileAttributesResolverImpl() {
         //Setup Polymorphic Object Mapper that do mapping using only class property fields (not getter and setter)
@@ -150,6 +153,25 @@ public class ProfileAttributesResolverImpl implements ProfileAttributesResolver
      */
     @Override
     public boolean isParametrizedResource(Object resource, ProfileAttributeCategory... categories) {
+        if (compiledSubstitution) {
+            ParametrizedResourceCheck check = new ParametrizedResourceCheck(categories);
+            try {
+                substitutionPlan.visitStrings(resource, value -> {
+                    Matcher matcher = compiledParametrizedResourcePattern.matcher(value);
+                    while (matcher.find()) {
+                        if (!check.accept(matcher)) {
+                            return false;
+                        }
+                    }
+                    return true;
+                });
+                return check.getResult();
+            } catch (UnsupportedTypeException e) {
+                logUnsupportedType(resource, e);
+            }
+        }
+
+        ParametrizedResourceCheck check = new ParametrizedResourceCheck(categories);
         try {
             OutputStream outputStream = new ByteArrayOutputStream();
             objectMapper.writeValue(outputStream, resource);
@@ -157,7 +179,6 @@ public class ProfileAttributesResolverImpl implements ProfileAttributesResolver
 
             Scanner scanner = new Scanner(outputStreamStr);
             String foundAttribute;
-            boolean hasAttributes = false;
             while ((foundAttribute = scanner.findInLine(compiledParametrizedResourcePattern)) != null || scanner.hasNextLine()) {
                 if (foundAttribute == null) {
                     scanner.nextLine();
@@ -165,31 +186,12 @@ public class ProfileAttributesResolverImpl implements ProfileAttributesResolver
 
                 }
 
-                MatchResult matchResult = scanner.match();
-                String foundCategory = matchResult.group(3);
-                ProfileAttributeCategory attrCategory = ProfileAttributeCategory.HIERARCHICAL;
-
-                if (foundCategory != null) {
-                    try {
-                        attrCategory = ProfileAttributeCategory.valueOf(foundCategory.toUpperCase());
-                    } catch (IllegalArgumentException e) {
-                        continue;
-                    }
-                }
-                hasAttributes = true;
-
-                if (categories != null) {
-                    for (ProfileAttributeCategory category : categories) {
-                        if (!category.equals(attrCategory)) {
-                            return false;
-                        }
-                    }
-                } else {
-                    return true;
+                if (!check.accept(scanner.match())) {
+                    break;
                 }
             }
 
-            return hasAttributes;
+            return check.getResult();
         } catch (IOException e) {
             throw new JSException(e.toString());
         }
@@ -211,7 +213,9 @@ public class ProfileAttributesResolverImpl implements ProfileAttributesResolver
         Resource baseResourceCopy = copyBaseResource(resource);
         escapeBaseResourceFieldsFromResolving(resource);
 
-        T resultResource = mergeObject(resource, resourceUri);
+        String scanKey = resource.getVersion() == Resource.VERSION_NEW || resourceUri == null
+                ? null : resourceUri + "@" + resource.getVersion();
+        T resultResource = mergeObject(resource, resourceUri, scanKey);
         revertEscapedBaseResourceFields(baseResourceCopy, resultResource);
         revertEscapedBaseResourceFields(baseResourceCopy, resource);
 
@@ -219,6 +223,32 @@ public class ProfileAttributesResolverImpl implements ProfileAttributesResolver
     }
 
     public <T> T mergeObject(T object, String identifier) {
+        return mergeObject(object, identifier, null);
+    }
+
+    /**
+     * Substitutes placeholders in the String fields of the object with the compiled substitution plan,
+     * falling back to a JSON round trip of the object for types the plan doesn't support.
+     *
+     * @param scanKey key under which the plan remembers the fields with placeholders, or <code>null</code>
+     */
+    protected <T> T mergeObject(T object, String identifier, String scanKey) {
+        if (compiledSubstitution) {
+            try {
+                return substitutionPlan.substitute(object, scanKey, this::containsAttribute,
+                        (value, fieldName) -> merge(value, identifier, null, fieldName));
+            } catch (UnsupportedTypeException e) {
+                logUnsupportedType(object, e);
+            }
+        }
+        return mergeObjectAsJson(object, identifier);
+    }
+
+    /**
+     * Substitutes placeholders by serializing the object to JSON, merging it and deserializing the result.
+     */
+    @SuppressWarnings("unchecked")
+    protected <T> T mergeObjectAsJson(T object, String identifier) {
         try {
             OutputStream outputStream = new ByteArrayOutputStream();
             objectMapper.writeValue(outputStream, object);
@@ -251,6 +281,14 @@ public class ProfileAttributesResolverImpl implements ProfileAttributesResolver
      * {@inheritDoc}
      */
     public String merge(String templateString, String identifier, ProfileAttributeEscapeStrategy escapeStrategy) {
+        return merge(templateString, identifier, escapeStrategy, null);
+    }
+
+    /**
+     * @param fieldName name of the field the template comes from, looked up in the template if <code>null</code>
+     */
+    private String merge(String templateString, String identifier, ProfileAttributeEscapeStrategy escapeStrategy,
+                         String fieldName) {
         Map<ProfileAttributeCategory, Map<String, ProfileAttribute>> profileAttributeCategoryMap =
                 new HashMap<>();
         StringBuffer replacementBuffer = new StringBuffer();
@@ -271,7 +309,7 @@ public class ProfileAttributesResolverImpl implements ProfileAttributesResolver
                     String[] args = new String[]{foundCategory, attrName, profileAttributeCategories.toString()};
 
                     throw generateProfileAttributeException(PROFILE_ATTRIBUTE_SUBSTITUTION_CATEGORY_INVALID,
-                            templateString, identifier, attrPlaceholder, args);
+                            templateString, identifier, attrPlaceholder, fieldName, args);
                 }
             }
 
@@ -292,14 +330,14 @@ public class ProfileAttributesResolverImpl implements ProfileAttributesResolver
 
                 if (log.isDebugEnabled()) {
                     log.debug(messageSource.getMessage("profile.attribute.debug.substitution.success",
-                            new Object[]{attrName, identifier, getErrorFieldName(templateString, attrPlaceholder), attrValue},
+                            new Object[]{attrName, identifier, getErrorFieldName(templateString, attrPlaceholder, fieldName), attrValue},
                             LocaleContextHolder.getLocale()));
                 }
             } else {
                 String[] args = new String[]{attrName, attrCategory.getLabel()};
 
                 throw generateProfileAttributeException(PROFILE_ATTRIBUTE_SUBSTITUTION_NOT_FOUND,
-                        templateString, identifier, attrPlaceholder, args);
+                        templateString, identifier, attrPlaceholder, fieldName, args);
             }
         }
         matcher.appendTail(replacementBuffer);
@@ -313,7 +351,13 @@ public class ProfileAttributesResolverImpl implements ProfileAttributesResolver
 
     JSProfileAttributeException generateProfileAttributeException(String baseErrorCode, String templateString,
                                                                   String identifier, String attrPlaceholder, String[] baseArgs) {
-        String[] resourceSpecificErrorArgs = getResourceSpecificErrorArgs(templateString, identifier, attrPlaceholder);
+        return generateProfileAttributeException(baseErrorCode, templateString, identifier, attrPlaceholder, null, baseArgs);
+    }
+
+    private JSProfileAttributeException generateProfileAttributeException(String baseErrorCode, String templateString,
+                                                                          String identifier, String attrPlaceholder,
+                                                                          String fieldName, String[] baseArgs) {
+        String[] resourceSpecificErrorArgs = getResourceSpecificErrorArgs(templateString, identifier, attrPlaceholder, fieldName);
         String errorCode = baseErrorCode;
 
         String[] messageBundleArgs = baseArgs;
@@ -331,9 +375,14 @@ public class ProfileAttributesResolverImpl implements ProfileAttributesResolver
     }
 
     String[] getResourceSpecificErrorArgs(String templateString, String identifier, String attrPlaceholder) {
+        return getResourceSpecificErrorArgs(templateString, identifier, attrPlaceholder, null);
+    }
+
+    private String[] getResourceSpecificErrorArgs(String templateString, String identifier, String attrPlaceholder,
+                                                  String fieldName) {
         String[] baseErrorArgs = null;
         if (isNotEmpty(identifier) && !identifier.equals(Folder.SEPARATOR)) {
-            baseErrorArgs = new String[]{identifier, getErrorFieldName(templateString, attrPlaceholder)};
+            baseErrorArgs = new String[]{identifier, getErrorFieldName(templateString, attrPlaceholder, fieldName)};
         }
 
         return baseErrorArgs;
@@ -353,6 +402,17 @@ public class ProfileAttributesResolverImpl implements ProfileAttributesResolver
         return profileAttributeMap;
     }
 
+    private String getErrorFieldName(String templateString, String attrPlaceholder, String fieldName) {
+        return fieldName != null ? fieldName : getErrorFieldName(templateString, attrPlaceholder);
+    }
+
+    private void logUnsupportedType(Object object, UnsupportedTypeException e) {
+        if (log.isDebugEnabled()) {
+            log.debug("Substituting profile attributes of " + (object == null ? null : object.getClass().getName())
+                    + " through JSON: " + e.getMessage());
+        }
+    }
+
     protected String getErrorFieldName(String templateString, String attrPlaceholder) {
         String attrLiteral = Pattern.quote(attrPlaceholder);
 
@@ -443,6 +503,10 @@ public class ProfileAttributesResolverImpl implements ProfileAttributesResolver
         this.enabledResolving = enabledResolving;
     }
 
+    public void setCompiledSubstitution(boolean compiledSubstitution) {
+        this.compiledSubstitution = compiledSubstitution;
+    }
+
     public void setParametrizedResourcePatterns(List<String> parametrizedResourcePatterns) {
         this.parametrizedResourcePatterns = parametrizedResourcePatterns;
     }
@@ -451,6 +515,57 @@ public class ProfileAttributesResolverImpl implements ProfileAttributesResolver
         this.validator = validator;
     }
 
+    /**
+     * Accumulates the parametrized resource pattern matches of a resource.
+     */
+    private static class ParametrizedResourceCheck {
+        private final ProfileAttributeCategory[] categories;
+        private boolean hasAttributes;
+        private boolean result;
+        private boolean decided;
+
+        ParametrizedResourceCheck(ProfileAttributeCategory[] categories) {
+            this.categories = categories;
+        }
+
+        /**
+         * @return <code>false</code> if the result is known and no more matches are needed
+         */
+        boolean accept(MatchResult matchResult) {
+            String foundCategory = matchResult.group(3);
+            ProfileAttributeCategory attrCategory = ProfileAttributeCategory.HIERARCHICAL;
+
+            if (foundCategory != null) {
+                try {
+                    attrCategory = ProfileAttributeCategory.valueOf(foundCategory.toUpperCase());
+                } catch (IllegalArgumentException e) {
+                    return true;
+                }
+            }
+            hasAttributes = true;
+
+            if (categories != null) {
+                for (ProfileAttributeCategory category : categories) {
+                    if (!category.equals(attrCategory)) {
+                        return decide(false);
+                    }
+                }
+                return true;
+            }
+            return decide(true);
+        }
+
+        boolean getResult() {
+            return decided ? result : hasAttributes;
+        }
+
+        private boolean decide(boolean result) {
+            this.result = result;
+            this.decided = true;
+            return false;
+        }
+    }
+
     private class MatcherDecorator {
         private Matcher matcher;
         private int usedPattern;
@@ -0,0 +1,402 @@
+/*
+ * Copyright (C) 2005 - 2020 TIBCO Software Inc. All rights reserved.
+ * http://www.jaspersoft.com.
+ *
+ * Unless you have purchased a commercial license agreement from Jaspersoft,
+ * the following license terms apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.jaspersoft.jasperserver.api.metadata.user.service.impl;
+
+import com.jaspersoft.jasperserver.api.metadata.common.domain.Folder;
+import com.jaspersoft.jasperserver.api.metadata.common.domain.Resource;
+import com.jaspersoft.jasperserver.api.metadata.user.domain.ObjectPermission;
+import com.jaspersoft.jasperserver.api.metadata.user.domain.Role;
+import com.jaspersoft.jasperserver.api.metadata.user.domain.User;
+import com.jaspersoft.jasperserver.api.metadata.user.domain.client.ObjectPermissionImpl;
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.event.CacheEventListenerAdapter;
+import org.springframework.beans.factory.InitializingBean;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * In-memory index of the repository object permissions, kept as a trie of folder path segments.
+ * <p/>
+ * Each node holds the permissions set directly on its URI, keyed by recipient, so that looking up
+ * the permissions of a resource and its ancestors or the inherited permission of a recipient
+ * is a walk down the path of the resource instead of a query per ancestor.
+ * <p/>
+ * The index is loaded by {@link ObjectPermissionServiceImpl} with a single query and then updated
+ * incrementally as permissions are saved, deleted or moved together with repository objects.
+ * Reads are lock free, updates are serialized. An update which happens while the index is being
+ * loaded discards the load, so that a snapshot read before the update can't replace it.
+ * <p/>
+ * Only <code>repo:</code> URIs are indexed, and only permissions of {@link User} and {@link Role} recipients.
+ * <p/>
+ * Permission changes made on other nodes of a cluster reach this node as removals from the replicated ACL cache.
+ * Such removals drop the whole index, removals done by the permission changes of this node are ignored
+ * as the index applies those changes itself, see {@link #evictLocally(Runnable)}.
+ *
+ * @version $Id$
+ */
+public class RepositoryPermissionIndex implements InitializingBean {
+
+    private static final String RESOURCE_URI_PREFIX = Resource.URI_PROTOCOL + ":";
+
+    private static final Comparator<ObjectPermission> URI_COMPARATOR = new Comparator<ObjectPermission>() {
+        @Override
+        public int compare(ObjectPermission o1, ObjectPermission o2) {
+            return o1.getURI().compareTo(o2.getURI());
+        }
+    };
+
+    private boolean enabled = true;
+    private Ehcache aclCache;
+
+    private volatile Node root;
+    private volatile long modificationCount;
+    private final ThreadLocal<Boolean> localEviction = new ThreadLocal<Boolean>();
+
+    @Override
+    public void afterPropertiesSet() {
+        if (aclCache != null) {
+            aclCache.getCacheEventNotificationService().registerListener(new CacheEventListenerAdapter() {
+                @Override
+                public void notifyElementRemoved(Ehcache ehcache, Element element) {
+                    if (localEviction.get() == null) {
+                        invalidate();
+                    }
+                }
+
+                @Override
+                public void notifyRemoveAll(Ehcache ehcache) {
+                    invalidate();
+                }
+            });
+        }
+    }
+
+    /**
+     * Runs an eviction from the ACL cache caused by a permission change which is also applied to this index,
+     * so that the eviction does not drop the index.
+     */
+    public void evictLocally(Runnable eviction) {
+        localEviction.set(Boolean.TRUE);
+        try {
+            eviction.run();
+        } finally {
+            localEviction.remove();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public void setAclCache(Ehcache aclCache) {
+        this.aclCache = aclCache;
+    }
+
+    public boolean isLoaded() {
+        return root != null;
+    }
+
+    /**
+     * To be called before reading the permissions which are to be passed to {@link #load(Collection, long)}.
+     */
+    public long getModificationCount() {
+        return modificationCount;
+    }
+
+    /**
+     * Replaces the content of the index, unless it has been changed since <code>loadModificationCount</code>
+     * was obtained.
+     *
+     * @return <code>true</code> if the index has been loaded
+     */
+    public synchronized boolean load(Collection<? extends ObjectPermission> permissions, long loadModificationCount) {
+        if (modificationCount != loadModificationCount) {
+            return false;
+        }
+        Node newRoot = new Node();
+        for (ObjectPermission permission : permissions) {
+            List<String> segments = segments(permission.getURI());
+            String key = recipientKey(permission.getPermissionRecipient());
+            if (segments != null && key != null) {
+                put(newRoot, segments, key, permission);
+            }
+        }
+        root = newRoot;
+        return true;
+    }
+
+    /**
+     * Drops the content of the index, it needs to be loaded again before it can be used.
+     */
+    public synchronized void invalidate() {
+        ++modificationCount;
+        root = null;
+    }
+
+    public synchronized void put(ObjectPermission permission) {
+        ++modificationCount;
+        List<String> segments = segments(permission.getURI());
+        String key = recipientKey(permission.getPermissionRecipient());
+        if (root == null || segments == null) {
+            return;
+        }
+        if (key == null) {
+            // can't tell whether the recipient replaces an existing entry
+            root = null;
+            return;
+        }
+        put(root, segments, key, permission);
+    }
+
+    public synchronized void remove(ObjectPermission permission) {
+        ++modificationCount;
+        List<String> segments = segments(permission.getURI());
+        String key = recipientKey(permission.getPermissionRecipient());
+        if (root == null || segments == null || key == null) {
+            return;
+        }
+        List<Node> path = findPath(segments);
+        if (path != null) {
+            Node node = path.get(path.size() - 1);
+            if (node.permissions.containsKey(key)) {
+                Map<String, ObjectPermission> updated = new HashMap<String, ObjectPermission>(node.permissions);
+                updated.remove(key);
+                node.permissions = updated.isEmpty() ? Collections.<String, ObjectPermission>emptyMap() : updated;
+                prune(path, segments);
+            }
+        }
+    }
+
+    /**
+     * Moves the permissions set on <code>oldUri</code> to <code>newUri</code>.
+     * Permissions of the objects contained by a folder are moved separately, the same way they are in the database.
+     */
+    public synchronized void move(String oldUri, String newUri) {
+        ++modificationCount;
+        List<String> oldSegments = segments(oldUri);
+        List<String> newSegments = segments(newUri);
+        if (root == null || oldSegments == null || oldSegments.equals(newSegments)) {
+            return;
+        }
+        List<Node> path = findPath(oldSegments);
+        if (path == null) {
+            return;
+        }
+        Node node = path.get(path.size() - 1);
+        Map<String, ObjectPermission> moved = node.permissions;
+        if (moved.isEmpty()) {
+            return;
+        }
+        node.permissions = Collections.emptyMap();
+        prune(path, oldSegments);
+        if (newSegments != null) {
+            for (Map.Entry<String, ObjectPermission> entry : moved.entrySet()) {
+                ObjectPermission permission = copy(entry.getValue());
+                permission.setURI(newUri);
+                put(root, newSegments, entry.getKey(), permission);
+            }
+        }
+    }
+
+    public boolean supports(String uri) {
+        return segments(uri) != null;
+    }
+
+    /**
+     * @return copies of the permissions set directly on the given URIs, sorted by URI,
+     * or <code>null</code> if the index is not loaded
+     */
+    public List<ObjectPermission> getPermissions(Collection<String> uris) {
+        Node currentRoot = root;
+        if (currentRoot == null) {
+            return null;
+        }
+        List<ObjectPermission> result = new ArrayList<ObjectPermission>();
+        for (String uri : uris) {
+            List<String> segments = segments(uri);
+            Node node = segments == null ? null : find(currentRoot, segments);
+            if (node != null) {
+                for (ObjectPermission permission : node.permissions.values()) {
+                    result.add(copy(permission));
+                }
+            }
+        }
+        Collections.sort(result, URI_COMPARATOR);
+        return result;
+    }
+
+    /**
+     * Finds the permission the recipient inherits from the closest ancestor of the URI which has one.
+     *
+     * @return a copy of the inherited permission, or <code>null</code> if no ancestor has a permission
+     * for the recipient or the index is not loaded
+     */
+    public ObjectPermission getInheritedPermission(String uri, Object recipient) {
+        Node node = root;
+        List<String> segments = segments(uri);
+        String key = recipientKey(recipient);
+        if (node == null || segments == null || segments.isEmpty() || key == null) {
+            return null;
+        }
+        ObjectPermission inherited = node.permissions.get(key);
+        for (int i = 0; i < segments.size() - 1; i++) {
+            node = node.children.get(segments.get(i));
+            if (node == null) {
+                break;
+            }
+            ObjectPermission permission = node.permissions.get(key);
+            if (permission != null) {
+                inherited = permission;
+            }
+        }
+        return inherited == null ? null : copy(inherited);
+    }
+
+    /**
+     * @return the number of indexed permissions
+     */
+    public int size() {
+        Node currentRoot = root;
+        return currentRoot == null ? 0 : count(currentRoot);
+    }
+
+    private void put(Node root, List<String> segments, String key, ObjectPermission permission) {
+        Node node = root;
+        for (String segment : segments) {
+            Node child = node.children.get(segment);
+            if (child == null) {
+                child = new Node();
+                node.children.put(segment, child);
+            }
+            node = child;
+        }
+        Map<String, ObjectPermission> updated = new HashMap<String, ObjectPermission>(node.permissions);
+        updated.put(key, copy(permission));
+        node.permissions = updated;
+    }
+
+    private List<Node> findPath(List<String> segments) {
+        List<Node> path = new ArrayList<Node>(segments.size() + 1);
+        Node node = root;
+        path.add(node);
+        for (String segment : segments) {
+            node = node.children.get(segment);
+            if (node == null) {
+                return null;
+            }
+            path.add(node);
+        }
+        return path;
+    }
+
+    private void prune(List<Node> path, List<String> segments) {
+        for (int i = path.size() - 1; i > 0; i--) {
+            Node node = path.get(i);
+            if (!node.permissions.isEmpty() || !node.children.isEmpty()) {
+                break;
+            }
+            path.get(i - 1).children.remove(segments.get(i - 1));
+        }
+    }
+
+    private static Node find(Node root, List<String> segments) {
+        Node node = root;
+        for (int i = 0; node != null && i < segments.size(); i++) {
+            node = node.children.get(segments.get(i));
+        }
+        return node;
+    }
+
+    private static int count(Node node) {
+        int count = node.permissions.size();
+        for (Node child : node.children.values()) {
+            count += count(child);
+        }
+        return count;
+    }
+
+    /**
+     * @return path segments of a repository URI, empty for the root folder,
+     * <code>null</code> if the URI is not a repository URI
+     */
+    protected static List<String> segments(String uri) {
+        if (uri == null) {
+            return null;
+        }
+        String path = uri.startsWith(RESOURCE_URI_PREFIX) ? uri.substring(RESOURCE_URI_PREFIX.length()) : uri;
+        if (!path.startsWith(Folder.SEPARATOR)) {
+            return null;
+        }
+        List<String> segments = new ArrayList<String>();
+        int start = 1;
+        while (start < path.length()) {
+            int end = path.indexOf(Folder.SEPARATOR, start);
+            if (end < 0) {
+                end = path.length();
+            }
+            if (end > start) {
+                segments.add(path.substring(start, end));
+            }
+            start = end + 1;
+        }
+        return segments;
+    }
+
+    /**
+     * Recipients are identified by name and tenant, which works for both client and persistent objects.
+     */
+    protected static String recipientKey(Object recipient) {
+        if (recipient instanceof User) {
+            User user = (User) recipient;
+            return "user:" + user.getTenantId() + "|" + user.getUsername();
+        } else if (recipient instanceof Role) {
+            Role role = (Role) recipient;
+            return "role:" + role.getTenantId() + "|" + role.getRoleName();
+        }
+        return null;
+    }
+
+    private static ObjectPermission copy(ObjectPermission permission) {
+        ObjectPermission copy = new ObjectPermissionImpl();
+        copy.setURI(permission.getURI());
+        copy.setPermissionRecipient(permission.getPermissionRecipient());
+        copy.setPermissionMask(permission.getPermissionMask());
+        return copy;
+    }
+
+    private static final class Node {
+        final ConcurrentMap<String, Node> children = new ConcurrentHashMap<String, Node>();
+        volatile Map<String, ObjectPermission> permissions = Collections.emptyMap();
+    }
+}
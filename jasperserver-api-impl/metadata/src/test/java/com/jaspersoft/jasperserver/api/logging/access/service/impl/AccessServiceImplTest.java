@@ -0,0 +1,227 @@
+/*
+ * Copyright (C) 2005 - 2020 TIBCO Software Inc. All rights reserved.
+ * http://www.jaspersoft.com.
+ *
+ * Unless you have purchased a commercial license agreement from Jaspersoft,
+ * the following license terms apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.jaspersoft.jasperserver.api.logging.access.service.impl;
+
+import com.jaspersoft.jasperserver.api.logging.access.domain.hibernate.RepoResourcePopularity;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.Transaction;
+import org.hibernate.exception.ConstraintViolationException;
+import org.hibernate.query.Query;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.orm.hibernate5.HibernateTemplate;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for popularity counters of {@link AccessServiceImpl}
+ *
+ * @version $Id$
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class AccessServiceImplTest {
+    private static final long DAY = 24L * 60 * 60 * 1000;
+    private static final long EPOCH = 1577836800000L;
+
+    @Mock
+    private HibernateTemplate hibernateTemplate;
+    @Mock
+    private SessionFactory sessionFactory;
+    @Mock
+    private StatelessSession statelessSession;
+    @Mock
+    private Transaction transaction;
+    @Mock
+    private Query query;
+    @Mock
+    private ScrollableResults events;
+
+    private AccessServiceImpl accessService;
+
+    @Before
+    public void setUp() {
+        accessService = new AccessServiceImpl();
+        accessService.setHibernateTemplate(hibernateTemplate);
+        accessService.setPopularityHalfLifeDays(10);
+    }
+
+    @Test
+    public void getPopularityWeight_doublesEveryHalfLife() {
+        Date date = new Date(1600000000000L);
+
+        double weight = accessService.getPopularityWeight(date, EPOCH);
+
+        assertEquals(2 * weight, accessService.getPopularityWeight(new Date(date.getTime() + 10 * DAY), EPOCH), 1e-9 * weight);
+        assertEquals(weight / 2, accessService.getPopularityWeight(new Date(date.getTime() - 10 * DAY), EPOCH), 1e-9 * weight);
+    }
+
+    @Test
+    public void updatePopularity_existingCounters_updatedInPlace() {
+        Date date = new Date();
+        mockPopularityEpoch(EPOCH);
+        when(hibernateTemplate.bulkUpdate(anyString(), any(), any(), eq(1L), eq(EPOCH))).thenReturn(1);
+
+        accessService.updatePopularity(accessDates(1L, date, date));
+
+        verify(hibernateTemplate).bulkUpdate(anyString(), eq(2L), eq(2 * accessService.getPopularityWeight(date, EPOCH)), eq(1L), eq(EPOCH));
+        verify(hibernateTemplate, times(0)).save(any());
+    }
+
+    @Test
+    public void getPopularityWeight_farFromEpoch_staysFinite() {
+        accessService.setPopularityHalfLifeDays(1);
+
+        double weight = accessService.getPopularityWeight(new Date(EPOCH + 5000 * DAY), EPOCH);
+
+        assertTrue(weight > 1 && !Double.isInfinite(weight));
+        assertTrue(!Double.isInfinite(weight + weight));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void setPopularityHalfLifeDays_notPositive_rejected() {
+        accessService.setPopularityHalfLifeDays(0);
+    }
+
+    @Test
+    public void updatePopularity_missingCounters_createdAndUpdated() {
+        Date date = new Date();
+        mockPopularityEpoch(EPOCH);
+        mockStatelessSession();
+        when(hibernateTemplate.bulkUpdate(anyString(), any(), any(), eq(5L), eq(EPOCH))).thenReturn(0, 1);
+        doReturn(Collections.emptyList(), Collections.singletonList(EPOCH)).when(hibernateTemplate).find(startsWith("select p.scoreEpoch"), eq(5L));
+
+        accessService.updatePopularity(accessDates(5L, date));
+
+        ArgumentCaptor<Object> inserted = ArgumentCaptor.forClass(Object.class);
+        verify(statelessSession).insert(inserted.capture());
+        RepoResourcePopularity popularity = (RepoResourcePopularity) inserted.getValue();
+        assertEquals(5L, popularity.getResourceId());
+        assertEquals(0L, popularity.getAccessCount());
+        assertEquals(EPOCH, popularity.getScoreEpoch());
+        verify(transaction).commit();
+        verify(hibernateTemplate, times(2)).bulkUpdate(anyString(), eq(1L), eq(accessService.getPopularityWeight(date, EPOCH)), eq(5L), eq(EPOCH));
+        verify(hibernateTemplate, never()).save(any());
+    }
+
+    @Test
+    public void updatePopularity_counterCreatedConcurrently_updated() {
+        Date date = new Date();
+        mockPopularityEpoch(EPOCH);
+        mockStatelessSession();
+        when(statelessSession.insert(any())).thenThrow(new ConstraintViolationException("duplicate", null, "pk"));
+        when(transaction.isActive()).thenReturn(true);
+        when(hibernateTemplate.bulkUpdate(anyString(), any(), any(), eq(5L), eq(EPOCH))).thenReturn(0, 1);
+        doReturn(Collections.emptyList(), Collections.singletonList(EPOCH)).when(hibernateTemplate).find(startsWith("select p.scoreEpoch"), eq(5L));
+
+        accessService.updatePopularity(accessDates(5L, date));
+
+        verify(transaction).rollback();
+        verify(statelessSession).close();
+        verify(hibernateTemplate, times(2)).bulkUpdate(anyString(), eq(1L), eq(accessService.getPopularityWeight(date, EPOCH)), eq(5L), eq(EPOCH));
+    }
+
+    @Test
+    public void updatePopularity_popularityRebuiltByAnotherNode_addsToScoreOfNewEpoch() {
+        Date date = new Date();
+        long rebuildEpoch = EPOCH + 100 * DAY;
+        mockPopularityEpoch(EPOCH);
+        doReturn(Collections.singletonList(rebuildEpoch)).when(hibernateTemplate).find(startsWith("select p.scoreEpoch"), eq(5L));
+        when(hibernateTemplate.bulkUpdate(anyString(), any(), any(), eq(5L), eq(rebuildEpoch))).thenReturn(1);
+
+        accessService.updatePopularity(accessDates(5L, date));
+
+        verify(hibernateTemplate).bulkUpdate(anyString(), eq(1L), eq(accessService.getPopularityWeight(date, rebuildEpoch)), eq(5L), eq(rebuildEpoch));
+        assertEquals(rebuildEpoch, accessService.getPopularityEpoch());
+    }
+
+    @Test
+    public void rebuildPopularity_shortHalfLife_recentEventsOutrankOldOnes() {
+        accessService.setPopularityHalfLifeDays(1);
+        long now = System.currentTimeMillis();
+        Date old = new Date(now - 10 * DAY);
+        Date recent = new Date(now - DAY / 24);
+        when(hibernateTemplate.getSessionFactory()).thenReturn(sessionFactory);
+        when(sessionFactory.openStatelessSession()).thenReturn(statelessSession);
+        when(statelessSession.createQuery(anyString())).thenReturn(query);
+        when(query.setFetchSize(anyInt())).thenReturn(query);
+        when(query.scroll(ScrollMode.FORWARD_ONLY)).thenReturn(events);
+        when(events.next()).thenReturn(true, true, true, true, false);
+        when(events.get(0)).thenReturn(1L, 1L, 1L, 2L);
+        when(events.get(1)).thenReturn(old, old, old, recent);
+
+        accessService.rebuildPopularity();
+
+        ArgumentCaptor<RepoResourcePopularity> saved = ArgumentCaptor.forClass(RepoResourcePopularity.class);
+        verify(hibernateTemplate, times(2)).save(saved.capture());
+        RepoResourcePopularity oldCounters = saved.getAllValues().get(0).getResourceId() == 1L ? saved.getAllValues().get(0) : saved.getAllValues().get(1);
+        RepoResourcePopularity recentCounters = saved.getAllValues().get(0).getResourceId() == 2L ? saved.getAllValues().get(0) : saved.getAllValues().get(1);
+        assertEquals(3L, oldCounters.getAccessCount());
+        assertTrue(recentCounters.getScore() > oldCounters.getScore());
+        assertEquals(oldCounters.getScoreEpoch(), recentCounters.getScoreEpoch());
+        assertTrue(oldCounters.getScoreEpoch() >= now);
+
+        // events after the rebuild are weighted relative to the new epoch, far from the exponent cap
+        long epoch = accessService.getPopularityEpoch();
+        assertEquals(oldCounters.getScoreEpoch(), epoch);
+        assertEquals(2.0, accessService.getPopularityWeight(new Date(epoch + DAY)), 1e-9);
+    }
+
+    private void mockPopularityEpoch(long epoch) {
+        doReturn(Collections.singletonList(epoch)).when(hibernateTemplate).find(startsWith("select max(p.scoreEpoch)"));
+    }
+
+    private void mockStatelessSession() {
+        when(hibernateTemplate.getSessionFactory()).thenReturn(sessionFactory);
+        when(sessionFactory.openStatelessSession()).thenReturn(statelessSession);
+        when(statelessSession.beginTransaction()).thenReturn(transaction);
+    }
+
+    private Map<Long, List<Date>> accessDates(Long resourceId, Date... dates) {
+        Map<Long, List<Date>> accessDates = new TreeMap<Long, List<Date>>();
+        accessDates.put(resourceId, Arrays.asList(dates));
+        return accessDates;
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2005 - 2020 TIBCO Software Inc. All rights reserved.
+ * http://www.jaspersoft.com.
+ *
+ * Unless you have purchased a commercial license agreement from Jaspersoft,
+ * the following license terms apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.jaspersoft.jasperserver.api.logging.access.service.impl;
+
+import com.jaspersoft.jasperserver.api.logging.access.domain.AccessEventImpl;
+import com.jaspersoft.jasperserver.api.logging.context.LoggableEvent;
+import com.jaspersoft.jasperserver.api.metadata.common.domain.client.ResourceLookupImpl;
+import com.jaspersoft.jasperserver.api.metadata.user.domain.client.UserImpl;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Tests for {@link AsyncAccessEventWriter}
+ *
+ * @version $Id$
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class AsyncAccessEventWriterTest {
+
+    @Mock
+    private AccessService accessService;
+
+    private AsyncAccessEventWriter writer = new AsyncAccessEventWriter();
+
+    @After
+    public void tearDown() throws Exception {
+        writer.destroy();
+    }
+
+    @Test
+    public void saveEvents_repeatedEvents_collapsedAndWrittenInBackground() throws Exception {
+        start(10, 10);
+
+        writer.saveEvents(Arrays.<LoggableEvent>asList(
+                event("joe", "/reports/a", false), event("joe", "/reports/a", true), event("joe", "/reports/b", false)));
+
+        ArgumentCaptor<List<LoggableEvent>> written = ArgumentCaptor.forClass(List.class);
+        verify(accessService, timeout(5000)).writeEvents(written.capture());
+        assertEquals(2, written.getValue().size());
+        assertTrue(((AccessEventImpl) written.getValue().get(0)).isUpdating());
+        writer.destroy();
+        assertEquals(2, writer.getWrittenCount());
+    }
+
+    @Test
+    public void saveEvent_queueFull_eventDropped() throws Exception {
+        final CountDownLatch writing = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        doAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                writing.countDown();
+                release.await(5, TimeUnit.SECONDS);
+                return null;
+            }
+        }).when(accessService).writeEvents(anyList());
+        writer.setQueueCapacity(1);
+        start(1, 10);
+
+        writer.saveEvent(event("joe", "/reports/a", false));
+        assertTrue(writing.await(5, TimeUnit.SECONDS));
+        writer.saveEvent(event("joe", "/reports/b", false));
+        writer.saveEvent(event("joe", "/reports/c", false));
+
+        assertEquals(1, writer.getQueueSize());
+        assertEquals(1, writer.getDroppedCount());
+        assertEquals(2, writer.getQueuedCount());
+
+        release.countDown();
+        writer.destroy();
+        assertEquals(0, writer.getQueueSize());
+        assertEquals(2, writer.getWrittenCount());
+    }
+
+    @Test
+    public void write_failure_counted() throws Exception {
+        doAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) {
+                throw new IllegalStateException("database is down");
+            }
+        }).when(accessService).writeEvents(anyList());
+        start(10, 10);
+
+        writer.saveEvent(event("joe", "/reports/a", false));
+
+        verify(accessService, timeout(5000)).writeEvents(anyList());
+        writer.destroy();
+        assertEquals(1, writer.getFailedCount());
+        assertEquals(0, writer.getWrittenCount());
+    }
+
+    private void start(int flushSize, long flushIntervalMillis) {
+        writer.setAccessService(accessService);
+        writer.setFlushSize(flushSize);
+        writer.setFlushIntervalMillis(flushIntervalMillis);
+        writer.afterPropertiesSet();
+    }
+
+    private AccessEventImpl event(String username, String uri, boolean updating) {
+        UserImpl user = new UserImpl();
+        user.setUsername(username);
+        ResourceLookupImpl resource = new ResourceLookupImpl();
+        resource.setURIString(uri);
+
+        AccessEventImpl event = new AccessEventImpl();
+        event.setUser(user);
+        event.setResource(resource);
+        event.setEventDate(new Date());
+        event.setUpdating(updating);
+        return event;
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2005 - 2020 TIBCO Software Inc. All rights reserved.
+ * http://www.jaspersoft.com.
+ *
+ * Unless you have purchased a commercial license agreement from Jaspersoft,
+ * the following license terms apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.jaspersoft.jasperserver.api.logging.util;
+
+import com.jaspersoft.jasperserver.api.logging.audit.context.RequestType;
+import com.jaspersoft.jasperserver.api.logging.audit.context.RequestTypeListener;
+import com.jaspersoft.jasperserver.api.logging.context.LoggingContextProvider;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link InstrumentedThreadPoolExecutor} and {@link LoggableExecutorService}
+ *
+ * @version $Id$
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class InstrumentedThreadPoolExecutorTest {
+
+    @Mock
+    private RequestTypeListener requestTypeListener;
+    @Mock
+    private LoggingContextProvider loggingContextProvider;
+
+    private InstrumentedThreadPoolExecutor executor = new InstrumentedThreadPoolExecutor(1, 1, 1);
+
+    @After
+    public void tearDown() throws Exception {
+        executor.destroy();
+    }
+
+    @Test
+    public void execute_poolAndQueueFull_rejectedAndCounted() throws Exception {
+        executor.afterPropertiesSet();
+        CountDownLatch release = new CountDownLatch(1);
+        executor.execute(blocking(release));
+        executor.execute(blocking(release));
+
+        try {
+            executor.execute(blocking(release));
+            fail("RejectedExecutionException expected");
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+
+        assertEquals(1, executor.getRejectedCount());
+        assertEquals(1, executor.getQueueSize());
+        release.countDown();
+    }
+
+    @Test
+    public void execute_callerRunsPolicy_runsOnSubmittingThread() throws Exception {
+        executor.setRejectionPolicy(InstrumentedThreadPoolExecutor.RejectionPolicy.CALLER_RUNS);
+        executor.afterPropertiesSet();
+        CountDownLatch release = new CountDownLatch(1);
+        executor.execute(blocking(release));
+        executor.execute(blocking(release));
+
+        final Thread[] runner = new Thread[1];
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                runner[0] = Thread.currentThread();
+            }
+        });
+
+        assertEquals(Thread.currentThread(), runner[0]);
+        assertEquals(1, executor.getRejectedCount());
+        release.countDown();
+    }
+
+    @Test
+    public void submit_completedTasks_recordedInHistograms() throws Exception {
+        executor.afterPropertiesSet();
+
+        executor.submit(new Runnable() {
+            @Override
+            public void run() {
+            }
+        }).get(5, TimeUnit.SECONDS);
+        executor.destroy();
+
+        assertEquals(1, executor.getCompletedTaskCount());
+        assertEquals(1, executor.getRunTimeHistogram().getCount());
+        assertEquals(1, executor.getQueueWaitHistogram().getCount());
+    }
+
+    @Test
+    public void submit_loggableExecutorService_requestTypePropagated() throws Exception {
+        executor.afterPropertiesSet();
+        LoggableExecutorService service = new LoggableExecutorService(executor);
+        service.setRequestTypeListener(requestTypeListener);
+        service.setLoggingContextProvider(loggingContextProvider);
+        when(requestTypeListener.getRequestType()).thenReturn(RequestType.WEB_SERVICES);
+
+        Future<?> future = service.submit(new Runnable() {
+            @Override
+            public void run() {
+            }
+        });
+        future.get(5, TimeUnit.SECONDS);
+
+        verify(requestTypeListener).setRequestType(RequestType.WEB_SERVICES);
+        verify(loggingContextProvider, timeout(5000)).flushContext();
+    }
+
+    @Test
+    public void record_histogramBuckets_countedByUpperBound() {
+        LatencyHistogram histogram = new LatencyHistogram(new long[]{10, 100});
+        histogram.record(0);
+        histogram.record(10);
+        histogram.record(11);
+        histogram.record(1000);
+
+        Map<String, Long> buckets = histogram.getBuckets();
+        assertEquals(Long.valueOf(2), buckets.get("10ms"));
+        assertEquals(Long.valueOf(1), buckets.get("100ms"));
+        assertEquals(Long.valueOf(1), buckets.get("inf"));
+        assertEquals(1000, histogram.getMaxMillis());
+    }
+
+    private Runnable blocking(final CountDownLatch release) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright (C) 2005 - 2020 TIBCO Software Inc. All rights reserved.
+ * http://www.jaspersoft.com.
+ *
+ * Unless you have purchased a commercial license agreement from Jaspersoft,
+ * the following license terms apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jaspersoft.jasperserver.api.metadata.common.service.impl.hibernate;
+
+import com.jaspersoft.jasperserver.api.common.domain.ExecutionContext;
+import com.jaspersoft.jasperserver.api.metadata.common.domain.FileResource;
+import com.jaspersoft.jasperserver.api.metadata.common.service.RepositoryCacheableItem;
+import com.jaspersoft.jasperserver.api.metadata.common.service.RepositoryService;
+import com.jaspersoft.jasperserver.api.metadata.common.service.impl.hibernate.persistent.CachedItem;
+import com.jaspersoft.jasperserver.api.metadata.common.util.LockHandle;
+import com.jaspersoft.jasperserver.api.metadata.common.util.LockManager;
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.Date;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link HibernateRepositoryCache}
+ *
+ * @version $Id$
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class HibernateRepositoryCacheTest {
+
+    private static final String CACHE_NAME = "JasperReport";
+    private static final String URI = "/reports/report.jrxml";
+    private static final String TARGET_URI = "/reports/target.jrxml";
+    private static final byte[] DATA = {1, 2, 3};
+
+    @Mock
+    private Ehcache ehcacheMock;
+    @Mock
+    private LockManager lockManagerMock;
+    @Mock
+    private LockHandle lockHandleMock;
+    @Mock
+    private FileResource resourceMock;
+    @Mock
+    private RepositoryCacheableItem cacheableItemMock;
+    @Mock
+    private ExecutionContext executionContextMock;
+    @Mock
+    private RepositoryService repositoryMock;
+    @Mock
+    private FileResource targetResourceMock;
+    @Mock
+    private LockHandle targetLockHandleMock;
+
+    private HibernateRepositoryCache repositoryCache;
+    private Date creationDate = new Date(1000000L);
+
+    @Before
+    public void setUp() {
+        repositoryCache = new HibernateRepositoryCache();
+        repositoryCache.setHibernateRepositoryEhcache(ehcacheMock);
+        repositoryCache.setLockManager(lockManagerMock);
+        repositoryCache.setRepository(repositoryMock);
+
+        when(resourceMock.getURIString()).thenReturn(URI);
+        when(resourceMock.getVersion()).thenReturn(2);
+        when(resourceMock.getCreationDate()).thenReturn(creationDate);
+        when(cacheableItemMock.getCacheName()).thenReturn(CACHE_NAME);
+    }
+
+    @Test
+    public void freshItemIsReturnedWithoutLocking() throws Exception {
+        when(ehcacheMock.get(URI)).thenReturn(new Element(URI, cachedItem(2, creationDate)));
+
+        InputStream data = repositoryCache.cache(executionContextMock, resourceMock, cacheableItemMock);
+
+        assertArrayEquals(DATA, readAll(data));
+        verify(lockManagerMock, never()).lock(anyString(), anyString());
+        verify(cacheableItemMock, never()).getData(any(), any());
+    }
+
+    @Test
+    public void staleItemIsReloadedUnderLock() throws Exception {
+        CachedItem staleItem = cachedItem(1, creationDate);
+        byte[] newData = {4, 5};
+        when(ehcacheMock.get(URI)).thenReturn(new Element(URI, staleItem));
+        when(lockManagerMock.lock(CACHE_NAME, URI)).thenReturn(lockHandleMock);
+        when(cacheableItemMock.getData(executionContextMock, resourceMock)).thenReturn(newData);
+
+        InputStream data = repositoryCache.cache(executionContextMock, resourceMock, cacheableItemMock);
+
+        assertArrayEquals(newData, readAll(data));
+        verify(lockManagerMock).unlock(lockHandleMock);
+
+        // the cached item is replaced, not updated in place
+        ArgumentCaptor<Element> elementCaptor = ArgumentCaptor.forClass(Element.class);
+        verify(ehcacheMock).put(elementCaptor.capture());
+        CachedItem savedItem = (CachedItem) elementCaptor.getValue().getObjectValue();
+        assertNotSame(staleItem, savedItem);
+        assertEquals(2, savedItem.getVersion());
+        assertEquals(1, staleItem.getVersion());
+    }
+
+    @Test
+    public void referenceTargetIsUnlockedBeforeReferenceIsLocked() throws Exception {
+        when(resourceMock.isReference()).thenReturn(true);
+        when(resourceMock.getReferenceURI()).thenReturn(TARGET_URI);
+        when(repositoryMock.getResource(executionContextMock, TARGET_URI)).thenReturn(targetResourceMock);
+        when(targetResourceMock.getURIString()).thenReturn(TARGET_URI);
+        when(targetResourceMock.getVersion()).thenReturn(1);
+        when(targetResourceMock.getCreationDate()).thenReturn(creationDate);
+        when(cacheableItemMock.getData(executionContextMock, targetResourceMock)).thenReturn(DATA);
+        when(lockManagerMock.lock(CACHE_NAME, TARGET_URI)).thenReturn(targetLockHandleMock);
+        when(lockManagerMock.lock(CACHE_NAME, URI)).thenReturn(lockHandleMock);
+
+        InputStream data = repositoryCache.cache(executionContextMock, resourceMock, cacheableItemMock);
+
+        assertArrayEquals(DATA, readAll(data));
+        // locks of unrelated keys can share a stripe, so they must never be nested
+        InOrder locking = inOrder(lockManagerMock);
+        locking.verify(lockManagerMock).lock(CACHE_NAME, TARGET_URI);
+        locking.verify(lockManagerMock).unlock(targetLockHandleMock);
+        locking.verify(lockManagerMock).lock(CACHE_NAME, URI);
+        locking.verify(lockManagerMock).unlock(lockHandleMock);
+    }
+
+    private CachedItem cachedItem(int version, Date versionDate) {
+        CachedItem item = new CachedItem();
+        item.setCacheName(CACHE_NAME);
+        item.setUri(URI);
+        item.setVersion(version);
+        item.setVersionDate(versionDate);
+        item.setDataBytes(DATA);
+        return item;
+    }
+
+    private byte[] readAll(InputStream input) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int b;
+        while ((b = input.read()) >= 0) {
+            out.write(b);
+        }
+        return out.toByteArray();
+    }
+}
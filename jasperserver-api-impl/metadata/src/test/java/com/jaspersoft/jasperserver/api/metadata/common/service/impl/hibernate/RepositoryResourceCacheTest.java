@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2005 - 2020 TIBCO Software Inc. All rights reserved.
+ * http://www.jaspersoft.com.
+ *
+ * Unless you have purchased a commercial license agreement from Jaspersoft,
+ * the following license terms apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.jaspersoft.jasperserver.api.metadata.common.service.impl.hibernate;
+
+import com.jaspersoft.jasperserver.api.metadata.common.domain.FileResource;
+import com.jaspersoft.jasperserver.api.metadata.common.domain.Query;
+import com.jaspersoft.jasperserver.api.metadata.common.domain.Resource;
+import com.jaspersoft.jasperserver.api.metadata.common.domain.client.FileResourceImpl;
+import com.jaspersoft.jasperserver.api.metadata.common.service.impl.ResourceSavedEvent;
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.Configuration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests for {@link RepositoryResourceCache}
+ *
+ * @version $Id$
+ */
+public class RepositoryResourceCacheTest {
+
+    private static final String URI = "/reports/sales";
+    private static final String LOCAL_URI = "/reports/sales_files/main_jrxml";
+
+    private CacheManager cacheManager;
+    private RepositoryResourceCache resourceCache;
+
+    @Before
+    public void setUp() {
+        cacheManager = new CacheManager(new Configuration().name("repositoryResourceCacheTest"));
+        Cache cache = new Cache(new CacheConfiguration("repositoryResourceCache", 100));
+        cacheManager.addCache(cache);
+
+        resourceCache = new RepositoryResourceCache();
+        resourceCache.setCache(cache);
+        resourceCache.afterPropertiesSet();
+    }
+
+    @After
+    public void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        cacheManager.shutdown();
+    }
+
+    @Test
+    public void get_cachedResource_copyReturned() {
+        FileResource resource = fileResource(URI, 3);
+        resourceCache.put(URI, resource, resourceCache.startLoad());
+
+        Resource cached = resourceCache.get(URI, null);
+
+        assertNotNull(cached);
+        assertNotSame(resource, cached);
+        assertEquals(URI, cached.getURIString());
+        assertEquals(3, cached.getVersion());
+        assertNotSame(cached, resourceCache.get(URI, FileResource.class));
+    }
+
+    @Test
+    public void get_otherResourceType_notReturned() {
+        resourceCache.put(URI, fileResource(URI, 1), resourceCache.startLoad());
+
+        assertNull(resourceCache.get(URI, Query.class));
+    }
+
+    @Test
+    public void onResourceDelete_localResourcesDroppedWithParent() {
+        resourceCache.put(URI, fileResource(URI, 1), resourceCache.startLoad());
+        resourceCache.put(LOCAL_URI, fileResource(LOCAL_URI, 1), resourceCache.startLoad());
+
+        resourceCache.onResourceDelete(FileResource.class, URI);
+
+        assertNull(resourceCache.get(URI, null));
+        assertNull(resourceCache.get(LOCAL_URI, null));
+    }
+
+    @Test
+    public void put_invalidatedDuringLoad_notCached() {
+        long generation = resourceCache.startLoad();
+        resourceCache.resourceSaved(new ResourceSavedEvent(URI, "Sales", null, false, false));
+
+        resourceCache.put(URI, fileResource(URI, 1), generation);
+
+        assertNull(resourceCache.get(URI, null));
+    }
+
+    @Test
+    public void put_transactionChangedRepository_notCachedUntilCompletion() {
+        TransactionSynchronizationManager.initSynchronization();
+        resourceCache.resourceSaved(new ResourceSavedEvent(URI, "Sales", null, false, false));
+
+        resourceCache.put(URI, fileResource(URI, 2), resourceCache.startLoad());
+        assertNull(resourceCache.get(URI, null));
+
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+        }
+        TransactionSynchronizationManager.clearSynchronization();
+
+        resourceCache.put(URI, fileResource(URI, 2), resourceCache.startLoad());
+        assertNotNull(resourceCache.get(URI, null));
+    }
+
+    private FileResource fileResource(String uri, int version) {
+        FileResourceImpl resource = new FileResourceImpl();
+        resource.setURIString(uri);
+        resource.setVersion(version);
+        resource.setFileType(FileResource.TYPE_JRXML);
+        return resource;
+    }
+}
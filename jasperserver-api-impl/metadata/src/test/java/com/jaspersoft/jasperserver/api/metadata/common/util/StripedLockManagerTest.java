@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2005 - 2020 TIBCO Software Inc. All rights reserved.
+ * http://www.jaspersoft.com.
+ *
+ * Unless you have purchased a commercial license agreement from Jaspersoft,
+ * the following license terms apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.jaspersoft.jasperserver.api.metadata.common.util;
+
+import com.jaspersoft.jasperserver.api.JSException;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link StripedLockManager}
+ *
+ * @version $Id$
+ */
+public class StripedLockManagerTest {
+
+    private StripedLockManager lockManager;
+
+    @Before
+    public void setUp() {
+        lockManager = new StripedLockManager(4);
+        lockManager.setLockTimeoutMs(100);
+    }
+
+    @Test(expected = JSException.class)
+    public void lockTimeoutFailsInsteadOfProceedingUnlocked() throws Exception {
+        final CountDownLatch locked = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(1);
+        Thread holder = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                LockHandle lock = lockManager.lock("cache", "/uri");
+                locked.countDown();
+                try {
+                    done.await();
+                } catch (InterruptedException e) {
+                    // released below
+                } finally {
+                    lockManager.unlock(lock);
+                }
+            }
+        });
+        holder.start();
+        try {
+            assertTrue(locked.await(5, TimeUnit.SECONDS));
+            lockManager.lock("cache", "/uri");
+        } finally {
+            done.countDown();
+            holder.join();
+        }
+    }
+
+    @Test
+    public void lockIsReleasedForOtherThreads() throws Exception {
+        LockHandle lock = lockManager.lock("cache", "/uri");
+        lockManager.unlock(lock);
+
+        final CountDownLatch acquired = new CountDownLatch(1);
+        Thread other = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                lockManager.unlock(lockManager.lock("cache", "/uri"));
+                acquired.countDown();
+            }
+        });
+        other.start();
+        other.join();
+        assertTrue(acquired.await(0, TimeUnit.SECONDS));
+    }
+}
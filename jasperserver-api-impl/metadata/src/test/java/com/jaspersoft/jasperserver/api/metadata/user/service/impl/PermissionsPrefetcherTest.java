@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2005 - 2020 TIBCO Software Inc. All rights reserved.
+ * http://www.jaspersoft.com.
+ *
+ * Unless you have purchased a commercial license agreement from Jaspersoft,
+ * the following license terms apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.jaspersoft.jasperserver.api.metadata.user.service.impl;
+
+import com.jaspersoft.jasperserver.api.metadata.common.domain.impl.IdedObject;
+import com.jaspersoft.jasperserver.api.metadata.common.service.ResourceFactory;
+import com.jaspersoft.jasperserver.api.metadata.security.JasperServerAclImpl;
+import com.jaspersoft.jasperserver.api.metadata.security.JasperServerPermissionGrantingStrategy;
+import com.jaspersoft.jasperserver.api.metadata.user.domain.ObjectPermission;
+import com.jaspersoft.jasperserver.api.metadata.user.domain.client.RoleImpl;
+import com.jaspersoft.jasperserver.api.metadata.user.domain.impl.hibernate.RepoObjectPermission;
+import com.jaspersoft.jasperserver.api.security.EhCacheBasedJasperServerAclCache;
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.Configuration;
+import org.hibernate.Session;
+import org.hibernate.query.Query;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.orm.hibernate5.HibernateCallback;
+import org.springframework.orm.hibernate5.HibernateTemplate;
+import org.springframework.security.acls.model.AccessControlEntry;
+import org.springframework.security.acls.model.Acl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link PermissionsPrefetcher#prefetchAcls(Collection)}
+ *
+ * @version $Id$
+ */
+public class PermissionsPrefetcherTest {
+
+    private CacheManager cacheManager;
+    private EhCacheBasedJasperServerAclCache aclCache;
+    private HibernateTemplate hibernateTemplate;
+    private Query query;
+    private PermissionsPrefetcher prefetcher;
+    private RoleImpl roleUser;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        cacheManager = new CacheManager(new Configuration().name("permissionsPrefetcherTest"));
+        Cache cache = new Cache(new CacheConfiguration("aclCache", 1000));
+        cacheManager.addCache(cache);
+        aclCache = new EhCacheBasedJasperServerAclCache(cache, new JasperServerPermissionGrantingStrategy());
+        aclCache.putInCache(new JasperServerAclImpl(new InternalURIDefinition("/"), new ArrayList<AccessControlEntry>()));
+
+        roleUser = new RoleImpl();
+        roleUser.setRoleName("ROLE_USER");
+        IdedObject recipient = mock(IdedObject.class);
+        when(recipient.toClient(any(ResourceFactory.class))).thenReturn(roleUser);
+        RepoObjectPermission permission = new RepoObjectPermission();
+        permission.setURI("repo:/public/reports");
+        permission.setPermissionRecipient(recipient);
+        permission.setPermissionMask(2);
+
+        final Session session = mock(Session.class);
+        query = mock(Query.class);
+        when(session.createQuery(anyString())).thenReturn(query);
+        when(query.setParameterList(anyString(), anyCollection())).thenReturn(query);
+        when(query.list()).thenReturn(Collections.singletonList(permission));
+        hibernateTemplate = mock(HibernateTemplate.class);
+        when(hibernateTemplate.execute(any(HibernateCallback.class))).thenAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                return ((HibernateCallback) invocation.getArgument(0)).doInHibernate(session);
+            }
+        });
+
+        ResourceFactory persistentClassFactory = mock(ResourceFactory.class);
+        when(persistentClassFactory.getImplementationClassName(ObjectPermission.class))
+                .thenReturn(RepoObjectPermission.class.getName());
+
+        prefetcher = new PermissionsPrefetcher();
+        prefetcher.setHibernateTemplate(hibernateTemplate);
+        prefetcher.setPersistentClassFactory(persistentClassFactory);
+        prefetcher.setObjectMappingFactory(mock(ResourceFactory.class));
+        prefetcher.setAclCache(aclCache);
+        prefetcher.setSidRetrievalStrategy(new JasperServerSidRetrievalStrategyImpl());
+    }
+
+    @After
+    public void tearDown() {
+        cacheManager.shutdown();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void prefetchAcls_cachesListedResourcesAndAncestors() {
+        prefetcher.prefetchAcls(reportUris(12));
+
+        verify(hibernateTemplate, times(1)).execute(any(HibernateCallback.class));
+        Acl reportAcl = aclCache.getFromCache(new InternalURIDefinition("/public/reports/report5"));
+        assertNotNull(reportAcl);
+        assertEquals(0, reportAcl.getEntries().size());
+        Acl folderAcl = reportAcl.getParentAcl();
+        assertEquals("repo:/public/reports", folderAcl.getObjectIdentity().getIdentifier());
+        assertEquals(1, folderAcl.getEntries().size());
+        assertEquals(2, folderAcl.getEntries().get(0).getPermission().getMask());
+        assertEquals("repo:/public", folderAcl.getParentAcl().getObjectIdentity().getIdentifier());
+        assertEquals("repo:/", folderAcl.getParentAcl().getParentAcl().getObjectIdentity().getIdentifier());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void prefetchAcls_fewMissingAcls_notPrefetched() {
+        prefetcher.prefetchAcls(reportUris(3));
+
+        verify(hibernateTemplate, never()).execute(any(HibernateCallback.class));
+        assertNull(aclCache.getFromCache(new InternalURIDefinition("/public/reports/report1")));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void prefetchAcls_cachedAcls_notLoadedAgain() {
+        prefetcher.prefetchAcls(reportUris(12));
+        prefetcher.prefetchAcls(reportUris(12));
+
+        verify(hibernateTemplate, times(1)).execute(any(HibernateCallback.class));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void prefetchAcls_manyMissingAcls_loadedInBatches() {
+        prefetcher.setMaxUrisPerQuery(5);
+
+        // 12 reports, their folder and /public
+        prefetcher.prefetchAcls(reportUris(12));
+
+        verify(hibernateTemplate, times(3)).execute(any(HibernateCallback.class));
+        assertNotNull(aclCache.getFromCache(new InternalURIDefinition("/public/reports/report11")));
+    }
+
+    @Test
+    public void prefetchAcls_nonRepositoryUris_ignored() {
+        List<String> uris = new ArrayList<String>();
+        for (int i = 0; i < 12; i++) {
+            uris.add("attr:/organizations/organization_" + i);
+        }
+
+        prefetcher.prefetchAcls(uris);
+
+        verify(query, never()).list();
+    }
+
+    private static List<String> reportUris(int count) {
+        List<String> uris = new ArrayList<String>();
+        for (int i = 0; i < count; i++) {
+            uris.add("/public/reports/report" + i);
+        }
+        return uris;
+    }
+}
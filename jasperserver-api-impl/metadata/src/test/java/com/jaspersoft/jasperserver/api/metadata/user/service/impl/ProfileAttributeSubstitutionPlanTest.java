@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2005 - 2020 TIBCO Software Inc. All rights reserved.
+ * http://www.jaspersoft.com.
+ *
+ * Unless you have purchased a commercial license agreement from Jaspersoft,
+ * the following license terms apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.jaspersoft.jasperserver.api.metadata.user.service.impl;
+
+import com.jaspersoft.jasperserver.api.metadata.jasperreports.domain.client.JdbcReportDataSourceImpl;
+import com.jaspersoft.jasperserver.api.metadata.user.service.impl.ProfileAttributeSubstitutionPlan.UnsupportedTypeException;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import java.util.function.Predicate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link ProfileAttributeSubstitutionPlan}.
+ *
+ * @version $Id$
+ */
+public class ProfileAttributeSubstitutionPlanTest {
+
+    private ProfileAttributeSubstitutionPlan plan;
+    private AtomicInteger scans;
+    private Predicate<String> hasPlaceholders;
+    private BiFunction<String, String, String> substitution;
+
+    @Before
+    public void setUp() {
+        plan = new ProfileAttributeSubstitutionPlan();
+        scans = new AtomicInteger();
+        hasPlaceholders = value -> {
+            scans.incrementAndGet();
+            return value.contains("${");
+        };
+        substitution = (value, fieldName) -> value.replace("${" + fieldName + "}", fieldName.toUpperCase());
+    }
+
+    @Test
+    public void substitute_copiesOnlyChangedObject() {
+        JdbcReportDataSourceImpl dataSource = dataSource("${username}");
+
+        JdbcReportDataSourceImpl result = plan.substitute(dataSource, null, hasPlaceholders, substitution);
+
+        assertNotSame(dataSource, result);
+        assertEquals("USERNAME", result.getUsername());
+        assertEquals("jdbc:db", result.getConnectionUrl());
+        assertSame(dataSource.getAttributes(), result.getAttributes());
+        assertEquals("${username}", dataSource.getUsername());
+    }
+
+    @Test
+    public void substitute_noPlaceholders_returnsSameObject() {
+        JdbcReportDataSourceImpl dataSource = dataSource("user");
+
+        assertSame(dataSource, plan.substitute(dataSource, null, hasPlaceholders, substitution));
+    }
+
+    @Test
+    public void substitute_sameScanKeyAndValues_stringsNotScannedAgain() {
+        JdbcReportDataSourceImpl dataSource = dataSource("${username}");
+        plan.substitute(dataSource, "/ds@1", hasPlaceholders, substitution);
+        int firstScans = scans.get();
+
+        JdbcReportDataSourceImpl result = plan.substitute(dataSource, "/ds@1", hasPlaceholders, substitution);
+
+        assertEquals("USERNAME", result.getUsername());
+        assertTrue(firstScans > 0);
+        // only the strings of the attributes list, which is not a String field, are scanned again
+        assertEquals(firstScans + 1, scans.get());
+    }
+
+    @Test
+    public void substitute_sameScanKeyChangedValue_scannedAgain() {
+        JdbcReportDataSourceImpl dataSource = dataSource("user");
+        assertSame(dataSource, plan.substitute(dataSource, "/ds@1", hasPlaceholders, substitution));
+
+        dataSource.setPassword("${password}");
+        JdbcReportDataSourceImpl result = plan.substitute(dataSource, "/ds@1", hasPlaceholders, substitution);
+
+        assertEquals("PASSWORD", result.getPassword());
+    }
+
+    @Test(expected = UnsupportedTypeException.class)
+    public void substitute_noDefaultConstructor_unsupported() {
+        plan.substitute(new Immutable("${value}"), null, hasPlaceholders, substitution);
+    }
+
+    @Test
+    public void visitStrings_stopsWhenVisitorReturnsFalse() {
+        List<String> visited = new ArrayList<String>();
+
+        boolean completed = plan.visitStrings(dataSource("${username}"), value -> {
+            visited.add(value);
+            return !value.startsWith("${");
+        });
+
+        assertFalse(completed);
+        assertEquals("${username}", visited.get(visited.size() - 1));
+    }
+
+    private JdbcReportDataSourceImpl dataSource(String username) {
+        JdbcReportDataSourceImpl dataSource = new JdbcReportDataSourceImpl();
+        dataSource.setURIString("/ds");
+        dataSource.setUsername(username);
+        dataSource.setConnectionUrl("jdbc:db");
+        List<String> attributes = new ArrayList<String>();
+        attributes.add("attribute");
+        dataSource.setAttributes(attributes);
+        return dataSource;
+    }
+
+    private static class Immutable {
+        private final String value;
+
+        Immutable(String value) {
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2005 - 2020 TIBCO Software Inc. All rights reserved.
+ * http://www.jaspersoft.com.
+ *
+ * Unless you have purchased a commercial license agreement from Jaspersoft,
+ * the following license terms apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.jaspersoft.jasperserver.api.metadata.user.service.impl;
+
+import com.jaspersoft.jasperserver.api.common.domain.ExecutionContext;
+import com.jaspersoft.jasperserver.api.metadata.jasperreports.domain.client.JdbcReportDataSourceImpl;
+import com.jaspersoft.jasperserver.api.metadata.user.domain.ProfileAttribute;
+import com.jaspersoft.jasperserver.api.metadata.user.domain.client.ProfileAttributeImpl;
+import com.jaspersoft.jasperserver.api.metadata.user.service.ProfileAttributeCategory;
+import com.jaspersoft.jasperserver.api.metadata.user.service.ProfileAttributeService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.context.MessageSource;
+
+import javax.validation.Validator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Compares profile attribute substitution in a JDBC data source done with the compiled substitution plan
+ * of {@link ProfileAttributesResolverImpl} to the JSON round trip it used to do, for a data source which
+ * has placeholders and for one which has none, the latter being the common case on repository reads.
+ *
+ * <p>
+ * Run with <code>mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.jaspersoft.jasperserver.api.metadata.user.service.impl.ProfileAttributesResolverBenchmark</code>
+ * </p>
+ *
+ * @version $Id$
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProfileAttributesResolverBenchmark {
+
+    private static final String ATTRIBUTE_FUNCTION_PATTERN =
+            "\\s*attribute\\s*\\(\\s*'(?<name>[^\\\\/']+)'\\s*(,\\s*'(?<category>[^\\\\/']+)'\\s*)?\\)\\s*";
+    private static final String ATTRIBUTE_PATTERN_DOUBLE_SINGLE_QUOTES =
+            "\\{\\s*attribute\\s*\\(\\s*''(?<name>[^\\\\/']+)''\\s*(,\\s*''(?<category>[^\\\\/']+)''\\s*)?\\)\\s*\\}";
+
+    @Param({"true", "false"})
+    private boolean parametrized;
+
+    private ProfileAttributesResolverImpl compiledResolver;
+    private ProfileAttributesResolverImpl jsonResolver;
+    private JdbcReportDataSourceImpl dataSource;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        compiledResolver = createResolver(true);
+        jsonResolver = createResolver(false);
+
+        dataSource = new JdbcReportDataSourceImpl();
+        dataSource.setURIString("/datasources/foodmart");
+        dataSource.setVersion(7);
+        dataSource.setLabel("Foodmart");
+        dataSource.setDescription("Foodmart data source");
+        dataSource.setDriverClass("org.postgresql.Driver");
+        dataSource.setTimezone("UTC");
+        if (parametrized) {
+            dataSource.setConnectionUrl("jdbc:postgresql://{attribute('dbHost', 'Tenant')}:5432/foodmart");
+            dataSource.setUsername("{attribute('dbUser', 'User')}");
+            dataSource.setPassword("{attribute('dbPassword', 'User')}");
+        } else {
+            dataSource.setConnectionUrl("jdbc:postgresql://localhost:5432/foodmart");
+            dataSource.setUsername("postgres");
+            dataSource.setPassword("postgres");
+        }
+    }
+
+    @Benchmark
+    public Object mergeResource_compiled() {
+        return compiledResolver.mergeResource(dataSource);
+    }
+
+    @Benchmark
+    public Object mergeResource_json() {
+        return jsonResolver.mergeResource(dataSource);
+    }
+
+    @Benchmark
+    public boolean isParametrizedResource_compiled() {
+        return compiledResolver.isParametrizedResource(dataSource);
+    }
+
+    @Benchmark
+    public boolean isParametrizedResource_json() {
+        return jsonResolver.isParametrizedResource(dataSource);
+    }
+
+    private static ProfileAttributesResolverImpl createResolver(boolean compiledSubstitution) {
+        ProfileAttributeService profileAttributeService = mock(ProfileAttributeService.class);
+        when(profileAttributeService.getCurrentUserProfileAttributes(any(ExecutionContext.class),
+                any(ProfileAttributeCategory.class))).thenReturn(Arrays.asList(
+                attribute("dbHost", "db.example.com"),
+                attribute("dbUser", "joeuser"),
+                attribute("dbPassword", "secret")));
+
+        ProfileAttributesResolverImpl resolver = new ProfileAttributesResolverImpl();
+        resolver.setAttributePlaceholderPatterns(new ArrayList<String>(Arrays.asList(
+                "\\{" + ATTRIBUTE_FUNCTION_PATTERN + "}", ATTRIBUTE_PATTERN_DOUBLE_SINGLE_QUOTES)));
+        resolver.setParametrizedResourcePatterns(new ArrayList<String>(Arrays.asList(
+                ATTRIBUTE_FUNCTION_PATTERN, ATTRIBUTE_PATTERN_DOUBLE_SINGLE_QUOTES)));
+        resolver.setProfileAttributeService(profileAttributeService);
+        resolver.setMessageSource(mock(MessageSource.class));
+        resolver.setProfileAttributeCategories(Arrays.asList(ProfileAttributeCategory.values()));
+        resolver.setExcludedResourcesFromAttrResolving(Collections.<String>emptySet());
+        resolver.setValidator(mock(Validator.class));
+        resolver.setCompiledSubstitution(compiledSubstitution);
+        resolver.init();
+        return resolver;
+    }
+
+    private static ProfileAttribute attribute(String name, String value) {
+        ProfileAttribute attribute = new ProfileAttributeImpl();
+        attribute.setAttrName(name);
+        attribute.setAttrValue(value);
+        return attribute;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(ProfileAttributesResolverBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -54,8 +54,10 @@ import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -72,6 +74,8 @@ import static junit.framework.TestCase.assertTrue;
 import static junit.framework.TestCase.fail;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doReturn;
@@ -141,6 +145,7 @@ public class ProfileAttributesResolverImplTest {
         reset(profileAttributeService, messageSource);
 
         profileAttributesResolverImpl.setEnabledResolving(true);
+        profileAttributesResolverImpl.setCompiledSubstitution(true);
         profileAttributesResolverImpl.setValidator(beanValidator);
 
         parametrizedJdbcReportDataSource = new JdbcReportDataSourceImpl();
@@ -265,6 +270,88 @@ public class ProfileAttributesResolverImplTest {
         assertEquals(result.getConnectionUrl(), parametrizedJdbcReportDataSource.getConnectionUrl());
     }
 
+    @Test
+    public void mergeResource_compiledSubstitution_returnsCopyAndKeepsOriginal() {
+        parametrizedJdbcReportDataSource.setURIString("/datasources/jdbc");
+        parametrizedJdbcReportDataSource.setVersion(3);
+
+        JdbcReportDataSourceImpl result = profileAttributesResolverImpl.mergeResource(parametrizedJdbcReportDataSource);
+
+        assertNotSame(parametrizedJdbcReportDataSource, result);
+        assertEquals(jdbcUserName, result.getUsername());
+        assertEquals(jdbcConnectionUrl, result.getConnectionUrl());
+        assertEquals(3, result.getVersion());
+        assertEquals("/datasources/jdbc", result.getURIString());
+        assertEquals("{attribute('userName', 'User')}", parametrizedJdbcReportDataSource.getUsername());
+    }
+
+    @Test
+    public void mergeResource_compiledSubstitution_sameAsJsonSubstitution() {
+        JdbcReportDataSourceImpl compiled = profileAttributesResolverImpl.mergeResource(parametrizedJdbcReportDataSource);
+        profileAttributesResolverImpl.setCompiledSubstitution(false);
+        JdbcReportDataSourceImpl json = profileAttributesResolverImpl.mergeResource(parametrizedJdbcReportDataSource);
+
+        assertEquals(json.getDriverClass(), compiled.getDriverClass());
+        assertEquals(json.getUsername(), compiled.getUsername());
+        assertEquals(json.getPassword(), compiled.getPassword());
+        assertEquals(json.getConnectionUrl(), compiled.getConnectionUrl());
+        assertEquals(json.getLabel(), compiled.getLabel());
+        assertEquals(json.getDescription(), compiled.getDescription());
+    }
+
+    @Test
+    public void mergeResource_notParametrized_returnsSameResource() {
+        notParametrizedJdbcReportDataSource.setURIString("/datasources/plain");
+        notParametrizedJdbcReportDataSource.setVersion(1);
+
+        assertSame(notParametrizedJdbcReportDataSource,
+                profileAttributesResolverImpl.mergeResource(notParametrizedJdbcReportDataSource));
+    }
+
+    @Test
+    public void mergeResource_fieldChangedWithinSameVersion_substituted() {
+        notParametrizedJdbcReportDataSource.setURIString("/datasources/changed");
+        notParametrizedJdbcReportDataSource.setVersion(1);
+        profileAttributesResolverImpl.mergeResource(notParametrizedJdbcReportDataSource);
+
+        notParametrizedJdbcReportDataSource.setPassword("{attribute('password')}");
+        JdbcReportDataSourceImpl result = profileAttributesResolverImpl.mergeResource(notParametrizedJdbcReportDataSource);
+
+        assertEquals(jdbcUserPassword, result.getPassword());
+    }
+
+    @Test
+    public void mergeObject_nestedMapsAndLists_substituted() {
+        Map<String, Object> properties = new HashMap<String, Object>();
+        properties.put("user", "{attribute('userName', 'User')}");
+        properties.put("urls", new ArrayList<String>(Arrays.asList("plain", "{attribute('connectionUrl', 'Tenant')}")));
+        properties.put("count", 1);
+
+        Map<String, Object> result = profileAttributesResolverImpl.mergeObject(properties, "/connection");
+
+        assertEquals(jdbcUserName, result.get("user"));
+        assertEquals(Arrays.asList("plain", jdbcConnectionUrl), result.get("urls"));
+        assertEquals(1, result.get("count"));
+        assertEquals("{attribute('userName', 'User')}", properties.get("user"));
+    }
+
+    @Test
+    public void mergeResource_attributeValueWithJsonSpecialCharacters_substitutedAsIs() {
+        ProfileAttribute profileAttribute = new ProfileAttributeImpl();
+        profileAttribute.setAttrName("quoted");
+        profileAttribute.setAttrValue("pass\\\"word");
+        when(profileAttributeService.getCurrentUserProfileAttributes(any(ExecutionContext.class), eq(HIERARCHICAL)))
+                .thenReturn(Collections.singletonList(profileAttribute));
+        parametrizedJdbcReportDataSource.setPassword("{attribute('quoted')}");
+        parametrizedJdbcReportDataSource.setUsername("user");
+        parametrizedJdbcReportDataSource.setConnectionUrl("url");
+        parametrizedJdbcReportDataSource.setDriverClass("driver");
+
+        JdbcReportDataSourceImpl result = profileAttributesResolverImpl.mergeResource(parametrizedJdbcReportDataSource);
+
+        assertEquals("pass\\\"word", result.getPassword());
+    }
+
     @Test
     public void merge_multilineTest_passed() {
         String template = "before text: %1$s, after text\n" +
@@ -415,6 +502,16 @@ public class ProfileAttributesResolverImplTest {
                 ProfileAttributeCategory.HIERARCHICAL));
     }
 
+    @Test
+    public void isParametrizedResource_jsonSubstitution_sameResult() throws Exception {
+        profileAttributesResolverImpl.setCompiledSubstitution(false);
+
+        assertTrue(profileAttributesResolverImpl.isParametrizedResource(parametrizedJdbcReportDataSource));
+        assertFalse(profileAttributesResolverImpl.isParametrizedResource(notParametrizedJdbcReportDataSource));
+        assertFalse(profileAttributesResolverImpl.isParametrizedResource(parametrizedJdbcReportDataSource,
+                ProfileAttributeCategory.SERVER));
+    }
+
     @Test
     public void merge_attributeCategoryIsNotSupported_exception() throws Exception {
         parametrizedJdbcReportDataSource.setUsername("{attribute('userName', 'UnknownCategory')}");
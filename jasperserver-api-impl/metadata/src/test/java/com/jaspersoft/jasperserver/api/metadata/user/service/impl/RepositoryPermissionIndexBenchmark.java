@@ -0,0 +1,202 @@
+/*
+ * Copyright (C) 2005 - 2020 TIBCO Software Inc. All rights reserved.
+ * http://www.jaspersoft.com.
+ *
+ * Unless you have purchased a commercial license agreement from Jaspersoft,
+ * the following license terms apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.jaspersoft.jasperserver.api.metadata.user.service.impl;
+
+import com.jaspersoft.jasperserver.api.metadata.user.domain.ObjectPermission;
+import com.jaspersoft.jasperserver.api.metadata.user.domain.client.ObjectPermissionImpl;
+import com.jaspersoft.jasperserver.api.metadata.user.domain.client.RoleImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares inherited permission lookups done with {@link RepositoryPermissionIndex} to the per ancestor lookups
+ * {@link ObjectPermissionServiceImpl} used to do, on a synthetic repository which is both deep and wide:
+ * <code>width</code> top level folders, each containing a chain of <code>depth</code> nested folders
+ * with <code>width</code> subfolders on every level.
+ * The per ancestor variant looks permissions up in a hash map, which is a lower bound for the database query
+ * it used to run for each ancestor.
+ *
+ * <p>
+ * Run with <code>mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.jaspersoft.jasperserver.api.metadata.user.service.impl.RepositoryPermissionIndexBenchmark</code>
+ * </p>
+ *
+ * @version $Id$
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RepositoryPermissionIndexBenchmark {
+
+    private static final int ROLE_COUNT = 50;
+    private static final int LOOKUP_COUNT = 1024;
+
+    @Param({"8", "32", "128"})
+    private int depth;
+
+    @Param({"20"})
+    private int width;
+
+    private RepositoryPermissionIndex index;
+    private Map<String, List<ObjectPermission>> permissionsByUri;
+    private String[] lookupUris;
+    private RoleImpl[] lookupRoles;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Random random = new Random(42);
+        RoleImpl[] roles = new RoleImpl[ROLE_COUNT];
+        for (int i = 0; i < ROLE_COUNT; i++) {
+            roles[i] = new RoleImpl();
+            roles[i].setRoleName("ROLE_" + i);
+        }
+
+        List<ObjectPermission> permissions = new ArrayList<ObjectPermission>();
+        for (RoleImpl role : roles) {
+            permissions.add(permission("repo:/", role, 2));
+        }
+        List<String> leaves = new ArrayList<String>();
+        for (int top = 0; top < width; top++) {
+            String chain = "/top" + top;
+            for (int level = 0; level < depth; level++) {
+                for (int sibling = 0; sibling < width; sibling++) {
+                    String folder = chain + "/folder" + sibling;
+                    if (random.nextInt(4) == 0) {
+                        permissions.add(permission("repo:" + folder, roles[random.nextInt(ROLE_COUNT)], 1 + random.nextInt(30)));
+                    }
+                    if (level == depth - 1) {
+                        leaves.add(folder + "/report");
+                    }
+                }
+                chain = chain + "/folder" + random.nextInt(width);
+            }
+        }
+
+        index = new RepositoryPermissionIndex();
+        index.load(permissions, index.getModificationCount());
+        permissionsByUri = new HashMap<String, List<ObjectPermission>>();
+        for (ObjectPermission permission : permissions) {
+            List<ObjectPermission> uriPermissions = permissionsByUri.get(permission.getURI());
+            if (uriPermissions == null) {
+                uriPermissions = new ArrayList<ObjectPermission>();
+                permissionsByUri.put(permission.getURI(), uriPermissions);
+            }
+            uriPermissions.add(permission);
+        }
+
+        lookupUris = new String[LOOKUP_COUNT];
+        lookupRoles = new RoleImpl[LOOKUP_COUNT];
+        for (int i = 0; i < LOOKUP_COUNT; i++) {
+            lookupUris[i] = leaves.get(random.nextInt(leaves.size()));
+            lookupRoles[i] = roles[random.nextInt(ROLE_COUNT)];
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public int inheritedMask_index_1thread() {
+        return inheritedMaskFromIndex();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public int inheritedMask_index_8threads() {
+        return inheritedMaskFromIndex();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public int inheritedMask_perAncestor_1thread() {
+        return inheritedMaskPerAncestor();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public int inheritedMask_perAncestor_8threads() {
+        return inheritedMaskPerAncestor();
+    }
+
+    protected int inheritedMaskFromIndex() {
+        int lookup = ThreadLocalRandom.current().nextInt(LOOKUP_COUNT);
+        ObjectPermission permission = index.getInheritedPermission(lookupUris[lookup], lookupRoles[lookup]);
+        return permission == null ? 0 : permission.getPermissionMask();
+    }
+
+    protected int inheritedMaskPerAncestor() {
+        int lookup = ThreadLocalRandom.current().nextInt(LOOKUP_COUNT);
+        String uri = lookupUris[lookup];
+        RoleImpl role = lookupRoles[lookup];
+        for (int separator = uri.lastIndexOf('/'); separator >= 0; separator = uri.lastIndexOf('/', separator - 1)) {
+            String folderUri = "repo:" + (separator == 0 ? "/" : uri.substring(0, separator));
+            List<ObjectPermission> permissions = permissionsByUri.get(folderUri);
+            if (permissions != null) {
+                for (ObjectPermission permission : permissions) {
+                    if (role.equals(permission.getPermissionRecipient())) {
+                        return permission.getPermissionMask();
+                    }
+                }
+            }
+            if (separator == 0) {
+                break;
+            }
+        }
+        return 0;
+    }
+
+    private static ObjectPermission permission(String uri, Object recipient, int mask) {
+        ObjectPermission permission = new ObjectPermissionImpl();
+        permission.setURI(uri);
+        permission.setPermissionRecipient(recipient);
+        permission.setPermissionMask(mask);
+        return permission;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(RepositoryPermissionIndexBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,239 @@
+/*
+ * Copyright (C) 2005 - 2020 TIBCO Software Inc. All rights reserved.
+ * http://www.jaspersoft.com.
+ *
+ * Unless you have purchased a commercial license agreement from Jaspersoft,
+ * the following license terms apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.jaspersoft.jasperserver.api.metadata.user.service.impl;
+
+import com.jaspersoft.jasperserver.api.metadata.user.domain.ObjectPermission;
+import com.jaspersoft.jasperserver.api.metadata.user.domain.client.ObjectPermissionImpl;
+import com.jaspersoft.jasperserver.api.metadata.user.domain.client.RoleImpl;
+import com.jaspersoft.jasperserver.api.metadata.user.domain.client.UserImpl;
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.Configuration;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @version $Id$
+ */
+public class RepositoryPermissionIndexTest {
+
+    private RepositoryPermissionIndex index;
+    private RoleImpl roleUser;
+    private RoleImpl roleAdmin;
+    private UserImpl joe;
+
+    @Before
+    public void setUp() {
+        roleUser = role("ROLE_USER");
+        roleAdmin = role("ROLE_ADMINISTRATOR");
+        joe = new UserImpl();
+        joe.setUsername("joe");
+        joe.setTenantId("organization_1");
+
+        index = new RepositoryPermissionIndex();
+        List<ObjectPermission> permissions = new ArrayList<ObjectPermission>();
+        permissions.add(permission("repo:/", roleUser, 2));
+        permissions.add(permission("repo:/", roleAdmin, 1));
+        permissions.add(permission("repo:/public", roleUser, 30));
+        permissions.add(permission("repo:/public/reports", joe, 18));
+        permissions.add(permission("repo:/public/reports/sales", roleUser, 0));
+        permissions.add(permission("attr:/organizations", roleUser, 2));
+        assertTrue(index.load(permissions, index.getModificationCount()));
+    }
+
+    @Test
+    public void load_indexesRepositoryPermissionsOnly() {
+        assertTrue(index.isLoaded());
+        assertEquals(5, index.size());
+        assertFalse(index.supports("attr:/organizations"));
+    }
+
+    @Test
+    public void load_discardedWhenChangedWhileLoading() {
+        RepositoryPermissionIndex fresh = new RepositoryPermissionIndex();
+        long modificationCount = fresh.getModificationCount();
+        fresh.put(permission("repo:/public", roleUser, 2));
+
+        assertFalse(fresh.load(Collections.<ObjectPermission>emptyList(), modificationCount));
+        assertFalse(fresh.isLoaded());
+    }
+
+    @Test
+    public void getPermissions_returnsDirectPermissionsSortedByUri() {
+        List<ObjectPermission> permissions = index.getPermissions(
+                Arrays.asList("repo:/public/reports/sales", "repo:/public/reports", "repo:/public", "repo:/"));
+
+        assertEquals(5, permissions.size());
+        assertEquals("repo:/", permissions.get(0).getURI());
+        assertEquals("repo:/", permissions.get(1).getURI());
+        assertEquals("repo:/public", permissions.get(2).getURI());
+        assertEquals("repo:/public/reports", permissions.get(3).getURI());
+        assertEquals(joe, permissions.get(3).getPermissionRecipient());
+        assertEquals("repo:/public/reports/sales", permissions.get(4).getURI());
+        assertTrue(index.getPermissions(Collections.singletonList("repo:/public/other")).isEmpty());
+    }
+
+    @Test
+    public void getPermissions_returnsCopies() {
+        index.getPermissions(Collections.singletonList("repo:/public")).get(0).setPermissionMask(1);
+
+        assertEquals(30, index.getPermissions(Collections.singletonList("repo:/public")).get(0).getPermissionMask());
+    }
+
+    @Test
+    public void getInheritedPermission_closestAncestorWins() {
+        assertEquals(30, index.getInheritedPermission("/public/reports/sales", roleUser).getPermissionMask());
+        assertEquals(0, index.getInheritedPermission("/public/reports/sales/unit", roleUser).getPermissionMask());
+        assertEquals(2, index.getInheritedPermission("repo:/public", roleUser).getPermissionMask());
+        assertEquals(1, index.getInheritedPermission("/public/reports/sales", roleAdmin).getPermissionMask());
+        assertEquals(18, index.getInheritedPermission("/public/reports/x/y/z", joe).getPermissionMask());
+        assertNull(index.getInheritedPermission("/public/reports", joe));
+        assertNull(index.getInheritedPermission("/", roleUser));
+    }
+
+    @Test
+    public void getInheritedPermission_matchesRecipientByNameAndTenant() {
+        assertNull(index.getInheritedPermission("/public/reports/sales", role("ROLE_USER", "organization_1")));
+
+        UserImpl otherJoe = new UserImpl();
+        otherJoe.setUsername("joe");
+        assertNull(index.getInheritedPermission("/public/reports/sales", otherJoe));
+    }
+
+    @Test
+    public void put_replacesPermissionOfRecipient() {
+        index.put(permission("repo:/public", roleUser, 6));
+        index.put(permission("repo:/public/new/folder", roleAdmin, 30));
+
+        assertEquals(6, index.getInheritedPermission("/public/reports", roleUser).getPermissionMask());
+        assertEquals(30, index.getInheritedPermission("/public/new/folder/report", roleAdmin).getPermissionMask());
+        assertEquals(6, index.size());
+    }
+
+    @Test
+    public void remove_fallsBackToAncestor() {
+        index.remove(permission("repo:/public/reports/sales", roleUser, 0));
+
+        assertEquals(30, index.getInheritedPermission("/public/reports/sales/unit", roleUser).getPermissionMask());
+        assertEquals(4, index.size());
+    }
+
+    @Test
+    public void move_movesPermissionsOfUri() {
+        index.move("repo:/public/reports", "repo:/archive/reports");
+
+        assertNull(index.getInheritedPermission("/public/reports/x", joe));
+        ObjectPermission moved = index.getInheritedPermission("/archive/reports/x", joe);
+        assertEquals(18, moved.getPermissionMask());
+        assertEquals("repo:/archive/reports", moved.getURI());
+        // permissions of contained objects are moved separately
+        assertEquals(0, index.getInheritedPermission("/public/reports/sales/unit", roleUser).getPermissionMask());
+        assertEquals(5, index.size());
+    }
+
+    @Test
+    public void invalidate_requiresReload() {
+        index.invalidate();
+
+        assertFalse(index.isLoaded());
+        assertNull(index.getInheritedPermission("/public/reports", roleUser));
+        assertNull(index.getPermissions(Collections.singletonList("repo:/public")));
+
+        index.put(permission("repo:/public", roleUser, 2));
+        assertFalse(index.isLoaded());
+    }
+
+    @Test
+    public void aclCacheRemoval_fromOtherNode_invalidatesIndex() {
+        CacheManager cacheManager = new CacheManager(new Configuration().name("repositoryPermissionIndexTest"));
+        try {
+            final Cache aclCache = aclCache(cacheManager);
+
+            // a replicated removal is applied to the cache like a local one, outside of a permission change
+            aclCache.remove("repo:/public");
+
+            assertFalse(index.isLoaded());
+        } finally {
+            cacheManager.shutdown();
+        }
+    }
+
+    @Test
+    public void aclCacheRemoval_byLocalPermissionChange_keepsIndex() {
+        CacheManager cacheManager = new CacheManager(new Configuration().name("repositoryPermissionIndexTest"));
+        try {
+            final Cache aclCache = aclCache(cacheManager);
+
+            index.evictLocally(new Runnable() {
+                @Override
+                public void run() {
+                    aclCache.remove("repo:/public");
+                }
+            });
+
+            assertTrue(index.isLoaded());
+            aclCache.removeAll();
+            assertFalse(index.isLoaded());
+        } finally {
+            cacheManager.shutdown();
+        }
+    }
+
+    private Cache aclCache(CacheManager cacheManager) {
+        Cache aclCache = new Cache(new CacheConfiguration("aclCache", 100));
+        cacheManager.addCache(aclCache);
+        aclCache.put(new Element("repo:/public", "acl"));
+        index.setAclCache(aclCache);
+        index.afterPropertiesSet();
+        return aclCache;
+    }
+
+    private static RoleImpl role(String name) {
+        return role(name, null);
+    }
+
+    private static RoleImpl role(String name, String tenantId) {
+        RoleImpl role = new RoleImpl();
+        role.setRoleName(name);
+        role.setTenantId(tenantId);
+        return role;
+    }
+
+    private static ObjectPermission permission(String uri, Object recipient, int mask) {
+        ObjectPermission permission = new ObjectPermissionImpl();
+        permission.setURI(uri);
+        permission.setPermissionRecipient(recipient);
+        permission.setPermissionMask(mask);
+        return permission;
+    }
+}
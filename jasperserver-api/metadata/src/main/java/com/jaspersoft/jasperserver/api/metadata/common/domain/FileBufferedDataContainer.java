@@ -71,6 +71,14 @@ public class FileBufferedDataContainer implements DataContainer {
 		}
 	}
 
+	/**
+	 * Writes the contents of the container to a stream, transferring the part
+	 * that was buffered in a temporary file through its file channel.
+	 */
+	public void writeData(OutputStream out) throws IOException {
+		data.writeData(out);
+	}
+
 	public int dataSize() {
 		return data.size();
 	}
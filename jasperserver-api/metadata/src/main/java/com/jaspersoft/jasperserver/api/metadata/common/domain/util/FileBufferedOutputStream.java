@@ -44,6 +44,9 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.WeakHashMap;
 
 import org.apache.commons.collections.map.ReferenceMap;
@@ -206,10 +209,14 @@ public class FileBufferedOutputStream extends OutputStream
 			FileInputStream fileInput = new FileInputStream(file);
 			boolean inputClosed = false;
 			try {
-				byte[] buffer = new byte[inputBufferLength];
-				int read;
-				while((read = fileInput.read(buffer)) > 0) {
-					out.write(buffer, 0, read);
+				// let the channel transfer the file contents without copying them through a heap buffer,
+				// this is a direct file to file/socket transfer when the target stream allows it
+				FileChannel fileChannel = fileInput.getChannel();
+				WritableByteChannel outChannel = Channels.newChannel(out);
+				long position = 0;
+				long fileSize = fileChannel.size();
+				while (position < fileSize) {
+					position += fileChannel.transferTo(position, fileSize - position, outChannel);
 				}
 				fileInput.close();
 				inputClosed = true;
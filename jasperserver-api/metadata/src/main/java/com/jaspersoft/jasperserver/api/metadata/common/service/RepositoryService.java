@@ -32,6 +32,7 @@ import com.jaspersoft.jasperserver.api.metadata.common.domain.Resource;
 import com.jaspersoft.jasperserver.api.metadata.common.domain.ResourceLookup;
 import com.jaspersoft.jasperserver.api.metadata.view.domain.FilterCriteria;
 import com.jaspersoft.jasperserver.api.search.SearchCriteriaFactory;
+import com.jaspersoft.jasperserver.api.search.SearchKey;
 import com.jaspersoft.jasperserver.api.search.SearchFilter;
 import com.jaspersoft.jasperserver.api.search.SearchSorter;
 import com.jaspersoft.jasperserver.api.search.TransformerFactory;
@@ -741,6 +742,27 @@ public interface RepositoryService
     int getResourcesCount(ExecutionContext context, SearchCriteriaFactory searchCriteriaFactory,
             List<SearchFilter> filters, SearchSorter sorter, TransformerFactory transformerFactory);
 
+    /**
+     * Returns the keys of the next search results, with permissions ignored.
+     *
+     * @param sorter a {@link com.jaspersoft.jasperserver.api.search.SeekableSearchSorter}
+     * @param after key of the last result already seen, <code>null</code> to start from the first result
+     * @param max maximum number of keys to return
+     * @return keys in the sorter order
+     * @since 7.8.0
+     */
+    List<SearchKey> getResourceKeys(ExecutionContext context, SearchCriteriaFactory searchCriteriaFactory,
+            List<SearchFilter> filters, SearchSorter sorter, SearchKey after, int max);
+
+    /**
+     * Returns the search results identified by the keys, in the order of the keys.
+     *
+     * @param keys keys returned by {@link #getResourceKeys}
+     * @since 7.8.0
+     */
+    List<ResourceLookup> getResourcesByKeys(ExecutionContext context, SearchCriteriaFactory searchCriteriaFactory,
+            List<SearchKey> keys);
+
     //EGS: sumtotal
     List<Object[]> getResourcesCountList(ExecutionContext context, SearchCriteriaFactory searchCriteriaFactory,
             List<SearchFilter> filters, SearchSorter sorter, TransformerFactory transformerFactory);
@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2005 - 2020 TIBCO Software Inc. All rights reserved.
+ * http://www.jaspersoft.com.
+ *
+ * Unless you have purchased a commercial license agreement from Jaspersoft,
+ * the following license terms apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jaspersoft.jasperserver.api.metadata.jdbc;
+
+import java.util.Locale;
+
+/**
+ * Pages rows with the standard SQL:2008 <code>OFFSET ... ROWS FETCH NEXT ... ROWS ONLY</code> clause.
+ * The paged query selects from the original query as from a derived table, so the
+ * database is expected to keep the order of the derived table rows, as the supported ones do.
+ *
+ * @version $Id$
+ */
+public class GenericSqlPagingStrategy implements SqlPagingStrategy {
+
+    public static final char ESCAPE_CHAR = '!';
+
+    protected static final String TABLE_ALIAS = "ic_values";
+
+    private String textType = "VARCHAR(4000)";
+
+    public String getTextType() {
+        return textType;
+    }
+
+    /**
+     * @param textType the type the filter columns are cast to before matching the filter pattern
+     */
+    public void setTextType(String textType) {
+        this.textType = textType;
+    }
+
+    @Override
+    public String getPagedQuery(String sql, String[] filterColumns, String filterPattern, String offsetExpression, String limitExpression) {
+        StringBuilder query = new StringBuilder("SELECT * FROM (");
+        query.append(trimQuery(sql)).append(") ").append(TABLE_ALIAS);
+        appendFilter(query, filterColumns, filterPattern);
+        appendPaging(query, offsetExpression, limitExpression);
+        return query.toString();
+    }
+
+    @Override
+    public String getCountQuery(String sql, String[] filterColumns, String filterPattern, String countColumn) {
+        StringBuilder query = new StringBuilder("SELECT COUNT(*) ");
+        query.append(countColumn).append(" FROM (").append(trimQuery(sql)).append(") ").append(TABLE_ALIAS);
+        appendFilter(query, filterColumns, filterPattern);
+        return query.toString();
+    }
+
+    @Override
+    public String getContainsPattern(String text) {
+        StringBuilder pattern = new StringBuilder(text.length() + 2).append('%');
+        for (char c : text.toLowerCase(Locale.ROOT).toCharArray()) {
+            if (c == '%' || c == '_' || c == ESCAPE_CHAR) {
+                pattern.append(ESCAPE_CHAR);
+            }
+            pattern.append(c);
+        }
+        return pattern.append('%').toString();
+    }
+
+    protected void appendFilter(StringBuilder query, String[] filterColumns, String filterPattern) {
+        if (filterPattern == null || filterColumns == null || filterColumns.length == 0) {
+            return;
+        }
+        query.append(" WHERE ");
+        for (int i = 0; i < filterColumns.length; i++) {
+            if (i > 0) {
+                query.append(" OR ");
+            }
+            query.append("LOWER(").append(getTextExpression(TABLE_ALIAS + "." + filterColumns[i])).append(") LIKE ")
+                    .append(filterPattern).append(" ESCAPE '").append(ESCAPE_CHAR).append("'");
+        }
+    }
+
+    protected String getTextExpression(String column) {
+        return "CAST(" + column + " AS " + textType + ")";
+    }
+
+    protected void appendPaging(StringBuilder query, String offsetExpression, String limitExpression) {
+        query.append(" OFFSET ").append(offsetExpression).append(" ROWS FETCH NEXT ")
+                .append(limitExpression).append(" ROWS ONLY");
+    }
+
+    protected String trimQuery(String sql) {
+        String trimmed = sql.trim();
+        while (trimmed.endsWith(";")) {
+            trimmed = trimmed.substring(0, trimmed.length() - 1).trim();
+        }
+        return trimmed;
+    }
+}
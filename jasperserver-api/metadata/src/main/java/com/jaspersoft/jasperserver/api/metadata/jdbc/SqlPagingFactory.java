@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2005 - 2020 TIBCO Software Inc. All rights reserved.
+ * http://www.jaspersoft.com.
+ *
+ * Unless you have purchased a commercial license agreement from Jaspersoft,
+ * the following license terms apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jaspersoft.jasperserver.api.metadata.jdbc;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Finds the paging strategy for a database by its JDBC product name.
+ *
+ * @version $Id$
+ */
+public class SqlPagingFactory {
+    private Map<String, SqlPagingStrategy> dbTypes = Collections.emptyMap();
+
+    public void setDbTypes(Map<String, SqlPagingStrategy> dbTypes) {
+        this.dbTypes = dbTypes;
+    }
+
+    /**
+     * @return the paging strategy, <code>null</code> if paging isn't supported for the database
+     */
+    public SqlPagingStrategy getSqlPagingStrategy(String databaseProductName) {
+        return databaseProductName == null ? null : dbTypes.get(databaseProductName);
+    }
+}
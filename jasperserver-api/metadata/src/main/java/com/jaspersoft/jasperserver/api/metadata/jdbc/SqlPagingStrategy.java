@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2005 - 2020 TIBCO Software Inc. All rights reserved.
+ * http://www.jaspersoft.com.
+ *
+ * Unless you have purchased a commercial license agreement from Jaspersoft,
+ * the following license terms apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jaspersoft.jasperserver.api.metadata.jdbc;
+
+/**
+ * Wraps a SQL query into a query that filters and pages its rows on the database side.
+ * Filter and paging values are given as expressions, e.g. query parameter placeholders.
+ *
+ * @version $Id$
+ */
+public interface SqlPagingStrategy {
+
+    /**
+     * @param sql the query to wrap
+     * @param filterColumns result columns of the query that are matched by the filter
+     * @param filterPattern expression of the pattern created by {@link #getContainsPattern(String)},
+     *                      <code>null</code> if rows are not filtered
+     * @param offsetExpression expression of the number of rows to skip
+     * @param limitExpression expression of the maximum number of rows to return
+     * @return the query returning a single page of rows
+     */
+    String getPagedQuery(String sql, String[] filterColumns, String filterPattern, String offsetExpression, String limitExpression);
+
+    /**
+     * @return the query returning the number of rows matching the filter in a single column
+     * named <code>countColumn</code>
+     */
+    String getCountQuery(String sql, String[] filterColumns, String filterPattern, String countColumn);
+
+    /**
+     * @return the pattern which matches column values containing the text, ignoring case
+     */
+    String getContainsPattern(String text);
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2005 - 2020 TIBCO Software Inc. All rights reserved.
+ * http://www.jaspersoft.com.
+ *
+ * Unless you have purchased a commercial license agreement from Jaspersoft,
+ * the following license terms apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.jaspersoft.jasperserver.api.search;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Position of a search result in the order of a {@link SeekableSearchSorter}: values of the key properties and the id.
+ *
+ * @version $Id$
+ */
+public class SearchKey implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final Object[] values;
+    private final long id;
+
+    public SearchKey(Object[] values, long id) {
+        this.values = values == null ? new Object[0] : values.clone();
+        this.id = id;
+    }
+
+    public Object[] getValues() {
+        return values.clone();
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        SearchKey searchKey = (SearchKey) o;
+        return id == searchKey.id && Arrays.equals(values, searchKey.values);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(values) + (int) (id ^ (id >>> 32));
+    }
+
+    @Override
+    public String toString() {
+        return "SearchKey" + Arrays.toString(values) + "#" + id;
+    }
+}
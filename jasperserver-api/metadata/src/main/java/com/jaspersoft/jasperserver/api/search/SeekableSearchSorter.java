@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2005 - 2020 TIBCO Software Inc. All rights reserved.
+ * http://www.jaspersoft.com.
+ *
+ * Unless you have purchased a commercial license agreement from Jaspersoft,
+ * the following license terms apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.jaspersoft.jasperserver.api.search;
+
+import java.util.List;
+
+/**
+ * Sorter whose order is a unique key of the results: the key properties, all ascending or all descending,
+ * followed by ascending id. Results of such a sorter can be paged by seeking past the last key of the previous page
+ * instead of skipping an offset.
+ *
+ * @version $Id$
+ */
+public interface SeekableSearchSorter {
+
+    /**
+     * @param criteria search criteria, used to resolve aliases of joined properties
+     * @return not nullable properties the results are ordered by before the id
+     */
+    List<String> getKeyProperties(SearchCriteria criteria);
+
+    boolean isDescending();
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2005 - 2020 TIBCO Software Inc. All rights reserved.
+ * http://www.jaspersoft.com.
+ *
+ * Unless you have purchased a commercial license agreement from Jaspersoft,
+ * the following license terms apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jaspersoft.jasperserver.api.metadata.jdbc;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @version $Id$
+ */
+public class GenericSqlPagingStrategyTest {
+
+    @Test
+    public void getPagedQuery_withFilter_offsetFetchClause() {
+        GenericSqlPagingStrategy strategy = new GenericSqlPagingStrategy();
+
+        String query = strategy.getPagedQuery("select id, name from customer order by name; ", new String[]{"name", "city"},
+                "$P{criteria}", "$P{offset}", "$P{limit}");
+
+        assertEquals("SELECT * FROM (select id, name from customer order by name) ic_values"
+                + " WHERE LOWER(CAST(ic_values.name AS VARCHAR(4000))) LIKE $P{criteria} ESCAPE '!'"
+                + " OR LOWER(CAST(ic_values.city AS VARCHAR(4000))) LIKE $P{criteria} ESCAPE '!'"
+                + " OFFSET $P{offset} ROWS FETCH NEXT $P{limit} ROWS ONLY", query);
+    }
+
+    @Test
+    public void getPagedQuery_limitOffset_withoutFilter() {
+        LimitOffsetSqlPagingStrategy strategy = new LimitOffsetSqlPagingStrategy();
+        strategy.setTextType("VARCHAR");
+
+        String query = strategy.getPagedQuery("select id from customer", new String[]{"id"}, null, "$P{offset}", "$P{limit}");
+
+        assertEquals("SELECT * FROM (select id from customer) ic_values LIMIT $P{limit} OFFSET $P{offset}", query);
+    }
+
+    @Test
+    public void getCountQuery_withFilter() {
+        LimitOffsetSqlPagingStrategy strategy = new LimitOffsetSqlPagingStrategy();
+        strategy.setTextType("CHAR");
+
+        String query = strategy.getCountQuery("select id from customer", new String[]{"id"}, "$P{criteria}", "total");
+
+        assertEquals("SELECT COUNT(*) total FROM (select id from customer) ic_values"
+                + " WHERE LOWER(CAST(ic_values.id AS CHAR)) LIKE $P{criteria} ESCAPE '!'", query);
+    }
+
+    @Test
+    public void getContainsPattern_escapesWildcards() {
+        assertEquals("%50!% off!_a!!b%", new GenericSqlPagingStrategy().getContainsPattern("50% OFF_a!b"));
+    }
+}
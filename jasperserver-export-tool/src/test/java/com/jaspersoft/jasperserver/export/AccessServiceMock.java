@@ -40,6 +40,12 @@ public class AccessServiceMock implements AccessService {
         //To change body of implemented methods use File | Settings | File Templates.
     }
 
+    public void rebuildPopularity() {
+    }
+
+    public void writeEvents(List<LoggableEvent> loggableEvents) {
+    }
+
     public List<AccessEvent> getAllEvents(int firstResult, int maxResults) {
         return null;  //To change body of implemented methods use File | Settings | File Templates.
     }
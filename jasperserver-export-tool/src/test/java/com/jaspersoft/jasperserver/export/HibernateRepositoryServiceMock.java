@@ -36,6 +36,7 @@ import com.jaspersoft.jasperserver.api.metadata.common.service.impl.hibernate.pe
 import com.jaspersoft.jasperserver.api.metadata.view.domain.FilterCriteria;
 import com.jaspersoft.jasperserver.api.search.SearchCriteriaFactory;
 import com.jaspersoft.jasperserver.api.search.SearchFilter;
+import com.jaspersoft.jasperserver.api.search.SearchKey;
 import com.jaspersoft.jasperserver.api.search.SearchSorter;
 import com.jaspersoft.jasperserver.api.search.TransformerFactory;
 
@@ -303,6 +304,16 @@ public class HibernateRepositoryServiceMock implements HibernateRepositoryServic
         return 0; 
     }
 
+    @Override
+    public List<SearchKey> getResourceKeys(ExecutionContext context, SearchCriteriaFactory searchCriteriaFactory, List<SearchFilter> filters, SearchSorter sorter, SearchKey after, int max) {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public List<ResourceLookup> getResourcesByKeys(ExecutionContext context, SearchCriteriaFactory searchCriteriaFactory, List<SearchKey> keys) {
+        return Collections.emptyList();
+    }
+
     @Override
     public List getResourcesCountList(ExecutionContext context, SearchCriteriaFactory searchCriteriaFactory, List<SearchFilter> filters, SearchSorter sorter, TransformerFactory transformerFactory) {
         return Collections.EMPTY_LIST;
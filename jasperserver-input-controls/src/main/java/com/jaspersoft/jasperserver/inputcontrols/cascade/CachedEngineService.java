@@ -30,18 +30,27 @@ import com.jaspersoft.jasperserver.api.metadata.common.domain.InputControl;
 import com.jaspersoft.jasperserver.api.metadata.common.domain.InputControlsContainer;
 import com.jaspersoft.jasperserver.api.metadata.common.domain.Query;
 import com.jaspersoft.jasperserver.api.metadata.common.domain.ResourceReference;
+import com.jaspersoft.jasperserver.api.metadata.jasperreports.domain.JdbcReportDataSource;
+import com.jaspersoft.jasperserver.api.metadata.jasperreports.domain.JndiJdbcReportDataSource;
 import com.jaspersoft.jasperserver.api.metadata.jasperreports.domain.ReportDataSource;
 import com.jaspersoft.jasperserver.api.metadata.jasperreports.domain.ReportUnit;
 import com.jaspersoft.jasperserver.api.metadata.jasperreports.service.ReportDataSourceService;
+import com.jaspersoft.jasperserver.api.metadata.user.domain.User;
+import com.jaspersoft.jasperserver.api.metadata.user.service.ProfileAttributesResolver;
 import com.jaspersoft.jasperserver.inputcontrols.cascade.cache.SessionCache;
 import com.jaspersoft.jasperserver.inputcontrols.cascade.token.FilterResolver;
 import com.jaspersoft.jasperserver.inputcontrols.cascade.cache.ControlLogicCacheManager;
+import net.sf.jasperreports.engine.JRParameter;
 import org.apache.commons.collections.OrderedMap;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.Resource;
+import java.sql.Connection;
+import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -75,9 +84,15 @@ public class CachedEngineService {
     @javax.annotation.Resource(name = "${bean.reportLoadingService}")
     private ReportLoadingService reportLoadingService;
 
+    @Resource
+    private ProfileAttributesResolver profileAttributesResolver;
+
     @Resource(name = "inputControlsCachingEnabled")
     private boolean doCache;
 
+    @Resource(name = "inputControlsSharedQueryCachingEnabled")
+    private boolean sharedQueryCaching;
+
     public ReportInputControlsInformation getReportInputControlsInformation(ExecutionContext exContext, InputControlsContainer container, Map<String, Object> initialParameters) {
         final SessionCache sessionCache = controlLogicCacheManager.getSessionCache();
         ReportInputControlsInformation infos = sessionCache.getCacheInfo(ReportInputControlsInformation.class, container.getURI());
@@ -118,6 +133,33 @@ public class CachedEngineService {
         return copy;
     }
 
+    /**
+     * @return JDBC product name of the data source database, empty string if the data source has no JDBC connection
+     */
+    public String getDatabaseProductName(ReportDataSource dataSource) {
+        final SessionCache sessionCache = controlLogicCacheManager.getSessionCache();
+        // Cache database product names as String class
+        String productName = sessionCache.getCacheInfo(String.class, dataSource.getURIString());
+        if (!doCache || productName == null) {
+            productName = "";
+            ReportDataSourceService dataSourceService = engineService.createDataSourceService(dataSource);
+            try {
+                Map parameters = new HashMap();
+                dataSourceService.setReportParameterValues(parameters);
+                Object connection = parameters.get(JRParameter.REPORT_CONNECTION);
+                if (connection instanceof Connection) {
+                    productName = ((Connection) connection).getMetaData().getDatabaseProductName();
+                }
+            } catch (SQLException e) {
+                log.debug("Cannot read database product name of " + dataSource.getURIString(), e);
+            } finally {
+                dataSourceService.closeConnection();
+            }
+            sessionCache.setCacheInfo(String.class, dataSource.getURIString(), productName);
+        }
+        return productName;
+    }
+
     public ReportInputControlsInformation getReportInputControlsInformation(ReportUnit reportUnit) {
         return getReportInputControlsInformation(ExecutionContextImpl.getRuntimeExecutionContext(), reportUnit, null);
     }
@@ -127,14 +169,23 @@ public class CachedEngineService {
             throws CascadeResourceNotFoundException {
 
         final Query query = cachedRepositoryService.getResource(Query.class, queryReference);
-        final String cacheKey = String.valueOf(filterResolver.getCacheKey(query.getSql(), parameterValues, keyColumn, resultColumns));
+        final Object queryCacheKey = filterResolver.getCacheKey(query.getSql(), parameterValues, keyColumn, resultColumns);
+        final String cacheKey = String.valueOf(queryCacheKey);
         final SessionCache sessionCache = controlLogicCacheManager.getSessionCache();
         OrderedMap results = sessionCache.getCacheInfo(OrderedMap.class, cacheKey);
 
         boolean refresh = parameterValues != null && parameterValues.containsKey(EhcacheEngineService.IC_REFRESH_KEY);
         if (!doCache || results == null || refresh) {
+            Map<String, Object> queryParameterValues = parameterValues;
+            if (doCache && sharedQueryCaching && queryCacheKey != null) {
+                // the shared cache also honors the refresh flag and runs concurrent misses for a key only once
+                queryParameterValues = parameterValues == null
+                        ? new HashMap<String, Object>() : new HashMap<String, Object>(parameterValues);
+                queryParameterValues.put(EhcacheEngineService.IC_CACHE_KEY,
+                        getSharedCacheKey(query, defaultDataSourceReference, cacheKey));
+            }
             results = ehcacheEngineService.executeQuery(context != null ? context : ExecutionContextImpl.getRuntimeExecutionContext(),
-                    queryReference, keyColumn, resultColumns, defaultDataSourceReference, parameterValues, parameterTypes, false);
+                    queryReference, keyColumn, resultColumns, defaultDataSourceReference, queryParameterValues, parameterTypes, false);
             sessionCache.setCacheInfo(OrderedMap.class, cacheKey, results);
             log.debug("Database query \"" + cacheKey + "\"");
         } else {
@@ -143,6 +194,53 @@ public class CachedEngineService {
         return results;
     }
 
+    /**
+     * Builds the key of the query results in the cache shared by all sessions.
+     * Besides the query and parameter values, the key contains the tenant, the data source,
+     * the query text with resolved profile attributes, and the user for data sources that
+     * can return different data for different users.
+     */
+    protected String getSharedCacheKey(Query query, ResourceReference defaultDataSourceReference, String cacheKey)
+            throws CascadeResourceNotFoundException {
+        String tenantId = null;
+        String username = null;
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication != null) {
+            Object principal = authentication.getPrincipal();
+            if (principal instanceof User) {
+                tenantId = ((User) principal).getTenantId();
+                username = ((User) principal).getUsername();
+            } else {
+                username = authentication.getName();
+            }
+        }
+
+        ResourceReference dataSourceReference = query.getDataSource() != null ? query.getDataSource() : defaultDataSourceReference;
+        ReportDataSource dataSource = cachedRepositoryService.getResource(ReportDataSource.class, dataSourceReference);
+
+        StringBuilder key = new StringBuilder();
+        key.append("tenant=").append(tenantId);
+        key.append("; dataSource=").append(dataSource == null ? null : dataSource.getURIString());
+        if (!isSharedAcrossUsers(dataSource)) {
+            key.append("; user=").append(username);
+        }
+        String sql = query.getSql();
+        if (sql != null && profileAttributesResolver.containsAttribute(sql)) {
+            key.append("; ").append(profileAttributesResolver.merge(sql, "query"));
+        }
+        key.append("; ").append(cacheKey);
+        return key.toString();
+    }
+
+    /**
+     * Plain JDBC data sources return the same data for all the users of a tenant,
+     * other data source types can apply user specific security or connection attributes.
+     */
+    protected boolean isSharedAcrossUsers(ReportDataSource dataSource) {
+        return (dataSource instanceof JdbcReportDataSource || dataSource instanceof JndiJdbcReportDataSource)
+                && !profileAttributesResolver.isParametrizedResource(dataSource);
+    }
+
     public OrderedMap executeQuery(ExecutionContext context, ResourceReference queryReference, String keyColumn, String[] resultColumns,
 			ResourceReference defaultDataSourceReference, Map<String, Object> parameterValues, /* Temporary for test */String controlName)
             throws CascadeResourceNotFoundException {
@@ -174,6 +272,18 @@ public class CachedEngineService {
         this.doCache = doCache;
     }
 
+    public boolean isSharedQueryCaching() {
+        return sharedQueryCaching;
+    }
+
+    public void setSharedQueryCaching(boolean sharedQueryCaching) {
+        this.sharedQueryCaching = sharedQueryCaching;
+    }
+
+    public void setProfileAttributesResolver(ProfileAttributesResolver profileAttributesResolver) {
+        this.profileAttributesResolver = profileAttributesResolver;
+    }
+
     public void setCachedRepositoryService(CachedRepositoryService cachedRepositoryService) {
         this.cachedRepositoryService = cachedRepositoryService;
     }
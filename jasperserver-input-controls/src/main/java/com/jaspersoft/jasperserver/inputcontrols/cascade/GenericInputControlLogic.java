@@ -22,6 +22,7 @@ package com.jaspersoft.jasperserver.inputcontrols.cascade;
 
 import com.google.common.collect.FluentIterable;
 import com.jaspersoft.jasperserver.api.JSException;
+import com.jaspersoft.jasperserver.api.JSExceptionWrapper;
 import com.jaspersoft.jasperserver.api.common.domain.ExecutionContext;
 import com.jaspersoft.jasperserver.api.common.domain.ValidationErrors;
 import com.jaspersoft.jasperserver.api.common.domain.impl.ExecutionContextImpl;
@@ -39,6 +40,9 @@ import com.jaspersoft.jasperserver.api.metadata.common.domain.client.InputContro
 import com.jaspersoft.jasperserver.api.metadata.common.domain.client.ListOfValuesImpl;
 import com.jaspersoft.jasperserver.api.metadata.common.domain.client.ListOfValuesItemImpl;
 import com.jaspersoft.jasperserver.api.metadata.common.domain.util.RefSets;
+import com.jaspersoft.jasperserver.api.logging.audit.context.RequestType;
+import com.jaspersoft.jasperserver.api.logging.audit.context.RequestTypeListener;
+import com.jaspersoft.jasperserver.api.logging.context.LoggingContextProvider;
 import com.jaspersoft.jasperserver.api.metadata.user.service.ObjectPermissionService;
 import com.jaspersoft.jasperserver.api.security.internalAuth.InternalAuthenticationTokenImpl;
 import com.jaspersoft.jasperserver.dto.reports.inputcontrols.InputControlState;
@@ -57,10 +61,18 @@ import org.springframework.context.i18n.LocaleContextHolder;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContext;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
 
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
 
 import static com.jaspersoft.jasperserver.api.metadata.user.service.ProfileAttributesResolver.SKIP_PROFILE_ATTRIBUTES_RESOLVING;
 import static com.jaspersoft.jasperserver.inputcontrols.cascade.handlers.InputControlHandler.WITH_LABEL;
@@ -96,6 +108,12 @@ public class GenericInputControlLogic<T extends InputControlsContainer> implemen
     protected boolean allowExtraReportParameters = false;
     @javax.annotation.Resource
     protected ValueFormattingUtils valueFormattingUtils;
+    @javax.annotation.Resource(name = "inputControlsExecutor")
+    protected Executor inputControlsExecutor;
+    @javax.annotation.Resource(name = "concreteLoggingContextProvider")
+    protected LoggingContextProvider loggingContextProvider;
+    @javax.annotation.Resource(name = "concreteRequestTypeListener")
+    protected RequestTypeListener requestTypeListener;
 
     /**
      * This is the MAIN public interface method for getting controls structure in JasperServer CE
@@ -225,17 +243,200 @@ public class GenericInputControlLogic<T extends InputControlsContainer> implemen
             Map<String, Class<?>> parameterTypes, ReportInputControlsInformation infos) throws CascadeResourceNotFoundException {
 
         List<InputControlState> values = new ArrayList<InputControlState>();
+        if (inputControlsExecutor == null || controls.size() < 2) {
+            for (InputControl inputControl : controls) {
+                InputControlHandler icHandler = getHandlerForInputControl(inputControl);
+                ReportInputControlInformation info = infos.getInputControlInformation(inputControl.getName());
+                final InputControlState value = icHandler.getState(inputControl, dataSource, executionParameters, parameterTypes, info);
+                if (value != null) {
+                    values.add(value);
+                }
+            }
+            return values;
+        }
+
+        // controls are evaluated in waves, a wave contains the controls whose masters are already evaluated
+        Map<String, Set<String>> masterDependencies = new HashMap<String, Set<String>>();
+        Set<String> controlNames = new HashSet<String>();
         for (InputControl inputControl : controls) {
-            InputControlHandler icHandler = getHandlerForInputControl(inputControl);
-            ReportInputControlInformation info = infos.getInputControlInformation(inputControl.getName());
-            final InputControlState value = icHandler.getState(inputControl, dataSource, executionParameters, parameterTypes, info);
-            if (value != null) {
-                values.add(value);
+            controlNames.add(inputControl.getName());
+        }
+        for (InputControl inputControl : controls) {
+            masterDependencies.put(inputControl.getName(), getCheckedMastedDependenciesForInputControl(inputControl, controlNames, dataSource));
+        }
+
+        InputControlState[] states = new InputControlState[controls.size()];
+        List<Integer> remaining = new ArrayList<Integer>(controls.size());
+        for (int i = 0; i < controls.size(); i++) {
+            remaining.add(i);
+        }
+        Set<String> evaluated = new HashSet<String>();
+        while (!remaining.isEmpty()) {
+            List<Integer> wave = new ArrayList<Integer>();
+            for (Integer index : remaining) {
+                if (evaluated.containsAll(masterDependencies.get(controls.get(index).getName()))) {
+                    wave.add(index);
+                }
+            }
+            if (wave.isEmpty()) {
+                // cyclic dependencies, follow the cascading order
+                wave.add(remaining.get(0));
+            }
+
+            getStatesConcurrently(controls, wave, states, dataSource, executionParameters, parameterTypes, infos);
+
+            remaining.removeAll(wave);
+            for (Integer index : wave) {
+                evaluated.add(controls.get(index).getName());
+            }
+        }
+
+        for (InputControlState state : states) {
+            if (state != null) {
+                values.add(state);
             }
         }
         return values;
     }
 
+    /**
+     * Evaluates the states of independent controls. Each control gets its own copy of the execution parameters,
+     * the changes of the copies are merged back in the cascading order, so the result doesn't depend on timing.
+     */
+    protected void getStatesConcurrently(List<InputControl> controls, List<Integer> indexes, final InputControlState[] states,
+            final ResourceReference dataSource, Map<String, Object> executionParameters,
+            final Map<String, Class<?>> parameterTypes, ReportInputControlsInformation infos) throws CascadeResourceNotFoundException {
+        if (indexes.size() == 1) {
+            int index = indexes.get(0);
+            InputControl inputControl = controls.get(index);
+            states[index] = getHandlerForInputControl(inputControl).getState(inputControl, dataSource, executionParameters,
+                    parameterTypes, infos.getInputControlInformation(inputControl.getName()));
+            return;
+        }
+
+        Map<String, Object> initialParameters = new HashMap<String, Object>(executionParameters);
+        List<Map<String, Object>> controlParameters = new ArrayList<Map<String, Object>>(indexes.size());
+        List<FutureTask<Object>> tasks = new ArrayList<FutureTask<Object>>(indexes.size());
+        for (final int index : indexes) {
+            final InputControl inputControl = controls.get(index);
+            final InputControlHandler icHandler = getHandlerForInputControl(inputControl);
+            final ReportInputControlInformation info = infos.getInputControlInformation(inputControl.getName());
+            final Map<String, Object> parameters = new LinkedHashMap<String, Object>(executionParameters);
+            controlParameters.add(parameters);
+            tasks.add(new FutureTask<Object>(createInputControlWorker(new Callable<Object>() {
+                @Override
+                public Object call() throws Exception {
+                    states[index] = icHandler.getState(inputControl, dataSource, parameters, parameterTypes, info);
+                    return null;
+                }
+            })));
+        }
+
+        // the first control is evaluated by the request thread, as are the controls rejected by the saturated executor
+        List<FutureTask<Object>> notSubmitted = new ArrayList<FutureTask<Object>>();
+        notSubmitted.add(tasks.get(0));
+        for (FutureTask<Object> task : tasks.subList(1, tasks.size())) {
+            try {
+                inputControlsExecutor.execute(task);
+            } catch (RejectedExecutionException e) {
+                notSubmitted.add(task);
+            }
+        }
+        for (FutureTask<Object> task : notSubmitted) {
+            task.run();
+        }
+
+        Throwable failure = null;
+        boolean interrupted = false;
+        for (FutureTask<Object> task : tasks) {
+            while (true) {
+                try {
+                    task.get();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = e.getCause();
+                    }
+                    break;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (failure instanceof CascadeResourceNotFoundException) {
+            throw (CascadeResourceNotFoundException) failure;
+        }
+        if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        }
+        if (failure instanceof Error) {
+            throw (Error) failure;
+        }
+        if (failure != null) {
+            throw new JSExceptionWrapper((Exception) failure);
+        }
+
+        for (Map<String, Object> parameters : controlParameters) {
+            for (Map.Entry<String, Object> entry : parameters.entrySet()) {
+                if (!initialParameters.containsKey(entry.getKey()) || initialParameters.get(entry.getKey()) != entry.getValue()) {
+                    executionParameters.put(entry.getKey(), entry.getValue());
+                }
+            }
+            for (String name : initialParameters.keySet()) {
+                if (!parameters.containsKey(name)) {
+                    executionParameters.remove(name);
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs the worker with the request, security, locale, time zone and request type of the calling thread.
+     * Events logged by the worker are flushed when it completes, as done by LoggableExecutorService.
+     * The context is left alone when the worker runs on the calling thread.
+     */
+    protected <V> Callable<V> createInputControlWorker(final Callable<V> worker) {
+        final Thread callingThread = Thread.currentThread();
+        final RequestAttributes requestAttributes = RequestContextHolder.getRequestAttributes();
+        final Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        final Locale locale = LocaleContextHolder.getLocale();
+        final TimeZone timeZone = TimeZoneContextHolder.getTimeZone();
+        final RequestType requestType = requestTypeListener != null ? requestTypeListener.getRequestType() : null;
+        return new Callable<V>() {
+            @Override
+            public V call() throws Exception {
+                if (Thread.currentThread() == callingThread) {
+                    return worker.call();
+                }
+                if (requestTypeListener != null) {
+                    requestTypeListener.setRequestType(requestType);
+                }
+                RequestAttributes previousRequestAttributes = RequestContextHolder.getRequestAttributes();
+                SecurityContext previousSecurityContext = SecurityContextHolder.getContext();
+                SecurityContext securityContext = SecurityContextHolder.createEmptyContext();
+                securityContext.setAuthentication(authentication);
+                SecurityContextHolder.setContext(securityContext);
+                RequestContextHolder.setRequestAttributes(requestAttributes);
+                LocaleContextHolder.setLocale(locale);
+                TimeZoneContextHolder.setTimeZone(timeZone);
+                try {
+                    return worker.call();
+                } finally {
+                    if (loggingContextProvider != null) {
+                        loggingContextProvider.flushContext();
+                    }
+                    TimeZoneContextHolder.resetTimeZone();
+                    LocaleContextHolder.resetLocaleContext();
+                    RequestContextHolder.setRequestAttributes(previousRequestAttributes);
+                    SecurityContextHolder.setContext(previousSecurityContext);
+                }
+            }
+        };
+    }
+
     protected DataType getDataType(InputControl inputControl) throws CascadeResourceNotFoundException {
         return (inputControl != null && inputControl.getDataType() != null)
                 ? cachedRepositoryService.getResource(DataType.class, inputControl.getDataType()) : null;
@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2005 - 2020 TIBCO Software Inc. All rights reserved.
+ * http://www.jaspersoft.com.
+ *
+ * Unless you have purchased a commercial license agreement from Jaspersoft,
+ * the following license terms apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.jaspersoft.jasperserver.inputcontrols.cascade.cache;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Map;
+
+/**
+ * Rough shallow-plus-contents heap size estimation for objects kept in {@link SessionCache}.
+ * Strings, numbers, dates, arrays, collections and maps are walked (up to {@link #MAX_DEPTH} levels),
+ * any other object counts as {@link #OBJECT_SIZE} bytes. Values are meant for cache bounding and
+ * diagnostics only, not for exact accounting.
+ *
+ * @version $Id$
+ */
+public final class CacheSizeEstimator {
+
+    static final int REFERENCE_SIZE = 8;
+    static final int OBJECT_HEADER_SIZE = 16;
+    static final int OBJECT_SIZE = 256;
+    static final int MAP_ENTRY_SIZE = 32;
+    static final int MAX_DEPTH = 4;
+
+    private CacheSizeEstimator() {
+    }
+
+    public static long estimate(Object value) {
+        return estimate(value, 0);
+    }
+
+    private static long estimate(Object value, int depth) {
+        if (value == null) {
+            return 0;
+        }
+        if (value instanceof String) {
+            return OBJECT_HEADER_SIZE * 2 + 2L * ((String) value).length();
+        }
+        if (value instanceof BigDecimal || value instanceof BigInteger) {
+            return OBJECT_HEADER_SIZE * 3;
+        }
+        if (value instanceof Number || value instanceof Boolean || value instanceof Character) {
+            return OBJECT_HEADER_SIZE + REFERENCE_SIZE;
+        }
+        if (value instanceof Date) {
+            return OBJECT_HEADER_SIZE + REFERENCE_SIZE * 2;
+        }
+        if (depth >= MAX_DEPTH) {
+            return OBJECT_SIZE;
+        }
+        if (value instanceof Object[]) {
+            Object[] array = (Object[]) value;
+            long size = OBJECT_HEADER_SIZE + (long) REFERENCE_SIZE * array.length;
+            for (Object item : array) {
+                size += estimate(item, depth + 1);
+            }
+            return size;
+        }
+        if (value instanceof Collection) {
+            Collection<?> collection = (Collection<?>) value;
+            long size = OBJECT_HEADER_SIZE * 2 + (long) REFERENCE_SIZE * collection.size();
+            for (Object item : collection) {
+                size += estimate(item, depth + 1);
+            }
+            return size;
+        }
+        if (value instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) value;
+            long size = OBJECT_HEADER_SIZE * 3 + (long) MAP_ENTRY_SIZE * map.size();
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                size += estimate(entry.getKey(), depth + 1) + estimate(entry.getValue(), depth + 1);
+            }
+            return size;
+        }
+        return OBJECT_SIZE;
+    }
+}
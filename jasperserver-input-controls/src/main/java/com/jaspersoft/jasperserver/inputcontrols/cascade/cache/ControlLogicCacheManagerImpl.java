@@ -20,30 +20,64 @@
  */
 package com.jaspersoft.jasperserver.inputcontrols.cascade.cache;
 
+import com.jaspersoft.jasperserver.api.logging.diagnostic.domain.DiagnosticAttribute;
+import com.jaspersoft.jasperserver.api.logging.diagnostic.helper.DiagnosticAttributeBuilder;
+import com.jaspersoft.jasperserver.api.logging.diagnostic.service.Diagnostic;
+import com.jaspersoft.jasperserver.api.logging.diagnostic.service.DiagnosticCallback;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.web.context.request.RequestContextHolder;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * ControlLogicCacheManagerImpl
+ * <p/>
+ * Keeps one {@link SessionCacheImpl} per HTTP session. Session caches expire after {@code userCacheTimeout} seconds
+ * without interaction, which is checked both on access and by the periodic cleaner. Total size of all session caches
+ * is bounded by {@code maxEntries} and {@code maxBytes} (estimated heap size), each session cache by
+ * {@code maxSessionEntries} and {@code maxSessionBytes}; least recently accessed entries are evicted first.
+ * Bound of 0 means unbounded. Automatic evictions are reported to {@code evictionListeners}.
+ *
  * @author jwhang
  * @version $Id: ControlLogicCacheManagerImpl.java 22557 2012-03-15 10:44:12Z ykovalchyk $
  */
 
-public class ControlLogicCacheManagerImpl implements ControlLogicCacheManager, InitializingBean {
+public class ControlLogicCacheManagerImpl implements ControlLogicCacheManager, InitializingBean, Diagnostic {
+
+    private static final Log log = LogFactory.getLog(ControlLogicCacheManagerImpl.class);
 
 	private long cacheCleanTriggerTime = 300000l; //default to 5 minutes between cache cleanups.
 	private long userCacheTimeout = 120000l; //default to 2 minutes before invalidating an individual session.
-
-    private volatile Map<String, SessionCache> sessionCachePool = Collections.synchronizedMap(new HashMap<String, SessionCache>());
+    private int maxEntries;
+    private long maxBytes;
+    private int maxSessionEntries;
+    private long maxSessionBytes;
+    private List<SessionCacheEvictionListener> evictionListeners = Collections.emptyList();
+
+    private final ConcurrentMap<String, SessionCacheImpl> sessionCachePool = new ConcurrentHashMap<String, SessionCacheImpl>();
+    private final AtomicLong totalEntries = new AtomicLong();
+    private final AtomicLong totalBytes = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+    private final AtomicLong expirationCount = new AtomicLong();
+    private final ReentrantLock trimLock = new ReentrantLock();
 
     public ControlLogicCacheManagerImpl(){
     }
 
     public void afterPropertiesSet() throws Exception {
         Timer cascadeCacheCleanerTimer = new Timer("CascadeCacheCleaner",true);
-        TimerTask cacheCleanerTimerTask = new CacheCleaner(sessionCachePool, userCacheTimeout);
+        TimerTask cacheCleanerTimerTask = new TimerTask() {
+            @Override
+            public void run() {
+                removeExpiredSessionCaches();
+            }
+        };
         cascadeCacheCleanerTimer.scheduleAtFixedRate(cacheCleanerTimerTask, cacheCleanTriggerTime, cacheCleanTriggerTime);
     }
 
@@ -58,23 +92,43 @@ public class ControlLogicCacheManagerImpl implements ControlLogicCacheManager, I
         this.userCacheTimeout = userCacheTimeout * 1000;
     }
 
+    public void setMaxEntries(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    public void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    public void setMaxSessionEntries(int maxSessionEntries) {
+        this.maxSessionEntries = maxSessionEntries;
+    }
+
+    public void setMaxSessionBytes(long maxSessionBytes) {
+        this.maxSessionBytes = maxSessionBytes;
+    }
+
+    public void setEvictionListeners(List<SessionCacheEvictionListener> evictionListeners) {
+        this.evictionListeners = evictionListeners != null
+                ? evictionListeners : Collections.<SessionCacheEvictionListener>emptyList();
+    }
+
     public void clearCache(){
         getSessionCache().clear();
     }
 
-    // field is volatile
-    @SuppressWarnings("SynchronizeOnNonFinalField")
     public SessionCache getSessionCache() {
         String key = getSessionCacheKey();
-        SessionCache cache = sessionCachePool.get(key);
+        SessionCacheImpl cache = sessionCachePool.get(key);
+        if (cache != null && isExpired(cache, System.currentTimeMillis())) {
+            expire(key, cache);
+            cache = null;
+        }
         if (cache == null) {
-            synchronized (sessionCachePool) {
-                cache = sessionCachePool.get(key);
-                if (cache == null) {
-                    //create a new cache.
-                    cache = new SessionCacheImpl();
-                    sessionCachePool.put(key, cache);
-                }
+            SessionCacheImpl newCache = new SessionCacheImpl(key, this, maxSessionEntries, maxSessionBytes);
+            cache = sessionCachePool.putIfAbsent(key, newCache);
+            if (cache == null) {
+                cache = newCache;
             }
         }
         return cache;
@@ -90,24 +144,165 @@ public class ControlLogicCacheManagerImpl implements ControlLogicCacheManager, I
         }
     	return key;
     }
-}
-
-
-
-
-
-
-
 
+    protected void removeExpiredSessionCaches() {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<String, SessionCacheImpl> entry : sessionCachePool.entrySet()) {
+            if (isExpired(entry.getValue(), now)) {
+                expire(entry.getKey(), entry.getValue());
+            }
+        }
+    }
 
+    /**
+     * Brings total cache size back under the global bounds by evicting least recently accessed entries of all sessions.
+     * Only one thread trims at a time, others go on without waiting.
+     */
+    protected void trimToQuota() {
+        if (!isOverQuota() || !trimLock.tryLock()) {
+            return;
+        }
+        try {
+            List<SessionCacheImpl.CacheEntry> candidates = new ArrayList<SessionCacheImpl.CacheEntry>();
+            Map<SessionCacheImpl.CacheEntry, SessionCacheImpl> owners = new IdentityHashMap<SessionCacheImpl.CacheEntry, SessionCacheImpl>();
+            for (SessionCacheImpl sessionCache : sessionCachePool.values()) {
+                for (SessionCacheImpl.CacheEntry entry : sessionCache.getEntries()) {
+                    candidates.add(entry);
+                    owners.put(entry, sessionCache);
+                }
+            }
+            SessionCacheImpl.sortByLastAccess(candidates);
+            long targetEntries = (long) (maxEntries * SessionCacheImpl.EVICTION_LOW_WATERMARK);
+            long targetBytes = (long) (maxBytes * SessionCacheImpl.EVICTION_LOW_WATERMARK);
+            for (SessionCacheImpl.CacheEntry candidate : candidates) {
+                boolean entriesExceeded = maxEntries > 0 && totalEntries.get() > targetEntries;
+                boolean bytesExceeded = maxBytes > 0 && totalBytes.get() > targetBytes;
+                if (!entriesExceeded && !bytesExceeded) {
+                    break;
+                }
+                owners.get(candidate).evict(candidate, SessionCacheEvictionListener.Reason.SIZE);
+            }
+        } finally {
+            trimLock.unlock();
+        }
+    }
 
+    void account(int entriesDelta, long bytesDelta) {
+        totalEntries.addAndGet(entriesDelta);
+        totalBytes.addAndGet(bytesDelta);
+    }
 
+    void onEviction(String sessionCacheKey, SessionCacheImpl.CacheEntry entry, SessionCacheEvictionListener.Reason reason) {
+        (reason == SessionCacheEvictionListener.Reason.EXPIRED ? expirationCount : evictionCount).incrementAndGet();
+        for (SessionCacheEvictionListener listener : evictionListeners) {
+            try {
+                listener.onEviction(sessionCacheKey, entry.getKey().getType(), entry.getKey().getLookupKey(),
+                        entry.getValue(), reason);
+            } catch (RuntimeException e) {
+                log.warn("Input controls cache eviction listener failed", e);
+            }
+        }
+    }
 
+    private boolean isOverQuota() {
+        return (maxEntries > 0 && totalEntries.get() > maxEntries) || (maxBytes > 0 && totalBytes.get() > maxBytes);
+    }
 
+    private boolean isExpired(SessionCacheImpl cache, long now) {
+        return (now - cache.getLastInteraction()) > userCacheTimeout;
+    }
 
+    private void expire(String key, SessionCacheImpl cache) {
+        if (sessionCachePool.remove(key, cache)) {
+            cache.invalidate(SessionCacheEvictionListener.Reason.EXPIRED);
+        }
+    }
 
+    public int getSessionCount() {
+        return sessionCachePool.size();
+    }
 
+    public long getTotalEntries() {
+        return totalEntries.get();
+    }
 
+    public long getTotalBytes() {
+        return totalBytes.get();
+    }
 
+    /**
+     * @return estimated heap usage in bytes grouped by simple name of cached object type
+     */
+    public Map<String, Long> getBytesByType() {
+        Map<String, Long> bytesByType = new TreeMap<String, Long>();
+        for (SessionCacheImpl sessionCache : sessionCachePool.values()) {
+            for (SessionCacheImpl.CacheEntry entry : sessionCache.getEntries()) {
+                String type = entry.getKey().getType().getSimpleName();
+                Long bytes = bytesByType.get(type);
+                bytesByType.put(type, (bytes != null ? bytes : 0L) + entry.getEstimatedBytes());
+            }
+        }
+        return bytesByType;
+    }
 
+    /**
+     * @return number of entries grouped by simple name of cached object type
+     */
+    public Map<String, Long> getEntriesByType() {
+        Map<String, Long> entriesByType = new TreeMap<String, Long>();
+        for (SessionCacheImpl sessionCache : sessionCachePool.values()) {
+            for (SessionCacheImpl.CacheEntry entry : sessionCache.getEntries()) {
+                String type = entry.getKey().getType().getSimpleName();
+                Long count = entriesByType.get(type);
+                entriesByType.put(type, (count != null ? count : 0L) + 1);
+            }
+        }
+        return entriesByType;
+    }
 
+    public Map<DiagnosticAttribute, DiagnosticCallback> getDiagnosticData() {
+        return new DiagnosticAttributeBuilder()
+            .addDiagnosticAttribute(DiagnosticAttributeBuilder.INPUT_CONTROLS_CACHE_SESSIONS, new DiagnosticCallback<Integer>() {
+                @Override
+                public Integer getDiagnosticAttributeValue() {
+                    return getSessionCount();
+                }
+            })
+            .addDiagnosticAttribute(DiagnosticAttributeBuilder.INPUT_CONTROLS_CACHE_ENTRIES, new DiagnosticCallback<Long>() {
+                @Override
+                public Long getDiagnosticAttributeValue() {
+                    return getTotalEntries();
+                }
+            })
+            .addDiagnosticAttribute(DiagnosticAttributeBuilder.INPUT_CONTROLS_CACHE_BYTES, new DiagnosticCallback<Long>() {
+                @Override
+                public Long getDiagnosticAttributeValue() {
+                    return getTotalBytes();
+                }
+            })
+            .addDiagnosticAttribute(DiagnosticAttributeBuilder.INPUT_CONTROLS_CACHE_ENTRIES_BY_TYPE, new DiagnosticCallback<Map<String, Long>>() {
+                @Override
+                public Map<String, Long> getDiagnosticAttributeValue() {
+                    return getEntriesByType();
+                }
+            })
+            .addDiagnosticAttribute(DiagnosticAttributeBuilder.INPUT_CONTROLS_CACHE_BYTES_BY_TYPE, new DiagnosticCallback<Map<String, Long>>() {
+                @Override
+                public Map<String, Long> getDiagnosticAttributeValue() {
+                    return getBytesByType();
+                }
+            })
+            .addDiagnosticAttribute(DiagnosticAttributeBuilder.INPUT_CONTROLS_CACHE_EVICTIONS, new DiagnosticCallback<Long>() {
+                @Override
+                public Long getDiagnosticAttributeValue() {
+                    return evictionCount.get();
+                }
+            })
+            .addDiagnosticAttribute(DiagnosticAttributeBuilder.INPUT_CONTROLS_CACHE_EXPIRATIONS, new DiagnosticCallback<Long>() {
+                @Override
+                public Long getDiagnosticAttributeValue() {
+                    return expirationCount.get();
+                }
+            }).build();
+    }
+}
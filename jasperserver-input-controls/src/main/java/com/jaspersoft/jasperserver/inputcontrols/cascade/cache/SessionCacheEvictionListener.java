@@ -0,0 +1,40 @@
+/*
+ * Copyright (C) 2005 - 2020 TIBCO Software Inc. All rights reserved.
+ * http://www.jaspersoft.com.
+ *
+ * Unless you have purchased a commercial license agreement from Jaspersoft,
+ * the following license terms apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.jaspersoft.jasperserver.inputcontrols.cascade.cache;
+
+/**
+ * Callback notified when {@link ControlLogicCacheManagerImpl} drops cached input control data on its own,
+ * either because a size bound was exceeded or because the owning session expired.
+ * Explicit {@link SessionCache#clear()} calls and replacements of an existing entry are not reported.
+ *
+ * @version $Id$
+ */
+public interface SessionCacheEvictionListener {
+
+    enum Reason {
+        /** global or per-session entry count or byte quota was exceeded */
+        SIZE,
+        /** session cache wasn't accessed within the configured timeout */
+        EXPIRED
+    }
+
+    void onEviction(String sessionCacheKey, Class<?> cachedObjectType, String lookupKey, Object cacheInfo, Reason reason);
+}
@@ -20,19 +20,50 @@
  */
 package com.jaspersoft.jasperserver.inputcontrols.cascade.cache;
 
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * SessionCacheImpl
+ * <p/>
+ * Entries of all cached types are kept in a single concurrent map. Each entry carries its estimated heap size
+ * and last access time, so that the cache can be trimmed to its per-session quota (entry count and estimated bytes)
+ * by dropping least recently accessed entries. Quota of 0 means unbounded.
+ *
  * @author jwhang
  * @version $Id$
  */
 public class SessionCacheImpl implements SessionCache {
 
-    private long lastInteraction = System.currentTimeMillis(); //used for marking sessions for cleanup.
-    private volatile Map<Class<?>, Map<String, Object>> cacheInfoPool = Collections.synchronizedMap(new HashMap<Class<?>, Map<String, Object>>());
+    // cache is trimmed to this share of the quota once the quota is exceeded, so that trimming isn't done on every put
+    static final double EVICTION_LOW_WATERMARK = 0.9;
+
+    private final String sessionCacheKey;
+    private final ControlLogicCacheManagerImpl cacheManager;
+    private final int maxEntries;
+    private final long maxBytes;
+
+    private volatile long lastInteraction = System.currentTimeMillis(); //used for marking sessions for cleanup.
+    private volatile boolean invalidated;
+    private final ConcurrentMap<EntryKey, CacheEntry> entries = new ConcurrentHashMap<EntryKey, CacheEntry>();
+    private final AtomicLong estimatedBytes = new AtomicLong();
+
+    public SessionCacheImpl() {
+        this(null, null, 0, 0);
+    }
+
+    SessionCacheImpl(String sessionCacheKey, ControlLogicCacheManagerImpl cacheManager, int maxEntries, long maxBytes) {
+        this.sessionCacheKey = sessionCacheKey;
+        this.cacheManager = cacheManager;
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+    }
 
     public long getLastInteraction() {
         return lastInteraction;
@@ -44,32 +75,185 @@ public class SessionCacheImpl implements SessionCache {
 
     public <T> void setCacheInfo(Class<T> cachedObjectType, String lookupKey, T cacheInfo){
         setLastInteraction(System.currentTimeMillis());
-        getConcreteTypeCache(cachedObjectType).put(lookupKey, cacheInfo);
+        EntryKey key = new EntryKey(cachedObjectType, lookupKey);
+        if (cacheInfo == null) {
+            // concurrent map doesn't hold nulls, absent entry reads the same way
+            remove(key, entries.get(key), null);
+            return;
+        }
+        CacheEntry entry = new CacheEntry(key, cacheInfo, CacheSizeEstimator.estimate(cacheInfo));
+        CacheEntry previous = entries.put(key, entry);
+        account(1, entry.getEstimatedBytes());
+        if (previous != null) {
+            account(-1, -previous.getEstimatedBytes());
+        }
+        if (invalidated) {
+            // session cache was expired concurrently, don't keep data nobody will read
+            remove(key, entry, null);
+            return;
+        }
+        trimToQuota();
+        if (cacheManager != null) {
+            cacheManager.trimToQuota();
+        }
+    }
+
+    public <T> T getCacheInfo(Class<T> cachedObjectType, String lookupKey){
+        long now = System.currentTimeMillis();
+        setLastInteraction(now);
+        CacheEntry entry = entries.get(new EntryKey(cachedObjectType, lookupKey));
+        if (entry == null) {
+            return null;
+        }
+        entry.setLastAccess(now);
+        return cachedObjectType.cast(entry.getValue());
     }
 
     public void clear() {
-        synchronized (cacheInfoPool) {
-            cacheInfoPool.clear();
+        for (CacheEntry entry : entries.values()) {
+            remove(entry.getKey(), entry, null);
         }
     }
 
-    // 'SynchronizeOnNonFinalField' - field is volatile
-    // 'unchecked' - cast is safe, see setCacheInfo()
-    @SuppressWarnings({"SynchronizeOnNonFinalField", "unchecked"})
-    protected <T> Map<String, T> getConcreteTypeCache(Class<T> cachedObjectType) {
-        if (cacheInfoPool.get(cachedObjectType) == null) {
-            synchronized (cacheInfoPool){
-                if(cacheInfoPool.get(cachedObjectType) == null){
-                    cacheInfoPool.put(cachedObjectType, Collections.synchronizedMap(new HashMap<String, Object>()));
-                }
+    public int getEntryCount() {
+        return entries.size();
+    }
+
+    public long getEstimatedBytes() {
+        return estimatedBytes.get();
+    }
+
+    String getSessionCacheKey() {
+        return sessionCacheKey;
+    }
+
+    List<CacheEntry> getEntries() {
+        return new ArrayList<CacheEntry>(entries.values());
+    }
+
+    /**
+     * Drops all entries reporting them to eviction listeners. Entries put after this call are dropped immediately.
+     */
+    void invalidate(SessionCacheEvictionListener.Reason reason) {
+        invalidated = true;
+        for (CacheEntry entry : entries.values()) {
+            remove(entry.getKey(), entry, reason);
+        }
+    }
+
+    boolean evict(CacheEntry entry, SessionCacheEvictionListener.Reason reason) {
+        return remove(entry.getKey(), entry, reason);
+    }
+
+    protected void trimToQuota() {
+        if (!isOverQuota(entries.size(), estimatedBytes.get())) {
+            return;
+        }
+        List<CacheEntry> candidates = getEntries();
+        sortByLastAccess(candidates);
+        long targetEntries = (long) (maxEntries * EVICTION_LOW_WATERMARK);
+        long targetBytes = (long) (maxBytes * EVICTION_LOW_WATERMARK);
+        for (CacheEntry candidate : candidates) {
+            boolean entriesExceeded = maxEntries > 0 && entries.size() > targetEntries;
+            boolean bytesExceeded = maxBytes > 0 && estimatedBytes.get() > targetBytes;
+            if (!entriesExceeded && !bytesExceeded) {
+                break;
             }
+            remove(candidate.getKey(), candidate, SessionCacheEvictionListener.Reason.SIZE);
         }
+    }
 
-        return (Map<String, T>) cacheInfoPool.get(cachedObjectType);
+    private boolean isOverQuota(long entryCount, long bytes) {
+        return (maxEntries > 0 && entryCount > maxEntries) || (maxBytes > 0 && bytes > maxBytes);
     }
 
-    public <T> T getCacheInfo(Class<T> cachedObjectType, String lookupKey){
-        setLastInteraction(System.currentTimeMillis());
-        return getConcreteTypeCache(cachedObjectType).get(lookupKey);
+    private boolean remove(EntryKey key, CacheEntry entry, SessionCacheEvictionListener.Reason reason) {
+        if (entry == null || !entries.remove(key, entry)) {
+            return false;
+        }
+        account(-1, -entry.getEstimatedBytes());
+        if (reason != null && cacheManager != null) {
+            cacheManager.onEviction(sessionCacheKey, entry, reason);
+        }
+        return true;
+    }
+
+    private void account(int entriesDelta, long bytesDelta) {
+        estimatedBytes.addAndGet(bytesDelta);
+        if (cacheManager != null) {
+            cacheManager.account(entriesDelta, bytesDelta);
+        }
+    }
+
+    static void sortByLastAccess(List<CacheEntry> entries) {
+        Collections.sort(entries, new Comparator<CacheEntry>() {
+            public int compare(CacheEntry o1, CacheEntry o2) {
+                return Long.compare(o1.getLastAccess(), o2.getLastAccess());
+            }
+        });
+    }
+
+    static final class EntryKey {
+        private final Class<?> type;
+        private final String lookupKey;
+
+        EntryKey(Class<?> type, String lookupKey) {
+            this.type = type;
+            this.lookupKey = lookupKey;
+        }
+
+        Class<?> getType() {
+            return type;
+        }
+
+        String getLookupKey() {
+            return lookupKey;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof EntryKey)) return false;
+            EntryKey that = (EntryKey) o;
+            return type.equals(that.type) && (lookupKey == null ? that.lookupKey == null : lookupKey.equals(that.lookupKey));
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * type.hashCode() + (lookupKey != null ? lookupKey.hashCode() : 0);
+        }
+    }
+
+    static final class CacheEntry {
+        private final EntryKey key;
+        private final Object value;
+        private final long estimatedBytes;
+        private volatile long lastAccess = System.currentTimeMillis();
+
+        CacheEntry(EntryKey key, Object value, long estimatedBytes) {
+            this.key = key;
+            this.value = value;
+            this.estimatedBytes = estimatedBytes;
+        }
+
+        EntryKey getKey() {
+            return key;
+        }
+
+        Object getValue() {
+            return value;
+        }
+
+        long getEstimatedBytes() {
+            return estimatedBytes;
+        }
+
+        long getLastAccess() {
+            return lastAccess;
+        }
+
+        void setLastAccess(long lastAccess) {
+            this.lastAccess = lastAccess;
+        }
     }
 }
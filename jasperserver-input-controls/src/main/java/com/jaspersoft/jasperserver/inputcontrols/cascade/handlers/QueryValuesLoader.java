@@ -34,7 +34,12 @@ import com.jaspersoft.jasperserver.api.metadata.common.domain.Query;
 import com.jaspersoft.jasperserver.api.metadata.common.domain.Resource;
 import com.jaspersoft.jasperserver.api.metadata.common.domain.ResourceReference;
 import com.jaspersoft.jasperserver.api.metadata.common.domain.client.ListOfValuesItemImpl;
+import com.jaspersoft.jasperserver.api.metadata.common.domain.client.QueryImpl;
+import com.jaspersoft.jasperserver.api.metadata.jasperreports.domain.JdbcReportDataSource;
+import com.jaspersoft.jasperserver.api.metadata.jasperreports.domain.JndiJdbcReportDataSource;
 import com.jaspersoft.jasperserver.api.metadata.jasperreports.domain.ReportDataSource;
+import com.jaspersoft.jasperserver.api.metadata.jdbc.SqlPagingFactory;
+import com.jaspersoft.jasperserver.api.metadata.jdbc.SqlPagingStrategy;
 import com.jaspersoft.jasperserver.inputcontrols.cascade.CachedRepositoryService;
 import com.jaspersoft.jasperserver.inputcontrols.cascade.CascadeResourceNotFoundException;
 import com.jaspersoft.jasperserver.inputcontrols.cascade.InputControlValidationException;
@@ -44,6 +49,7 @@ import com.jaspersoft.jasperserver.inputcontrols.cascade.token.FilterResolver;
 import com.jaspersoft.jasperserver.inputcontrols.cascade.token.ParameterTypeLookup;
 import org.apache.commons.collections.OrderedMap;
 import org.apache.commons.collections.OrderedMapIterator;
+import org.apache.commons.collections.map.LinkedMap;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.mutable.MutableInt;
 import org.apache.commons.logging.Log;
@@ -58,6 +64,7 @@ import java.util.Set;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Collections;
+import java.util.regex.Pattern;
 
 import static com.jaspersoft.jasperserver.inputcontrols.cascade.handlers.InputControlHandler.NOTHING_SUBSTITUTION_LABEL;
 import static com.jaspersoft.jasperserver.inputcontrols.cascade.handlers.InputControlHandler.NOTHING_SUBSTITUTION_VALUE;
@@ -71,6 +78,14 @@ public class QueryValuesLoader implements ValuesLoader {
 
     public static final String COLUMN_VALUE_SEPARATOR = " | ";
 
+    public static final String PAGE_OFFSET_PARAMETER = "IC_PAGE_OFFSET";
+    public static final String PAGE_LIMIT_PARAMETER = "IC_PAGE_LIMIT";
+    public static final String PAGE_CRITERIA_PARAMETER = "IC_PAGE_CRITERIA";
+    public static final String PAGE_COUNT_COLUMN = "ic_total_count";
+
+    private static final String SQL_QUERY_LANGUAGE = "sql";
+    private static final Pattern PLAIN_COLUMN_NAME = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*");
+
     private static final Log log = LogFactory.getLog(QueryValuesLoader.class);
 
     @javax.annotation.Resource
@@ -87,6 +102,18 @@ public class QueryValuesLoader implements ValuesLoader {
     private AuditContext concreteAuditContext;
     @javax.annotation.Resource
     protected ParameterTypeLookup parameterTypeCompositeLookup;
+    @javax.annotation.Resource
+    protected SqlPagingFactory sqlPagingFactory;
+    @javax.annotation.Resource(name = "inputControlsQueryPagingEnabled")
+    private boolean queryPaging;
+
+    public boolean isQueryPaging() {
+        return queryPaging;
+    }
+
+    public void setQueryPaging(boolean queryPaging) {
+        this.queryPaging = queryPaging;
+    }
 
     @Override
     public List<ListOfValuesItem> loadValues(InputControl inputControl, ResourceReference dataSource, Map<String, Object> parameters, Map<String, Class<?>> parameterTypes, ReportInputControlInformation info, boolean isSingleSelect) throws CascadeResourceNotFoundException {
@@ -124,23 +151,29 @@ public class QueryValuesLoader implements ValuesLoader {
             executionParameters.put(EhcacheEngineService.DIAGNOSTIC_STATE, parameters.get(EhcacheEngineService.DIAGNOSTIC_STATE));
         }
 
-        /* Typed results are returned */
-        results = getResultsOrderedMap(inputControl, dataSourceForQuery, executionParameters, executionParameterTypes, results);
-        addNothingLabelToResults(results, isSingleSelect, inputControl);
+        SqlPagingStrategy pagingStrategy = getSqlPagingStrategy(inputControl, query, dataSourceForQuery, parameters);
+        if (pagingStrategy != null) {
+            result = loadPagedValues(inputControl, query, dataSourceForQuery, parameters, executionParameters,
+                    executionParameterTypes, info, isSingleSelect, pagingStrategy);
+        } else {
+            /* Typed results are returned */
+            results = getResultsOrderedMap(inputControl, dataSourceForQuery, executionParameters, executionParameterTypes, results);
+            addNothingLabelToResults(results, isSingleSelect, inputControl);
 
-        if(results != null) {
-            limit = getLimit(inputControl, parameters, errors);
-            offset = getOffset(inputControl, parameters, results.size(), errors);
+            if(results != null) {
+                limit = getLimit(inputControl, parameters, errors);
+                offset = getOffset(inputControl, parameters, results.size(), errors);
 
-            checkLimitOffsetRange(errors);
+                checkLimitOffsetRange(errors);
 
-            totalLimit = getTotalLimit(limit, offset, results.size());
+                totalLimit = getTotalLimit(limit, offset, results.size());
 
-            criteria = getCriteria(inputControl, parameters);
+                criteria = getCriteria(inputControl, parameters);
 
-            setTotalCount(inputControl, parameters, info, criteria, results);
+                setTotalCount(inputControl, parameters, info, criteria, results);
 
-            result = getListOfValuesItems(inputControl, info, criteria, limit, offset, totalLimit, results);
+                result = getListOfValuesItems(inputControl, info, criteria, limit, offset, totalLimit, results);
+            }
         }
 
         closeInputControlsAuditEvent();
@@ -148,6 +181,104 @@ public class QueryValuesLoader implements ValuesLoader {
         return result;
     }
 
+    /**
+     * Returns the strategy to page the input control query on the database side. Paging is done by the database
+     * when it's enabled, the request has a limit, the query is a SQL query of a JDBC data source with a known
+     * paging strategy and the visible columns can be referenced by name.
+     *
+     * @return paging strategy, <code>null</code> if all values are loaded and paged in memory
+     */
+    protected SqlPagingStrategy getSqlPagingStrategy(InputControl inputControl, Query query, ResourceReference dataSourceForQuery, Map<String, Object> parameters) throws CascadeResourceNotFoundException {
+        if (!queryPaging || sqlPagingFactory == null || parameters == null
+                || parameters.get(inputControl.getName() + "_" + LIMIT) == null
+                || !SQL_QUERY_LANGUAGE.equalsIgnoreCase(query.getLanguage())) {
+            return null;
+        }
+        for (String column : inputControl.getQueryVisibleColumns()) {
+            if (!PLAIN_COLUMN_NAME.matcher(column).matches()) {
+                return null;
+            }
+        }
+        Resource dataSource = cachedRepositoryService.getResource(Resource.class, dataSourceForQuery);
+        if (!(dataSource instanceof JdbcReportDataSource || dataSource instanceof JndiJdbcReportDataSource)) {
+            return null;
+        }
+        return sqlPagingFactory.getSqlPagingStrategy(cachedEngineService.getDatabaseProductName((ReportDataSource) dataSource));
+    }
+
+    /**
+     * Loads a single page of values, the query is wrapped so that the database applies the criteria, offset and limit.
+     * The nothing value of a single select control is the first value of the list, as for values paged in memory.
+     */
+    protected List<ListOfValuesItem> loadPagedValues(InputControl inputControl, Query query, ResourceReference dataSourceForQuery,
+            Map<String, Object> parameters, Map<String, Object> executionParameters, Map<String, Class<?>> executionParameterTypes,
+            ReportInputControlInformation info, boolean isSingleSelect, SqlPagingStrategy pagingStrategy) throws CascadeResourceNotFoundException {
+        Map<String, String> errors = new HashMap<>();
+        int limit = getLimit(inputControl, parameters, errors);
+        int offset = getOffset(inputControl, parameters, 0, errors);
+        checkLimitOffsetRange(errors);
+        String criteria = getCriteria(inputControl, parameters);
+
+        boolean withNothing = isSingleSelect && !inputControl.isMandatory()
+                && (criteria == null || StringUtils.containsIgnoreCase(NOTHING_SUBSTITUTION_LABEL, criteria));
+        int queryOffset = withNothing && offset > 0 ? offset - 1 : offset;
+        int queryLimit = withNothing && offset == 0 ? limit - 1 : limit;
+
+        String[] visibleColumns = inputControl.getQueryVisibleColumns();
+        String filterPattern = null;
+        Map<String, Object> pageParameters = new HashMap<String, Object>(executionParameters);
+        Map<String, Class<?>> pageParameterTypes = new HashMap<String, Class<?>>(executionParameterTypes);
+        if (criteria != null) {
+            filterPattern = "$P{" + PAGE_CRITERIA_PARAMETER + "}";
+            pageParameters.put(PAGE_CRITERIA_PARAMETER, pagingStrategy.getContainsPattern(criteria));
+            pageParameterTypes.put(PAGE_CRITERIA_PARAMETER, String.class);
+        }
+        pageParameters.put(PAGE_OFFSET_PARAMETER, queryOffset);
+        pageParameterTypes.put(PAGE_OFFSET_PARAMETER, Integer.class);
+        pageParameters.put(PAGE_LIMIT_PARAMETER, queryLimit);
+        pageParameterTypes.put(PAGE_LIMIT_PARAMETER, Integer.class);
+
+        OrderedMap results = new LinkedMap();
+        if (queryLimit > 0) {
+            Query pagedQuery = createQuery(query, pagingStrategy.getPagedQuery(query.getSql(), visibleColumns, filterPattern,
+                    "$P{" + PAGE_OFFSET_PARAMETER + "}", "$P{" + PAGE_LIMIT_PARAMETER + "}"));
+            results = getResultsOrderedMap(inputControl, new ResourceReference(pagedQuery), dataSourceForQuery,
+                    inputControl.getQueryValueColumn(), visibleColumns, pageParameters, pageParameterTypes);
+            if (results == null) {
+                return null;
+            }
+        }
+        if (withNothing && offset == 0) {
+            results.put(NOTHING_SUBSTITUTION_VALUE, new Object[]{NOTHING_SUBSTITUTION_LABEL});
+        }
+        if (results.isEmpty() && offset > 0) {
+            // offset is beyond the last value
+            throwException(OFFSET, offset, null);
+        }
+
+        if (parameters.get("includeTotalCount") != null) {
+            Query countQuery = createQuery(query, pagingStrategy.getCountQuery(query.getSql(), visibleColumns, filterPattern, PAGE_COUNT_COLUMN));
+            OrderedMap count = getResultsOrderedMap(inputControl, new ResourceReference(countQuery), dataSourceForQuery,
+                    PAGE_COUNT_COLUMN, new String[]{PAGE_COUNT_COLUMN}, pageParameters, pageParameterTypes);
+            if (count != null && !count.isEmpty()) {
+                addTotalCountToParameters(parameters, ((Number) count.firstKey()).intValue() + (withNothing ? 1 : 0));
+            }
+        }
+
+        return getListOfValuesItems(inputControl, info, null, limit, 0, getTotalLimit(limit, 0, results.size()), results);
+    }
+
+    protected Query createQuery(Query query, String sql) {
+        Query copy = new QueryImpl();
+        copy.setURIString(query.getURIString());
+        copy.setLabel(query.getLabel());
+        copy.setLanguage(query.getLanguage());
+        copy.setDataSource(query.getDataSource());
+        copy.setParameters(query.getParameters());
+        copy.setSql(sql);
+        return copy;
+    }
+
     /**
      * Filter the results to get totalCount by criteria if any and  add total count to result parameters
      * @param inputControl
@@ -183,10 +314,16 @@ public class QueryValuesLoader implements ValuesLoader {
     }
 
     private OrderedMap getResultsOrderedMap(InputControl inputControl, ResourceReference dataSourceForQuery, Map<String, Object> executionParameters, Map<String, Class<?>> executionParameterTypes, OrderedMap results) throws CascadeResourceNotFoundException {
+        return getResultsOrderedMap(inputControl, inputControl.getQuery(), dataSourceForQuery,
+                inputControl.getQueryValueColumn(), inputControl.getQueryVisibleColumns(), executionParameters, executionParameterTypes);
+    }
+
+    private OrderedMap getResultsOrderedMap(InputControl inputControl, ResourceReference queryReference, ResourceReference dataSourceForQuery, String keyColumn, String[] resultColumns, Map<String, Object> executionParameters, Map<String, Class<?>> executionParameterTypes) throws CascadeResourceNotFoundException {
+        OrderedMap results = null;
         try {
             results = cachedEngineService.executeQuery(
-                    ExecutionContextImpl.getRuntimeExecutionContext(), inputControl.getQuery(),
-                    inputControl.getQueryValueColumn(), inputControl.getQueryVisibleColumns(),
+                    ExecutionContextImpl.getRuntimeExecutionContext(), queryReference,
+                    keyColumn, resultColumns,
                     dataSourceForQuery, executionParameters, executionParameterTypes, inputControl.getName());
         } catch (JSMissingDataSourceFieldsException e) {
             log.debug(e.getMessage(), e);
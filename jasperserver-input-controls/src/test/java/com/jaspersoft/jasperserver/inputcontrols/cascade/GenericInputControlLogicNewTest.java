@@ -23,11 +23,17 @@ package com.jaspersoft.jasperserver.inputcontrols.cascade;
 
 import com.jaspersoft.jasperserver.api.common.domain.ExecutionContext;
 import com.jaspersoft.jasperserver.api.common.domain.impl.ValidationErrorsImpl;
+import com.jaspersoft.jasperserver.api.engine.common.service.ReportInputControlInformation;
+import com.jaspersoft.jasperserver.api.engine.common.service.ReportInputControlsInformation;
 import com.jaspersoft.jasperserver.api.engine.jasperreports.service.impl.ReportInputControlsInformationImpl;
+import com.jaspersoft.jasperserver.api.logging.audit.context.RequestType;
+import com.jaspersoft.jasperserver.api.logging.audit.context.RequestTypeListener;
+import com.jaspersoft.jasperserver.api.logging.context.LoggingContextProvider;
 import com.jaspersoft.jasperserver.api.metadata.common.domain.InputControl;
 import com.jaspersoft.jasperserver.api.metadata.common.domain.InputControlsContainer;
 import com.jaspersoft.jasperserver.api.metadata.common.domain.Query;
 import com.jaspersoft.jasperserver.api.metadata.common.domain.ResourceReference;
+import com.jaspersoft.jasperserver.api.metadata.common.domain.client.InputControlImpl;
 import com.jaspersoft.jasperserver.api.metadata.common.domain.util.SrcSets;
 import com.jaspersoft.jasperserver.api.metadata.jasperreports.domain.ReportUnit;
 import com.jaspersoft.jasperserver.dto.reports.inputcontrols.*;
@@ -58,6 +64,11 @@ import org.springframework.core.type.filter.AssignableTypeFilter;
 import org.springframework.core.type.filter.TypeFilter;
 
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import static com.jaspersoft.jasperserver.api.metadata.user.service.ProfileAttributesResolver.SKIP_PROFILE_ATTRIBUTES_RESOLVING;
 import static com.jaspersoft.jasperserver.inputcontrols.cascade.handlers.ParametersHelper.*;
@@ -76,6 +87,7 @@ import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -795,6 +807,98 @@ public class GenericInputControlLogicNewTest  {
 
     }
 
+    @Test
+    public void getValuesForInputControls_independentControls_evaluatedConcurrentlyInCascadingOrder() throws Exception {
+        GenericInputControlLogic logic = Mockito.spy(new GenericInputControlLogic());
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        logic.inputControlsExecutor = executor;
+        final CyclicBarrier independentControls = new CyclicBarrier(2);
+
+        InputControl a = createInputControl("A");
+        InputControl b = createInputControl("B");
+        InputControl c = createInputControl("C");
+        InputControlHandler handler = mock(InputControlHandler.class);
+        doReturn(handler).when(logic).getHandlerForInputControl(any(InputControl.class));
+        doReturn(new HashSet<String>()).when(handler).getMasterDependencies(eq(a), nullable(ResourceReference.class));
+        doReturn(new HashSet<String>()).when(handler).getMasterDependencies(eq(b), nullable(ResourceReference.class));
+        doReturn(set("A", "B")).when(handler).getMasterDependencies(eq(c), nullable(ResourceReference.class));
+        doAnswer(invocation -> {
+            InputControl control = invocation.getArgument(0);
+            Map<String, Object> parameters = invocation.getArgument(2);
+            if (!"C".equals(control.getName())) {
+                // A and B only pass the barrier when they are evaluated at the same time
+                independentControls.await(10, TimeUnit.SECONDS);
+            }
+            parameters.put(control.getName(), control.getName() + "-value");
+            InputControlState state = new InputControlState();
+            state.setId(control.getName());
+            state.setValue(control.getName().equals("C") ? parameters.get("A") + "," + parameters.get("B") : null);
+            return state;
+        }).when(handler).getState(any(InputControl.class), nullable(ResourceReference.class), any(Map.class), any(Map.class), nullable(ReportInputControlInformation.class));
+
+        Map<String, Object> parameters = new LinkedHashMap<String, Object>();
+        try {
+            List<InputControlState> states = logic.getValuesForInputControls(null, Arrays.asList(a, b, c), null, parameters,
+                    new HashMap<String, Class<?>>(), mock(ReportInputControlsInformation.class));
+
+            assertEquals(3, states.size());
+            assertEquals("A", states.get(0).getId());
+            assertEquals("B", states.get(1).getId());
+            assertEquals("C", states.get(2).getId());
+            assertEquals("A-value,B-value", states.get(2).getValue());
+            assertEquals("C-value", parameters.get("C"));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void createInputControlWorker_poolThread_setsRequestTypeAndFlushesLoggingContext() throws Exception {
+        GenericInputControlLogic logic = new GenericInputControlLogic();
+        logic.requestTypeListener = mock(RequestTypeListener.class);
+        logic.loggingContextProvider = mock(LoggingContextProvider.class);
+        when(logic.requestTypeListener.getRequestType()).thenReturn(RequestType.WEB_SERVICES);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Callable<String> worker = logic.createInputControlWorker(new Callable<String>() {
+                @Override
+                public String call() {
+                    return "state";
+                }
+            });
+
+            assertEquals("state", executor.submit(worker).get(10, TimeUnit.SECONDS));
+            verify(logic.requestTypeListener).setRequestType(RequestType.WEB_SERVICES);
+            verify(logic.loggingContextProvider).flushContext();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void createInputControlWorker_callingThread_keepsLoggingContext() throws Exception {
+        GenericInputControlLogic logic = new GenericInputControlLogic();
+        logic.requestTypeListener = mock(RequestTypeListener.class);
+        logic.loggingContextProvider = mock(LoggingContextProvider.class);
+        Callable<String> worker = logic.createInputControlWorker(new Callable<String>() {
+            @Override
+            public String call() {
+                return "state";
+            }
+        });
+
+        assertEquals("state", worker.call());
+        // the events of the request are flushed when the request completes
+        verify(logic.loggingContextProvider, never()).flushContext();
+        verify(logic.requestTypeListener, never()).setRequestType(any(RequestType.class));
+    }
+
+    private InputControl createInputControl(String name) {
+        InputControl inputControl = new InputControlImpl();
+        inputControl.setName(name);
+        return inputControl;
+    }
+
     @Test
     public void testValueFormattingUtils() {
 
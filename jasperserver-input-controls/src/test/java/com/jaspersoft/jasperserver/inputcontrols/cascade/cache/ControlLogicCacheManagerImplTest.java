@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2005 - 2020 TIBCO Software Inc. All rights reserved.
+ * http://www.jaspersoft.com.
+ *
+ * Unless you have purchased a commercial license agreement from Jaspersoft,
+ * the following license terms apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jaspersoft.jasperserver.inputcontrols.cascade.cache;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.*;
+
+/**
+ * @version $Id$
+ */
+public class ControlLogicCacheManagerImplTest {
+
+    ControlLogicCacheManagerImpl cacheManager;
+    SessionCacheEvictionListener listener;
+    RequestAttributes requestAttributes;
+
+    @Before
+    public void setup() {
+        cacheManager = new ControlLogicCacheManagerImpl();
+        cacheManager.setUserCacheTimeout(600);
+        listener = mock(SessionCacheEvictionListener.class);
+        cacheManager.setEvictionListeners(Arrays.asList(listener));
+        requestAttributes = mock(RequestAttributes.class);
+        RequestContextHolder.setRequestAttributes(requestAttributes);
+        inSession("session1");
+    }
+
+    @After
+    public void tearDown() {
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    @Test
+    public void setCacheInfo_sessionEntriesQuotaExceeded_leastRecentlyAccessedEntryEvicted() {
+        cacheManager.setMaxSessionEntries(2);
+        SessionCache cache = cacheManager.getSessionCache();
+        cache.setCacheInfo(String.class, "a", "valueA");
+        cache.setCacheInfo(String.class, "b", "valueB");
+        touch(cache, "a", 2000);
+        touch(cache, "b", 1000);
+
+        cache.setCacheInfo(String.class, "c", "valueC");
+
+        assertEquals("valueA", cache.getCacheInfo(String.class, "a"));
+        assertNull(cache.getCacheInfo(String.class, "b"));
+        assertEquals("valueC", cache.getCacheInfo(String.class, "c"));
+        assertEquals(2, cacheManager.getTotalEntries());
+        verify(listener).onEviction("session1", String.class, "b", "valueB", SessionCacheEvictionListener.Reason.SIZE);
+    }
+
+    @Test
+    public void setCacheInfo_globalBytesExceeded_oldestEntryOfOtherSessionEvicted() {
+        List<String> rows = new ArrayList<String>();
+        for (int i = 0; i < 100; i++) {
+            rows.add("row number " + i);
+        }
+        long rowsSize = CacheSizeEstimator.estimate(rows);
+        cacheManager.setMaxBytes(rowsSize * 2 + rowsSize / 2);
+
+        SessionCache first = cacheManager.getSessionCache();
+        first.setCacheInfo(List.class, "rows", rows);
+        touch(first, "rows", 1000);
+        inSession("session2");
+        SessionCache second = cacheManager.getSessionCache();
+        second.setCacheInfo(List.class, "rows", new ArrayList<String>(rows));
+        second.setCacheInfo(List.class, "moreRows", new ArrayList<String>(rows));
+
+        assertNull(first.getCacheInfo(List.class, "rows"));
+        assertEquals(rows, second.getCacheInfo(List.class, "rows"));
+        assertEquals(rowsSize * 2, cacheManager.getTotalBytes());
+        verify(listener).onEviction("session1", List.class, "rows", rows, SessionCacheEvictionListener.Reason.SIZE);
+    }
+
+    @Test
+    public void getSessionCache_expiredSession_replacedOnAccess() {
+        SessionCacheImpl cache = (SessionCacheImpl) cacheManager.getSessionCache();
+        cache.setCacheInfo(String.class, "a", "valueA");
+        cache.setLastInteraction(System.currentTimeMillis() - 601000);
+
+        SessionCache renewed = cacheManager.getSessionCache();
+
+        assertNotSame(cache, renewed);
+        assertNull(renewed.getCacheInfo(String.class, "a"));
+        assertEquals(0, cacheManager.getTotalEntries());
+        assertEquals(0, cacheManager.getTotalBytes());
+        verify(listener).onEviction("session1", String.class, "a", "valueA", SessionCacheEvictionListener.Reason.EXPIRED);
+    }
+
+    @Test
+    public void getSessionCache_activeSession_sameCacheReturned() {
+        assertSame(cacheManager.getSessionCache(), cacheManager.getSessionCache());
+    }
+
+    @Test
+    public void clear_entriesRemovedWithoutNotification() {
+        SessionCache cache = cacheManager.getSessionCache();
+        cache.setCacheInfo(String.class, "a", "valueA");
+        cache.setCacheInfo(String.class, "a", "valueB");
+
+        cacheManager.clearCache();
+
+        assertEquals(0, cacheManager.getTotalEntries());
+        assertEquals(0, cacheManager.getTotalBytes());
+        verifyZeroInteractions(listener);
+    }
+
+    @Test
+    public void getBytesByType_sumsEstimatedSizesPerType() {
+        SessionCache cache = cacheManager.getSessionCache();
+        cache.setCacheInfo(String.class, "a", "valueA");
+        cache.setCacheInfo(String.class, "b", "valueB");
+        cache.setCacheInfo(List.class, "list", Arrays.asList("x", "y"));
+
+        Map<String, Long> bytesByType = cacheManager.getBytesByType();
+
+        assertEquals(Long.valueOf(CacheSizeEstimator.estimate("valueA") * 2), bytesByType.get("String"));
+        assertEquals(Long.valueOf(CacheSizeEstimator.estimate(Arrays.asList("x", "y"))), bytesByType.get("List"));
+        assertEquals(Long.valueOf(2), cacheManager.getEntriesByType().get("String"));
+        assertTrue(cacheManager.getTotalBytes() > 0);
+    }
+
+    private void inSession(String sessionId) {
+        when(requestAttributes.getSessionId()).thenReturn(sessionId);
+    }
+
+    private void touch(SessionCache cache, String lookupKey, long ageMillis) {
+        for (SessionCacheImpl.CacheEntry entry : ((SessionCacheImpl) cache).getEntries()) {
+            if (lookupKey.equals(entry.getKey().getLookupKey())) {
+                entry.setLastAccess(System.currentTimeMillis() - ageMillis);
+            }
+        }
+    }
+}
@@ -23,14 +23,21 @@ package com.jaspersoft.jasperserver.inputcontrols.cascade.handlers;
 import com.jaspersoft.jasperserver.api.engine.common.service.ReportInputControlInformation;
 import com.jaspersoft.jasperserver.api.metadata.common.domain.InputControl;
 import com.jaspersoft.jasperserver.api.metadata.common.domain.ListOfValuesItem;
+import com.jaspersoft.jasperserver.api.metadata.common.domain.Query;
+import com.jaspersoft.jasperserver.api.metadata.common.domain.ResourceReference;
+import com.jaspersoft.jasperserver.api.metadata.jdbc.LimitOffsetSqlPagingStrategy;
+import com.jaspersoft.jasperserver.inputcontrols.cascade.CachedEngineService;
 import com.jaspersoft.jasperserver.inputcontrols.cascade.CascadeResourceNotFoundException;
 import com.jaspersoft.jasperserver.inputcontrols.cascade.InputControlValidationException;
 import org.apache.commons.collections.OrderedMap;
 import org.apache.commons.collections.map.LinkedMap;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import static com.jaspersoft.jasperserver.inputcontrols.cascade.handlers.InputControlHandler.NOTHING_SUBSTITUTION_LABEL;
 import static com.jaspersoft.jasperserver.inputcontrols.cascade.handlers.InputControlHandler.NOTHING_SUBSTITUTION_VALUE;
@@ -140,4 +147,35 @@ public class QueryValuesLoaderTest {
 
     }
 
+    @Test
+    public void loadPagedValues_firstPage_nothingValueTakesOneRowOfLimit() throws CascadeResourceNotFoundException {
+        InputControl inputControl = mock(InputControl.class);
+        ReportInputControlInformation info = mock(ReportInputControlInformation.class);
+        Query query = mock(Query.class);
+        CachedEngineService cachedEngineService = mock(CachedEngineService.class);
+        valuesLoader.cachedEngineService = cachedEngineService;
+        doReturn("state").when(inputControl).getName();
+        doReturn("code").when(inputControl).getQueryValueColumn();
+        doReturn(new String[]{"code"}).when(inputControl).getQueryVisibleColumns();
+        doReturn("select code from states").when(query).getSql();
+
+        OrderedMap page = new LinkedMap();
+        page.put("CA", new Object[]{"CA"});
+        ArgumentCaptor<Map> parameters = ArgumentCaptor.forClass(Map.class);
+        doReturn(page).when(cachedEngineService).executeQuery(any(), any(ResourceReference.class), eq("code"), any(String[].class),
+                any(), parameters.capture(), any(Map.class), eq("state"));
+        doReturn("").when(valuesLoader).extractLabelFromResults(any(InputControl.class), any(ReportInputControlInformation.class), any(Object[].class), any(StringBuilder.class));
+
+        Map<String, Object> requestParameters = new HashMap<String, Object>();
+        requestParameters.put("state_limit", "2");
+        List<ListOfValuesItem> actualResult = valuesLoader.loadPagedValues(inputControl, query, null, requestParameters,
+                new HashMap<String, Object>(), new HashMap<String, Class<?>>(), info, true, new LimitOffsetSqlPagingStrategy());
+
+        assertEquals(2, actualResult.size());
+        assertEquals(NOTHING_SUBSTITUTION_VALUE, actualResult.get(0).getValue());
+        assertEquals("CA", actualResult.get(1).getValue());
+        assertEquals(0, parameters.getValue().get(QueryValuesLoader.PAGE_OFFSET_PARAMETER));
+        assertEquals(1, parameters.getValue().get(QueryValuesLoader.PAGE_LIMIT_PARAMETER));
+    }
+
 }
@@ -35,6 +35,7 @@ public interface RestConstants {
     String HEADER_NEXT_OFFSET = "Next-Offset";
     String HEADER_RESULT_COUNT = "Result-Count";
     String HEADER_TOTAL_COUNT = "Total-Count";
+    String HEADER_CONTINUATION_TOKEN = "Continuation-Token";
 
     String HEADER_ACCEPT_TIMEZONE = JasperServerHttpConstants.HEADER_ACCEPT_TIMEZONE;
 
@@ -42,6 +43,7 @@ public interface RestConstants {
     String QUERY_PARAM_OFFSET = PaginationConstants.PARAM_OFFSET;
     String QUERY_PARAM_LIMIT = PaginationConstants.PARAM_LIMIT;
     String QUERY_PARAM_SORT_BY = "sortBy";
+    String QUERY_PARAM_CONTINUATION_TOKEN = "continuationToken";
     String QUERY_PARAM_EXPANDED = "expanded";
     String QUERY_PARAM_EXPAND_TYPE = "expandType";
     String QUERY_PARAM_DRY_RUN = "dry-run";
@@ -0,0 +1,43 @@
+/*
+ * Copyright (C) 2005 - 2020 TIBCO Software Inc. All rights reserved.
+ * http://www.jaspersoft.com.
+ *
+ * Unless you have purchased a commercial license agreement from Jaspersoft,
+ * the following license terms apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.jaspersoft.jasperserver.jaxrs.common;
+
+import com.jaspersoft.jasperserver.remote.exception.TaskRejectedException;
+import org.springframework.stereotype.Component;
+
+import javax.ws.rs.core.Response;
+import javax.ws.rs.ext.ExceptionMapper;
+import javax.ws.rs.ext.Provider;
+
+/**
+ * Maps asynchronous tasks rejected by the saturated executor to HTTP 503 (Service Unavailable).
+ *
+ * @version $Id$
+ */
+@Provider
+@Component
+public class TaskRejectedExceptionMapper implements ExceptionMapper<TaskRejectedException> {
+
+    @Override
+    public Response toResponse(TaskRejectedException exception) {
+        return Response.status(Response.Status.SERVICE_UNAVAILABLE).entity(exception.getErrorDescriptor()).build();
+    }
+}
@@ -24,6 +24,9 @@ import com.jaspersoft.jasperserver.remote.services.ReportOutputResource;
 import com.jaspersoft.jasperserver.remote.services.RunReportService;
 
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.IOException;
+import java.io.OutputStream;
 
 /**
  * <p></p>
@@ -51,13 +54,23 @@ public class ReportExecutionHelper {
         return buildResponseFromOutputResource(outputResource, false);
     }
 
-    public static Response buildResponseFromOutputResource(ReportOutputResource outputResource, Boolean suppressContentDisposition) {
+    public static Response buildResponseFromOutputResource(final ReportOutputResource outputResource, Boolean suppressContentDisposition) {
         final Response.ResponseBuilder responseBuilder;
-        if (outputResource.getData() == null || outputResource.getData().length == 0) {
+        if (outputResource.getDataLength() == 0) {
             responseBuilder = Response.noContent();
         } else {
             String contentType = outputResource.getContentType();
-            responseBuilder = Response.ok(outputResource.getData(), contentType);
+            if (outputResource.getDataContainer() != null) {
+                // stream the output from its container, possibly from a temporary file, without a heap copy
+                responseBuilder = Response.ok(new StreamingOutput() {
+                    @Override
+                    public void write(OutputStream output) throws IOException {
+                        outputResource.writeData(output);
+                    }
+                }, contentType).header("Content-Length", outputResource.getDataLength());
+            } else {
+                responseBuilder = Response.ok(outputResource.getData(), contentType);
+            }
             if (!suppressContentDisposition && outputResource.getFileName() != null && !"text/html".equals(contentType)) {
                 responseBuilder.header("Content-Disposition", "attachment; filename=\"" + outputResource.getFileName() + "\"");
             }
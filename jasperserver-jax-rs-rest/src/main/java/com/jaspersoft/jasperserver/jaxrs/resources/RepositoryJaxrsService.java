@@ -121,6 +121,7 @@ public class RepositoryJaxrsService {
             @QueryParam(RestConstants.QUERY_PARAM_EXPANDED) Boolean expanded,
             @QueryParam(RestConstants.QUERY_PARAM_EXPAND_TYPE) Set<String> expandTypes,
             @QueryParam("forceFullPage") @DefaultValue("false") Boolean forceFullPage,
+            @QueryParam(RestConstants.QUERY_PARAM_CONTINUATION_TOKEN) String continuationToken,
             @HeaderParam(HttpHeaders.ACCEPT)String accept,
             @Context final HttpServletRequest httpServletRequest) throws ErrorDescriptorException, IOException {
 
@@ -144,7 +145,7 @@ public class RepositoryJaxrsService {
                             start, limit,
                             recursive, showHiddenItems,
                             sortBy, accessType, user,
-                            forceFullPage);
+                            forceFullPage, continuationToken);
 
             final int iStart = result.getClientOffset();
             final int iLimit = result.getClientLimit();
@@ -159,19 +160,30 @@ public class RepositoryJaxrsService {
                 response.header(RestConstants.HEADER_START_INDEX, iStart)
                         .header(RestConstants.HEADER_RESULT_COUNT, realResultSize);
 
-                int totalCount = realResultSize;
-                if (isForceTotalCount || iStart == 0 || forceFullPage) {
-                    totalCount = forceFullPage
-                            ? (((realResultSize < iLimit) && !isForceTotalCount) ? realResultSize : result.getTotalCount())
-                            : batchRepositoryService.getResourcesCount(q, folderUri, type, excludeType, excludeFolders, recursive, showHiddenItems, accessType, user);
-                }
+                if (continuationToken != null) {
+                    // keyset pagination does not count all results unless asked to
+                    if (isForceTotalCount) {
+                        response.header(RestConstants.HEADER_TOTAL_COUNT, batchRepositoryService.getResourcesCount(q,
+                                folderUri, type, excludeType, excludeFolders, recursive, showHiddenItems, accessType, user));
+                    }
+                    if (result.getContinuationToken() != null) {
+                        response.header(RestConstants.HEADER_CONTINUATION_TOKEN, result.getContinuationToken());
+                    }
+                } else {
+                    int totalCount = realResultSize;
+                    if (isForceTotalCount || iStart == 0 || forceFullPage) {
+                        totalCount = forceFullPage
+                                ? (((realResultSize < iLimit) && !isForceTotalCount) ? realResultSize : result.getTotalCount())
+                                : batchRepositoryService.getResourcesCount(q, folderUri, type, excludeType, excludeFolders, recursive, showHiddenItems, accessType, user);
+                    }
 
-                if (iStart == 0 || isForceTotalCount || iLimit == 0 || forceFullPage) {
-                    response.header(RestConstants.HEADER_TOTAL_COUNT, totalCount);
-                }
+                    if (iStart == 0 || isForceTotalCount || iLimit == 0 || forceFullPage) {
+                        response.header(RestConstants.HEADER_TOTAL_COUNT, totalCount);
+                    }
 
-                if (forceFullPage && (result.getNextOffset() < result.getTotalCount())) {
-                    response.header(RestConstants.HEADER_NEXT_OFFSET, result.getNextOffset());
+                    if (forceFullPage && (result.getNextOffset() < result.getTotalCount())) {
+                        response.header(RestConstants.HEADER_NEXT_OFFSET, result.getNextOffset());
+                    }
                 }
             } else {
                 response = Response.status(Response.Status.NO_CONTENT);
@@ -91,6 +91,17 @@ public interface BatchRepositoryService {
      */
     RepositorySearchResult<ClientResourceLookup> getResources(String q, String folderUri, List<String> type, List<String> excludeType, List<String> containerType, List<String> excludeFolders, Integer start, Integer limit, Boolean recursive, Boolean showHiddenItems, String sortBy, AccessType accessType, User user, Boolean forceFullPage) throws IllegalParameterValueException, ResourceNotFoundException;
 
+    /**
+     * Searches resources with keyset pagination: the page starts right after the result the token was issued for,
+     * start index is ignored and the total count is not calculated.
+     *
+     * @param continuationToken token returned with the previous page, empty string for the first page,
+     *                          <code>null</code> for offset pagination
+     * @throws IllegalParameterValueException if the token is malformed or the sort order does not support keyset pagination
+     * @see #getResources(String, String, List, List, List, List, Integer, Integer, Boolean, Boolean, String, AccessType, User, Boolean)
+     */
+    RepositorySearchResult<ClientResourceLookup> getResources(String q, String folderUri, List<String> type, List<String> excludeType, List<String> containerType, List<String> excludeFolders, Integer start, Integer limit, Boolean recursive, Boolean showHiddenItems, String sortBy, AccessType accessType, User user, Boolean forceFullPage, String continuationToken) throws IllegalParameterValueException, ResourceNotFoundException;
+
     /**
      * Searches resources
      *
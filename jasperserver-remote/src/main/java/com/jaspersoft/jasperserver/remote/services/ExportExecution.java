@@ -203,6 +203,23 @@ public class ExportExecution {
         }
     }
 
+    /**
+     * Removes the output of a previous run of this export and releases its data, i.e. deletes the temporary file.
+     */
+    public void disposeOutputResource() {
+        ReportOutputResource previousOutputResource;
+        lock.lock();
+        try {
+            previousOutputResource = outputResource;
+            outputResource = null;
+        } finally {
+            lock.unlock();
+        }
+        if (previousOutputResource != null) {
+            previousOutputResource.dispose();
+        }
+    }
+
     @XmlTransient
     public Map<String, ReportOutputResource> getAttachments() {
         lock.lock();
@@ -20,8 +20,14 @@
  */
 package com.jaspersoft.jasperserver.remote.services;
 
+import com.jaspersoft.jasperserver.api.metadata.common.domain.DataContainer;
+import com.jaspersoft.jasperserver.api.metadata.common.domain.FileBufferedDataContainer;
+import com.jaspersoft.jasperserver.api.metadata.common.domain.util.DataContainerStreamUtil;
+
 import javax.xml.bind.annotation.XmlRootElement;
 import javax.xml.bind.annotation.XmlTransient;
+import java.io.IOException;
+import java.io.OutputStream;
 
 /**
  * @author Yaroslav.Kovalchyk
@@ -32,6 +38,7 @@ public class ReportOutputResource {
 
     private String contentType;
     private byte[] data;
+    private DataContainer dataContainer;
     private String fileName;
     private String pages;
     private Boolean outputFinal;
@@ -64,8 +71,16 @@ public class ReportOutputResource {
         return this;
     }
 
+    /**
+     * Returns the output as a byte array.
+     * For output held in a data container this reads the whole container into memory,
+     * {@link #writeData(OutputStream)} should be used instead where possible.
+     */
     @XmlTransient
     public byte[] getData() {
+        if (data == null && dataContainer != null) {
+            return dataContainer.getData();
+        }
         return data;
     }
 
@@ -74,6 +89,47 @@ public class ReportOutputResource {
         return this;
     }
 
+    @XmlTransient
+    public DataContainer getDataContainer() {
+        return dataContainer;
+    }
+
+    /**
+     * Sets a container that holds the output, to be used for large outputs that
+     * can spill to temporary files instead of being kept in a byte array.
+     */
+    public ReportOutputResource setDataContainer(DataContainer dataContainer) {
+        this.dataContainer = dataContainer;
+        return this;
+    }
+
+    @XmlTransient
+    public int getDataLength() {
+        if (data != null) {
+            return data.length;
+        }
+        return dataContainer != null && dataContainer.hasData() ? dataContainer.dataSize() : 0;
+    }
+
+    public void writeData(OutputStream out) throws IOException {
+        if (data != null) {
+            out.write(data);
+        } else if (dataContainer instanceof FileBufferedDataContainer) {
+            ((FileBufferedDataContainer) dataContainer).writeData(out);
+        } else if (dataContainer != null) {
+            DataContainerStreamUtil.pipeDataAndCloseInput(dataContainer.getInputStream(), out);
+        }
+    }
+
+    /**
+     * Releases the data container of the output, if any.
+     */
+    public void dispose() {
+        if (dataContainer != null) {
+            dataContainer.dispose();
+        }
+    }
+
     public Boolean getOutputFinal() {
         return outputFinal;
     }
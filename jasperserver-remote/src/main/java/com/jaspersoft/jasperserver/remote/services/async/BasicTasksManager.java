@@ -23,6 +23,7 @@ package com.jaspersoft.jasperserver.remote.services.async;
 
 import com.jaspersoft.jasperserver.dto.importexport.State;
 import com.jaspersoft.jasperserver.remote.exception.NoSuchTaskException;
+import com.jaspersoft.jasperserver.remote.exception.TaskRejectedException;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.Resource;
@@ -32,6 +33,7 @@ import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
 
 /*
 *  @author inesterenko
@@ -74,7 +76,7 @@ public class BasicTasksManager implements TasksManager {
         task.setUniqueId(uuid);
         state.setId(uuid);
         tasks.put(uuid, task);
-        task.start(executor);
+        start(task);
         return state;
     }
 
@@ -87,10 +89,30 @@ public class BasicTasksManager implements TasksManager {
         }
         state.setPhase(Task.INPROGRESS);
         state.setError(null);
-        task.start(executor);
+        start(task);
         return state;
     }
 
+    /**
+     * Starts the task, a task rejected by the saturated executor is failed and dropped.
+     *
+     * @throws TaskRejectedException if the executor rejects the task
+     */
+    protected void start(Task task) {
+        try {
+            task.start(executor);
+        } catch (RejectedExecutionException e) {
+            State state = task.getState();
+            TaskRejectedException rejected = new TaskRejectedException(state.getId());
+            state.setPhase(Task.FAILED);
+            state.setError(rejected.getErrorDescriptor());
+            // cleans up what the task prepared, as finishTask does
+            task.stop();
+            tasks.remove(state.getId());
+            throw rejected;
+        }
+    }
+
     @Override
     public Set<String> getTaskIds() {
         return Collections.unmodifiableSet(tasks.keySet());
@@ -61,6 +61,7 @@ public interface TasksManager {
      *
      * @param task- contains some time consuming action
      * @return uuid for task
+     * @throws com.jaspersoft.jasperserver.remote.exception.TaskRejectedException if the task can't be started now
      */
 
     State startTask(Task task);
@@ -71,6 +72,7 @@ public interface TasksManager {
      *
      * @param task- contains some time consuming action
      * @return state of the task
+     * @throws com.jaspersoft.jasperserver.remote.exception.TaskRejectedException if the task can't be started now
      */
 
     State restartTask(Task task);
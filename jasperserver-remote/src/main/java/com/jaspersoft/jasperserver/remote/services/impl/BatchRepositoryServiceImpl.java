@@ -108,6 +108,10 @@ public class BatchRepositoryServiceImpl implements BatchRepositoryService {
 
     @Override
     public RepositorySearchResult<ClientResourceLookup> getResourcesForLookupClass(String lookupClass, String q, String folderUri, List<String> type, List<String> excludeType, List<String> containerType, List<String> excludeFolders, Integer start, Integer limit, Boolean recursive, Boolean showHiddenItems, String sortBy, AccessType accessType, User user, Boolean forceFullPage) throws IllegalParameterValueException, ResourceNotFoundException {
+        return getResourcesForLookupClass(lookupClass, q, folderUri, type, excludeType, containerType, excludeFolders, start, limit, recursive, showHiddenItems, sortBy, accessType, user, forceFullPage, null);
+    }
+
+    protected RepositorySearchResult<ClientResourceLookup> getResourcesForLookupClass(String lookupClass, String q, String folderUri, List<String> type, List<String> excludeType, List<String> containerType, List<String> excludeFolders, Integer start, Integer limit, Boolean recursive, Boolean showHiddenItems, String sortBy, AccessType accessType, User user, Boolean forceFullPage, String continuationToken) throws IllegalParameterValueException, ResourceNotFoundException {
         SearchMode mode = (recursive == null || recursive) ? SearchMode.SEARCH : SearchMode.BROWSE;
         RepositorySearchConfiguration configuration = getConfiguration(mode);
 
@@ -115,6 +119,7 @@ public class BatchRepositoryServiceImpl implements BatchRepositoryService {
                 .setLookupClass(lookupClass)
                 .setMaxCount(limit != null ? limit : configuration.getItemsPerPage())
                 .setForceFullPage(forceFullPage != null ? forceFullPage : false)
+                .setContinuationToken(continuationToken)
                 .setFolderUri(folderUri != null ? folderUri : Folder.SEPARATOR)
                 .setContainerResourceTypes(containerType)
                 .setStartIndex(start != null ? start : 0)
@@ -133,9 +138,14 @@ public class BatchRepositoryServiceImpl implements BatchRepositoryService {
 
     @Override
     public RepositorySearchResult<ClientResourceLookup> getResources(String q, String folderUri, List<String> type, List<String> excludeType, List<String> containerType, List<String> excludeFolders, Integer start, Integer limit, Boolean recursive, Boolean showHiddenItems, String sortBy, AccessType accessType, User user, Boolean forceFullPage) throws IllegalParameterValueException, ResourceNotFoundException {
+        return getResources(q, folderUri, type, excludeType, containerType, excludeFolders, start, limit, recursive, showHiddenItems, sortBy, accessType, user, forceFullPage, null);
+    }
+
+    @Override
+    public RepositorySearchResult<ClientResourceLookup> getResources(String q, String folderUri, List<String> type, List<String> excludeType, List<String> containerType, List<String> excludeFolders, Integer start, Integer limit, Boolean recursive, Boolean showHiddenItems, String sortBy, AccessType accessType, User user, Boolean forceFullPage, String continuationToken) throws IllegalParameterValueException, ResourceNotFoundException {
     	return getResourcesForLookupClass(
     			(containerType==null || containerType.isEmpty()) && type!=null && type.size()==1 && type.get(0).equals("folder")?RepoFolder.class.getName():null,
-    			q, folderUri, type, excludeType, containerType, excludeFolders, start, limit, recursive, showHiddenItems, sortBy, accessType, user, forceFullPage);
+    			q, folderUri, type, excludeType, containerType, excludeFolders, start, limit, recursive, showHiddenItems, sortBy, accessType, user, forceFullPage, continuationToken);
     }
 
     public RepositorySearchResult<ClientResourceLookup> getResources(RepositorySearchCriteria criteria) throws IllegalParameterValueException, ResourceNotFoundException {
@@ -144,9 +154,16 @@ public class BatchRepositoryServiceImpl implements BatchRepositoryService {
             return RepositorySearchAccumulator.EMPTY_RESULT;
         }
 
-        if (criteria.isForceFullPage()) {
-            RepositorySearchResult<ResourceLookup> result =
-                    repositorySearchService.getLookupsForFullPage(null, criteria);
+        if (criteria.isForceFullPage() || criteria.getContinuationToken() != null) {
+            RepositorySearchResult<ResourceLookup> result;
+            try {
+                result = repositorySearchService.getLookupsForFullPage(null, criteria);
+            } catch (IllegalArgumentException e) {
+                if (criteria.getContinuationToken() == null) {
+                    throw e;
+                }
+                throw new IllegalParameterValueException("continuationToken", criteria.getContinuationToken(), e);
+            }
 
             return result.transform(new ItemProcessor<ResourceLookup, ClientResourceLookup>() {
                 @Override
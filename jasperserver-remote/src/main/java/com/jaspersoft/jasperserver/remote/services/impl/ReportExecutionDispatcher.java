@@ -0,0 +1,507 @@
+/*
+ * Copyright (C) 2005 - 2020 TIBCO Software Inc. All rights reserved.
+ * http://www.jaspersoft.com.
+ *
+ * Unless you have purchased a commercial license agreement from Jaspersoft,
+ * the following license terms apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.jaspersoft.jasperserver.remote.services.impl;
+
+import com.jaspersoft.jasperserver.api.logging.audit.context.RequestType;
+import com.jaspersoft.jasperserver.api.logging.audit.context.RequestTypeListener;
+import com.jaspersoft.jasperserver.api.logging.context.LoggingContextProvider;
+import com.jaspersoft.jasperserver.api.logging.diagnostic.domain.DiagnosticAttribute;
+import com.jaspersoft.jasperserver.api.logging.diagnostic.helper.DiagnosticAttributeBuilder;
+import com.jaspersoft.jasperserver.api.logging.diagnostic.service.Diagnostic;
+import com.jaspersoft.jasperserver.api.logging.diagnostic.service.DiagnosticCallback;
+import com.jaspersoft.jasperserver.api.metadata.user.domain.TenantQualified;
+import com.jaspersoft.jasperserver.remote.exception.ReportExecutionRejectedException;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Admission control for report executions and exports started through {@link RunReportServiceImpl}.
+ * <p/>
+ * Submitted tasks are queued per {@link PriorityClass} and handed to the underlying executor
+ * when a slot is free. Report executions (interactive and asynchronous) and exports use separate
+ * slot groups, so that exports waiting for their report execution can never hold the slots
+ * the report execution needs. Within a slot group, the number of running tasks is limited
+ * globally, per tenant and per user; queued tasks are started in priority order, skipping tasks
+ * of users or tenants whose quota is used up.
+ * <p/>
+ * Tasks are rejected with {@link ReportExecutionRejectedException} when the queue, or the part
+ * of the queue held by the requesting user, is full. A queued task which the executor refuses
+ * to start is dropped and its {@link RejectionListener} is notified.
+ * <p/>
+ * Queued tasks are started from the thread of the task which frees the slot, so the request type
+ * of the submitting request is captured on submit and set again when the task runs.
+ *
+ * @version $Id$
+ */
+public class ReportExecutionDispatcher implements Diagnostic {
+    private static final Log log = LogFactory.getLog(ReportExecutionDispatcher.class);
+
+    public enum PriorityClass {
+        /** synchronous executions, a client is waiting for the result */
+        INTERACTIVE(SlotGroup.REPORT),
+        /** asynchronous executions, the client polls for the result */
+        ASYNC(SlotGroup.REPORT),
+        /** exports of report executions */
+        EXPORT(SlotGroup.EXPORT);
+
+        private final SlotGroup slotGroup;
+
+        PriorityClass(SlotGroup slotGroup) {
+            this.slotGroup = slotGroup;
+        }
+    }
+
+    private enum SlotGroup {
+        REPORT, EXPORT
+    }
+
+    /**
+     * Notified when a task is dropped because the executor rejects it.
+     */
+    public interface RejectionListener {
+        void rejected(ReportExecutionRejectedException exception);
+    }
+
+    private Executor executor;
+    private RequestTypeListener requestTypeListener;
+    private LoggingContextProvider loggingContextProvider;
+    private int maxRunningReports = 20;
+    private int maxRunningExports = 20;
+    private int maxRunningPerTenant = 10;
+    private int maxRunningPerUser = 4;
+    private int maxQueueSize = 1000;
+    private int maxQueuedPerUser = 100;
+
+    private final Object lock = new Object();
+    private final Map<PriorityClass, Deque<Task>> queues = new EnumMap<PriorityClass, Deque<Task>>(PriorityClass.class);
+    private final Map<SlotGroup, SlotCounters> slots = new EnumMap<SlotGroup, SlotCounters>(SlotGroup.class);
+    private final Map<String, Integer> queuedByUser = new HashMap<String, Integer>();
+    private int queuedCount;
+
+    private final AtomicLong startedCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    public ReportExecutionDispatcher() {
+        for (PriorityClass priorityClass : PriorityClass.values()) {
+            queues.put(priorityClass, new ArrayDeque<Task>());
+        }
+        for (SlotGroup slotGroup : SlotGroup.values()) {
+            slots.put(slotGroup, new SlotCounters());
+        }
+    }
+
+    /**
+     * Queues a task for the current user and starts it as soon as the quotas allow.
+     *
+     * @param requestId the report execution or export ID, used to cancel the task while it is queued
+     * @param priorityClass the priority class of the task
+     * @param command the task
+     * @throws ReportExecutionRejectedException if the queue or the user's share of the queue is full
+     */
+    public void submit(String requestId, PriorityClass priorityClass, Runnable command)
+            throws ReportExecutionRejectedException {
+        submit(requestId, priorityClass, command, null);
+    }
+
+    /**
+     * Queues a task for the current user and starts it as soon as the quotas allow.
+     *
+     * @param requestId the report execution or export ID, used to cancel the task while it is queued
+     * @param priorityClass the priority class of the task
+     * @param command the task
+     * @param rejectionListener notified if the executor rejects the task, can be <code>null</code>
+     * @throws ReportExecutionRejectedException if the queue or the user's share of the queue is full
+     */
+    public void submit(String requestId, PriorityClass priorityClass, Runnable command,
+            RejectionListener rejectionListener) throws ReportExecutionRejectedException {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        String tenantId = getTenantId(authentication);
+        String userKey = (tenantId == null ? "" : tenantId) + "|"
+                + (authentication == null ? "" : authentication.getName());
+        RequestType requestType = requestTypeListener == null ? null : requestTypeListener.getRequestType();
+        Task task = new Task(requestId, priorityClass, tenantId == null ? "" : tenantId, userKey, command,
+                requestType, rejectionListener);
+
+        List<Task> startable;
+        synchronized (lock) {
+            if (queuedCount >= maxQueueSize) {
+                rejectedCount.incrementAndGet();
+                throw new ReportExecutionRejectedException(
+                        "Too many report executions are waiting, try again later", maxQueueSize);
+            }
+            if (count(queuedByUser, userKey) >= maxQueuedPerUser) {
+                rejectedCount.incrementAndGet();
+                throw new ReportExecutionRejectedException(
+                        "Too many report executions of the user are waiting, try again later", maxQueuedPerUser);
+            }
+
+            queues.get(priorityClass).addLast(task);
+            increment(queuedByUser, userKey);
+            ++queuedCount;
+
+            startable = pollStartable();
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug("Queued " + priorityClass + " task " + requestId + " for " + userKey);
+        }
+        start(startable);
+    }
+
+    /**
+     * Removes a task that did not start yet from the queue.
+     *
+     * @return <code>true</code> if the task was queued and is now removed
+     */
+    public boolean cancel(String requestId) {
+        synchronized (lock) {
+            for (Deque<Task> queue : queues.values()) {
+                for (Iterator<Task> it = queue.iterator(); it.hasNext(); ) {
+                    Task task = it.next();
+                    if (task.requestId.equals(requestId)) {
+                        it.remove();
+                        dequeued(task);
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    protected List<Task> pollStartable() {
+        List<Task> startable = null;
+        for (Deque<Task> queue : queues.values()) {
+            for (Iterator<Task> it = queue.iterator(); it.hasNext(); ) {
+                Task task = it.next();
+                SlotCounters counters = slots.get(task.priorityClass.slotGroup);
+                if (counters.running >= getMaxRunning(task.priorityClass.slotGroup)) {
+                    // no more slots in the group, lower priority tasks of the group can't start either
+                    break;
+                }
+                if (count(counters.runningByTenant, task.tenantId) >= maxRunningPerTenant
+                        || count(counters.runningByUser, task.userKey) >= maxRunningPerUser) {
+                    continue;
+                }
+
+                it.remove();
+                dequeued(task);
+                ++counters.running;
+                increment(counters.runningByTenant, task.tenantId);
+                increment(counters.runningByUser, task.userKey);
+
+                if (startable == null) {
+                    startable = new ArrayList<Task>();
+                }
+                startable.add(task);
+            }
+        }
+        return startable;
+    }
+
+    protected void start(List<Task> startable) {
+        if (startable == null) {
+            return;
+        }
+
+        for (Task task : startable) {
+            startedCount.incrementAndGet();
+            try {
+                executor.execute(task);
+            } catch (RejectedExecutionException e) {
+                log.warn("Report execution task " + task.requestId + " could not be started: " + e.getMessage());
+                rejectedCount.incrementAndGet();
+                task.rejected();
+                finished(task);
+            }
+        }
+    }
+
+    protected void finished(Task task) {
+        List<Task> startable;
+        synchronized (lock) {
+            SlotCounters counters = slots.get(task.priorityClass.slotGroup);
+            --counters.running;
+            decrement(counters.runningByTenant, task.tenantId);
+            decrement(counters.runningByUser, task.userKey);
+
+            startable = pollStartable();
+        }
+        start(startable);
+    }
+
+    private void dequeued(Task task) {
+        decrement(queuedByUser, task.userKey);
+        --queuedCount;
+    }
+
+    private int getMaxRunning(SlotGroup slotGroup) {
+        return slotGroup == SlotGroup.EXPORT ? maxRunningExports : maxRunningReports;
+    }
+
+    protected String getTenantId(Authentication authentication) {
+        if (authentication != null && authentication.getPrincipal() instanceof TenantQualified) {
+            return ((TenantQualified) authentication.getPrincipal()).getTenantId();
+        }
+        return null;
+    }
+
+    private static int count(Map<String, Integer> counts, String key) {
+        Integer count = counts.get(key);
+        return count == null ? 0 : count;
+    }
+
+    private static void increment(Map<String, Integer> counts, String key) {
+        counts.put(key, count(counts, key) + 1);
+    }
+
+    private static void decrement(Map<String, Integer> counts, String key) {
+        int count = count(counts, key) - 1;
+        if (count > 0) {
+            counts.put(key, count);
+        } else {
+            counts.remove(key);
+        }
+    }
+
+    public int getQueuedCount(PriorityClass priorityClass) {
+        synchronized (lock) {
+            return queues.get(priorityClass).size();
+        }
+    }
+
+    public int getQueuedCount() {
+        synchronized (lock) {
+            return queuedCount;
+        }
+    }
+
+    public int getRunningReportCount() {
+        synchronized (lock) {
+            return slots.get(SlotGroup.REPORT).running;
+        }
+    }
+
+    public int getRunningExportCount() {
+        synchronized (lock) {
+            return slots.get(SlotGroup.EXPORT).running;
+        }
+    }
+
+    public long getStartedCount() {
+        return startedCount.get();
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    @Override
+    public Map<DiagnosticAttribute, DiagnosticCallback> getDiagnosticData() {
+        return new DiagnosticAttributeBuilder()
+                .addDiagnosticAttribute(DiagnosticAttributeBuilder.REPORT_EXECUTIONS_RUNNING, new DiagnosticCallback<Integer>() {
+                    @Override
+                    public Integer getDiagnosticAttributeValue() {
+                        return getRunningReportCount();
+                    }
+                })
+                .addDiagnosticAttribute(DiagnosticAttributeBuilder.REPORT_EXPORTS_RUNNING, new DiagnosticCallback<Integer>() {
+                    @Override
+                    public Integer getDiagnosticAttributeValue() {
+                        return getRunningExportCount();
+                    }
+                })
+                .addDiagnosticAttribute(DiagnosticAttributeBuilder.REPORT_EXECUTIONS_QUEUED_INTERACTIVE, new DiagnosticCallback<Integer>() {
+                    @Override
+                    public Integer getDiagnosticAttributeValue() {
+                        return getQueuedCount(PriorityClass.INTERACTIVE);
+                    }
+                })
+                .addDiagnosticAttribute(DiagnosticAttributeBuilder.REPORT_EXECUTIONS_QUEUED_ASYNC, new DiagnosticCallback<Integer>() {
+                    @Override
+                    public Integer getDiagnosticAttributeValue() {
+                        return getQueuedCount(PriorityClass.ASYNC);
+                    }
+                })
+                .addDiagnosticAttribute(DiagnosticAttributeBuilder.REPORT_EXPORTS_QUEUED, new DiagnosticCallback<Integer>() {
+                    @Override
+                    public Integer getDiagnosticAttributeValue() {
+                        return getQueuedCount(PriorityClass.EXPORT);
+                    }
+                })
+                .addDiagnosticAttribute(DiagnosticAttributeBuilder.REPORT_EXECUTIONS_REJECTED, new DiagnosticCallback<Long>() {
+                    @Override
+                    public Long getDiagnosticAttributeValue() {
+                        return getRejectedCount();
+                    }
+                }).build();
+    }
+
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    public void setRequestTypeListener(RequestTypeListener requestTypeListener) {
+        this.requestTypeListener = requestTypeListener;
+    }
+
+    public void setLoggingContextProvider(LoggingContextProvider loggingContextProvider) {
+        this.loggingContextProvider = loggingContextProvider;
+    }
+
+    public int getMaxRunningReports() {
+        return maxRunningReports;
+    }
+
+    /**
+     * Sets the maximum number of interactive and asynchronous report executions running at the same time.
+     */
+    public void setMaxRunningReports(int maxRunningReports) {
+        this.maxRunningReports = maxRunningReports;
+    }
+
+    public int getMaxRunningExports() {
+        return maxRunningExports;
+    }
+
+    public void setMaxRunningExports(int maxRunningExports) {
+        this.maxRunningExports = maxRunningExports;
+    }
+
+    public int getMaxRunningPerTenant() {
+        return maxRunningPerTenant;
+    }
+
+    /**
+     * Sets the maximum number of report executions, respectively exports, of a tenant running at the same time.
+     */
+    public void setMaxRunningPerTenant(int maxRunningPerTenant) {
+        this.maxRunningPerTenant = maxRunningPerTenant;
+    }
+
+    public int getMaxRunningPerUser() {
+        return maxRunningPerUser;
+    }
+
+    /**
+     * Sets the maximum number of report executions, respectively exports, of a user running at the same time.
+     */
+    public void setMaxRunningPerUser(int maxRunningPerUser) {
+        this.maxRunningPerUser = maxRunningPerUser;
+    }
+
+    public int getMaxQueueSize() {
+        return maxQueueSize;
+    }
+
+    public void setMaxQueueSize(int maxQueueSize) {
+        this.maxQueueSize = maxQueueSize;
+    }
+
+    public int getMaxQueuedPerUser() {
+        return maxQueuedPerUser;
+    }
+
+    public void setMaxQueuedPerUser(int maxQueuedPerUser) {
+        this.maxQueuedPerUser = maxQueuedPerUser;
+    }
+
+    private static class SlotCounters {
+        private int running;
+        private final Map<String, Integer> runningByTenant = new HashMap<String, Integer>();
+        private final Map<String, Integer> runningByUser = new HashMap<String, Integer>();
+    }
+
+    protected class Task implements Runnable {
+        private final String requestId;
+        private final PriorityClass priorityClass;
+        private final String tenantId;
+        private final String userKey;
+        private final Runnable command;
+        private final RequestType requestType;
+        private final RejectionListener rejectionListener;
+
+        private Task(String requestId, PriorityClass priorityClass, String tenantId, String userKey, Runnable command,
+                RequestType requestType, RejectionListener rejectionListener) {
+            this.requestId = requestId;
+            this.priorityClass = priorityClass;
+            this.tenantId = tenantId;
+            this.userKey = userKey;
+            this.command = command;
+            this.requestType = requestType;
+            this.rejectionListener = rejectionListener;
+        }
+
+        @Override
+        public void run() {
+            RequestType previousRequestType = null;
+            if (requestTypeListener != null) {
+                previousRequestType = requestTypeListener.getRequestType();
+                requestTypeListener.setRequestType(requestType);
+            }
+            try {
+                command.run();
+            } finally {
+                try {
+                    // the events of this task must not be mixed with the ones of the task started next on this thread
+                    if (loggingContextProvider != null) {
+                        loggingContextProvider.flushContext();
+                    }
+                    if (requestTypeListener != null) {
+                        requestTypeListener.setRequestType(previousRequestType);
+                    }
+                } finally {
+                    finished(this);
+                }
+            }
+        }
+
+        private void rejected() {
+            if (rejectionListener == null) {
+                return;
+            }
+            try {
+                rejectionListener.rejected(new ReportExecutionRejectedException(
+                        "The server is too busy to run the report execution, try again later"));
+            } catch (RuntimeException e) {
+                log.error("Failed to notify the rejection of report execution task " + requestId, e);
+            }
+        }
+    }
+}
@@ -22,7 +22,9 @@ package com.jaspersoft.jasperserver.remote.services.impl;
 
 import com.jaspersoft.jasperserver.api.engine.jasperreports.domain.impl.ReportUnitResult;
 import com.jaspersoft.jasperserver.dto.executions.ExecutionStatus;
+import com.jaspersoft.jasperserver.remote.services.ExportExecution;
 import com.jaspersoft.jasperserver.remote.services.ReportExecution;
+import com.jaspersoft.jasperserver.remote.services.ReportOutputResource;
 import net.sf.ehcache.Cache;
 import net.sf.ehcache.CacheException;
 import net.sf.ehcache.CacheManager;
@@ -143,6 +145,7 @@ public class RunReportServiceCacheFactoryBean implements FactoryBean<Cache>, Ini
             if (log.isDebugEnabled()) {
                 log.debug("33816 DEBUG: remove element: " + element.getObjectKey());
             }
+            disposeExportOutputs(element);
         }
 
         @Override
@@ -153,7 +156,8 @@ public class RunReportServiceCacheFactoryBean implements FactoryBean<Cache>, Ini
         }
 
         @Override
-        public void notifyElementExpired(Ehcache arg0, Element arg1) {
+        public void notifyElementExpired(Ehcache arg0, Element element) {
+            disposeExportOutputs(element);
         }
 
         @Override
@@ -169,6 +173,7 @@ public class RunReportServiceCacheFactoryBean implements FactoryBean<Cache>, Ini
             } catch (RuntimeException ex) {
                 log.warn("Report execution cleanup failed: ", ex);
             }
+            disposeExportOutputs(element);
             if (log.isDebugEnabled()) {
                 log.debug("33816 DEBUG: evicted element: " + requestId);
             }
@@ -178,6 +183,24 @@ public class RunReportServiceCacheFactoryBean implements FactoryBean<Cache>, Ini
         public void dispose() {
         }
 
+        private void disposeExportOutputs(Element element) {
+            if (element == null || !(element.getObjectValue() instanceof ReportExecution)) {
+                return;
+            }
+            // release the temporary files of export outputs that spilled to disk
+            ReportExecution execution = (ReportExecution) element.getObjectValue();
+            for (ExportExecution exportExecution : execution.getExports().values()) {
+                try {
+                    ReportOutputResource outputResource = exportExecution.getOutputResource();
+                    if (outputResource != null) {
+                        outputResource.dispose();
+                    }
+                } catch (RuntimeException ex) {
+                    log.warn("Export output cleanup failed: ", ex);
+                }
+            }
+        }
+
         private void cleanupRUR(ReportUnitResult rur) {
             if (rur == null) {
                 return;
@@ -38,6 +38,8 @@ import com.jaspersoft.jasperserver.api.engine.jasperreports.common.JSReportExecu
 import com.jaspersoft.jasperserver.api.engine.jasperreports.domain.impl.PaginationParameters;
 import com.jaspersoft.jasperserver.api.engine.jasperreports.domain.impl.ReportUnitResult;
 import com.jaspersoft.jasperserver.api.engine.jasperreports.service.impl.CopyDestinationExistsException;
+import com.jaspersoft.jasperserver.api.metadata.common.domain.DataContainer;
+import com.jaspersoft.jasperserver.api.metadata.common.domain.DataContainerFactory;
 import com.jaspersoft.jasperserver.api.metadata.common.service.JSResourceNotFoundException;
 import com.jaspersoft.jasperserver.api.metadata.common.service.RepositoryService;
 import com.jaspersoft.jasperserver.api.metadata.xml.domain.impl.Argument;
@@ -87,12 +89,11 @@ import org.springframework.util.Assert;
 
 import javax.annotation.Resource;
 import javax.ws.rs.core.Response;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.Serializable;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Executor;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -123,8 +124,8 @@ public class RunReportServiceImpl implements RunReportService, Serializable, Dis
     private EngineService engine;
     @Resource(name = "${bean.engineServiceTarget}")
     private EngineService unsecuredEngine;
-    @Resource(name="loggableExecutorService")
-    private Executor asyncExecutor;
+    @Resource(name = "reportExecutionDispatcher")
+    private ReportExecutionDispatcher executionDispatcher;
     @Resource
     private InputControlsLogicService inputControlsLogicService;
     @Resource
@@ -146,6 +147,8 @@ public class RunReportServiceImpl implements RunReportService, Serializable, Dis
 
     @Resource
     private RunReportServiceCacheFactoryBean cacheFactoryBean;
+    @Resource(name = "reportExportOutputContainerFactory")
+    private DataContainerFactory exportOutputContainerFactory;
 
     @Autowired
     private ApplicationContext applicationContext;
@@ -236,7 +239,8 @@ public class RunReportServiceImpl implements RunReportService, Serializable, Dis
         } catch (RuntimeException ex) {
             log.warn("Report execution cleanup failed: ", ex);
         }
-        if (ExecutionStatus.execution == reportExecution.getStatus()) {
+        if (ExecutionStatus.execution == reportExecution.getStatus()
+                || ExecutionStatus.queued == reportExecution.getStatus()) {
             cancelReportExecution(reportExecution.getRequestId());
             reportExecution.setStatus(ExecutionStatus.cancelled);
             reportExecution = createFreshReportExecutionCopy(reportExecution, options);
@@ -246,17 +250,20 @@ public class RunReportServiceImpl implements RunReportService, Serializable, Dis
         reportExecution.setRelatedExecution(null);
         reportExecution.setReportUnitResult(null);
         reportExecution.setErrorDescriptor(null);
-        reportExecution.setStatus(ExecutionStatus.execution);
+        reportExecution.setStatus(ExecutionStatus.queued);
         final Locale locale = LocaleContextHolder.getLocale();
         final TimeZone timeZone = TimeZoneContextHolder.getTimeZone();
         final SecurityContext context = SecurityContextHolder.getContext();
         final ReportExecution finalReportExecution = reportExecution;
-        asyncExecutor.execute(new Runnable() {
+        final ReportExecutionDispatcher.PriorityClass priorityClass = options.isAsync()
+                ? ReportExecutionDispatcher.PriorityClass.ASYNC : ReportExecutionDispatcher.PriorityClass.INTERACTIVE;
+        final Runnable executionTask = new Runnable() {
             @Override
             public void run() {
                 LocaleContextHolder.setLocale(locale);
                 TimeZoneContextHolder.setTimeZone(timeZone);
                 SecurityContextHolder.setContext(context);
+                finalReportExecution.setStatus(ExecutionStatus.execution);
                 ReportUnitResult reportUnitResult = null;
                 ErrorDescriptor errorDescriptor = null;
 
@@ -341,7 +348,21 @@ public class RunReportServiceImpl implements RunReportService, Serializable, Dis
                     actualizeExecutionStatus(finalReportExecution);
                 }
             }
-        });
+        };
+        try {
+            executionDispatcher.submit(finalReportExecution.getRequestId(), priorityClass, executionTask,
+                    new ReportExecutionDispatcher.RejectionListener() {
+                        @Override
+                        public void rejected(ReportExecutionRejectedException exception) {
+                            // fails the execution and releases the requests waiting for it
+                            finalReportExecution.setErrorDescriptor(exception.getErrorDescriptor());
+                        }
+                    });
+        } catch (ReportExecutionRejectedException e) {
+            finalReportExecution.setErrorDescriptor(e.getErrorDescriptor());
+            finalReportExecution.setStatus(ExecutionStatus.failed);
+            throw e;
+        }
     }
 
     @Override
@@ -373,7 +394,12 @@ public class RunReportServiceImpl implements RunReportService, Serializable, Dis
         final ReportExecution execution = createReportExecution(reportUnitURI, rawParameters, options);
         final String requestId = execution.getRequestId();
 
-        startReportExecution(execution);
+        try {
+            startReportExecution(execution);
+        } catch (ReportExecutionRejectedException e) {
+            removeREfromCache(requestId);
+            throw e;
+        }
 
         if(!options.isAsync()){
             // wait till report execution is complete
@@ -449,7 +475,7 @@ public class RunReportServiceImpl implements RunReportService, Serializable, Dis
 
     protected void startExport(final ReportExecution reportExecution, final ExportExecution exportExecution) {
         final SecurityContext context = SecurityContextHolder.getContext();
-        asyncExecutor.execute(new Runnable() {
+        final Runnable exportTask = new Runnable() {
             @Override
             public void run() {
                 SecurityContextHolder.setContext(context);
@@ -474,7 +500,19 @@ public class RunReportServiceImpl implements RunReportService, Serializable, Dis
                     exportExecution.setErrorDescriptor(secureExceptionHandler.handleException(e));
                 }
             }
-        });
+        };
+        try {
+            executionDispatcher.submit(exportExecution.getId(), ReportExecutionDispatcher.PriorityClass.EXPORT, exportTask,
+                    new ReportExecutionDispatcher.RejectionListener() {
+                        @Override
+                        public void rejected(ReportExecutionRejectedException exception) {
+                            exportExecution.setErrorDescriptor(exception.getErrorDescriptor());
+                        }
+                    });
+        } catch (ReportExecutionRejectedException e) {
+            exportExecution.setErrorDescriptor(e.getErrorDescriptor());
+            throw e;
+        }
     }
 
     /**
@@ -969,9 +1007,14 @@ public class RunReportServiceImpl implements RunReportService, Serializable, Dis
      */
     protected void generateReportOutput(ReportExecution reportExecution, JasperPrint jasperPrint,
             String outputFormat, ExportExecution exportExecution, ReportOutputPages pages) throws ErrorDescriptorException {
+        // a rerun after an export reset replaces the previous output
+        exportExecution.disposeOutputResource();
+        // the output is kept in memory up to the factory threshold, larger outputs spill to a temporary file
+        final DataContainer outputContainer = exportOutputContainerFactory.createDataContainer();
+        boolean outputSet = false;
         try {
             // Export...
-            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            OutputStream bos = outputContainer.getOutputStream();
             final ReportExecutionOptions reportExecutionOptions = reportExecution.getOptions();
             if (outputFormat.equals(Argument.RUN_OUTPUT_FORMAT_JRPRINT)) {
                 if (log.isDebugEnabled())
@@ -982,7 +1025,9 @@ public class RunReportServiceImpl implements RunReportService, Serializable, Dis
                     GenericElementReportTransformer.transformGenericElements(reportExecutor.getJasperReportsContext(reportExecutionOptions.isInteractive()), jasperPrint, reportExecutionOptions.getTransformerKey());
                 }
                 JRSaver.saveObject(jasperPrint, bos);
-                exportExecution.setOutputResource(new ReportOutputResource().setContentType("application/octet-stream").setData(bos.toByteArray()));
+                bos.close();
+                exportExecution.setOutputResource(new ReportOutputResource().setContentType("application/octet-stream").setDataContainer(outputContainer));
+                outputSet = true;
             } else {
                 HashMap<String, Object> exportParameters = new HashMap<String, Object>(reportExecution.getRawParameters());
                 if (pages != null) exportParameters.put(Argument.RUN_OUTPUT_PAGES, pages);
@@ -1014,9 +1059,10 @@ public class RunReportServiceImpl implements RunReportService, Serializable, Dis
                 final Matcher matcher = FILE_NAME_PATTERN.matcher(reportURI);
                 exportExecution.setOutputResource(new ReportOutputResource()
                         .setContentType(reportExecutor.getContentType(outputFormat))
-                        .setData(bos.toByteArray())
+                        .setDataContainer(outputContainer)
                         .setFileName((matcher.find() ? matcher.group(1) : "report") + "." + outputFormat.toLowerCase())
                         .setPages(pages != null ? pages.toString() : null));
+                outputSet = true;
             }
         } catch (ErrorDescriptorException e) {
             throw e;
@@ -1024,6 +1070,10 @@ public class RunReportServiceImpl implements RunReportService, Serializable, Dis
             log.error("caught exception: " + e.getMessage(), e);
         } catch (Throwable e) {
             log.error("caught Throwable exception: " + e.getMessage(), e);
+        } finally {
+            if (!outputSet) {
+                outputContainer.dispose();
+            }
         }
     }
 
@@ -1047,7 +1097,8 @@ public class RunReportServiceImpl implements RunReportService, Serializable, Dis
     }
 
     protected Boolean cancelReportExecution(String requestId, EngineService effectiveEngine) throws ErrorDescriptorException {
-        final boolean cancelled = effectiveEngine.cancelExecution(requestId);
+        // an execution still waiting in the queue is not known to the engine
+        final boolean cancelled = executionDispatcher.cancel(requestId) || effectiveEngine.cancelExecution(requestId);
         final ReportExecution reportExecution = getREfromCache(requestId);
         if(cancelled && reportExecution != null){
             // update report execution status
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2005 - 2020 TIBCO Software Inc. All rights reserved.
+ * http://www.jaspersoft.com.
+ *
+ * Unless you have purchased a commercial license agreement from Jaspersoft,
+ * the following license terms apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jaspersoft.jasperserver.remote.services;
+
+import com.jaspersoft.jasperserver.api.metadata.common.domain.DataContainer;
+import com.jaspersoft.jasperserver.api.metadata.common.domain.FileBufferedDataContainer;
+import com.jaspersoft.jasperserver.api.metadata.common.domain.MemoryDataContainer;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.testng.Assert.*;
+
+public class ReportOutputResourceTest {
+
+    @Test
+    public void writeData_spilledContainer_writesWholeOutput() throws IOException {
+        byte[] data = createData(10000);
+        DataContainer container = new FileBufferedDataContainer(1024, 256);
+        write(container, data);
+        ReportOutputResource resource = new ReportOutputResource().setDataContainer(container);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        resource.writeData(out);
+
+        assertEquals(resource.getDataLength(), data.length);
+        assertEquals(out.toByteArray(), data);
+        resource.dispose();
+    }
+
+    @Test
+    public void writeData_memoryContainer_writesWholeOutput() throws IOException {
+        byte[] data = createData(100);
+        DataContainer container = new MemoryDataContainer();
+        write(container, data);
+        ReportOutputResource resource = new ReportOutputResource().setDataContainer(container);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        resource.writeData(out);
+
+        assertEquals(out.toByteArray(), data);
+        assertEquals(resource.getData(), data);
+    }
+
+    @Test
+    public void getDataLength_byteArray() {
+        assertEquals(new ReportOutputResource().setData(createData(42)).getDataLength(), 42);
+        assertEquals(new ReportOutputResource().getDataLength(), 0);
+    }
+
+    @Test
+    public void disposeOutputResource_rerunExport_disposesPreviousOutput() {
+        DataContainer container = mock(DataContainer.class);
+        ExportExecution exportExecution = new ExportExecution();
+        exportExecution.setOutputResource(new ReportOutputResource().setDataContainer(container));
+
+        exportExecution.disposeOutputResource();
+
+        verify(container).dispose();
+        assertNull(exportExecution.getOutputResource());
+        exportExecution.disposeOutputResource();
+        verify(container).dispose();
+    }
+
+    private static void write(DataContainer container, byte[] data) throws IOException {
+        OutputStream out = container.getOutputStream();
+        out.write(data);
+        out.close();
+    }
+
+    private static byte[] createData(int length) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) (i % 251);
+        }
+        return data;
+    }
+}
@@ -0,0 +1,247 @@
+/*
+ * Copyright (C) 2005 - 2020 TIBCO Software Inc. All rights reserved.
+ * http://www.jaspersoft.com.
+ *
+ * Unless you have purchased a commercial license agreement from Jaspersoft,
+ * the following license terms apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.jaspersoft.jasperserver.remote.services.impl;
+
+import com.jaspersoft.jasperserver.api.logging.audit.context.RequestType;
+import com.jaspersoft.jasperserver.api.logging.audit.context.RequestTypeListener;
+import com.jaspersoft.jasperserver.api.logging.context.LoggingContextProvider;
+import com.jaspersoft.jasperserver.remote.exception.ReportExecutionRejectedException;
+import com.jaspersoft.jasperserver.remote.services.impl.ReportExecutionDispatcher.PriorityClass;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.testng.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+/**
+ * @version $Id$
+ */
+public class ReportExecutionDispatcherTest {
+    private ReportExecutionDispatcher dispatcher;
+    private List<Runnable> started;
+    private List<String> executed;
+    private List<RequestType> executedRequestTypes;
+    private ThreadLocal<RequestType> requestType;
+
+    @BeforeMethod
+    public void setUp() {
+        started = new ArrayList<Runnable>();
+        executed = new ArrayList<String>();
+        executedRequestTypes = new ArrayList<RequestType>();
+        requestType = new ThreadLocal<RequestType>();
+        dispatcher = new ReportExecutionDispatcher();
+        dispatcher.setExecutor(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                started.add(command);
+            }
+        });
+        dispatcher.setMaxRunningReports(2);
+        dispatcher.setMaxRunningExports(1);
+        dispatcher.setMaxRunningPerTenant(2);
+        dispatcher.setMaxRunningPerUser(1);
+        dispatcher.setMaxQueueSize(4);
+        dispatcher.setMaxQueuedPerUser(3);
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    public void submit_userQuotaReached_queuesExecution() {
+        submitAs("joe", "r1", PriorityClass.ASYNC);
+        submitAs("joe", "r2", PriorityClass.ASYNC);
+
+        assertEquals(started.size(), 1);
+        assertEquals(dispatcher.getQueuedCount(PriorityClass.ASYNC), 1);
+
+        runStarted(0);
+
+        assertEquals(executed, list("r1"));
+        assertEquals(started.size(), 2);
+        assertEquals(dispatcher.getQueuedCount(), 0);
+    }
+
+    @Test
+    public void submit_otherUserNotBlockedByQuotaOfFirstUser() {
+        submitAs("joe", "r1", PriorityClass.ASYNC);
+        submitAs("joe", "r2", PriorityClass.ASYNC);
+        submitAs("ann", "r3", PriorityClass.ASYNC);
+
+        assertEquals(started.size(), 2);
+        assertEquals(dispatcher.getRunningReportCount(), 2);
+        assertEquals(dispatcher.getQueuedCount(PriorityClass.ASYNC), 1);
+    }
+
+    @Test
+    public void finished_interactiveStartsBeforeAsync() {
+        dispatcher.setMaxRunningReports(1);
+        submitAs("joe", "r1", PriorityClass.ASYNC);
+        submitAs("ann", "r2", PriorityClass.ASYNC);
+        submitAs("bob", "r3", PriorityClass.INTERACTIVE);
+
+        runStarted(0);
+        runStarted(1);
+
+        assertEquals(executed, list("r1", "r3"));
+    }
+
+    @Test
+    public void submit_exportsUseSeparateSlots() {
+        submitAs("joe", "r1", PriorityClass.ASYNC);
+        submitAs("joe", "e1", PriorityClass.EXPORT);
+
+        assertEquals(started.size(), 2);
+        assertEquals(dispatcher.getRunningReportCount(), 1);
+        assertEquals(dispatcher.getRunningExportCount(), 1);
+    }
+
+    @Test
+    public void submit_userQueueFull_rejects() {
+        submitAs("joe", "r1", PriorityClass.ASYNC);
+        submitAs("joe", "r2", PriorityClass.ASYNC);
+        submitAs("joe", "r3", PriorityClass.ASYNC);
+        submitAs("joe", "r4", PriorityClass.ASYNC);
+        try {
+            submitAs("joe", "r5", PriorityClass.ASYNC);
+            fail("execution should be rejected");
+        } catch (ReportExecutionRejectedException e) {
+            assertEquals(e.getErrorDescriptor().getErrorCode(),
+                    ReportExecutionRejectedException.ERROR_CODE_REPORT_EXECUTION_REJECTED);
+        }
+        assertEquals(dispatcher.getRejectedCount(), 1);
+    }
+
+    @Test
+    public void cancel_queuedExecution_removedFromQueue() {
+        submitAs("joe", "r1", PriorityClass.ASYNC);
+        submitAs("joe", "r2", PriorityClass.ASYNC);
+
+        assertTrue(dispatcher.cancel("r2"));
+        assertFalse(dispatcher.cancel("r1"));
+
+        runStarted(0);
+        assertEquals(started.size(), 1);
+        assertEquals(dispatcher.getQueuedCount(), 0);
+        assertEquals(dispatcher.getRunningReportCount(), 0);
+    }
+
+    @Test
+    public void submit_executorRejects_notifiesListenerAndReleasesSlot() {
+        dispatcher.setExecutor(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                throw new RejectedExecutionException("pool is full");
+            }
+        });
+        final List<ReportExecutionRejectedException> rejections = new ArrayList<ReportExecutionRejectedException>();
+        SecurityContextHolder.getContext().setAuthentication(new TestingAuthenticationToken("joe", "password"));
+        dispatcher.submit("r1", PriorityClass.ASYNC, new Runnable() {
+            @Override
+            public void run() {
+                executed.add("r1");
+            }
+        }, new ReportExecutionDispatcher.RejectionListener() {
+            @Override
+            public void rejected(ReportExecutionRejectedException exception) {
+                rejections.add(exception);
+            }
+        });
+
+        assertEquals(rejections.size(), 1);
+        assertEquals(rejections.get(0).getErrorDescriptor().getErrorCode(),
+                ReportExecutionRejectedException.ERROR_CODE_REPORT_EXECUTION_REJECTED);
+        assertTrue(executed.isEmpty());
+        assertEquals(dispatcher.getRunningReportCount(), 0);
+        assertEquals(dispatcher.getQueuedCount(), 0);
+        assertEquals(dispatcher.getRejectedCount(), 1);
+    }
+
+    @Test
+    public void finished_queuedExecutionRunsWithItsOwnRequestType() {
+        LoggingContextProvider loggingContextProvider = mock(LoggingContextProvider.class);
+        dispatcher.setRequestTypeListener(new RequestTypeListener() {
+            @Override
+            public RequestType getRequestType() {
+                return requestType.get();
+            }
+
+            @Override
+            public void setRequestType(RequestType type) {
+                requestType.set(type);
+            }
+        });
+        dispatcher.setLoggingContextProvider(loggingContextProvider);
+
+        requestType.set(RequestType.WEB_SERVICES);
+        submitAs("joe", "r1", PriorityClass.ASYNC);
+        requestType.set(RequestType.GUI);
+        submitAs("joe", "r2", PriorityClass.ASYNC);
+        requestType.set(null);
+
+        // r2 is started by the worker of r1, both run on this thread
+        runStarted(0);
+        runStarted(1);
+
+        assertEquals(executedRequestTypes, list(RequestType.WEB_SERVICES, RequestType.GUI));
+        assertNull(requestType.get());
+        verify(loggingContextProvider, times(2)).flushContext();
+    }
+
+    private void submitAs(String user, final String requestId, PriorityClass priorityClass) {
+        SecurityContextHolder.getContext().setAuthentication(new TestingAuthenticationToken(user, "password"));
+        dispatcher.submit(requestId, priorityClass, new Runnable() {
+            @Override
+            public void run() {
+                executed.add(requestId);
+                executedRequestTypes.add(requestType.get());
+            }
+        });
+    }
+
+    private void runStarted(int index) {
+        started.get(index).run();
+    }
+
+    private static <T> List<T> list(T... values) {
+        List<T> list = new ArrayList<T>();
+        for (T value : values) {
+            list.add(value);
+        }
+        return list;
+    }
+}
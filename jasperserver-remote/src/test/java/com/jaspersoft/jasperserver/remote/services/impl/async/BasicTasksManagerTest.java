@@ -23,19 +23,27 @@ package com.jaspersoft.jasperserver.remote.services.impl.async;
 
 import com.jaspersoft.jasperserver.dto.importexport.State;
 import com.jaspersoft.jasperserver.remote.exception.NoSuchTaskException;
+import com.jaspersoft.jasperserver.remote.exception.TaskRejectedException;
 import com.jaspersoft.jasperserver.remote.services.async.BasicTasksManager;
 import com.jaspersoft.jasperserver.remote.services.async.Task;
 import org.junit.Before;
 import org.junit.Test;
 
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.mockito.ArgumentMatchers.nullable;
+import static org.mockito.Mockito.doThrow;
 
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.fail;
 
 /**
  * @author inesterenko
@@ -62,6 +70,24 @@ public class BasicTasksManagerTest {
         assertEquals(task.getState().getPhase(), Task.INPROGRESS);
     }
 
+    @Test
+    public void startTask_Rejected(){
+        Task task = mock(Task.class);
+        State state = new State();
+        when(task.getState()).thenReturn(state);
+        doThrow(new RejectedExecutionException()).when(task).start(nullable(ExecutorService.class));
+        try {
+            manager.startTask(task);
+            fail("task should be rejected");
+        } catch (TaskRejectedException e) {
+            assertEquals(e.getErrorDescriptor().getErrorCode(), TaskRejectedException.ERROR_CODE_TASK_REJECTED);
+        }
+        assertEquals(state.getPhase(), Task.FAILED);
+        assertEquals(state.getError().getErrorCode(), TaskRejectedException.ERROR_CODE_TASK_REJECTED);
+        assertFalse(manager.getTaskIds().contains(state.getId()));
+        verify(task).stop();
+    }
+
     @Test
     public void getTask() throws NoSuchTaskException {
         setUpTasks();
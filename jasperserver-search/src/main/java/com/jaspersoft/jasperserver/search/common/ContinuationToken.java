@@ -0,0 +1,222 @@
+/*
+ * Copyright (C) 2005 - 2020 TIBCO Software Inc. All rights reserved.
+ * http://www.jaspersoft.com.
+ *
+ * Unless you have purchased a commercial license agreement from Jaspersoft,
+ * the following license terms apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.jaspersoft.jasperserver.search.common;
+
+import com.jaspersoft.jasperserver.api.search.SearchKey;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Date;
+
+/**
+ * Continuation token of a keyset paged search: the sort order and a {@link SearchKey}, serialized and encoded with
+ * URL safe base64.
+ * <p/>
+ * A plain token can be decoded by the client, so it may only hold the key of a result the client has received.
+ * A position past results hidden from the client is issued as a sealed token, encrypted and authenticated with
+ * AES/GCM, which the client can neither read nor forge.
+ *
+ * @version $Id$
+ */
+public final class ContinuationToken {
+    private static final byte VERSION = 1;
+    private static final byte VERSION_SEALED = 2;
+    private static final String SEAL_TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final int SEAL_IV_LENGTH = 12;
+    private static final int SEAL_TAG_BITS = 128;
+    private static final SecureRandom random = new SecureRandom();
+
+    private static final byte TYPE_STRING = 's';
+    private static final byte TYPE_LONG = 'l';
+    private static final byte TYPE_INTEGER = 'i';
+    private static final byte TYPE_DOUBLE = 'd';
+    private static final byte TYPE_TIMESTAMP = 't';
+    private static final byte TYPE_DATE = 'D';
+
+    private ContinuationToken() {
+    }
+
+    public static String encode(String sortBy, SearchKey key) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(toBytes(sortBy, key));
+    }
+
+    /**
+     * Encodes a token whose content is encrypted and authenticated with the secret key.
+     */
+    public static String encodeSealed(String sortBy, SearchKey key, SecretKey secretKey) {
+        byte[] iv = new byte[SEAL_IV_LENGTH];
+        random.nextBytes(iv);
+        byte[] sealed;
+        try {
+            Cipher cipher = Cipher.getInstance(SEAL_TRANSFORMATION);
+            cipher.init(Cipher.ENCRYPT_MODE, secretKey, new GCMParameterSpec(SEAL_TAG_BITS, iv));
+            sealed = cipher.doFinal(toBytes(sortBy, key));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+        byte[] bytes = new byte[1 + iv.length + sealed.length];
+        bytes[0] = VERSION_SEALED;
+        System.arraycopy(iv, 0, bytes, 1, iv.length);
+        System.arraycopy(sealed, 0, bytes, 1 + iv.length, sealed.length);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    /**
+     * Decodes a plain token.
+     *
+     * @throws IllegalArgumentException if the token is malformed, sealed or was issued for another sort order
+     */
+    public static SearchKey decode(String sortBy, String token) {
+        return decode(sortBy, token, null);
+    }
+
+    /**
+     * Decodes a plain token or a token sealed with the secret key.
+     *
+     * @throws IllegalArgumentException if the token is malformed, was not sealed with the secret key or was issued
+     * for another sort order
+     */
+    public static SearchKey decode(String sortBy, String token, SecretKey secretKey) {
+        byte[] bytes;
+        try {
+            bytes = Base64.getUrlDecoder().decode(token);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Malformed continuation token", e);
+        }
+        if (bytes.length > 0 && bytes[0] == VERSION_SEALED) {
+            if (secretKey == null || bytes.length < 1 + SEAL_IV_LENGTH) {
+                throw new IllegalArgumentException("Malformed continuation token");
+            }
+            try {
+                Cipher cipher = Cipher.getInstance(SEAL_TRANSFORMATION);
+                cipher.init(Cipher.DECRYPT_MODE, secretKey,
+                        new GCMParameterSpec(SEAL_TAG_BITS, Arrays.copyOfRange(bytes, 1, 1 + SEAL_IV_LENGTH)));
+                bytes = cipher.doFinal(bytes, 1 + SEAL_IV_LENGTH, bytes.length - 1 - SEAL_IV_LENGTH);
+            } catch (GeneralSecurityException e) {
+                throw new IllegalArgumentException("Continuation token was not issued by this server", e);
+            }
+        }
+        return fromBytes(sortBy, bytes);
+    }
+
+    private static byte[] toBytes(String sortBy, SearchKey key) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(VERSION);
+            out.writeUTF(sortBy != null ? sortBy : "");
+            out.writeLong(key.getId());
+
+            Object[] values = key.getValues();
+            out.writeByte(values.length);
+            for (Object value : values) {
+                writeValue(out, value);
+            }
+            out.flush();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static SearchKey fromBytes(String sortBy, byte[] bytes) {
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+            if (in.readByte() != VERSION) {
+                throw new IllegalArgumentException("Unsupported continuation token version");
+            }
+            if (!in.readUTF().equals(sortBy != null ? sortBy : "")) {
+                throw new IllegalArgumentException("Continuation token was issued for another sort order");
+            }
+            long id = in.readLong();
+
+            Object[] values = new Object[in.readByte()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = readValue(in);
+            }
+            if (in.available() > 0) {
+                throw new IllegalArgumentException("Unexpected trailing bytes in continuation token");
+            }
+            return new SearchKey(values, id);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Malformed continuation token", e);
+        }
+    }
+
+    private static void writeValue(DataOutputStream out, Object value) throws IOException {
+        if (value instanceof String) {
+            out.writeByte(TYPE_STRING);
+            out.writeUTF((String) value);
+        } else if (value instanceof Long) {
+            out.writeByte(TYPE_LONG);
+            out.writeLong((Long) value);
+        } else if (value instanceof Integer) {
+            out.writeByte(TYPE_INTEGER);
+            out.writeInt((Integer) value);
+        } else if (value instanceof Double) {
+            out.writeByte(TYPE_DOUBLE);
+            out.writeDouble((Double) value);
+        } else if (value instanceof Timestamp) {
+            // keep sub-millisecond precision, otherwise the seek would repeat or skip rows
+            out.writeByte(TYPE_TIMESTAMP);
+            out.writeLong(((Timestamp) value).getTime());
+            out.writeInt(((Timestamp) value).getNanos());
+        } else if (value instanceof Date) {
+            out.writeByte(TYPE_DATE);
+            out.writeLong(((Date) value).getTime());
+        } else {
+            throw new IllegalArgumentException("Unsupported search key value: " + value);
+        }
+    }
+
+    private static Object readValue(DataInputStream in) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+            case TYPE_STRING:
+                return in.readUTF();
+            case TYPE_LONG:
+                return in.readLong();
+            case TYPE_INTEGER:
+                return in.readInt();
+            case TYPE_DOUBLE:
+                return in.readDouble();
+            case TYPE_TIMESTAMP:
+                Timestamp timestamp = new Timestamp(in.readLong());
+                timestamp.setNanos(in.readInt());
+                return timestamp;
+            case TYPE_DATE:
+                return new Date(in.readLong());
+            default:
+                throw new IllegalArgumentException("Unsupported search key value type: " + type);
+        }
+    }
+}
@@ -43,7 +43,7 @@ public class SorterFilter extends BaseSearchFilter implements Serializable {
                 repositorySearchCriteria != null ? repositorySearchCriteria.getSortBy() : null;
 
         if ("popularity".equals(searchBy)) {
-            criteria.getAlias("accessEvents", "ae");
+            criteria.getAlias("popularity", "pop");
         }
     }
 }
\ No newline at end of file
@@ -22,37 +22,118 @@
 package com.jaspersoft.jasperserver.search.filter;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.hibernate.criterion.Criterion;
+import org.hibernate.criterion.Disjunction;
+import org.hibernate.criterion.Restrictions;
 
 import com.jaspersoft.jasperserver.api.common.domain.ExecutionContext;
+import com.jaspersoft.jasperserver.api.metadata.common.domain.Folder;
 import com.jaspersoft.jasperserver.api.metadata.common.service.impl.hibernate.util.ResourceCriterionUtils;
 import com.jaspersoft.jasperserver.api.metadata.common.util.DatabaseCharactersEscapeResolver;
 import com.jaspersoft.jasperserver.api.search.SearchCriteria;
 import com.jaspersoft.jasperserver.search.common.SearchAttributes;
+import com.jaspersoft.jasperserver.search.index.RepositoryTextIndex;
 import com.jaspersoft.jasperserver.search.service.RepositorySearchCriteria;
 
 /**
  * Text filter.
+ * <p/>
+ * When a current {@link RepositoryTextIndex} is configured, the words are looked up in the index and the search is
+ * restricted to the found items. Otherwise, or when the index can't serve the text (e.g. too many items match),
+ * each word is matched against label and description in the database.
  *
  * @author Yuriy Plakosh
  * @version $Id$
  */
 public class TextFilter extends BaseSearchFilter implements Serializable {
+    // keeps IN lists within the limits of all supported databases
+    private static final int MAX_IN_LIST_SIZE = 1000;
+
     private DatabaseCharactersEscapeResolver databaseCharactersEscapeResolver;
+    private transient RepositoryTextIndex repositoryTextIndex;
+    private int maxIndexHits = 1000;
 
     public void setDatabaseCharactersEscapeResolver(DatabaseCharactersEscapeResolver databaseCharactersEscapeResolver) {
         this.databaseCharactersEscapeResolver = databaseCharactersEscapeResolver;
     }
 
+    public void setRepositoryTextIndex(RepositoryTextIndex repositoryTextIndex) {
+        this.repositoryTextIndex = repositoryTextIndex;
+    }
+
+    public void setMaxIndexHits(int maxIndexHits) {
+        this.maxIndexHits = maxIndexHits;
+    }
+
     public void applyRestrictions(String type, ExecutionContext context, SearchCriteria criteria) {
-    	Criterion criterion = ResourceCriterionUtils.getTextCriterion(getText(context));
+        String text = getRawText(context);
+        Criterion criterion = null;
+        if (repositoryTextIndex != null && !text.trim().isEmpty() && !isShowHidden(context)) {
+            Set<String> uris = repositoryTextIndex.findUris(text, maxIndexHits);
+            if (uris != null) {
+                criterion = getIndexedTextCriterion(criteria, uris);
+            }
+        }
+        if (criterion == null) {
+            criterion = ResourceCriterionUtils.getTextCriterion(getText(context));
+        }
     	if(criterion!=null){
     		criteria.add(criterion);
     	}
     }
 
+    /**
+     * Restricts the search to the given URIs, grouped by parent folder: <code>(p.URI = ? and name in (...)) or ...</code>
+     */
+    protected Criterion getIndexedTextCriterion(SearchCriteria criteria, Set<String> uris) {
+        if (uris.isEmpty()) {
+            return Restrictions.sqlRestriction("1 = 0");
+        }
+
+        Map<String, List<String>> namesByParent = new LinkedHashMap<String, List<String>>();
+        for (String uri : uris) {
+            int separatorIndex = uri.lastIndexOf(Folder.SEPARATOR);
+            if (separatorIndex < 0 || separatorIndex == uri.length() - 1) {
+                continue;
+            }
+            String parentUri = separatorIndex == 0 ? Folder.SEPARATOR : uri.substring(0, separatorIndex);
+            List<String> names = namesByParent.get(parentUri);
+            if (names == null) {
+                names = new ArrayList<String>();
+                namesByParent.put(parentUri, names);
+            }
+            names.add(uri.substring(separatorIndex + 1));
+        }
+
+        String alias = criteria.getAlias("parent", "p");
+        Disjunction disjunction = Restrictions.disjunction();
+        for (Map.Entry<String, List<String>> entry : namesByParent.entrySet()) {
+            List<String> names = entry.getValue();
+            for (int i = 0; i < names.size(); i += MAX_IN_LIST_SIZE) {
+                disjunction.add(Restrictions.and(
+                        Restrictions.eq(alias + ".URI", entry.getKey()),
+                        Restrictions.in("name", names.subList(i, Math.min(names.size(), i + MAX_IN_LIST_SIZE)))));
+            }
+        }
+        return disjunction;
+    }
+
+    protected boolean isShowHidden(ExecutionContext context) {
+        RepositorySearchCriteria repositorySearchCriteria = getTypedAttribute(context, RepositorySearchCriteria.class);
+        return repositorySearchCriteria != null && repositorySearchCriteria.isShowHidden();
+    }
+
     protected String getText(ExecutionContext context) {
+        return escape(getRawText(context));
+    }
+
+    protected String getRawText(ExecutionContext context) {
         SearchAttributes searchAttributes = getSearchAttributes(context);
         RepositorySearchCriteria repositorySearchCriteria = getTypedAttribute(context, RepositorySearchCriteria.class);
 
@@ -60,7 +141,11 @@ public class TextFilter extends BaseSearchFilter implements Serializable {
                 searchAttributes.getState().getText() :
                 repositorySearchCriteria != null ? repositorySearchCriteria.getSearchText() : null;
 
-        return text == null ? "" : databaseCharactersEscapeResolver.getEscapedText(text);
+        return text == null ? "" : text;
+    }
+
+    protected String escape(String text) {
+        return text.isEmpty() ? text : databaseCharactersEscapeResolver.getEscapedText(text);
     }
 
 }
@@ -0,0 +1,584 @@
+/*
+ * Copyright (C) 2005 - 2020 TIBCO Software Inc. All rights reserved.
+ * http://www.jaspersoft.com.
+ *
+ * Unless you have purchased a commercial license agreement from Jaspersoft,
+ * the following license terms apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.jaspersoft.jasperserver.search.index;
+
+import com.jaspersoft.jasperserver.api.metadata.common.domain.Folder;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.LowerCaseFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.util.CharTokenizer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.PrefixQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.FSDirectory;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * {@link RepositoryTextIndex} kept in a Lucene index in a local directory.
+ * <p/>
+ * Updates are visible to searches immediately and committed to disk every <code>commitInterval</code> seconds and on
+ * shutdown. The last commit records whether the index was closed cleanly; an index that wasn't (or didn't exist) is
+ * considered stale and, if <code>rebuildOnStartup</code> is set, rebuilt in background. A failed update also makes
+ * the index stale until the next rebuild. While the index is stale or being rebuilt, {@link #findUris(String, int)}
+ * returns <code>null</code> so that search falls back to the database text criterion.
+ * <p/>
+ * The index only sees changes made through the repository service of this server, it is not suitable for clustered
+ * deployments where other nodes modify the same repository.
+ *
+ * @version $Id$
+ */
+public class LuceneRepositoryTextIndex implements RepositoryTextIndex, RepositoryTextIndexMXBean, InitializingBean, DisposableBean {
+
+    private static final Log log = LogFactory.getLog(LuceneRepositoryTextIndex.class);
+
+    static final String URI_FIELD = "uri";
+    static final String LABEL_FIELD = "label";
+    static final String DESCRIPTION_FIELD = "description";
+    static final String TEXT_FIELD = "text";
+    static final String CLEAN_SHUTDOWN_KEY = "cleanShutdown";
+
+    private static final String FOLDERS_QUERY =
+            "select f.URI, f.label, f.description from RepoFolder f where f.hidden = false";
+    private static final String RESOURCES_QUERY =
+            "select p.URI, r.name, r.label, r.description from RepoResource r join r.parent p where p.hidden = false";
+
+    private boolean enabled;
+    private String indexDirectory;
+    private boolean rebuildOnStartup = true;
+    private long commitInterval = 30000l; //default to 30 seconds between commits.
+    private int fetchSize = 1000;
+    private SessionFactory sessionFactory;
+
+    private final Analyzer analyzer = new RepositoryTextAnalyzer();
+    private volatile IndexWriter writer;
+    private volatile SearcherManager searcherManager;
+    private Timer commitTimer;
+    private volatile boolean stale = true;
+    private final AtomicBoolean rebuilding = new AtomicBoolean();
+    // updates applied while the index is rebuilt, replayed after the repository scan as the scan may have missed them
+    private final List<IndexUpdate> updatesDuringRebuild = new ArrayList<IndexUpdate>();
+
+    public void afterPropertiesSet() throws Exception {
+        if (!enabled) {
+            return;
+        }
+        try {
+            open();
+        } catch (IOException e) {
+            log.error("Repository text index at " + indexDirectory + " can't be opened, search uses database", e);
+            return;
+        }
+
+        commitTimer = new Timer("RepositoryTextIndexCommitter", true);
+        commitTimer.scheduleAtFixedRate(new TimerTask() {
+            @Override
+            public void run() {
+                commit(false, false);
+            }
+        }, commitInterval, commitInterval);
+
+        if (stale && rebuildOnStartup) {
+            rebuild();
+        }
+    }
+
+    protected void open() throws IOException {
+        FSDirectory directory = FSDirectory.open(Paths.get(indexDirectory));
+        boolean exists = DirectoryReader.indexExists(directory);
+
+        IndexWriterConfig config = new IndexWriterConfig(analyzer);
+        config.setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND);
+        config.setCommitOnClose(false);
+        IndexWriter indexWriter = new IndexWriter(directory, config);
+
+        Map<String, String> commitData = new HashMap<String, String>();
+        Iterable<Map.Entry<String, String>> liveCommitData = indexWriter.getLiveCommitData();
+        if (liveCommitData != null) {
+            for (Map.Entry<String, String> entry : liveCommitData) {
+                commitData.put(entry.getKey(), entry.getValue());
+            }
+        }
+        stale = !exists || !Boolean.parseBoolean(commitData.get(CLEAN_SHUTDOWN_KEY));
+        if (stale) {
+            log.info("Repository text index at " + indexDirectory + " is missing or wasn't closed cleanly");
+        }
+
+        searcherManager = new SearcherManager(indexWriter, null);
+        writer = indexWriter;
+        // from now on a crash may lose updates, the clean shutdown flag is set again on close
+        commit(false, true);
+    }
+
+    public void destroy() throws Exception {
+        if (commitTimer != null) {
+            commitTimer.cancel();
+        }
+        IndexWriter indexWriter = writer;
+        if (indexWriter == null) {
+            return;
+        }
+        commit(!stale && !rebuilding.get(), true);
+        writer = null;
+        searcherManager.close();
+        indexWriter.close();
+    }
+
+    protected void commit(boolean cleanShutdown, boolean force) {
+        IndexWriter indexWriter = writer;
+        if (indexWriter == null) {
+            return;
+        }
+        try {
+            if (force || indexWriter.hasUncommittedChanges()) {
+                indexWriter.setLiveCommitData(
+                        Collections.singletonMap(CLEAN_SHUTDOWN_KEY, Boolean.toString(cleanShutdown)).entrySet());
+                indexWriter.commit();
+            }
+        } catch (IOException e) {
+            log.warn("Repository text index commit failed", e);
+        } catch (RuntimeException e) {
+            log.warn("Repository text index commit failed", e);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public boolean isCurrent() {
+        return writer != null && !stale && !rebuilding.get();
+    }
+
+    public boolean isRebuilding() {
+        return rebuilding.get();
+    }
+
+    public int getDocumentCount() {
+        SearcherManager manager = searcherManager;
+        if (writer == null || manager == null) {
+            return 0;
+        }
+        try {
+            IndexSearcher searcher = manager.acquire();
+            try {
+                return searcher.getIndexReader().numDocs();
+            } finally {
+                manager.release(searcher);
+            }
+        } catch (IOException e) {
+            log.warn("Repository text index document count failed", e);
+            return 0;
+        }
+    }
+
+    public Set<String> findUris(String text, int maxHits) {
+        if (!isCurrent() || text == null) {
+            return null;
+        }
+        Query query = createQuery(text);
+        if (query == null) {
+            return null;
+        }
+
+        SearcherManager manager = searcherManager;
+        try {
+            IndexSearcher searcher = manager.acquire();
+            try {
+                TopDocs topDocs = searcher.search(query, maxHits < Integer.MAX_VALUE ? maxHits + 1 : maxHits);
+                if (topDocs.totalHits > maxHits) {
+                    return null;
+                }
+                Set<String> uris = new LinkedHashSet<String>();
+                for (ScoreDoc scoreDoc : topDocs.scoreDocs) {
+                    uris.add(searcher.doc(scoreDoc.doc).get(URI_FIELD));
+                }
+                return uris;
+            } finally {
+                manager.release(searcher);
+            }
+        } catch (IOException e) {
+            log.warn("Repository text index search failed, using database", e);
+            return null;
+        } catch (RuntimeException e) {
+            log.warn("Repository text index search failed, using database", e);
+            return null;
+        }
+    }
+
+    /**
+     * Each whitespace separated word has to match, every token of the word as a prefix of some indexed token.
+     *
+     * @return the query or <code>null</code> if there are no words or some word has no indexable characters
+     */
+    protected Query createQuery(String text) {
+        BooleanQuery.Builder builder = new BooleanQuery.Builder();
+        boolean hasClauses = false;
+        for (String word : text.trim().split("\\s+")) {
+            if (word.isEmpty()) {
+                continue;
+            }
+            List<String> tokens = tokenize(word);
+            if (tokens.isEmpty()) {
+                return null;
+            }
+            for (String token : tokens) {
+                builder.add(new PrefixQuery(new Term(TEXT_FIELD, token)), BooleanClause.Occur.MUST);
+            }
+            hasClauses = true;
+        }
+        return hasClauses ? builder.build() : null;
+    }
+
+    protected List<String> tokenize(String word) {
+        List<String> tokens = new ArrayList<String>();
+        try {
+            TokenStream stream = analyzer.tokenStream(TEXT_FIELD, word);
+            try {
+                CharTermAttribute term = stream.addAttribute(CharTermAttribute.class);
+                stream.reset();
+                while (stream.incrementToken()) {
+                    tokens.add(term.toString());
+                }
+                stream.end();
+            } finally {
+                stream.close();
+            }
+        } catch (IOException e) {
+            // not expected for in-memory text
+            throw new IllegalStateException(e);
+        }
+        return tokens;
+    }
+
+    public void rebuild() {
+        if (writer == null) {
+            log.warn("Repository text index is disabled or couldn't be opened, nothing to rebuild");
+            return;
+        }
+        if (!rebuilding.compareAndSet(false, true)) {
+            log.info("Repository text index is already being rebuilt");
+            return;
+        }
+        Thread thread = new Thread(new Runnable() {
+            public void run() {
+                doRebuild();
+            }
+        }, "RepositoryTextIndexRebuild");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Rebuilds the index in the calling thread.
+     */
+    void rebuildNow() {
+        if (rebuilding.compareAndSet(false, true)) {
+            doRebuild();
+        }
+    }
+
+    protected void doRebuild() {
+        long start = System.currentTimeMillis();
+        stale = false;
+        try {
+            final IndexWriter indexWriter = writer;
+            indexWriter.deleteAll();
+            loadRepositoryItems(new ItemHandler() {
+                public void handle(String uri, String label, String description) throws IOException {
+                    indexWriter.updateDocument(new Term(URI_FIELD, uri), createDocument(uri, label, description));
+                }
+            });
+
+            // updates are idempotent, those arriving during the replay are applied and recorded again,
+            // so the last replay round leaves the most recent state
+            while (true) {
+                List<IndexUpdate> replay;
+                synchronized (updatesDuringRebuild) {
+                    replay = new ArrayList<IndexUpdate>(updatesDuringRebuild);
+                    updatesDuringRebuild.clear();
+                    if (replay.isEmpty()) {
+                        rebuilding.set(false);
+                        break;
+                    }
+                }
+                for (IndexUpdate update : replay) {
+                    update.apply(indexWriter);
+                }
+            }
+            searcherManager.maybeRefreshBlocking();
+            commit(false, true);
+            if (log.isInfoEnabled()) {
+                log.info("Repository text index rebuilt with " + getDocumentCount() + " items in "
+                        + (System.currentTimeMillis() - start) + " ms");
+            }
+        } catch (Exception e) {
+            stale = true;
+            log.error("Repository text index rebuild failed, search uses database", e);
+        } finally {
+            synchronized (updatesDuringRebuild) {
+                updatesDuringRebuild.clear();
+                rebuilding.set(false);
+            }
+        }
+    }
+
+    /**
+     * Streams all items in non hidden folders from the repository database.
+     */
+    protected void loadRepositoryItems(ItemHandler handler) throws IOException {
+        StatelessSession session = sessionFactory.openStatelessSession();
+        try {
+            ScrollableResults folders = session.createQuery(FOLDERS_QUERY).setFetchSize(fetchSize).scroll(ScrollMode.FORWARD_ONLY);
+            try {
+                while (folders.next()) {
+                    Object[] row = folders.get();
+                    String uri = (String) row[0];
+                    if (!Folder.SEPARATOR.equals(uri)) {
+                        handler.handle(uri, (String) row[1], (String) row[2]);
+                    }
+                }
+            } finally {
+                folders.close();
+            }
+
+            ScrollableResults resources = session.createQuery(RESOURCES_QUERY).setFetchSize(fetchSize).scroll(ScrollMode.FORWARD_ONLY);
+            try {
+                while (resources.next()) {
+                    Object[] row = resources.get();
+                    String parentUri = (String) row[0];
+                    String uri = (Folder.SEPARATOR.equals(parentUri) ? "" : parentUri) + Folder.SEPARATOR + row[1];
+                    handler.handle(uri, (String) row[2], (String) row[3]);
+                }
+            } finally {
+                resources.close();
+            }
+        } finally {
+            session.close();
+        }
+    }
+
+    public void indexItem(final String uri, final String label, final String description) {
+        update(new IndexUpdate() {
+            public void apply(IndexWriter indexWriter) throws IOException {
+                indexWriter.updateDocument(new Term(URI_FIELD, uri), createDocument(uri, label, description));
+            }
+        });
+    }
+
+    public void removeItem(final String uri) {
+        update(new IndexUpdate() {
+            public void apply(IndexWriter indexWriter) throws IOException {
+                indexWriter.deleteDocuments(new Term(URI_FIELD, uri));
+            }
+        });
+    }
+
+    public void removeFolder(final String folderUri) {
+        update(new IndexUpdate() {
+            public void apply(IndexWriter indexWriter) throws IOException {
+                indexWriter.deleteDocuments(folderQuery(folderUri));
+            }
+        });
+    }
+
+    public void moveItem(final String oldUri, final String newUri) {
+        update(new IndexUpdate() {
+            public void apply(IndexWriter indexWriter) throws IOException {
+                move(indexWriter, new TermQuery(new Term(URI_FIELD, oldUri)), oldUri, newUri);
+            }
+        });
+    }
+
+    public void moveFolder(final String oldFolderUri, final String newFolderUri) {
+        update(new IndexUpdate() {
+            public void apply(IndexWriter indexWriter) throws IOException {
+                move(indexWriter, folderQuery(oldFolderUri), oldFolderUri, newFolderUri);
+            }
+        });
+    }
+
+    protected void update(IndexUpdate update) {
+        IndexWriter indexWriter = writer;
+        if (indexWriter == null) {
+            return;
+        }
+        if (rebuilding.get()) {
+            synchronized (updatesDuringRebuild) {
+                if (rebuilding.get()) {
+                    updatesDuringRebuild.add(update);
+                }
+            }
+        }
+        try {
+            update.apply(indexWriter);
+            searcherManager.maybeRefreshBlocking();
+        } catch (IOException e) {
+            updateFailed(e);
+        } catch (RuntimeException e) {
+            updateFailed(e);
+        }
+    }
+
+    private void updateFailed(Exception e) {
+        stale = true;
+        log.warn("Repository text index update failed, search uses database until the index is rebuilt", e);
+    }
+
+    /**
+     * Re-keys documents matching the query from the old URI prefix to the new one, keeping their stored fields.
+     */
+    protected void move(IndexWriter indexWriter, Query query, String oldUri, String newUri) throws IOException {
+        // make sure pending updates of the moved items are visible
+        searcherManager.maybeRefreshBlocking();
+        IndexSearcher searcher = searcherManager.acquire();
+        try {
+            int count = searcher.count(query);
+            if (count == 0) {
+                return;
+            }
+            for (ScoreDoc scoreDoc : searcher.search(query, count).scoreDocs) {
+                Document document = searcher.doc(scoreDoc.doc);
+                String uri = document.get(URI_FIELD);
+                String movedUri = newUri + uri.substring(oldUri.length());
+                indexWriter.deleteDocuments(new Term(URI_FIELD, uri));
+                indexWriter.updateDocument(new Term(URI_FIELD, movedUri),
+                        createDocument(movedUri, document.get(LABEL_FIELD), document.get(DESCRIPTION_FIELD)));
+            }
+        } finally {
+            searcherManager.release(searcher);
+        }
+    }
+
+    protected Query folderQuery(String folderUri) {
+        return new BooleanQuery.Builder()
+                .add(new TermQuery(new Term(URI_FIELD, folderUri)), BooleanClause.Occur.SHOULD)
+                .add(new PrefixQuery(new Term(URI_FIELD, folderUri + Folder.SEPARATOR)), BooleanClause.Occur.SHOULD)
+                .build();
+    }
+
+    protected Document createDocument(String uri, String label, String description) {
+        Document document = new Document();
+        document.add(new StringField(URI_FIELD, uri, Field.Store.YES));
+        if (label != null) {
+            document.add(new StoredField(LABEL_FIELD, label));
+        }
+        if (description != null) {
+            document.add(new StoredField(DESCRIPTION_FIELD, description));
+        }
+        // resource name is the last segment of the URI
+        StringBuilder text = new StringBuilder(uri);
+        if (label != null) {
+            text.append(' ').append(label);
+        }
+        if (description != null) {
+            text.append(' ').append(description);
+        }
+        document.add(new TextField(TEXT_FIELD, text.toString(), Field.Store.NO));
+        return document;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public void setIndexDirectory(String indexDirectory) {
+        this.indexDirectory = indexDirectory;
+    }
+
+    public void setRebuildOnStartup(boolean rebuildOnStartup) {
+        this.rebuildOnStartup = rebuildOnStartup;
+    }
+
+    public void setCommitInterval(long commitInterval) {
+        //convert seconds into millisecond equivalent
+        this.commitInterval = commitInterval * 1000;
+    }
+
+    public void setFetchSize(int fetchSize) {
+        this.fetchSize = fetchSize;
+    }
+
+    public void setSessionFactory(SessionFactory sessionFactory) {
+        this.sessionFactory = sessionFactory;
+    }
+
+    protected interface ItemHandler {
+        void handle(String uri, String label, String description) throws IOException;
+    }
+
+    protected interface IndexUpdate {
+        void apply(IndexWriter indexWriter) throws IOException;
+    }
+
+    /**
+     * Splits text into lower case runs of letters and digits, so that URI segments like
+     * <code>Sales_Report_2019</code> are matched by each of their words.
+     */
+    static class RepositoryTextAnalyzer extends Analyzer {
+        @Override
+        protected TokenStreamComponents createComponents(String fieldName) {
+            Tokenizer tokenizer = CharTokenizer.fromTokenCharPredicate(Character::isLetterOrDigit);
+            return new TokenStreamComponents(tokenizer, new LowerCaseFilter(tokenizer));
+        }
+
+        @Override
+        protected TokenStream normalize(String fieldName, TokenStream in) {
+            return new LowerCaseFilter(in);
+        }
+    }
+}
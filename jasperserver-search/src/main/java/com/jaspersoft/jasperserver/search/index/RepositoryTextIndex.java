@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2005 - 2020 TIBCO Software Inc. All rights reserved.
+ * http://www.jaspersoft.com.
+ *
+ * Unless you have purchased a commercial license agreement from Jaspersoft,
+ * the following license terms apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.jaspersoft.jasperserver.search.index;
+
+import java.util.Set;
+
+/**
+ * Full-text index of repository resource and folder labels, descriptions, names and URIs.
+ * It is used by repository search in place of the <code>ILIKE '%word%'</code> text criterion.
+ *
+ * @version $Id$
+ */
+public interface RepositoryTextIndex {
+
+    /**
+     * @return <code>true</code> if the index is enabled and reflects the repository, i.e. is neither being rebuilt
+     * nor missed any update
+     */
+    boolean isCurrent();
+
+    /**
+     * Finds repository items containing all the words of the text, each word matching a token or a token prefix.
+     *
+     * @param text    the search text, words are separated by whitespace
+     * @param maxHits maximum number of URIs to return
+     * @return URIs of the matching items, or <code>null</code> if the index can't serve the search
+     * (it is not current, the text has no indexable words or more than <code>maxHits</code> items match)
+     */
+    Set<String> findUris(String text, int maxHits);
+
+    /**
+     * Starts dropping the index and filling it again from the repository in background.
+     * The index isn't current until the rebuild finishes.
+     */
+    void rebuild();
+
+    void indexItem(String uri, String label, String description);
+
+    void removeItem(String uri);
+
+    /**
+     * Removes a folder along with all the items under it.
+     */
+    void removeFolder(String folderUri);
+
+    void moveItem(String oldUri, String newUri);
+
+    /**
+     * Moves a folder along with all the items under it.
+     */
+    void moveFolder(String oldFolderUri, String newFolderUri);
+}
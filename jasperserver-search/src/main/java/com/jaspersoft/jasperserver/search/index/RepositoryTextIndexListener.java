@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2005 - 2020 TIBCO Software Inc. All rights reserved.
+ * http://www.jaspersoft.com.
+ *
+ * Unless you have purchased a commercial license agreement from Jaspersoft,
+ * the following license terms apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.jaspersoft.jasperserver.search.index;
+
+import com.jaspersoft.jasperserver.api.metadata.common.domain.Resource;
+import com.jaspersoft.jasperserver.api.metadata.common.service.RepositoryEventListenerSupport;
+import com.jaspersoft.jasperserver.api.metadata.common.service.impl.FolderMoveEvent;
+import com.jaspersoft.jasperserver.api.metadata.common.service.impl.RepositorySaveListener;
+import com.jaspersoft.jasperserver.api.metadata.common.service.impl.ResourceCopiedEvent;
+import com.jaspersoft.jasperserver.api.metadata.common.service.impl.ResourceMoveEvent;
+import com.jaspersoft.jasperserver.api.metadata.common.service.impl.ResourceSavedEvent;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Keeps {@link RepositoryTextIndex} in sync with repository changes.
+ * Registered both as a repository listener (saves, moves, copies) and as a repository event listener (deletes,
+ * including cascaded ones). Changes are applied to the index after the transaction commits, so that rolled back
+ * changes never reach it.
+ *
+ * @version $Id$
+ */
+public class RepositoryTextIndexListener extends RepositoryEventListenerSupport implements RepositorySaveListener {
+
+    private RepositoryTextIndex repositoryTextIndex;
+
+    public void resourceSaved(final ResourceSavedEvent event) {
+        // items in hidden folders are not searched through the index
+        if (!event.isHidden()) {
+            afterCommit(new Runnable() {
+                public void run() {
+                    repositoryTextIndex.indexItem(event.getResourceURI(), event.getLabel(), event.getDescription());
+                }
+            });
+        }
+    }
+
+    public void resourceCopied(ResourceCopiedEvent event) {
+        final Resource copy = event.getResource();
+        afterCommit(new Runnable() {
+            public void run() {
+                repositoryTextIndex.indexItem(copy.getURIString(), copy.getLabel(), copy.getDescription());
+            }
+        });
+    }
+
+    public void resourceMoved(final ResourceMoveEvent resourceMove) {
+        afterCommit(new Runnable() {
+            public void run() {
+                repositoryTextIndex.moveItem(resourceMove.getOldResourceURI(), resourceMove.getNewResourceURI());
+            }
+        });
+    }
+
+    public void folderMoved(final FolderMoveEvent folderMove) {
+        afterCommit(new Runnable() {
+            public void run() {
+                repositoryTextIndex.moveFolder(folderMove.getOldFolderURI(), folderMove.getNewFolderURI());
+            }
+        });
+    }
+
+    @Override
+    public void onResourceDelete(Class resourceItf, final String resourceURI) {
+        afterCommit(new Runnable() {
+            public void run() {
+                repositoryTextIndex.removeItem(resourceURI);
+            }
+        });
+    }
+
+    @Override
+    public void onFolderDelete(final String folderURI) {
+        afterCommit(new Runnable() {
+            public void run() {
+                repositoryTextIndex.removeFolder(folderURI);
+            }
+        });
+    }
+
+    protected void afterCommit(final Runnable indexUpdate) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    indexUpdate.run();
+                }
+            });
+        } else {
+            indexUpdate.run();
+        }
+    }
+
+    public void setRepositoryTextIndex(RepositoryTextIndex repositoryTextIndex) {
+        this.repositoryTextIndex = repositoryTextIndex;
+    }
+}
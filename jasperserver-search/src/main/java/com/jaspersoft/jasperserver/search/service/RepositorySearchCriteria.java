@@ -70,6 +70,8 @@ public interface RepositorySearchCriteria extends Cloneable {
     List<String> getExcludeRelativePaths();
     void setForceFullPage(boolean forceFullPage);
     boolean isForceFullPage();
+    void setContinuationToken(String continuationToken);
+    String getContinuationToken();
     void setResources(List<ClientResourceLookup> resources);
     List<ClientResourceLookup> getResources();
     RepositorySearchCriteria clone() throws CloneNotSupportedException;
@@ -46,6 +46,11 @@ public interface RepositorySearchResult<T> extends Cloneable {
 
     List<T> getItems();
 
+    /**
+     * @return token to fetch the next page of a keyset paged search, <code>null</code> when there are no more results
+     */
+    String getContinuationToken();
+
     <U> RepositorySearchResult<U> transform(ItemProcessor<T, U> transformer);
     
     void append(RepositorySearchResult<T> r);
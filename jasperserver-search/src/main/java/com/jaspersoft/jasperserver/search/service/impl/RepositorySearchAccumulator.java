@@ -49,6 +49,7 @@ public class RepositorySearchAccumulator<T> implements RepositorySearchResult<T>
     private int nextLimit;
     private int totalCount;
     private boolean full;
+    private String continuationToken;
 
     public static final com.jaspersoft.jasperserver.search.service.RepositorySearchResult EMPTY_RESULT =
             new RepositorySearchAccumulator(0, 0, 0).fill(0, 0, Collections.EMPTY_LIST);
@@ -167,6 +168,15 @@ public class RepositorySearchAccumulator<T> implements RepositorySearchResult<T>
         return Collections.unmodifiableList(this.items);
     }
 
+    @Override
+    public String getContinuationToken() {
+        return continuationToken;
+    }
+
+    public void setContinuationToken(String continuationToken) {
+        this.continuationToken = continuationToken;
+    }
+
     @Override
     public <U> RepositorySearchResult<U> transform(ItemProcessor<T, U> transformer) {
         RepositorySearchAccumulator<U> result =
@@ -176,6 +186,7 @@ public class RepositorySearchAccumulator<T> implements RepositorySearchResult<T>
         result.nextLimit = this.nextLimit;
         result.offset = this.offset;
         result.full = this.full;
+        result.continuationToken = this.continuationToken;
 
         for (T lookup : this.items) {
             result.items.add(transformer.call(lookup));
@@ -43,6 +43,7 @@ public class RepositorySearchCriteriaImpl implements RepositorySearchCriteria {
     private int startIndex;
     private int maxCount;
     private boolean forceFullPage = false;
+    private String continuationToken;
     private String searchText;
     private String folderUri;
     private List<String> resourceTypes;
@@ -122,6 +123,17 @@ public class RepositorySearchCriteriaImpl implements RepositorySearchCriteria {
         this.forceFullPage = forceFullPage;
     }
 
+    /**
+     * Token of the keyset paged search, <code>null</code> for offset paging, empty string for the first keyset page.
+     */
+    public String getContinuationToken() {
+        return continuationToken;
+    }
+
+    public void setContinuationToken(String continuationToken) {
+        this.continuationToken = continuationToken;
+    }
+
     public String getSearchText() {
         return searchText;
     }
@@ -260,6 +272,11 @@ public class RepositorySearchCriteriaImpl implements RepositorySearchCriteria {
             return this;
         }
 
+        public Builder setContinuationToken(String continuationToken){
+            criteria.setContinuationToken(continuationToken);
+            return this;
+        }
+
         public Builder setSearchText(String searchText){
             criteria.setSearchText(searchText);
             return this;
@@ -347,6 +364,7 @@ public class RepositorySearchCriteriaImpl implements RepositorySearchCriteria {
         criteria.setStartIndex(this.startIndex);
         criteria.setMaxCount(this.maxCount);
         criteria.setForceFullPage(this.forceFullPage);
+        criteria.setContinuationToken(this.continuationToken);
         criteria.setSearchText(this.searchText);
         criteria.setFolderUri(this.folderUri);
         criteria.setResources(this.resources);
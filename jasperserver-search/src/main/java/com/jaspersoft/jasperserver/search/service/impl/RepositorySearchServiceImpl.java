@@ -32,9 +32,12 @@ import com.jaspersoft.jasperserver.api.metadata.common.domain.Resource;
 import com.jaspersoft.jasperserver.api.metadata.common.domain.ResourceLookup;
 import com.jaspersoft.jasperserver.api.metadata.common.service.RepositoryService;
 import com.jaspersoft.jasperserver.api.search.SearchCriteriaFactory;
+import com.jaspersoft.jasperserver.api.search.IdAttribute;
 import com.jaspersoft.jasperserver.api.search.SearchFilter;
+import com.jaspersoft.jasperserver.api.search.SearchKey;
 import com.jaspersoft.jasperserver.api.search.SearchSorter;
 import com.jaspersoft.jasperserver.api.search.TransformerFactory;
+import com.jaspersoft.jasperserver.search.common.ContinuationToken;
 import com.jaspersoft.jasperserver.search.common.CustomFilter;
 import com.jaspersoft.jasperserver.search.common.CustomSorter;
 import com.jaspersoft.jasperserver.search.common.RepositorySearchConfiguration;
@@ -58,7 +61,12 @@ import org.apache.commons.logging.LogFactory;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Base64;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -76,6 +84,8 @@ import java.util.Set;
 @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
 public class RepositorySearchServiceImpl implements RepositorySearchService, Diagnostic {
     private static final Log log = LogFactory.getLog(RepositorySearchServiceImpl.class);
+    private static final int DEFAULT_KEYSET_BATCH_SIZE = 100;
+    private static final int DEFAULT_MAX_KEYSET_ROUNDS = 5;
 
     protected RepositoryService repositoryService;
     private ResourceService resourceService;
@@ -96,6 +106,45 @@ public class RepositorySearchServiceImpl implements RepositorySearchService, Dia
         return sorter;
     }
 
+    private int maxKeysetRounds = DEFAULT_MAX_KEYSET_ROUNDS;
+    private SecretKey continuationTokenKey = generateContinuationTokenKey();
+
+    /**
+     * Maximum number of key queries of a keyset paged search. A page that is not full after that many rounds
+     * is returned with a continuation token, so that the client continues from there.
+     */
+    public void setMaxKeysetRounds(int maxKeysetRounds) {
+        if (maxKeysetRounds < 1) {
+            throw new IllegalArgumentException("At least one keyset search round is needed: " + maxKeysetRounds);
+        }
+        this.maxKeysetRounds = maxKeysetRounds;
+    }
+
+    /**
+     * Sets the base64 encoded AES key which seals continuation tokens pointing past results hidden from the user.
+     * By default a random key is generated, so such tokens are only accepted by the node which issued them;
+     * nodes of a cluster behind a load balancer without sticky sessions need the same key.
+     */
+    public void setContinuationTokenSecret(String continuationTokenSecret) {
+        if (continuationTokenSecret != null && !continuationTokenSecret.trim().isEmpty()) {
+            byte[] key = Base64.getDecoder().decode(continuationTokenSecret.trim());
+            if (key.length != 16 && key.length != 24 && key.length != 32) {
+                throw new IllegalArgumentException("Continuation token secret must be a 128, 192 or 256 bit key");
+            }
+            this.continuationTokenKey = new SecretKeySpec(key, "AES");
+        }
+    }
+
+    private static SecretKey generateContinuationTokenKey() {
+        try {
+            KeyGenerator generator = KeyGenerator.getInstance("AES");
+            generator.init(128);
+            return generator.generateKey();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
     public void setSorter(ByLabelSorter sorter) {
         this.sorter = sorter;
     }
@@ -176,6 +225,10 @@ public class RepositorySearchServiceImpl implements RepositorySearchService, Dia
             final List<SearchFilter> filters = createAllFiltersList(conf, criteria);
             final SearchSorter sorter = getSorter(conf, criteria.getSortBy());
 
+            if (criteria.getContinuationToken() != null) {
+                return getLookupsAfterKey(context, criteria, criteriaFactory, filters, sorter, conf);
+            }
+
             int startIndex = criteria.getStartIndex();
             int itemsPerPage = criteria.getMaxCount();
             int currentLimit = itemsPerPage;
@@ -212,6 +265,91 @@ public class RepositorySearchServiceImpl implements RepositorySearchService, Dia
         return result == null ? RepositorySearchAccumulator.EMPTY_RESULT : result;
     }
 
+    /**
+     * Keyset paged search: every round seeks past the key of the last result instead of skipping an offset, so
+     * neither the total count nor the skipped rows are queried. The page is filled in rounds because results are
+     * filtered by ACL after they are loaded. The number of rounds is limited, so a page can hold fewer items than
+     * requested, or none, while a continuation token is still returned.
+     * <p/>
+     * Keys are read before the ACL check, so the token holds the key of the last item returned, which the user may
+     * read. Only a page without items, whose rounds read hidden keys only, returns a sealed token of the last key
+     * read, so that the search still moves on without revealing that key.
+     *
+     * @throws IllegalArgumentException if the token is malformed or the sorter does not define a unique key
+     */
+    protected RepositorySearchResult<ResourceLookup> getLookupsAfterKey(ExecutionContext context,
+            RepositorySearchCriteria criteria, SearchCriteriaFactory criteriaFactory, List<SearchFilter> filters,
+            SearchSorter sorter, RepositorySearchConfiguration conf) {
+        final String token = criteria.getContinuationToken();
+        final int limit = criteria.getMaxCount();
+        final int maxItemsPerQuery = conf.getMaxItemsPerQuery() > 0 ? conf.getMaxItemsPerQuery() : DEFAULT_KEYSET_BATCH_SIZE;
+
+        SearchKey after = token.isEmpty() ? null : ContinuationToken.decode(criteria.getSortBy(), token, continuationTokenKey);
+        SearchKey lastReturned = null;
+        int batchSize = limit > 0 ? limit : maxItemsPerQuery;
+        boolean hasMore = true;
+        List<ResourceLookup> items = new ArrayList<ResourceLookup>();
+
+        for (int round = 0; hasMore && (limit == 0 || items.size() < limit); round++) {
+            if (round >= maxKeysetRounds) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Stopped searching after " + round + " rounds, found: " + items.size() + " of " + limit);
+                }
+                break;
+            }
+            List<SearchKey> keys = repositoryService.getResourceKeys(context, criteriaFactory, filters, sorter, after, batchSize);
+            hasMore = keys.size() == batchSize;
+            if (keys.isEmpty()) {
+                break;
+            }
+
+            List<ResourceLookup> lookups = repositoryService.getResourcesByKeys(context, criteriaFactory, keys);
+            after = keys.get(keys.size() - 1);
+
+            if (limit > 0 && items.size() + lookups.size() > limit) {
+                lookups = lookups.subList(0, limit - items.size());
+                hasMore = true;
+            } else if (limit > 0 && lookups.size() < keys.size()) {
+                // some results were filtered out, read ahead more in the next round
+                batchSize = Math.max(batchSize, Math.min(batchSize * 2, maxItemsPerQuery));
+            }
+            if (!lookups.isEmpty()) {
+                lastReturned = findKey(keys, lookups.get(lookups.size() - 1));
+            }
+            items.addAll(lookups);
+
+            if (log.isDebugEnabled()) {
+                log.debug("Searching after key -> " + after + ", limit: " + limit +
+                        " <> keys: " + keys.size() + ", found: " + lookups.size());
+            }
+        }
+
+        RepositorySearchAccumulator<ResourceLookup> result =
+                new RepositorySearchAccumulator<ResourceLookup>(0, limit, items.size());
+        result.fill(0, limit, items);
+        if (hasMore) {
+            result.setContinuationToken(lastReturned != null
+                    ? ContinuationToken.encode(criteria.getSortBy(), lastReturned)
+                    : ContinuationToken.encodeSealed(criteria.getSortBy(), after, continuationTokenKey));
+        }
+        return result;
+    }
+
+    private SearchKey findKey(List<SearchKey> keys, ResourceLookup lookup) {
+        Long id = null;
+        for (Object attribute : lookup.getAttributes()) {
+            if (attribute instanceof IdAttribute) {
+                id = ((IdAttribute) attribute).getId();
+            }
+        }
+        for (SearchKey key : keys) {
+            if (id != null && key.getId() == id) {
+                return key;
+            }
+        }
+        throw new JSException("Search key is not found for " + lookup.getURIString());
+    }
+
     private void debug(RepositorySearchCriteria criteria, List<ResourceLookup> lookups,
                        RepositorySearchAccumulator<ResourceLookup> result) {
         if (log.isDebugEnabled()) {
@@ -22,8 +22,11 @@
 package com.jaspersoft.jasperserver.search.sorter;
 
 import java.io.Serializable;
+import java.util.Collections;
+import java.util.List;
 
 import com.jaspersoft.jasperserver.api.search.SearchSorter;
+import com.jaspersoft.jasperserver.api.search.SeekableSearchSorter;
 import com.jaspersoft.jasperserver.api.search.SearchCriteria;
 import com.jaspersoft.jasperserver.api.common.domain.ExecutionContext;
 import org.hibernate.criterion.Order;
@@ -31,7 +34,7 @@ import org.hibernate.criterion.Projections;
 
 /**
  */
-public class ByDateSorter extends SearchSorter implements Serializable {
+public class ByDateSorter extends SearchSorter implements SeekableSearchSorter, Serializable {
 
     @Override
     protected void addOrder(String type, ExecutionContext context, SearchCriteria criteria) {
@@ -42,4 +45,14 @@ public class ByDateSorter extends SearchSorter implements Serializable {
     protected void addProjection(String type, ExecutionContext context, SearchCriteria criteria) {
         criteria.addProjection(Projections.property("updateDate"));
     }
+
+    @Override
+    public List<String> getKeyProperties(SearchCriteria criteria) {
+        return Collections.singletonList("updateDate");
+    }
+
+    @Override
+    public boolean isDescending() {
+        return true;
+    }
 }
@@ -24,14 +24,17 @@ package com.jaspersoft.jasperserver.search.sorter;
 import com.jaspersoft.jasperserver.api.common.domain.ExecutionContext;
 import com.jaspersoft.jasperserver.api.search.SearchCriteria;
 import com.jaspersoft.jasperserver.api.search.SearchSorter;
+import com.jaspersoft.jasperserver.api.search.SeekableSearchSorter;
 import org.hibernate.criterion.Order;
 import org.hibernate.criterion.Projections;
 
 import java.io.Serializable;
+import java.util.Collections;
+import java.util.List;
 
 /**
  */
-public class ByLabelSorter extends SearchSorter implements Serializable {
+public class ByLabelSorter extends SearchSorter implements SeekableSearchSorter, Serializable {
     @Override
     protected void addOrder(String type, ExecutionContext context, SearchCriteria criteria) {
         criteria.addOrder(Order.asc("label")).addOrder(Order.asc("id"));
@@ -41,4 +44,14 @@ public class ByLabelSorter extends SearchSorter implements Serializable {
     protected void addProjection(String type, ExecutionContext context, SearchCriteria criteria) {
         criteria.addProjection(Projections.property("label"));
     }
-}
\ No newline at end of file
+
+    @Override
+    public List<String> getKeyProperties(SearchCriteria criteria) {
+        return Collections.singletonList("label");
+    }
+
+    @Override
+    public boolean isDescending() {
+        return false;
+    }
+}
@@ -22,16 +22,20 @@
 package com.jaspersoft.jasperserver.search.sorter;
 
 import java.io.Serializable;
+import java.util.Collections;
+import java.util.List;
 
 import com.jaspersoft.jasperserver.api.search.SearchSorter;
+import com.jaspersoft.jasperserver.api.search.SeekableSearchSorter;
 import com.jaspersoft.jasperserver.api.search.SearchCriteria;
 import com.jaspersoft.jasperserver.api.common.domain.ExecutionContext;
 import org.hibernate.criterion.Order;
 import org.hibernate.criterion.Projections;
 
 /**
+ * Sorts by the forward decayed access score kept in the resource popularity counters.
  */
-public class ByPopularitySorter extends SearchSorter implements Serializable {
+public class ByPopularitySorter extends SearchSorter implements SeekableSearchSorter, Serializable {
     @Override
     protected void addOrder(String type, ExecutionContext context, SearchCriteria criteria) {
         // works with Resource.class only, for ResourceItem - skip
@@ -39,14 +43,20 @@ public class ByPopularitySorter extends SearchSorter implements Serializable {
 
     @Override
     protected void addProjection(String type, ExecutionContext context, SearchCriteria criteria) {
-//      please do not remove Projections.rowCount() - it's required for bug fix JRS-19427
-//      Hibernate is not properly managing columnNames for groupProperty and this will cause errors inside of Hibernate
-//      https://hibernate.atlassian.net/browse/HHH-5854
+        String alias = criteria.getAlias("popularity", "pop");
         criteria.addProjection(Projections.projectionList().
-                add(Projections.count("accessEvents"), "aec").
-                add(Projections.alias(Projections.groupProperty("accessEvents"),"aeid")).
-                add(Projections.rowCount()));
+                add(Projections.property(alias + ".score"), "ps"));
 
-        criteria.addOrder(Order.desc("aec")).addOrder(Order.asc("id"));
+        criteria.addOrder(Order.desc("ps")).addOrder(Order.asc("id"));
     }
-}
\ No newline at end of file
+
+    @Override
+    public List<String> getKeyProperties(SearchCriteria criteria) {
+        return Collections.singletonList(criteria.getAlias("popularity", "pop") + ".score");
+    }
+
+    @Override
+    public boolean isDescending() {
+        return true;
+    }
+}
@@ -22,10 +22,13 @@
 package com.jaspersoft.jasperserver.search.sorter;
 
 import java.io.Serializable;
+import java.util.Collections;
+import java.util.List;
 
 import com.jaspersoft.jasperserver.api.common.domain.ExecutionContext;
 import com.jaspersoft.jasperserver.api.search.SearchCriteria;
 import com.jaspersoft.jasperserver.api.search.SearchSorter;
+import com.jaspersoft.jasperserver.api.search.SeekableSearchSorter;
 import org.hibernate.criterion.Order;
 import org.hibernate.criterion.Projections;
 
@@ -35,7 +38,7 @@ import org.hibernate.criterion.Projections;
  * @author Zakhar.Tomchenco
  * @version $Id$
  */
-public class ByTypeSorter extends SearchSorter implements Serializable {
+public class ByTypeSorter extends SearchSorter implements SeekableSearchSorter, Serializable {
     @Override
     protected void addOrder(String type, ExecutionContext context, SearchCriteria criteria) {
         criteria.addOrder(Order.asc("resourceType")).addOrder(Order.asc("id"));
@@ -45,4 +48,14 @@ public class ByTypeSorter extends SearchSorter implements Serializable {
     protected void addProjection(String type, ExecutionContext context, SearchCriteria criteria) {
         criteria.addProjection(Projections.property("resourceType"));
     }
+
+    @Override
+    public List<String> getKeyProperties(SearchCriteria criteria) {
+        return Collections.singletonList("resourceType");
+    }
+
+    @Override
+    public boolean isDescending() {
+        return false;
+    }
 }
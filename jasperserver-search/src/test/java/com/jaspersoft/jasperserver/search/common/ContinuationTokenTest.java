@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2005 - 2020 TIBCO Software Inc. All rights reserved.
+ * http://www.jaspersoft.com.
+ *
+ * Unless you have purchased a commercial license agreement from Jaspersoft,
+ * the following license terms apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.jaspersoft.jasperserver.search.common;
+
+import com.jaspersoft.jasperserver.api.search.SearchKey;
+import org.junit.Test;
+
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.Base64;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * @version $Id$
+ */
+public class ContinuationTokenTest {
+    private static final SecretKeySpec SECRET_KEY = new SecretKeySpec("0123456789abcdef".getBytes(StandardCharsets.US_ASCII), "AES");
+
+    @Test
+    public void decode_encodedKey_sameKey() {
+        Timestamp updateDate = new Timestamp(1586000000123L);
+        updateDate.setNanos(123456789);
+        SearchKey key = new SearchKey(new Object[]{"Sales | Q1", 42L, 7, 0.25d, updateDate}, 1001L);
+
+        String token = ContinuationToken.encode("label", key);
+
+        assertFalse(token.contains("+") || token.contains("/") || token.contains("="));
+        SearchKey decoded = ContinuationToken.decode("label", token);
+        assertEquals(key, decoded);
+        assertEquals(123456789, ((Timestamp) decoded.getValues()[4]).getNanos());
+    }
+
+    @Test
+    public void decode_nullSortBy_sameAsEmpty() {
+        SearchKey key = new SearchKey(new Object[]{"a"}, 1L);
+
+        assertEquals(key, ContinuationToken.decode("", ContinuationToken.encode(null, key)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void decode_otherSortBy_exception() {
+        ContinuationToken.decode("uri", ContinuationToken.encode("label", new SearchKey(new Object[]{"a"}, 1L)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void decode_notBase64_exception() {
+        ContinuationToken.decode("label", "not a token!");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void decode_truncated_exception() {
+        String token = ContinuationToken.encode("label", new SearchKey(new Object[]{"abc"}, 1L));
+
+        ContinuationToken.decode("label", token.substring(0, token.length() - 4));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void encode_unsupportedValue_exception() {
+        ContinuationToken.encode("label", new SearchKey(new Object[]{new Object()}, 1L));
+    }
+
+    @Test
+    public void decode_sealedKey_sameKeyAndContentHidden() {
+        SearchKey key = new SearchKey(new Object[]{"Hidden report", "/hidden/report"}, 1001L);
+
+        String token = ContinuationToken.encodeSealed("label", key, SECRET_KEY);
+
+        assertEquals(key, ContinuationToken.decode("label", token, SECRET_KEY));
+        String bytes = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.ISO_8859_1);
+        assertFalse(bytes.contains("Hidden") || bytes.contains("/hidden"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void decode_sealedWithoutKey_exception() {
+        ContinuationToken.decode("label", ContinuationToken.encodeSealed("label", new SearchKey(new Object[]{"a"}, 1L), SECRET_KEY));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void decode_sealedWithOtherKey_exception() {
+        String token = ContinuationToken.encodeSealed("label", new SearchKey(new Object[]{"a"}, 1L), SECRET_KEY);
+
+        ContinuationToken.decode("label", token, new SecretKeySpec("fedcba9876543210".getBytes(StandardCharsets.US_ASCII), "AES"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void decode_sealedTampered_exception() {
+        byte[] bytes = Base64.getUrlDecoder().decode(
+                ContinuationToken.encodeSealed("label", new SearchKey(new Object[]{"a"}, 1L), SECRET_KEY));
+        bytes[bytes.length - 1] ^= 1;
+
+        ContinuationToken.decode("label", Base64.getUrlEncoder().withoutPadding().encodeToString(bytes), SECRET_KEY);
+    }
+}
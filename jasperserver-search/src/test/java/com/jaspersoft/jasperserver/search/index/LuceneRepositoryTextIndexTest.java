@@ -0,0 +1,177 @@
+/*
+ * Copyright (C) 2005 - 2020 TIBCO Software Inc. All rights reserved.
+ * http://www.jaspersoft.com.
+ *
+ * Unless you have purchased a commercial license agreement from Jaspersoft,
+ * the following license terms apply:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jaspersoft.jasperserver.search.index;
+
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.store.FSDirectory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @version $Id$
+ */
+public class LuceneRepositoryTextIndexTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private final Map<String, String[]> repository = new LinkedHashMap<String, String[]>();
+    private TestIndex index;
+
+    @Before
+    public void setup() throws Exception {
+        repository.put("/public/Samples", new String[]{"Samples", null});
+        repository.put("/public/Samples/Sales_Report_2019", new String[]{"Quarterly Sales", "Revenue by region"});
+        repository.put("/public/Samples/Inventory", new String[]{"Stock Levels", null});
+        index = openIndex();
+        index.rebuildNow();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (index != null) {
+            index.destroy();
+        }
+    }
+
+    @Test
+    public void findUris_tokenPrefixes_matchLabelDescriptionAndUriWords() {
+        assertEquals(Collections.singleton("/public/Samples/Sales_Report_2019"), index.findUris("quart", 10));
+        assertEquals(Collections.singleton("/public/Samples/Sales_Report_2019"), index.findUris("REVENUE", 10));
+        assertEquals(Collections.singleton("/public/Samples/Sales_Report_2019"), index.findUris("report 2019", 10));
+        assertEquals(Collections.singleton("/public/Samples/Inventory"), index.findUris("inv", 10));
+    }
+
+    @Test
+    public void findUris_allWordsRequired() {
+        assertEquals(Collections.<String>emptySet(), index.findUris("stock revenue", 10));
+    }
+
+    @Test
+    public void findUris_tooManyHits_returnsNull() {
+        assertEquals(3, index.findUris("samples", 10).size());
+        assertNull(index.findUris("samples", 2));
+    }
+
+    @Test
+    public void findUris_noIndexableCharacters_returnsNull() {
+        assertNull(index.findUris("%%", 10));
+    }
+
+    @Test
+    public void moveFolder_reKeysFolderAndDescendants() {
+        index.indexItem("/public/SamplesArchive", "Samples archive", null);
+
+        index.moveFolder("/public/Samples", "/public/Demo");
+
+        assertEquals(new HashSet<String>(Arrays.asList("/public/Demo", "/public/SamplesArchive")),
+                index.findUris("samples", 10));
+        assertEquals(Collections.singleton("/public/Demo/Sales_Report_2019"), index.findUris("quarterly", 10));
+        assertEquals(Collections.singleton("/public/Demo/Inventory"), index.findUris("demo stock", 10));
+    }
+
+    @Test
+    public void removeFolder_removesDescendantsOnly() {
+        index.indexItem("/public/SamplesArchive", "Samples archive", null);
+
+        index.removeFolder("/public/Samples");
+
+        assertEquals(Collections.singleton("/public/SamplesArchive"), index.findUris("samples", 10));
+    }
+
+    @Test
+    public void indexItem_updatesExistingItem() {
+        index.indexItem("/public/Samples/Inventory", "Warehouse", null);
+
+        assertEquals(Collections.<String>emptySet(), index.findUris("stock", 10));
+        assertEquals(Collections.singleton("/public/Samples/Inventory"), index.findUris("warehouse", 10));
+    }
+
+    @Test
+    public void open_afterCleanShutdown_isCurrentWithoutRebuild() throws Exception {
+        index.indexItem("/public/Budget", "Budget", null);
+        index.destroy();
+
+        index = openIndex();
+
+        assertTrue(index.isCurrent());
+        assertEquals(Collections.singleton("/public/Budget"), index.findUris("budget", 10));
+    }
+
+    @Test
+    public void open_indexNotClosedCleanly_isStaleUntilRebuilt() throws Exception {
+        index.destroy();
+        // what a server stopped without closing the index leaves behind
+        IndexWriter writer = new IndexWriter(FSDirectory.open(temporaryFolder.getRoot().toPath()),
+                new IndexWriterConfig(new LuceneRepositoryTextIndex.RepositoryTextAnalyzer()));
+        writer.addDocument(index.createDocument("/public/Budget", "Budget", null));
+        writer.setLiveCommitData(Collections.singletonMap(
+                LuceneRepositoryTextIndex.CLEAN_SHUTDOWN_KEY, Boolean.FALSE.toString()).entrySet());
+        writer.commit();
+        writer.close();
+
+        index = openIndex();
+
+        assertFalse(index.isCurrent());
+        assertNull(index.findUris("budget", 10));
+
+        index.rebuildNow();
+
+        assertTrue(index.isCurrent());
+        assertEquals(Collections.<String>emptySet(), index.findUris("budget", 10));
+        assertEquals(3, index.getDocumentCount());
+    }
+
+    private TestIndex openIndex() throws Exception {
+        TestIndex testIndex = new TestIndex();
+        testIndex.setEnabled(true);
+        testIndex.setRebuildOnStartup(false);
+        testIndex.setIndexDirectory(temporaryFolder.getRoot().getAbsolutePath());
+        testIndex.afterPropertiesSet();
+        return testIndex;
+    }
+
+    private class TestIndex extends LuceneRepositoryTextIndex {
+        @Override
+        protected void loadRepositoryItems(ItemHandler handler) throws IOException {
+            for (Map.Entry<String, String[]> item : repository.entrySet()) {
+                handler.handle(item.getKey(), item.getValue()[0], item.getValue()[1]);
+            }
+        }
+    }
+}
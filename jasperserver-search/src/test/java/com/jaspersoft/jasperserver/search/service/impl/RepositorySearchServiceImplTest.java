@@ -28,29 +28,41 @@ import com.jaspersoft.jasperserver.api.logging.diagnostic.service.DiagnosticCall
 import com.jaspersoft.jasperserver.api.metadata.common.domain.Folder;
 import com.jaspersoft.jasperserver.api.metadata.common.domain.Resource;
 import com.jaspersoft.jasperserver.api.metadata.common.domain.ResourceLookup;
+import com.jaspersoft.jasperserver.api.metadata.common.domain.client.ResourceLookupImpl;
 import com.jaspersoft.jasperserver.api.metadata.common.service.RepositoryService;
 import com.jaspersoft.jasperserver.api.metadata.common.service.impl.hibernate.HibernateRepositoryServiceImpl;
 import com.jaspersoft.jasperserver.api.metadata.jasperreports.domain.ReportUnit;
+import com.jaspersoft.jasperserver.api.search.IdAttribute;
 import com.jaspersoft.jasperserver.api.search.SearchCriteriaFactory;
 import com.jaspersoft.jasperserver.api.search.SearchFilter;
+import com.jaspersoft.jasperserver.api.search.SearchKey;
 import com.jaspersoft.jasperserver.api.search.SearchSorter;
 import com.jaspersoft.jasperserver.api.search.TransformerFactory;
+import com.jaspersoft.jasperserver.search.common.ContinuationToken;
 import com.jaspersoft.jasperserver.search.common.RepositorySearchConfiguration;
 import com.jaspersoft.jasperserver.search.filter.ResourceTypeSearchCriteriaFactory;
 import com.jaspersoft.jasperserver.search.mode.SearchMode;
 import com.jaspersoft.jasperserver.search.mode.SearchModeSettings;
 import com.jaspersoft.jasperserver.search.mode.SearchModeSettingsResolver;
 import com.jaspersoft.jasperserver.search.service.RepositorySearchCriteria;
+import com.jaspersoft.jasperserver.search.service.RepositorySearchResult;
 import org.junit.Before;
 import org.junit.Test;
 
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
 import static org.mockito.ArgumentMatchers.nullable;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
@@ -67,6 +79,8 @@ import static org.mockito.Mockito.verify;
  */
 public class RepositorySearchServiceImplTest {
 
+    private static final String TOKEN_SECRET = "MDEyMzQ1Njc4OWFiY2RlZg==";
+
     private RepositorySearchServiceImpl repositorySearchService = spy(new RepositorySearchServiceImpl());
 
     private RepositorySearchConfiguration configuration = mock(RepositorySearchConfiguration.class);
@@ -163,6 +177,165 @@ public class RepositorySearchServiceImplTest {
         assertFalse(searchCriteria.getResourceTypes() == null || searchCriteria.getResourceTypes().isEmpty());
     }
 
+    @Test
+    public void getLookupsAfterKey_filteredResults_fillsPageAndReturnsTokenOfLastItem() {
+        final List<SearchKey> allKeys = new ArrayList<>();
+        for (long id = 1; id <= 10; id++) {
+            allKeys.add(new SearchKey(new Object[]{"label" + id}, id));
+        }
+        // odd ids are not readable
+        RepositoryService repositoryService = new HibernateRepositoryServiceImpl() {
+            @Override
+            public List<SearchKey> getResourceKeys(ExecutionContext context, SearchCriteriaFactory searchCriteriaFactory, List<SearchFilter> filters, SearchSorter sorter, SearchKey after, int max) {
+                int from = after == null ? 0 : allKeys.indexOf(after) + 1;
+                return allKeys.subList(from, Math.min(from + max, allKeys.size()));
+            }
+
+            @Override
+            public List<ResourceLookup> getResourcesByKeys(ExecutionContext context, SearchCriteriaFactory searchCriteriaFactory, List<SearchKey> keys) {
+                List<ResourceLookup> lookups = new ArrayList<>();
+                for (SearchKey key : keys) {
+                    if (key.getId() % 2 == 0) {
+                        ResourceLookupImpl lookup = new ResourceLookupImpl();
+                        lookup.setURIString("/r" + key.getId());
+                        lookup.setAttributes(new ArrayList(Collections.singletonList(new IdAttribute(key.getId()))));
+                        lookups.add(lookup);
+                    }
+                }
+                return lookups;
+            }
+        };
+        RepositorySearchServiceImpl service = new RepositorySearchServiceImpl();
+        service.setRepositoryService(repositoryService);
+
+        RepositorySearchCriteria criteria = new RepositorySearchCriteriaImpl.Builder()
+                .setSortBy("label").setMaxCount(3).setContinuationToken("").getCriteria();
+        RepositorySearchResult<ResourceLookup> result =
+                service.getLookupsAfterKey(null, criteria, null, null, null, configuration);
+
+        assertEquals(3, result.size());
+        assertEquals("/r6", result.getItems().get(2).getURIString());
+        assertEquals(allKeys.get(5), ContinuationToken.decode("label", result.getContinuationToken()));
+
+        criteria.setContinuationToken(result.getContinuationToken());
+        result = service.getLookupsAfterKey(null, criteria, null, null, null, configuration);
+
+        assertEquals(2, result.size());
+        assertEquals("/r8", result.getItems().get(0).getURIString());
+        assertNull(result.getContinuationToken());
+    }
+
+    @Test
+    public void getLookupsAfterKey_fewReadableResults_stopsAfterMaxRoundsWithToken() {
+        final List<SearchKey> allKeys = new ArrayList<>();
+        for (long id = 1; id <= 100; id++) {
+            allKeys.add(new SearchKey(new Object[]{"label" + id}, id));
+        }
+        final List<Integer> queriedBatches = new ArrayList<>();
+        // nothing is readable
+        RepositoryService repositoryService = new HibernateRepositoryServiceImpl() {
+            @Override
+            public List<SearchKey> getResourceKeys(ExecutionContext context, SearchCriteriaFactory searchCriteriaFactory, List<SearchFilter> filters, SearchSorter sorter, SearchKey after, int max) {
+                queriedBatches.add(max);
+                int from = after == null ? 0 : allKeys.indexOf(after) + 1;
+                return allKeys.subList(from, Math.min(from + max, allKeys.size()));
+            }
+
+            @Override
+            public List<ResourceLookup> getResourcesByKeys(ExecutionContext context, SearchCriteriaFactory searchCriteriaFactory, List<SearchKey> keys) {
+                return new ArrayList<>();
+            }
+        };
+        RepositorySearchServiceImpl service = new RepositorySearchServiceImpl();
+        service.setRepositoryService(repositoryService);
+        service.setMaxKeysetRounds(2);
+        service.setContinuationTokenSecret(TOKEN_SECRET);
+
+        RepositorySearchCriteria criteria = new RepositorySearchCriteriaImpl.Builder()
+                .setSortBy("label").setMaxCount(3).setContinuationToken("").getCriteria();
+        RepositorySearchResult<ResourceLookup> result =
+                service.getLookupsAfterKey(null, criteria, null, null, null, configuration);
+
+        assertEquals(0, result.size());
+        assertEquals(Arrays.asList(3, 6), queriedBatches);
+        assertEquals(allKeys.get(8), ContinuationToken.decode("label", result.getContinuationToken(),
+                new SecretKeySpec(Base64.getDecoder().decode(TOKEN_SECRET), "AES")));
+    }
+
+    @Test
+    public void getLookupsAfterKey_pagesAcrossUnreadableResources_tokensDoNotRevealThem() {
+        final List<SearchKey> allKeys = new ArrayList<>();
+        for (long id = 1; id <= 30; id++) {
+            // only ids 2 and 20 are readable
+            boolean readable = id == 2 || id == 20;
+            String label = readable ? String.format("Report %02d", id) : String.format("Secret %02d", id);
+            String uri = readable ? "/public/r" + id : "/secret/r" + id;
+            allKeys.add(new SearchKey(new Object[]{label, uri}, id));
+        }
+        RepositoryService repositoryService = new HibernateRepositoryServiceImpl() {
+            @Override
+            public List<SearchKey> getResourceKeys(ExecutionContext context, SearchCriteriaFactory searchCriteriaFactory, List<SearchFilter> filters, SearchSorter sorter, SearchKey after, int max) {
+                int from = after == null ? 0 : allKeys.indexOf(after) + 1;
+                return allKeys.subList(from, Math.min(from + max, allKeys.size()));
+            }
+
+            @Override
+            public List<ResourceLookup> getResourcesByKeys(ExecutionContext context, SearchCriteriaFactory searchCriteriaFactory, List<SearchKey> keys) {
+                List<ResourceLookup> lookups = new ArrayList<>();
+                for (SearchKey key : keys) {
+                    if (key.getId() == 2 || key.getId() == 20) {
+                        ResourceLookupImpl lookup = new ResourceLookupImpl();
+                        lookup.setURIString((String) key.getValues()[1]);
+                        lookup.setAttributes(new ArrayList(Collections.singletonList(new IdAttribute(key.getId()))));
+                        lookups.add(lookup);
+                    }
+                }
+                return lookups;
+            }
+        };
+        RepositorySearchServiceImpl service = new RepositorySearchServiceImpl();
+        service.setRepositoryService(repositoryService);
+        service.setMaxKeysetRounds(2);
+
+        // rounds read ids 1-3 and 4-9: the page ends on an unreadable key but the token points to /public/r2
+        RepositorySearchCriteria criteria = new RepositorySearchCriteriaImpl.Builder()
+                .setSortBy("label").setMaxCount(3).setContinuationToken("").getCriteria();
+        RepositorySearchResult<ResourceLookup> result =
+                service.getLookupsAfterKey(null, criteria, null, null, null, configuration);
+
+        assertEquals(1, result.size());
+        assertEquals("/public/r2", result.getItems().get(0).getURIString());
+        assertEquals(allKeys.get(1), ContinuationToken.decode("label", result.getContinuationToken()));
+        assertTokenDoesNotReveal(result.getContinuationToken(), "Secret", "/secret");
+
+        // rounds read ids 3-5 and 6-11 only: the page is empty and its sealed token reveals nothing
+        criteria.setContinuationToken(result.getContinuationToken());
+        result = service.getLookupsAfterKey(null, criteria, null, null, null, configuration);
+
+        assertEquals(0, result.size());
+        assertTokenDoesNotReveal(result.getContinuationToken(), "Secret", "/secret");
+        try {
+            ContinuationToken.decode("label", result.getContinuationToken());
+            fail("Sealed token is decoded without the secret key");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+
+        criteria.setContinuationToken(result.getContinuationToken());
+        result = service.getLookupsAfterKey(null, criteria, null, null, null, configuration);
+
+        assertEquals(1, result.size());
+        assertEquals("/public/r20", result.getItems().get(0).getURIString());
+        assertEquals(allKeys.get(19), ContinuationToken.decode("label", result.getContinuationToken()));
+    }
+
+    private void assertTokenDoesNotReveal(String token, String... values) {
+        String decoded = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.ISO_8859_1);
+        for (String value : values) {
+            assertFalse(token + " reveals " + value, decoded.contains(value));
+        }
+    }
+
     @Test
     public void getDiagnosticDataTest() {
         //Setup mock behavior